@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.cbor.annotations;
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Generates a {@code CborBinding_<ClassName>} class for an integer-keyed CBOR map, such as a CTAP2 command or
+ * response. The map entries are the abstract property methods annotated with {@link CborKey}.
+ * <p>
+ * The generated encoder writes present entries in ascending key order, which is CTAP2 canonical order. The
+ * generated decoder reads entries in any order, skips unknown keys, and creates the instance through the static
+ * method annotated with {@link CborFactory}.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface CborBinding {
+    /**
+     * Generates {@code static void encode(CborWriter writer, T value)}.
+     */
+    boolean encoder() default false;
+
+    /**
+     * Generates {@code static T decode(CborReader reader, ...)}. Parameters of the factory method that don't match a
+     * property are passed through as additional parameters.
+     */
+    boolean decoder() default false;
+}
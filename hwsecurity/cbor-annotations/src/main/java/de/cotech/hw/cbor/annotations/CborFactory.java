@@ -22,22 +22,21 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package de.cotech.hw.fido2.internal.ctap2;
+package de.cotech.hw.cbor.annotations;
 
 
-import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
-import de.cotech.hw.fido2.internal.cbor_java.model.UnsignedInteger;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 
 
-public class Ctap2CborConstants {
-    public static final UnsignedInteger CBOR_ONE = new UnsignedInteger(1);
-    public static final UnsignedInteger CBOR_TWO = new UnsignedInteger(2);
-    public static final UnsignedInteger CBOR_THREE = new UnsignedInteger(3);
-    public static final UnsignedInteger CBOR_FOUR = new UnsignedInteger(4);
-    public static final UnsignedInteger CBOR_FIVE = new UnsignedInteger(5);
-
-    public static final UnicodeString CBOR_ID = new UnicodeString("id");
-    public static final UnicodeString CBOR_NAME = new UnicodeString("name");
-    public static final UnicodeString CBOR_DISPLAYNAME = new UnicodeString("displayName");
-    public static final UnicodeString CBOR_ICON = new UnicodeString("icon");
+/**
+ * Marks the static factory method that the decoder of a {@link CborBinding} class creates instances with. Its
+ * parameters are matched to {@link CborKey} properties by name. Parameters annotated with {@code @Nullable} are
+ * optional, all other matched parameters must be present in the decoded map.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface CborFactory {
 }
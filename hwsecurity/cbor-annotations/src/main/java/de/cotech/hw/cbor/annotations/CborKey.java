@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.cbor.annotations;
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Maps a property of a {@link CborBinding} class to an integer key of the CBOR map.
+ * <p>
+ * Properties of type {@code byte[]}, {@code String}, integers, booleans, and lists of strings or integers are
+ * encoded directly. Other types need an {@link #adapter()}. Properties that are {@code null} are not encoded.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface CborKey {
+    int value();
+
+    /**
+     * The {@code byte[]} property holds a complete CBOR data item, which is copied as is instead of being wrapped in
+     * a byte string, e.g. a COSE key or an attestation statement.
+     */
+    boolean encoded() default false;
+
+    /**
+     * Empty lists are not encoded.
+     */
+    boolean omitEmpty() default false;
+
+    /**
+     * A class with static {@code encode(CborWriter writer, T value)} and {@code T decode(CborReader reader)}
+     * methods for the property type. Only the methods that the generated binding needs must exist.
+     */
+    Class<?> adapter() default Void.class;
+}
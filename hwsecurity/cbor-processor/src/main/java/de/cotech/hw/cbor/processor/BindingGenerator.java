@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.cbor.processor;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import de.cotech.hw.cbor.processor.CborBindingProcessor.ProcessingException;
+import de.cotech.hw.cbor.processor.CborProperty.ValueKind;
+
+
+/**
+ * Generates {@code CborBinding_<ClassName>} with a static encoder and/or decoder for the integer-keyed CBOR map of a
+ * CTAP2 command or response. Map entries are written in ascending key order, as required by the CTAP2 canonical
+ * CBOR encoding.
+ */
+class BindingGenerator {
+    private static final ClassName CBOR_WRITER = ClassName.get("de.cotech.hw.fido2.internal.cbor", "CborWriter");
+    private static final ClassName CBOR_READER = ClassName.get("de.cotech.hw.fido2.internal.cbor", "CborReader");
+    private static final ClassName CBOR_EXCEPTION =
+            ClassName.get("de.cotech.hw.fido2.internal.cbor_java", "CborException");
+
+    private static final String READ_TEXT_STRING_LIST = "readTextStringList";
+    private static final String READ_INTEGER_LIST = "readIntegerList";
+
+    private final TypeElement type;
+    private final ClassName typeName;
+    private final List<CborProperty> properties;
+
+    BindingGenerator(TypeElement type, List<CborProperty> properties) {
+        this.type = type;
+        this.typeName = ClassName.get(type);
+        this.properties = properties;
+    }
+
+    JavaFile generate(boolean encoder, ExecutableElement factory) throws ProcessingException {
+        TypeSpec.Builder binding = TypeSpec.classBuilder(getBindingClassName())
+                .addJavadoc("Generated by CborBindingProcessor from {@link $T}.\n", typeName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addOriginatingElement(type)
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+        if (encoder) {
+            binding.addMethod(generateEncode());
+        }
+        if (factory != null) {
+            Set<ValueKind> listKinds = new HashSet<>();
+            binding.addMethod(generateDecode(factory, listKinds));
+            if (listKinds.contains(ValueKind.TEXT_STRING_LIST)) {
+                binding.addMethod(generateReadList(READ_TEXT_STRING_LIST, ClassName.get(String.class), "readTextString"));
+            }
+            if (listKinds.contains(ValueKind.INTEGER_LIST)) {
+                binding.addMethod(generateReadList(READ_INTEGER_LIST, ClassName.get(Integer.class), "readInt"));
+            }
+        }
+        return JavaFile.builder(typeName.packageName(), binding.build())
+                .indent("    ")
+                .build();
+    }
+
+    private String getBindingClassName() {
+        return "CborBinding_" + String.join("_", typeName.simpleNames());
+    }
+
+    private MethodSpec generateEncode() {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("encode")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(CBOR_WRITER, "writer")
+                .addParameter(typeName, "value");
+
+        HashMap<CborProperty, String> locals = new HashMap<>();
+        Set<String> reserved = new HashSet<>(Arrays.asList("writer", "value", "size", "item"));
+        int requiredCount = 0;
+        CodeBlock.Builder optionalCount = CodeBlock.builder();
+        for (CborProperty property : properties) {
+            String local = toLocalName(property.name, reserved);
+            locals.put(property, local);
+            method.addStatement("$T $N = value.$N()", property.type, local, property.name);
+            if (property.isAlwaysPresent()) {
+                requiredCount++;
+            } else {
+                optionalCount.add("\n+ ($L ? 1 : 0)", getPresentCondition(property, local));
+            }
+        }
+        method.addStatement("int size = $L$L", requiredCount, optionalCount.build());
+        method.addStatement("writer.writeMapHeader(size)");
+
+        for (CborProperty property : properties) {
+            String local = locals.get(property);
+            if (!property.isAlwaysPresent()) {
+                method.beginControlFlow("if ($L)", getPresentCondition(property, local));
+            }
+            method.addStatement("writer.writeInteger($L)", formatKey(property.key));
+            switch (property.valueKind) {
+                case BYTE_STRING:
+                    method.addStatement("writer.writeByteString($N)", local);
+                    break;
+                case ENCODED_ITEM:
+                    method.addStatement("writer.writeEncodedItem($N)", local);
+                    break;
+                case TEXT_STRING:
+                    method.addStatement("writer.writeTextString($N)", local);
+                    break;
+                case INTEGER:
+                    method.addStatement("writer.writeInteger($N)", local);
+                    break;
+                case BOOLEAN:
+                    method.addStatement("writer.writeBoolean($N)", local);
+                    break;
+                case TEXT_STRING_LIST:
+                    addWriteList(method, local, ClassName.get(String.class), "writeTextString");
+                    break;
+                case INTEGER_LIST:
+                    addWriteList(method, local, ClassName.get(Integer.class), "writeInteger");
+                    break;
+                case ADAPTER:
+                    method.addStatement("$T.encode(writer, $N)", property.adapter, local);
+                    break;
+            }
+            if (!property.isAlwaysPresent()) {
+                method.endControlFlow();
+            }
+        }
+        return method.build();
+    }
+
+    private static CodeBlock getPresentCondition(CborProperty property, String local) {
+        if (property.nullable && property.omitEmpty) {
+            return CodeBlock.of("$N != null && !$N.isEmpty()", local, local);
+        }
+        if (property.omitEmpty) {
+            return CodeBlock.of("!$N.isEmpty()", local);
+        }
+        return CodeBlock.of("$N != null", local);
+    }
+
+    private static void addWriteList(MethodSpec.Builder method, String local, TypeName elementType, String write) {
+        method.addStatement("writer.writeArrayHeader($N.size())", local);
+        method.beginControlFlow("for ($T item : $N)", elementType, local);
+        method.addStatement("writer.$N(item)", write);
+        method.endControlFlow();
+    }
+
+    private MethodSpec generateDecode(ExecutableElement factory, Set<ValueKind> listKinds)
+            throws ProcessingException {
+        MethodSpec.Builder method = MethodSpec.methodBuilder("decode")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(typeName)
+                .addParameter(CBOR_READER, "reader")
+                .addException(CBOR_EXCEPTION);
+
+        HashMap<String, CborProperty> propertiesByName = new HashMap<>();
+        for (CborProperty property : properties) {
+            propertiesByName.put(property.name, property);
+        }
+        Set<String> reserved = new HashSet<>(Arrays.asList("reader", "numEntries", "i"));
+        HashMap<String, String> locals = new HashMap<>();
+        for (CborProperty property : properties) {
+            locals.put(property.name, toLocalName(property.name, reserved));
+        }
+
+        // factory parameters that don't match a property are passed through
+        List<CodeBlock> arguments = new ArrayList<>();
+        List<String> requiredNames = new ArrayList<>();
+        Set<String> matchedNames = new HashSet<>();
+        for (VariableElement parameter : factory.getParameters()) {
+            String name = parameter.getSimpleName().toString();
+            CborProperty property = propertiesByName.get(name);
+            if (property == null) {
+                String local = toLocalName(name, reserved);
+                method.addParameter(ParameterSpec.builder(TypeName.get(parameter.asType()), local).build());
+                arguments.add(CodeBlock.of("$N", local));
+                continue;
+            }
+            matchedNames.add(name);
+            arguments.add(CodeBlock.of("$N", locals.get(name)));
+            if (!CborProperty.isNullable(parameter)) {
+                requiredNames.add(name);
+            }
+        }
+        for (CborProperty property : properties) {
+            if (!matchedNames.contains(property.name)) {
+                throw new ProcessingException(factory,
+                        "@CborFactory method has no parameter for property " + property.name + "()");
+            }
+        }
+
+        for (CborProperty property : properties) {
+            method.addStatement("$T $N = null", property.type.box(), locals.get(property.name));
+        }
+        method.addStatement("int numEntries = reader.readMapHeader()");
+        method.beginControlFlow("for (int i = 0; i < numEntries; i++)");
+        method.beginControlFlow("switch (reader.readInt())");
+        for (CborProperty property : properties) {
+            method.addCode("case $L:\n$>", formatKey(property.key));
+            method.addStatement("$N = $L", locals.get(property.name), getReadValue(property, listKinds));
+            method.addStatement("break$<");
+        }
+        method.addCode("default:\n$>");
+        method.addStatement("reader.skipValue()$<");
+        method.endControlFlow();
+        method.endControlFlow();
+
+        for (String name : requiredNames) {
+            method.beginControlFlow("if ($N == null)", locals.get(name));
+            method.addStatement("throw new $T($S)", CBOR_EXCEPTION, "Missing " + name);
+            method.endControlFlow();
+        }
+        method.addStatement("return $T.$N($L)", typeName, factory.getSimpleName().toString(),
+                CodeBlock.join(arguments, ",$W"));
+        return method.build();
+    }
+
+    private static CodeBlock getReadValue(CborProperty property, Set<ValueKind> listKinds) {
+        switch (property.valueKind) {
+            case BYTE_STRING:
+                return CodeBlock.of("reader.readByteString()");
+            case ENCODED_ITEM:
+                return CodeBlock.of("reader.readEncodedItem()");
+            case TEXT_STRING:
+                return CodeBlock.of("reader.readTextString()");
+            case INTEGER:
+                TypeName unboxed = property.type.isBoxedPrimitive() ? property.type.unbox() : property.type;
+                if (unboxed.equals(TypeName.LONG)) {
+                    return CodeBlock.of("reader.readInteger()");
+                }
+                if (unboxed.equals(TypeName.INT)) {
+                    return CodeBlock.of("reader.readInt()");
+                }
+                return CodeBlock.of("($T) reader.readInt()", unboxed);
+            case BOOLEAN:
+                return CodeBlock.of("reader.readBoolean()");
+            case TEXT_STRING_LIST:
+                listKinds.add(ValueKind.TEXT_STRING_LIST);
+                return CodeBlock.of("$N(reader)", READ_TEXT_STRING_LIST);
+            case INTEGER_LIST:
+                listKinds.add(ValueKind.INTEGER_LIST);
+                return CodeBlock.of("$N(reader)", READ_INTEGER_LIST);
+            case ADAPTER:
+                return CodeBlock.of("$T.decode(reader)", property.adapter);
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private static MethodSpec generateReadList(String name, ClassName elementType, String read) {
+        ParameterizedTypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), elementType);
+        return MethodSpec.methodBuilder(name)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(listType)
+                .addParameter(CBOR_READER, "reader")
+                .addException(CBOR_EXCEPTION)
+                .addStatement("int numItems = reader.readArrayHeader()")
+                .addStatement("$T<$T> result = new $T<>(numItems)", ArrayList.class, elementType, ArrayList.class)
+                .beginControlFlow("for (int i = 0; i < numItems; i++)")
+                .addStatement("result.add(reader.$N())", read)
+                .endControlFlow()
+                .addStatement("return $T.unmodifiableList(result)", Collections.class)
+                .build();
+    }
+
+    private static String toLocalName(String name, Set<String> reserved) {
+        while (reserved.contains(name)) {
+            name = name + "_";
+        }
+        reserved.add(name);
+        return name;
+    }
+
+    private static String formatKey(int key) {
+        return String.format(Locale.ROOT, "0x%02x", key);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.cbor.processor;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+import com.squareup.javapoet.JavaFile;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborFactory;
+import de.cotech.hw.cbor.annotations.CborKey;
+
+
+/**
+ * Generates encoders and decoders for classes annotated with {@link CborBinding}, see {@link BindingGenerator}.
+ */
+public class CborBindingProcessor extends AbstractProcessor {
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(CborBinding.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(CborBinding.class)) {
+            try {
+                processBinding(element);
+            } catch (ProcessingException e) {
+                processingEnv.getMessager().printMessage(Kind.ERROR, e.getMessage(), e.element);
+            }
+        }
+        return true;
+    }
+
+    private void processBinding(Element element) throws ProcessingException {
+        if (element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.INTERFACE) {
+            throw new ProcessingException(element, "@CborBinding can only be applied to classes");
+        }
+        TypeElement type = (TypeElement) element;
+        CborBinding binding = type.getAnnotation(CborBinding.class);
+
+        List<CborProperty> properties = findProperties(type);
+        ExecutableElement factory = binding.decoder() ? findFactory(type) : null;
+
+        JavaFile javaFile = new BindingGenerator(type, properties)
+                .generate(binding.encoder(), factory);
+        try {
+            javaFile.writeTo(processingEnv.getFiler());
+        } catch (IOException e) {
+            throw new ProcessingException(type, "Failed to write CBOR binding: " + e.getMessage());
+        }
+    }
+
+    private List<CborProperty> findProperties(TypeElement type) throws ProcessingException {
+        List<CborProperty> properties = new ArrayList<>();
+        HashMap<Integer, CborProperty> propertiesByKey = new HashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            CborKey cborKey = method.getAnnotation(CborKey.class);
+            if (cborKey == null) {
+                continue;
+            }
+            if (!method.getParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID) {
+                throw new ProcessingException(method, "@CborKey can only be applied to property methods");
+            }
+            CborProperty property = CborProperty.create(processingEnv, method, cborKey);
+            CborProperty duplicate = propertiesByKey.put(property.key, property);
+            if (duplicate != null) {
+                throw new ProcessingException(method,
+                        "CBOR key " + property.key + " is already used by " + duplicate.name + "()");
+            }
+            properties.add(property);
+        }
+        if (properties.isEmpty()) {
+            throw new ProcessingException(type, "@CborBinding class has no @CborKey properties");
+        }
+        properties.sort((first, second) -> Integer.compare(first.key, second.key));
+        return properties;
+    }
+
+    private ExecutableElement findFactory(TypeElement type) throws ProcessingException {
+        ExecutableElement factory = null;
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getAnnotation(CborFactory.class) == null) {
+                continue;
+            }
+            if (!method.getModifiers().contains(Modifier.STATIC) || method.getModifiers().contains(Modifier.PRIVATE)) {
+                throw new ProcessingException(method, "@CborFactory method must be static and not private");
+            }
+            if (!processingEnv.getTypeUtils().isAssignable(method.getReturnType(), type.asType())) {
+                throw new ProcessingException(method, "@CborFactory method must return " + type.getSimpleName());
+            }
+            if (factory != null) {
+                throw new ProcessingException(method, "Only one method can be annotated with @CborFactory");
+            }
+            factory = method;
+        }
+        if (factory == null) {
+            throw new ProcessingException(type, "@CborBinding(decoder = true) requires a @CborFactory method");
+        }
+        return factory;
+    }
+
+    static class ProcessingException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final transient Element element;
+
+        ProcessingException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.cbor.processor;
+
+
+import java.util.List;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.TypeName;
+import de.cotech.hw.cbor.annotations.CborKey;
+import de.cotech.hw.cbor.processor.CborBindingProcessor.ProcessingException;
+
+
+/**
+ * A property of a {@link de.cotech.hw.cbor.annotations.CborBinding} class, and how its value is encoded.
+ */
+class CborProperty {
+    enum ValueKind {
+        BYTE_STRING,
+        ENCODED_ITEM,
+        TEXT_STRING,
+        INTEGER,
+        BOOLEAN,
+        TEXT_STRING_LIST,
+        INTEGER_LIST,
+        ADAPTER
+    }
+
+    final String name;
+    final int key;
+    final TypeName type;
+    final ValueKind valueKind;
+    final boolean nullable;
+    final boolean omitEmpty;
+    final ClassName adapter;
+
+    private CborProperty(String name, int key, TypeName type, ValueKind valueKind, boolean nullable,
+            boolean omitEmpty, ClassName adapter) {
+        this.name = name;
+        this.key = key;
+        this.type = type;
+        this.valueKind = valueKind;
+        this.nullable = nullable;
+        this.omitEmpty = omitEmpty;
+        this.adapter = adapter;
+    }
+
+    static CborProperty create(ProcessingEnvironment processingEnv, ExecutableElement method, CborKey cborKey)
+            throws ProcessingException {
+        if (cborKey.value() < 0) {
+            throw new ProcessingException(method, "CBOR keys must not be negative");
+        }
+        TypeMirror returnType = method.getReturnType();
+        ClassName adapter = getAdapter(cborKey);
+        ValueKind valueKind = adapter != null ? ValueKind.ADAPTER : getValueKind(processingEnv.getTypeUtils(), returnType);
+        if (valueKind == null) {
+            throw new ProcessingException(method, "Unsupported CBOR property type " + returnType + ", use an adapter");
+        }
+        if (cborKey.encoded() && valueKind != ValueKind.BYTE_STRING) {
+            throw new ProcessingException(method, "Only byte[] properties can hold encoded CBOR items");
+        }
+        if (cborKey.encoded()) {
+            valueKind = ValueKind.ENCODED_ITEM;
+        }
+        if (cborKey.omitEmpty() && !isList(processingEnv.getTypeUtils(), returnType)) {
+            throw new ProcessingException(method, "omitEmpty can only be applied to lists");
+        }
+        boolean nullable = !returnType.getKind().isPrimitive() && isNullable(method);
+        return new CborProperty(method.getSimpleName().toString(), cborKey.value(), TypeName.get(returnType),
+                valueKind, nullable, cborKey.omitEmpty(), adapter);
+    }
+
+    /**
+     * Returns true if the parameter or method is annotated with any {@code @Nullable} annotation.
+     */
+    static boolean isNullable(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().asElement().getSimpleName().contentEquals("Nullable")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the property is always written by the encoder.
+     */
+    boolean isAlwaysPresent() {
+        return !nullable && !omitEmpty;
+    }
+
+    private static ClassName getAdapter(CborKey cborKey) {
+        TypeMirror adapterType;
+        try {
+            // always throws for classes that are being compiled, which gives access to the type mirror
+            return toAdapterClassName(ClassName.get(cborKey.adapter()));
+        } catch (MirroredTypeException e) {
+            adapterType = e.getTypeMirror();
+        }
+        return toAdapterClassName((ClassName) TypeName.get(adapterType));
+    }
+
+    private static ClassName toAdapterClassName(ClassName className) {
+        return ClassName.get(Void.class).equals(className) ? null : className;
+    }
+
+    private static ValueKind getValueKind(Types types, TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+                return ValueKind.INTEGER;
+            case BOOLEAN:
+                return ValueKind.BOOLEAN;
+            case ARRAY:
+                TypeKind componentKind = ((ArrayType) type).getComponentType().getKind();
+                return componentKind == TypeKind.BYTE ? ValueKind.BYTE_STRING : null;
+            case DECLARED:
+                break;
+            default:
+                return null;
+        }
+
+        TypeName typeName = TypeName.get(type);
+        if (typeName.equals(ClassName.get(String.class))) {
+            return ValueKind.TEXT_STRING;
+        }
+        if (typeName.isBoxedPrimitive()) {
+            return getValueKind(types, types.unboxedType(type));
+        }
+        if (isList(types, type)) {
+            List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+            TypeName elementType = typeArguments.size() == 1 ? TypeName.get(typeArguments.get(0)) : null;
+            if (ClassName.get(String.class).equals(elementType)) {
+                return ValueKind.TEXT_STRING_LIST;
+            }
+            if (ClassName.get(Integer.class).equals(elementType)) {
+                return ValueKind.INTEGER_LIST;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isList(Types types, TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+                && TypeName.get(types.erasure(type)).equals(ClassName.get(List.class));
+    }
+}
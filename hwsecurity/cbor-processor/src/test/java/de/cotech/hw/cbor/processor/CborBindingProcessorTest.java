@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.cbor.processor;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import de.cotech.hw.cbor.annotations.CborBinding;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+@SuppressWarnings("WeakerAccess")
+public class CborBindingProcessorTest {
+    private static final String GET_ASSERTION_BINDING =
+            "de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.CborBinding_AuthenticatorGetAssertion";
+
+    // types referenced by the fixtures and the generated code, reduced to their names
+    private static final List<JavaFileObject> STUBS = Arrays.asList(
+            source("androidx.annotation.Nullable", "package androidx.annotation; public @interface Nullable {}"),
+            source("de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor",
+                    "package de.cotech.hw.fido2.domain; public class PublicKeyCredentialDescriptor {}"),
+            source("de.cotech.hw.fido2.internal.cbor.CborCredentialDescriptorsAdapter",
+                    "package de.cotech.hw.fido2.internal.cbor; public class CborCredentialDescriptorsAdapter {}"),
+            source("de.cotech.hw.fido2.internal.cbor.CborWriter",
+                    "package de.cotech.hw.fido2.internal.cbor; public class CborWriter {}"),
+            source("de.cotech.hw.fido2.internal.cbor.CborReader",
+                    "package de.cotech.hw.fido2.internal.cbor; public class CborReader {}"),
+            source("de.cotech.hw.fido2.internal.cbor_java.CborException",
+                    "package de.cotech.hw.fido2.internal.cbor_java; public class CborException extends Exception {}")
+    );
+
+    @Test
+    public void generate_authenticatorGetAssertion() throws Exception {
+        JavaFileObject fixture = source("de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion",
+                readResource("fixtures/AuthenticatorGetAssertion.java"));
+
+        Compilation compilation = compile(fixture);
+
+        assertEquals(Collections.emptyList(), compilation.errors);
+        assertEquals(readResource("golden/CborBinding_AuthenticatorGetAssertion.java"),
+                compilation.generatedSources.get(GET_ASSERTION_BINDING));
+    }
+
+    @Test
+    public void duplicateKey_reportsError() throws Exception {
+        JavaFileObject fixture = source("test.Duplicate", "package test;\n"
+                + "@de.cotech.hw.cbor.annotations.CborBinding(encoder = true)\n"
+                + "public abstract class Duplicate {\n"
+                + "    @de.cotech.hw.cbor.annotations.CborKey(0x01) public abstract String first();\n"
+                + "    @de.cotech.hw.cbor.annotations.CborKey(0x01) public abstract String second();\n"
+                + "}\n");
+
+        Compilation compilation = compile(fixture);
+
+        assertEquals(Collections.singletonList("CBOR key 1 is already used by first()"), compilation.errors);
+    }
+
+    @Test
+    public void decoderWithoutFactory_reportsError() throws Exception {
+        JavaFileObject fixture = source("test.NoFactory", "package test;\n"
+                + "@de.cotech.hw.cbor.annotations.CborBinding(decoder = true)\n"
+                + "public abstract class NoFactory {\n"
+                + "    @de.cotech.hw.cbor.annotations.CborKey(0x01) public abstract int value();\n"
+                + "}\n");
+
+        Compilation compilation = compile(fixture);
+
+        assertEquals(Collections.singletonList("@CborBinding(decoder = true) requires a @CborFactory method"),
+                compilation.errors);
+        assertTrue(compilation.generatedSources.isEmpty());
+    }
+
+    private static Compilation compile(JavaFileObject fixture) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        GeneratedSourcesFileManager fileManager = new GeneratedSourcesFileManager(standardFileManager);
+
+        List<JavaFileObject> sources = new ArrayList<>(STUBS);
+        sources.add(fixture);
+        String annotationsPath = new File(
+                CborBinding.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                Arrays.asList("-proc:only", "-classpath", annotationsPath), null, sources);
+        task.setProcessors(Collections.singletonList(new CborBindingProcessor()));
+        task.call();
+        fileManager.close();
+
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        return new Compilation(errors, fileManager.generatedSources);
+    }
+
+    private static JavaFileObject source(String className, String content) {
+        URI uri = URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension);
+        return new SimpleJavaFileObject(uri, Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = CborBindingProcessorTest.class.getClassLoader().getResourceAsStream(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    private static class Compilation {
+        final List<String> errors;
+        final Map<String, String> generatedSources;
+
+        Compilation(List<String> errors, Map<String, String> generatedSources) {
+            this.errors = errors;
+            this.generatedSources = generatedSources;
+        }
+    }
+
+    /**
+     * Keeps the sources that the processor writes in memory, by class name.
+     */
+    private static class GeneratedSourcesFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        final Map<String, String> generatedSources = new HashMap<>();
+
+        GeneratedSourcesFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind,
+                FileObject sibling) {
+            if (location != StandardLocation.SOURCE_OUTPUT || kind != Kind.SOURCE) {
+                throw new UnsupportedOperationException("Unexpected output " + className + " in " + location);
+            }
+            URI uri = URI.create("string:///" + className.replace('.', '/') + kind.extension);
+            return new SimpleJavaFileObject(uri, kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close() throws IOException {
+                            super.close();
+                            generatedSources.put(className, toString("UTF-8"));
+                        }
+                    };
+                }
+
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return generatedSources.get(className);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package de.cotech.hw.fido2.internal.ctap2.commands.getAssertion;
+
+
+import java.util.List;
+
+import androidx.annotation.Nullable;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborKey;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.internal.cbor.CborCredentialDescriptorsAdapter;
+
+
+@CborBinding(encoder = true)
+public abstract class AuthenticatorGetAssertion {
+    @CborKey(0x01)
+    public abstract String rpId();
+    @CborKey(0x02)
+    public abstract byte[] clientDataHash();
+    public abstract String clientDataJson();
+    @Nullable
+    @CborKey(value = 0x03, omitEmpty = true, adapter = CborCredentialDescriptorsAdapter.class)
+    public abstract List<PublicKeyCredentialDescriptor> allowList();
+    @Nullable
+    @CborKey(value = 0x04, encoded = true)
+    abstract byte[] extensions();
+    @Nullable
+    @CborKey(0x06)
+    public abstract byte[] pinAuth();
+    @Nullable
+    @CborKey(0x07)
+    public abstract Integer pinProtocol();
+}
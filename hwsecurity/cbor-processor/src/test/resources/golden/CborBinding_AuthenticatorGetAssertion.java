@@ -0,0 +1,51 @@
+package de.cotech.hw.fido2.internal.ctap2.commands.getAssertion;
+
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.internal.cbor.CborCredentialDescriptorsAdapter;
+import de.cotech.hw.fido2.internal.cbor.CborWriter;
+import java.lang.Integer;
+import java.lang.String;
+import java.util.List;
+
+/**
+ * Generated by CborBindingProcessor from {@link AuthenticatorGetAssertion}.
+ */
+public final class CborBinding_AuthenticatorGetAssertion {
+    private CborBinding_AuthenticatorGetAssertion() {
+    }
+
+    public static void encode(CborWriter writer, AuthenticatorGetAssertion value) {
+        String rpId = value.rpId();
+        byte[] clientDataHash = value.clientDataHash();
+        List<PublicKeyCredentialDescriptor> allowList = value.allowList();
+        byte[] extensions = value.extensions();
+        byte[] pinAuth = value.pinAuth();
+        Integer pinProtocol = value.pinProtocol();
+        int size = 2
+                + (allowList != null && !allowList.isEmpty() ? 1 : 0)
+                + (extensions != null ? 1 : 0)
+                + (pinAuth != null ? 1 : 0)
+                + (pinProtocol != null ? 1 : 0);
+        writer.writeMapHeader(size);
+        writer.writeInteger(0x01);
+        writer.writeTextString(rpId);
+        writer.writeInteger(0x02);
+        writer.writeByteString(clientDataHash);
+        if (allowList != null && !allowList.isEmpty()) {
+            writer.writeInteger(0x03);
+            CborCredentialDescriptorsAdapter.encode(writer, allowList);
+        }
+        if (extensions != null) {
+            writer.writeInteger(0x04);
+            writer.writeEncodedItem(extensions);
+        }
+        if (pinAuth != null) {
+            writer.writeInteger(0x06);
+            writer.writeByteString(pinAuth);
+        }
+        if (pinProtocol != null) {
+            writer.writeInteger(0x07);
+            writer.writeInteger(pinProtocol);
+        }
+    }
+}
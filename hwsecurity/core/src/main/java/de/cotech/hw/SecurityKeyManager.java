@@ -54,6 +54,7 @@ import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.OnLifecycleEvent;
 import de.cotech.hw.internal.dispatch.UsbIntentDispatchActivity;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
 import de.cotech.hw.internal.transport.Transport;
 import de.cotech.hw.internal.transport.nfc.NfcConnectionDispatcher;
 import de.cotech.hw.internal.transport.nfc.NfcTagManager;
@@ -603,6 +604,7 @@ public class SecurityKeyManager {
         @AnyThread
         private void handleTransportRelease(T securityKey) {
             persistentSecurityKeys.remove(securityKey);
+            AppletConnectionPool.getInstance().evict(securityKey.transport);
 
             boolean isNfcTransport = securityKey.transport instanceof NfcTransport;
             if (isNfcTransport && config.isIgnoreNfcTagAfterUse()) {
@@ -62,6 +62,11 @@ public abstract class SecurityKeyManagerConfig {
 
     public abstract List<Class<? extends Activity>> getExcludedActivityClasses();
 
+    public abstract boolean isEnableAppletConnectionPool();
+
+    @Nullable
+    public abstract SecurityKeyOperationSpanListener getOperationSpanListener();
+
     static SecurityKeyManagerConfig getDefaultConfig() {
         return new Builder()
                 .build();
@@ -80,6 +85,8 @@ public abstract class SecurityKeyManagerConfig {
         private boolean isIgnoreNfcTagAfterUse = false;
         private boolean isDisableNfcDiscoverySound = false;
         private ArrayList<Class<? extends Activity>> excludedActivityClasses = new ArrayList<>();
+        private boolean isEnableAppletConnectionPool = false;
+        private SecurityKeyOperationSpanListener operationSpanListener = null;
 
         /**
          * This setting controls USB permission request behavior.
@@ -214,6 +221,32 @@ public abstract class SecurityKeyManagerConfig {
             return this;
         }
 
+        /**
+         * This setting enables caching of applet connections for persistently connected Security Keys.
+         * <p>
+         * By default, each connection mode selects and initializes its applet whenever a Security Key is
+         * delivered, or {@link de.cotech.hw.raw.RawSecurityKey#establishAppletConnection} is called. With this
+         * setting enabled, established applet connections are kept per transport and AID, and reused as long as
+         * the transport is alive. If another applet was used in between, the applet is only selected again.
+         * Connections that have not been used for five minutes are discarded.
+         */
+        public Builder setEnableAppletConnectionPool(boolean isEnableAppletConnectionPool) {
+            this.isEnableAppletConnectionPool = isEnableAppletConnectionPool;
+            return this;
+        }
+
+        /**
+         * Sets a listener that receives timing information about the communication with Security Keys.
+         * <p>
+         * Applet connections report a {@link SecurityKeyOperationSpan} for each command they send, such as
+         * selecting the applet, verifying the PIN, or a cryptographic operation. This makes it possible to
+         * attribute latency to the Security Key or the host. By default, no spans are recorded.
+         */
+        public Builder setOperationSpanListener(SecurityKeyOperationSpanListener operationSpanListener) {
+            this.operationSpanListener = operationSpanListener;
+            return this;
+        }
+
         /**
          * Constructs a SecurityKeyManagerConfig from the Builder.
          */
@@ -226,7 +259,9 @@ public abstract class SecurityKeyManagerConfig {
                     isEnablePersistentNfcConnection,
                     isIgnoreNfcTagAfterUse,
                     isDisableNfcDiscoverySound,
-                    Collections.unmodifiableList(excludedActivityClasses)
+                    Collections.unmodifiableList(excludedActivityClasses),
+                    isEnableAppletConnectionPool,
+                    operationSpanListener
             );
         }
     }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw;
+
+
+import com.google.auto.value.AutoValue;
+
+
+/**
+ * A completed span of communication with a Security Key, as reported to a
+ * {@link SecurityKeyOperationSpanListener}.
+ * <p>
+ * The elapsed time of a span is the wall time between its start and end. Of that, the transceive time was spent
+ * waiting for the Security Key, including the transport. The remainder is host time, i.e., encoding of commands,
+ * parsing of responses, and secure messaging.
+ * <p>
+ * Spans are nested: {@link SpanType#CHAINING} and {@link SpanType#GET_RESPONSE} spans are reported individually,
+ * and are also included in the enclosing span.
+ *
+ * @see SecurityKeyManagerConfig.Builder#setOperationSpanListener(SecurityKeyOperationSpanListener)
+ */
+@AutoValue
+public abstract class SecurityKeyOperationSpan {
+    public abstract SpanType getSpanType();
+
+    public abstract long getElapsedNanos();
+
+    public abstract long getTransceiveNanos();
+
+    public abstract int getApduCount();
+
+    public abstract long getBytesSent();
+
+    public abstract long getBytesReceived();
+
+    public long getHostNanos() {
+        return getElapsedNanos() - getTransceiveNanos();
+    }
+
+    public static SecurityKeyOperationSpan create(SpanType spanType, long elapsedNanos, long transceiveNanos,
+            int apduCount, long bytesSent, long bytesReceived) {
+        return new AutoValue_SecurityKeyOperationSpan(
+                spanType, elapsedNanos, transceiveNanos, apduCount, bytesSent, bytesReceived);
+    }
+
+    public enum SpanType {
+        /** Selection of an applet. */
+        SELECT,
+        /** PIN verification, or a clientPIN command for FIDO2. */
+        VERIFY_PIN,
+        /** A cryptographic operation performed by the Security Key, such as signing or decryption. */
+        CRYPTO_OPERATION,
+        /** Any other command, such as reading data objects. */
+        COMMAND,
+        /** A command sent in multiple parts using command chaining. */
+        CHAINING,
+        /** A response retrieved in multiple parts using GET RESPONSE. */
+        GET_RESPONSE
+    }
+}
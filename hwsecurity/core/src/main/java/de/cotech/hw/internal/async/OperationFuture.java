@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.async;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+
+
+/**
+ * A cancellable result of an operation submitted to {@link SecurityKeyOperationExecutor}.
+ * <p>
+ * Cancelling with {@code mayInterruptIfRunning} interrupts the worker thread, which aborts blocking transceive
+ * calls and user presence polling. Listeners and callbacks are called exactly once, after the operation has
+ * completed, failed, or was cancelled. Callbacks are not called for cancelled operations.
+ * <p>
+ * This is a small subset of what {@code CompletableFuture} offers, which is not available on all supported
+ * API levels.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class OperationFuture<T> extends FutureTask<T> {
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    private final Object listenerLock = new Object();
+    private final OperationFuture<?> source;
+    private List<Runnable> listeners = new ArrayList<>();
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+        void onFailure(Throwable throwable);
+    }
+
+    public interface Function<T, R> {
+        R apply(T input) throws Exception;
+    }
+
+    OperationFuture(Callable<T> callable) {
+        this(callable, null);
+    }
+
+    private OperationFuture(Callable<T> callable, OperationFuture<?> source) {
+        super(callable);
+        this.source = source;
+    }
+
+    /**
+     * Runs the callable on the given executor, outside of the serial queues of
+     * {@link SecurityKeyOperationExecutor}.
+     */
+    @AnyThread
+    public static <T> OperationFuture<T> submit(@NonNull Executor executor, @NonNull Callable<T> callable) {
+        OperationFuture<T> future = new OperationFuture<>(callable);
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Runs the listener on the given executor once this future is done. If it is already done, the listener is
+     * dispatched immediately.
+     */
+    @AnyThread
+    public void addListener(@NonNull Runnable listener, @NonNull Executor executor) {
+        Runnable dispatch = () -> executor.execute(listener);
+        synchronized (listenerLock) {
+            if (listeners != null) {
+                listeners.add(dispatch);
+                return;
+            }
+        }
+        dispatch.run();
+    }
+
+    /**
+     * Delivers the result to the callback on the given executor, for example {@code handler::post}.
+     */
+    @AnyThread
+    public void addCallback(@NonNull Executor executor, @NonNull Callback<? super T> callback) {
+        addListener(() -> {
+            if (isCancelled()) {
+                return;
+            }
+            T result;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                callback.onFailure(e.getCause());
+                return;
+            } catch (CancellationException | InterruptedException e) {
+                return;
+            }
+            callback.onSuccess(result);
+        }, executor);
+    }
+
+    /**
+     * Returns a future for the result of applying the function to the result of this one. The function runs on
+     * the thread that completes this future. Cancelling the returned future also cancels this one.
+     */
+    @AnyThread
+    public <R> OperationFuture<R> thenApply(@NonNull Function<? super T, ? extends R> function) {
+        OperationFuture<R> result = new OperationFuture<>(() -> function.apply(getDone()), this);
+        addListener(() -> {
+            if (isCancelled()) {
+                result.cancel(false);
+            } else {
+                result.run();
+            }
+        }, DIRECT_EXECUTOR);
+        return result;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (source != null) {
+            source.cancel(mayInterruptIfRunning);
+        }
+        return cancelled;
+    }
+
+    @Override
+    protected void done() {
+        List<Runnable> pendingListeners;
+        synchronized (listenerLock) {
+            pendingListeners = listeners;
+            listeners = null;
+        }
+        for (Runnable listener : pendingListeners) {
+            listener.run();
+        }
+    }
+
+    private T getDone() throws Exception {
+        try {
+            return get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.async;
+
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+
+
+/**
+ * Delays between user presence checks of authenticators that can't signal when they are touched, such as U2F
+ * over NFC. Checks start out frequent so a quick touch is noticed early, and back off towards the maximum delay to
+ * avoid flooding the authenticator while the user takes their time.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class PresenceCheckBackoff {
+    static final int INITIAL_DELAY_MS = 20;
+    private static final int GROWTH_FACTOR = 2;
+
+    private final int maxDelayMs;
+    private int nextDelayMs;
+
+    public PresenceCheckBackoff(int maxDelayMs) {
+        this.maxDelayMs = maxDelayMs;
+        this.nextDelayMs = Math.min(INITIAL_DELAY_MS, maxDelayMs);
+    }
+
+    public int nextDelayMs() {
+        int delayMs = nextDelayMs;
+        nextDelayMs = Math.min(nextDelayMs * GROWTH_FACTOR, maxDelayMs);
+        return delayMs;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.async;
+
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.annotation.VisibleForTesting;
+
+
+/**
+ * Runs security key operations on a small, shared pool of worker threads.
+ * <p>
+ * Operations are submitted with a serialization key, usually the transport of the security key. Operations with the
+ * same key run one after another in submission order, so a new operation never talks to an authenticator while a
+ * cancelled predecessor is still finishing its last transceive call. Operations with different keys run in
+ * parallel, up to the size of the pool.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class SecurityKeyOperationExecutor {
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static SecurityKeyOperationExecutor instance;
+
+    private final Executor executor;
+    private final IdentityHashMap<Object, SerialQueue> serialQueues = new IdentityHashMap<>();
+
+    @AnyThread
+    public static synchronized SecurityKeyOperationExecutor getInstance() {
+        if (instance == null) {
+            instance = new SecurityKeyOperationExecutor(createThreadPool(DEFAULT_POOL_SIZE));
+        }
+        return instance;
+    }
+
+    @VisibleForTesting
+    SecurityKeyOperationExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    static ThreadPoolExecutor createThreadPool(int poolSize) {
+        return createThreadPool("hwsecurity-operation", poolSize);
+    }
+
+    /**
+     * Creates a pool of daemon threads, which stop after they have been idle for a while. This is meant for work
+     * that must not queue behind security key operations, which may block until the user touches the key.
+     */
+    @AnyThread
+    public static ThreadPoolExecutor createThreadPool(@NonNull String threadName, int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, threadName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(poolSize, poolSize,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+
+    /**
+     * Submits an operation, which runs after all operations previously submitted with the same serialization key.
+     * Keys are compared by identity.
+     */
+    @AnyThread
+    public <T> OperationFuture<T> submit(@NonNull Object serializationKey, @NonNull Callable<T> operation) {
+        OperationFuture<T> future = new OperationFuture<>(operation);
+        synchronized (serialQueues) {
+            SerialQueue serialQueue = serialQueues.get(serializationKey);
+            if (serialQueue == null) {
+                serialQueue = new SerialQueue(serializationKey);
+                serialQueues.put(serializationKey, serialQueue);
+            }
+            serialQueue.pending.add(future);
+            if (!serialQueue.isRunning) {
+                serialQueue.isRunning = true;
+                executor.execute(serialQueue);
+            }
+        }
+        return future;
+    }
+
+    @VisibleForTesting
+    int getSerialQueueCount() {
+        synchronized (serialQueues) {
+            return serialQueues.size();
+        }
+    }
+
+    private class SerialQueue implements Runnable {
+        final Object serializationKey;
+        final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+        boolean isRunning;
+
+        SerialQueue(Object serializationKey) {
+            this.serializationKey = serializationKey;
+        }
+
+        @Override
+        public void run() {
+            Runnable next;
+            synchronized (serialQueues) {
+                next = pending.poll();
+            }
+            try {
+                next.run();
+            } finally {
+                // clear the interrupt flag of a cancelled operation, so it doesn't leak into the next one
+                Thread.interrupted();
+                scheduleNext();
+            }
+        }
+
+        private void scheduleNext() {
+            synchronized (serialQueues) {
+                if (pending.isEmpty()) {
+                    isRunning = false;
+                    serialQueues.remove(serializationKey);
+                } else {
+                    executor.execute(this);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.transport;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import de.cotech.hw.util.Hex;
+import de.cotech.hw.util.HwTimber;
+
+
+/**
+ * Caches established applet connections per transport and AID.
+ * <p>
+ * Only one applet can be selected on a transport at a time. The pool keeps track of the connection that last
+ * selected an applet on each transport, and asks a cached connection to re-select its applet if another connection
+ * was used in between. For this to work, every applet connection must report its SELECT commands through
+ * {@link #onAppletSelected(Transport, Object)}, whether or not it was acquired through the pool. Connections are
+ * only cached for transports that allow persistent connections, and are evicted once their transport is no longer
+ * alive, or after they have been idle for a while.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class AppletConnectionPool {
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+
+    private static AppletConnectionPool instance;
+
+    private final long idleTimeoutMs;
+    private final HashMap<Transport, TransportConnections> pooledTransports = new HashMap<>();
+
+    public interface PooledAppletConnection {
+        /**
+         * Selects the applet again, after another applet has been selected on the same transport.
+         */
+        @WorkerThread
+        void reselectApplet() throws IOException;
+    }
+
+    public interface AppletConnectionFactory<T extends PooledAppletConnection> {
+        @WorkerThread
+        T createAppletConnection(Transport transport) throws IOException;
+    }
+
+    @AnyThread
+    public static synchronized AppletConnectionPool getInstance() {
+        if (instance == null) {
+            instance = new AppletConnectionPool(DEFAULT_IDLE_TIMEOUT_MS);
+        }
+        return instance;
+    }
+
+    public static AppletConnectionPool createWithIdleTimeout(long idleTimeoutMs) {
+        return new AppletConnectionPool(idleTimeoutMs);
+    }
+
+    private AppletConnectionPool(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Returns a pooled applet connection for the given transport and AID, or creates a new one.
+     * <p>
+     * A pooled connection is only returned if its transport is still alive. If another applet has been acquired
+     * on the same transport since it was last used, {@link PooledAppletConnection#reselectApplet()} is called
+     * before it is returned.
+     */
+    @WorkerThread
+    public synchronized <T extends PooledAppletConnection> T acquire(@NonNull Transport transport, @NonNull byte[] aid,
+            @NonNull Class<T> connectionClass, @NonNull AppletConnectionFactory<T> factory) throws IOException {
+        evictIdleConnections(System.currentTimeMillis());
+
+        String aidHex = Hex.encodeHexString(aid);
+        TransportConnections transportConnections = pooledTransports.get(transport);
+        if (transportConnections != null && !isTransportAlive(transport)) {
+            HwTimber.d("Transport no longer alive, evicting pooled applet connections");
+            pooledTransports.remove(transport);
+            transportConnections = null;
+        }
+
+        if (transportConnections != null) {
+            T pooledConnection = reuseConnection(transportConnections, aidHex, connectionClass);
+            if (pooledConnection != null) {
+                return pooledConnection;
+            }
+        }
+
+        T connection = factory.createAppletConnection(transport);
+        if (!transport.isPersistentConnectionAllowed()) {
+            return connection;
+        }
+
+        if (transportConnections == null) {
+            transportConnections = new TransportConnections();
+            pooledTransports.put(transport, transportConnections);
+        }
+        transportConnections.connections.put(aidHex, new PooledEntry(connection));
+        transportConnections.selectedConnection = connection;
+        return connection;
+    }
+
+    private <T extends PooledAppletConnection> T reuseConnection(TransportConnections transportConnections,
+            String aidHex, Class<T> connectionClass) {
+        PooledEntry entry = transportConnections.connections.get(aidHex);
+        if (entry == null || !connectionClass.isInstance(entry.connection)) {
+            return null;
+        }
+
+        if (entry.connection != transportConnections.selectedConnection) {
+            try {
+                HwTimber.d("Re-selecting pooled applet connection for AID %s", aidHex);
+                entry.connection.reselectApplet();
+            } catch (IOException e) {
+                HwTimber.d(e, "Failed to re-select pooled applet connection");
+                transportConnections.connections.remove(aidHex);
+                return null;
+            }
+        }
+
+        transportConnections.selectedConnection = entry.connection;
+        entry.lastUsedTime = System.currentTimeMillis();
+        return connectionClass.cast(entry.connection);
+    }
+
+    /**
+     * Records that the given applet connection sent a SELECT command on the given transport. Applet connections that
+     * are not pooled must call this as well, since their SELECT deselects the applet of any pooled connection.
+     */
+    @AnyThread
+    public synchronized void onAppletSelected(@NonNull Transport transport, @NonNull Object appletConnection) {
+        TransportConnections transportConnections = pooledTransports.get(transport);
+        if (transportConnections != null) {
+            transportConnections.selectedConnection = appletConnection;
+        }
+    }
+
+    /**
+     * Removes all pooled applet connections of the given transport.
+     */
+    @AnyThread
+    public synchronized void evict(@NonNull Transport transport) {
+        pooledTransports.remove(transport);
+    }
+
+    @AnyThread
+    public synchronized void evictAll() {
+        pooledTransports.clear();
+    }
+
+    @VisibleForTesting
+    synchronized void evictIdleConnections(long currentTimeMs) {
+        Iterator<TransportConnections> transportIterator = pooledTransports.values().iterator();
+        while (transportIterator.hasNext()) {
+            TransportConnections transportConnections = transportIterator.next();
+            Iterator<Entry<String, PooledEntry>> entryIterator =
+                    transportConnections.connections.entrySet().iterator();
+            while (entryIterator.hasNext()) {
+                Entry<String, PooledEntry> entry = entryIterator.next();
+                if (currentTimeMs - entry.getValue().lastUsedTime >= idleTimeoutMs) {
+                    HwTimber.d("Evicting idle applet connection for AID %s", entry.getKey());
+                    entryIterator.remove();
+                    if (entry.getValue().connection == transportConnections.selectedConnection) {
+                        transportConnections.selectedConnection = null;
+                    }
+                }
+            }
+            if (transportConnections.connections.isEmpty()) {
+                transportIterator.remove();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getPooledConnectionCount() {
+        int count = 0;
+        for (TransportConnections transportConnections : pooledTransports.values()) {
+            count += transportConnections.connections.size();
+        }
+        return count;
+    }
+
+    private static boolean isTransportAlive(Transport transport) {
+        return !transport.isReleased() && transport.isConnected() && transport.ping();
+    }
+
+    private static class TransportConnections {
+        final HashMap<String, PooledEntry> connections = new HashMap<>();
+        Object selectedConnection;
+    }
+
+    private static class PooledEntry {
+        final PooledAppletConnection connection;
+        long lastUsedTime;
+
+        PooledEntry(PooledAppletConnection connection) {
+            this.connection = connection;
+            this.lastUsedTime = System.currentTimeMillis();
+        }
+    }
+}
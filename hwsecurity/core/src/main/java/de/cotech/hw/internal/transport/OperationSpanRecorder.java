@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.transport;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import de.cotech.hw.SecurityKeyOperationSpan;
+import de.cotech.hw.SecurityKeyOperationSpan.SpanType;
+import de.cotech.hw.SecurityKeyOperationSpanListener;
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.iso7816.ResponseApdu;
+
+
+/**
+ * Records {@link SecurityKeyOperationSpan}s for an applet connection.
+ * <p>
+ * Applet connections send all APDUs through {@link #transceive(Transport, CommandApdu)}, and mark spans with
+ * {@link #beginSpan(SpanType)} and {@link #endSpan()}. Each APDU is attributed to all spans that are open while it
+ * is sent. Without a listener, all methods are no-ops.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class OperationSpanRecorder {
+    private static final int RESPONSE_STATUS_WORD_LENGTH = 2;
+
+    @Nullable
+    private final SecurityKeyOperationSpanListener listener;
+    private final ArrayList<OpenSpan> openSpans = new ArrayList<>();
+
+    private OperationSpanRecorder(@Nullable SecurityKeyOperationSpanListener listener) {
+        this.listener = listener;
+    }
+
+    public static OperationSpanRecorder create(@Nullable SecurityKeyOperationSpanListener listener) {
+        return new OperationSpanRecorder(listener);
+    }
+
+    public static OperationSpanRecorder createDisabled() {
+        return new OperationSpanRecorder(null);
+    }
+
+    public void beginSpan(@NonNull SpanType spanType) {
+        if (listener == null) {
+            return;
+        }
+        openSpans.add(new OpenSpan(spanType, System.nanoTime()));
+    }
+
+    public void endSpan() {
+        if (listener == null || openSpans.isEmpty()) {
+            return;
+        }
+        OpenSpan span = openSpans.remove(openSpans.size() - 1);
+        long elapsedNanos = System.nanoTime() - span.startNanos;
+        listener.onOperationSpanCompleted(SecurityKeyOperationSpan.create(span.spanType, elapsedNanos,
+                span.transceiveNanos, span.apduCount, span.bytesSent, span.bytesReceived));
+    }
+
+    public ResponseApdu transceive(Transport transport, CommandApdu commandApdu) throws IOException {
+        if (listener == null || openSpans.isEmpty()) {
+            return transport.transceive(commandApdu);
+        }
+
+        long startNanos = System.nanoTime();
+        ResponseApdu responseApdu = transport.transceive(commandApdu);
+        long transceiveNanos = System.nanoTime() - startNanos;
+
+        int bytesSent = commandApdu.toBytes().length;
+        int bytesReceived = responseApdu.getData().length + RESPONSE_STATUS_WORD_LENGTH;
+        for (OpenSpan span : openSpans) {
+            span.transceiveNanos += transceiveNanos;
+            span.apduCount++;
+            span.bytesSent += bytesSent;
+            span.bytesReceived += bytesReceived;
+        }
+
+        return responseApdu;
+    }
+
+    private static class OpenSpan {
+        final SpanType spanType;
+        final long startNanos;
+        long transceiveNanos;
+        int apduCount;
+        long bytesSent;
+        long bytesReceived;
+
+        OpenSpan(SpanType spanType, long startNanos) {
+            this.spanType = spanType;
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -96,4 +96,18 @@ public interface Transport {
         @WorkerThread
         void onTransportReleased();
     }
+
+    /**
+     * Sets a listener that is notified when the authenticator signals it is waiting for user presence, e.g. via
+     * CTAPHID keepalive messages. Transports without such a signal ignore the listener.
+     */
+    @RestrictTo(Scope.LIBRARY_GROUP)
+    default void setUserPresenceListener(@Nullable UserPresenceListener listener) {
+    }
+
+    @RestrictTo(Scope.LIBRARY_GROUP)
+    interface UserPresenceListener {
+        @WorkerThread
+        void onUserPresenceRequired();
+    }
 }
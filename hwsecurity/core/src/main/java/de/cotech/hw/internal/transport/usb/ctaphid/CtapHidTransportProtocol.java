@@ -40,10 +40,12 @@ import android.hardware.usb.UsbEndpoint;
 import android.hardware.usb.UsbRequest;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
 import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
+import de.cotech.hw.internal.transport.Transport.UserPresenceListener;
 import de.cotech.hw.internal.transport.usb.UsbTransportException;
 import de.cotech.hw.internal.transport.usb.ctaphid.CtapHidFrameFactory.KeepaliveType;
 import de.cotech.hw.util.HwTimber;
@@ -140,14 +142,31 @@ public class CtapHidTransportProtocol {
 
     @WorkerThread
     byte[] transceiveCbor(byte[] payload) throws UsbTransportException {
+        return transceiveCbor(payload, null);
+    }
+
+    /**
+     * Sends a CBOR message, and waits for the response while the authenticator sends keepalive messages. The
+     * listener is notified on the first UPNEEDED keepalive.
+     */
+    @WorkerThread
+    byte[] transceiveCbor(byte[] payload, @Nullable UserPresenceListener userPresenceListener)
+            throws UsbTransportException {
         byte[] requestFrame = frameFactory.wrapFrame(channelId, CtapHidFrameFactory.CTAPHID_CBOR, payload);
         writeHidPacketsToUsbDevice(requestFrame);
 
+        boolean userPresenceRequested = false;
         while (true) {
             byte[] responseFrame = readHidPacketsFromUsbDevice();
             KeepaliveType keepalivePacketType = frameFactory.unwrapFrameAsKeepalivePacket(responseFrame);
             if (keepalivePacketType != null) {
                 HwTimber.d("Received keepalive packet (%s), waiting for response..", keepalivePacketType);
+                if (keepalivePacketType == KeepaliveType.UPNEEDED && !userPresenceRequested) {
+                    userPresenceRequested = true;
+                    if (userPresenceListener != null) {
+                        userPresenceListener.onUserPresenceRequired();
+                    }
+                }
                 continue;
             }
             return frameFactory.unwrapFrame(channelId, CtapHidFrameFactory.CTAPHID_CBOR, responseFrame);
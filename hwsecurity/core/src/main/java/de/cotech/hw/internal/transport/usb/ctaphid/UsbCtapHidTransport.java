@@ -77,6 +77,7 @@ public class UsbCtapHidTransport implements Transport {
 
     private boolean released = false;
     private TransportReleasedCallback transportReleasedCallback;
+    private volatile UserPresenceListener userPresenceListener;
 
     public static UsbCtapHidTransport createUsbTransport(UsbManager usbManager, UsbDevice usbDevice,
                                                          UsbDeviceConnection usbConnection,
@@ -114,6 +115,11 @@ public class UsbCtapHidTransport implements Transport {
         this.transportReleasedCallback = callback;
     }
 
+    @Override
+    public void setUserPresenceListener(@Nullable UserPresenceListener listener) {
+        this.userPresenceListener = listener;
+    }
+
     /**
      * Check if Transport supports persistent connections e.g connections which can
      * handle multiple operations in one session
@@ -198,7 +204,8 @@ public class UsbCtapHidTransport implements Transport {
         ResponseApdu responseApdu;
         if (isCtap2Apdu(commandApdu)) {
             HwTimber.d("Using CTAP2 CBOR");
-            byte[] rawResponse = ctapHidTransportProtocol.transceiveCbor(extendedCommandApdu.getData());
+            byte[] rawResponse = ctapHidTransportProtocol.transceiveCbor(
+                    extendedCommandApdu.getData(), userPresenceListener);
             responseApdu = ResponseApdu.create(0x9000, rawResponse);
         } else {
             byte[] rawResponse = ctapHidTransportProtocol.transceive(extendedCommandApdu.toBytes());
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.webview;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.webkit.WebView;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import de.cotech.hw.internal.async.OperationFuture;
+import de.cotech.hw.internal.async.SecurityKeyOperationExecutor;
+import de.cotech.hw.util.HwTimber;
+
+
+/**
+ * A JavaScript bridge script from the assets, wrapped for injection into a WebView.
+ * <p>
+ * The script is loaded once per process on a background thread, starting when it is first requested, and the
+ * prepared string is reused for every page. If loading fails, the next request for the script loads it again.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+@TargetApi(VERSION_CODES.KITKAT)
+public class JavascriptBridgeScript {
+    private static final HashMap<String, JavascriptBridgeScript> INSTANCES = new HashMap<>();
+
+    private static Executor loadExecutor;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final OperationFuture<String> preparedScript;
+
+    @AnyThread
+    public static JavascriptBridgeScript getInstance(Context context, String assetsPath) {
+        synchronized (INSTANCES) {
+            JavascriptBridgeScript instance = INSTANCES.get(assetsPath);
+            if (instance == null) {
+                instance = new JavascriptBridgeScript(context.getApplicationContext(), assetsPath);
+                INSTANCES.put(assetsPath, instance);
+                instance.removeInstanceOnFailure(assetsPath);
+            }
+            return instance;
+        }
+    }
+
+    private JavascriptBridgeScript(Context context, String assetsPath) {
+        preparedScript = OperationFuture.submit(getLoadExecutor(),
+                () -> "javascript:(" + loadTextFromAssets(context, assetsPath) + ")()");
+    }
+
+    // not the security key operation pool, where loading could wait for operations that wait for a touch
+    private static synchronized Executor getLoadExecutor() {
+        if (loadExecutor == null) {
+            loadExecutor = SecurityKeyOperationExecutor.createThreadPool("hwsecurity-bridge-script", 1);
+        }
+        return loadExecutor;
+    }
+
+    private void removeInstanceOnFailure(String assetsPath) {
+        preparedScript.addCallback(Runnable::run, new OperationFuture.Callback<String>() {
+            @Override
+            public void onSuccess(String script) {
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                synchronized (INSTANCES) {
+                    if (INSTANCES.get(assetsPath) == JavascriptBridgeScript.this) {
+                        INSTANCES.remove(assetsPath);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Evaluates the script in the WebView. If it hasn't been loaded yet, this happens as soon as it is available,
+     * unless the WebView has moved on to another page by then.
+     */
+    @UiThread
+    public void injectInto(WebView webView) {
+        boolean isDeferred = !preparedScript.isDone();
+        Executor executor = isDeferred ? mainHandler::postAtFrontOfQueue : Runnable::run;
+        String requestedUrl = webView.getUrl();
+        preparedScript.addCallback(executor, new OperationFuture.Callback<String>() {
+            @Override
+            public void onSuccess(String script) {
+                if (isDeferred && !TextUtils.equals(requestedUrl, webView.getUrl())) {
+                    HwTimber.d("WebView navigated away while loading JavaScript bridge, not injecting");
+                    return;
+                }
+                webView.evaluateJavascript(script, null);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                HwTimber.e(throwable, "Failed to load JavaScript bridge");
+            }
+        });
+    }
+
+    @WorkerThread
+    private static String loadTextFromAssets(Context context, String assetsPath) throws IOException {
+        try (InputStream is = context.getResources().getAssets().open(assetsPath)) {
+            byte[] buffer = new byte[1024];
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            for (int length = is.read(buffer); length != -1; length = is.read(buffer)) {
+                baos.write(buffer, 0, length);
+            }
+            return new String(baos.toByteArray(), Charset.defaultCharset());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.async;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class PresenceCheckBackoffTest {
+    @Test
+    public void nextDelayMs_growsUpToMax() {
+        PresenceCheckBackoff backoff = new PresenceCheckBackoff(250);
+
+        assertEquals(20, backoff.nextDelayMs());
+        assertEquals(40, backoff.nextDelayMs());
+        assertEquals(80, backoff.nextDelayMs());
+        assertEquals(160, backoff.nextDelayMs());
+        assertEquals(250, backoff.nextDelayMs());
+        assertEquals(250, backoff.nextDelayMs());
+    }
+
+    @Test
+    public void nextDelayMs_maxBelowInitial() {
+        PresenceCheckBackoff backoff = new PresenceCheckBackoff(10);
+
+        assertEquals(10, backoff.nextDelayMs());
+        assertEquals(10, backoff.nextDelayMs());
+    }
+}
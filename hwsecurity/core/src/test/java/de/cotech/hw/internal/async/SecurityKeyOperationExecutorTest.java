@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.async;
+
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+@SuppressWarnings("WeakerAccess")
+public class SecurityKeyOperationExecutorTest {
+    static final long TIMEOUT_MS = 2000;
+
+    ThreadPoolExecutor threadPool;
+    SecurityKeyOperationExecutor operationExecutor;
+    Object key = new Object();
+
+    @Before
+    public void setUp() {
+        threadPool = SecurityKeyOperationExecutor.createThreadPool(2);
+        operationExecutor = new SecurityKeyOperationExecutor(threadPool);
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void submit_returnsResult() throws Exception {
+        OperationFuture<Integer> future = operationExecutor.submit(key, () -> 5);
+
+        assertEquals(Integer.valueOf(5), future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void submit_sameKey_runsSerially() throws Exception {
+        CountDownLatch blockFirst = new CountDownLatch(1);
+        AtomicBoolean secondStarted = new AtomicBoolean();
+        OperationFuture<Boolean> first = operationExecutor.submit(key, () -> {
+            blockFirst.await();
+            return secondStarted.get();
+        });
+        OperationFuture<Boolean> second = operationExecutor.submit(key, () -> {
+            secondStarted.set(true);
+            return true;
+        });
+
+        Thread.sleep(50);
+        assertFalse(secondStarted.get());
+        blockFirst.countDown();
+
+        assertFalse(first.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(second.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void submit_differentKeys_runInParallel() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        OperationFuture<Boolean> first = operationExecutor.submit(new Object(), () -> {
+            bothRunning.countDown();
+            return bothRunning.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        });
+        OperationFuture<Boolean> second = operationExecutor.submit(new Object(), () -> {
+            bothRunning.countDown();
+            return bothRunning.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        });
+
+        assertTrue(first.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(second.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancel_interruptsRunningOperation_nextOperationRuns() throws Exception {
+        CountDownLatch firstRunning = new CountDownLatch(1);
+        CountDownLatch firstInterrupted = new CountDownLatch(1);
+        OperationFuture<Void> first = operationExecutor.submit(key, () -> {
+            firstRunning.countDown();
+            try {
+                Thread.sleep(TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                firstInterrupted.countDown();
+            }
+            return null;
+        });
+        OperationFuture<Boolean> second = operationExecutor.submit(key, () -> Thread.currentThread().isInterrupted());
+
+        assertTrue(firstRunning.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        first.cancel(true);
+
+        assertTrue(firstInterrupted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertFalse(second.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancel_pendingOperation_isSkipped() throws Exception {
+        CountDownLatch blockFirst = new CountDownLatch(1);
+        AtomicBoolean secondStarted = new AtomicBoolean();
+        OperationFuture<Void> first = operationExecutor.submit(key, () -> {
+            blockFirst.await();
+            return null;
+        });
+        OperationFuture<Void> second = operationExecutor.submit(key, () -> {
+            secondStarted.set(true);
+            return null;
+        });
+
+        second.cancel(true);
+        blockFirst.countDown();
+        first.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        operationExecutor.submit(key, () -> null).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertFalse(secondStarted.get());
+    }
+
+    @Test
+    public void serialQueue_isRemovedWhenIdle() throws Exception {
+        OperationFuture<Void> future = operationExecutor.submit(key, () -> null);
+        future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        threadPool.shutdown();
+        assertTrue(threadPool.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(0, operationExecutor.getSerialQueueCount());
+    }
+
+    @Test
+    public void addCallback_success() throws Exception {
+        AtomicReference<Object> result = new AtomicReference<>();
+        CountDownLatch delivered = new CountDownLatch(1);
+
+        operationExecutor.submit(key, () -> 5).addCallback(Runnable::run, new OperationFuture.Callback<Integer>() {
+            @Override
+            public void onSuccess(Integer response) {
+                result.set(response);
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                fail();
+            }
+        });
+
+        assertTrue(delivered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(5, result.get());
+    }
+
+    @Test
+    public void addCallback_failure_deliversCause() throws Exception {
+        IOException exception = new IOException();
+        AtomicReference<Throwable> result = new AtomicReference<>();
+        CountDownLatch delivered = new CountDownLatch(1);
+
+        operationExecutor.submit(key, () -> {
+            throw exception;
+        }).addCallback(Runnable::run, new OperationFuture.Callback<Object>() {
+            @Override
+            public void onSuccess(Object response) {
+                fail();
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                result.set(throwable);
+                delivered.countDown();
+            }
+        });
+
+        assertTrue(delivered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(exception, result.get());
+    }
+
+    @Test
+    public void addCallback_cancelled_isNotCalled() throws Exception {
+        CountDownLatch blockFirst = new CountDownLatch(1);
+        AtomicBoolean called = new AtomicBoolean();
+        OperationFuture<Void> future = operationExecutor.submit(key, () -> {
+            blockFirst.await();
+            return null;
+        });
+        future.addCallback(Runnable::run, new OperationFuture.Callback<Void>() {
+            @Override
+            public void onSuccess(Void response) {
+                called.set(true);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                called.set(true);
+            }
+        });
+
+        future.cancel(true);
+        operationExecutor.submit(key, () -> null).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        assertFalse(called.get());
+    }
+
+    @Test
+    public void addListener_afterDone_runsImmediately() throws Exception {
+        OperationFuture<Integer> future = operationExecutor.submit(key, () -> 5);
+        future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        AtomicBoolean called = new AtomicBoolean();
+
+        future.addListener(() -> called.set(true), Runnable::run);
+
+        assertTrue(called.get());
+    }
+
+    @Test
+    public void thenApply() throws Exception {
+        OperationFuture<String> future = operationExecutor.submit(key, () -> 5).thenApply(i -> "result " + i);
+
+        assertEquals("result 5", future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void thenApply_failure_propagatesCause() throws Exception {
+        IOException exception = new IOException();
+        OperationFuture<String> future = operationExecutor.<Integer>submit(key, () -> {
+            throw exception;
+        }).thenApply(i -> "result " + i);
+
+        try {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(exception, e.getCause());
+        }
+    }
+
+    @Test
+    public void thenApply_cancel_cancelsSource() throws Exception {
+        CountDownLatch blockFirst = new CountDownLatch(1);
+        OperationFuture<Integer> source = operationExecutor.submit(key, () -> {
+            blockFirst.await();
+            return 5;
+        });
+        OperationFuture<String> future = source.thenApply(i -> "result " + i);
+
+        future.cancel(true);
+
+        assertTrue(source.isCancelled());
+        assertTrue(future.isCancelled());
+        assertNull(operationExecutor.submit(key, () -> null).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.transport;
+
+
+import java.io.IOException;
+
+import de.cotech.hw.util.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+@SuppressWarnings("WeakerAccess")
+public class AppletConnectionPoolTest {
+    static final byte[] AID_OPENPGP = Hex.decodeHexOrFail("D27600012401");
+    static final byte[] AID_PIV = Hex.decodeHexOrFail("A000000308");
+    static final long IDLE_TIMEOUT_MS = 1000;
+
+    AppletConnectionPool pool;
+    Transport transport;
+
+    @Before
+    public void setUp() {
+        pool = AppletConnectionPool.createWithIdleTimeout(IDLE_TIMEOUT_MS);
+        transport = createTransport(true);
+    }
+
+    @Test
+    public void acquire_sameAid_reusesConnection() throws Exception {
+        FakeAppletConnection first = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        FakeAppletConnection second = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        assertSame(first, second);
+        assertEquals(0, first.reselectCount);
+        assertEquals(1, pool.getPooledConnectionCount());
+    }
+
+    @Test
+    public void acquire_switchingAid_reselectsApplet() throws Exception {
+        FakeAppletConnection openPgp = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        FakeAppletConnection piv = pool.acquire(transport, AID_PIV, FakeAppletConnection.class, FakeAppletConnection::new);
+        FakeAppletConnection openPgpAgain = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        FakeAppletConnection pivAgain = pool.acquire(transport, AID_PIV, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        assertSame(openPgp, openPgpAgain);
+        assertSame(piv, pivAgain);
+        assertEquals(1, openPgp.reselectCount);
+        assertEquals(1, piv.reselectCount);
+        assertEquals(2, pool.getPooledConnectionCount());
+    }
+
+    @Test
+    public void acquire_afterSelectOfUnpooledConnection_reselectsApplet() throws Exception {
+        FakeAppletConnection openPgp = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        pool.onAppletSelected(transport, new Object());
+
+        FakeAppletConnection openPgpAgain = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        assertSame(openPgp, openPgpAgain);
+        assertEquals(1, openPgp.reselectCount);
+    }
+
+    @Test
+    public void acquire_afterSelectOfSameConnection_doesNotReselectApplet() throws Exception {
+        FakeAppletConnection openPgp = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        pool.onAppletSelected(transport, openPgp);
+
+        pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        assertEquals(0, openPgp.reselectCount);
+    }
+
+    @Test
+    public void acquire_failedReselect_createsNewConnection() throws Exception {
+        FakeAppletConnection openPgp = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        pool.acquire(transport, AID_PIV, FakeAppletConnection.class, FakeAppletConnection::new);
+        openPgp.failReselect = true;
+
+        FakeAppletConnection openPgpAgain = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        assertNotSame(openPgp, openPgpAgain);
+    }
+
+    @Test
+    public void acquire_releasedTransport_createsNewConnection() throws Exception {
+        FakeAppletConnection first = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        when(transport.isReleased()).thenReturn(true);
+
+        FakeAppletConnection second = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void acquire_failedPing_createsNewConnection() throws Exception {
+        FakeAppletConnection first = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        when(transport.ping()).thenReturn(false);
+
+        FakeAppletConnection second = pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void acquire_nonPersistentTransport_isNotPooled() throws Exception {
+        Transport nfcTransport = createTransport(false);
+
+        FakeAppletConnection first = pool.acquire(nfcTransport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        FakeAppletConnection second = pool.acquire(nfcTransport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        assertNotSame(first, second);
+        assertEquals(0, pool.getPooledConnectionCount());
+    }
+
+    @Test
+    public void evictIdleConnections() throws Exception {
+        pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        pool.evictIdleConnections(System.currentTimeMillis());
+        assertEquals(1, pool.getPooledConnectionCount());
+
+        pool.evictIdleConnections(System.currentTimeMillis() + IDLE_TIMEOUT_MS);
+        assertEquals(0, pool.getPooledConnectionCount());
+    }
+
+    @Test
+    public void evict() throws Exception {
+        pool.acquire(transport, AID_OPENPGP, FakeAppletConnection.class, FakeAppletConnection::new);
+        pool.acquire(transport, AID_PIV, FakeAppletConnection.class, FakeAppletConnection::new);
+
+        pool.evict(transport);
+
+        assertEquals(0, pool.getPooledConnectionCount());
+    }
+
+    static Transport createTransport(boolean isPersistentConnectionAllowed) {
+        Transport transport = mock(Transport.class);
+        when(transport.isConnected()).thenReturn(true);
+        when(transport.ping()).thenReturn(true);
+        when(transport.isPersistentConnectionAllowed()).thenReturn(isPersistentConnectionAllowed);
+        return transport;
+    }
+
+    static class FakeAppletConnection implements AppletConnectionPool.PooledAppletConnection {
+        int reselectCount;
+        boolean failReselect;
+
+        FakeAppletConnection(Transport transport) {
+        }
+
+        @Override
+        public void reselectApplet() throws IOException {
+            if (failReselect) {
+                throw new IOException("reselect failed");
+            }
+            reselectCount++;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.annotation.TargetApi;
 import android.hardware.usb.UsbDeviceConnection;
@@ -64,6 +65,7 @@ public class CtapHidTransportProtocolTest {
     static final byte[] DATA_OUT = Hex.decodeHexOrFail("5f4e3d2c1b");
     static final byte[] DATA_IN_LONG = new byte[200];
     static final byte[] DATA_OUT_LONG = new byte[199];
+    static final byte KEEPALIVE_TYPE_UPNEEDED = 2;
 
     UsbDeviceConnection usbConnection;
     UsbEndpoint usbIntIn;
@@ -186,11 +188,45 @@ public class CtapHidTransportProtocolTest {
         verifyDialog();
     }
 
+    @Test
+    public void transceiveCbor_keepaliveStorm() throws Exception {
+        connect();
+
+        expect(CHANNEL_ID, CHANNEL_ID, CtapHidFrameFactory.CTAPHID_CBOR, 100, data -> {
+            assertArrayEquals(DATA_IN, data);
+            return DATA_OUT_LONG;
+        });
+
+        byte[] response = protocol.transceiveCbor(DATA_IN);
+
+        assertArrayEquals(DATA_OUT_LONG, response);
+        verifyDialog();
+    }
+
+    @Test
+    public void transceiveCbor_keepaliveUpNeeded_notifiesListenerOnce() throws Exception {
+        connect();
+
+        expect(CHANNEL_ID, CHANNEL_ID, CtapHidFrameFactory.CTAPHID_CBOR, 3, data -> DATA_OUT);
+        AtomicInteger userPresenceRequiredCount = new AtomicInteger();
+
+        byte[] response = protocol.transceiveCbor(DATA_IN, userPresenceRequiredCount::incrementAndGet);
+
+        assertArrayEquals(DATA_OUT, response);
+        assertEquals(1, userPresenceRequiredCount.get());
+        verifyDialog();
+    }
+
     private void verifyDialog() {
         assertTrue(requestQueue.isEmpty());
     }
 
     private void expect(int inputChannelId, int outputChannelId, byte cmdId, CtapCommunicationCallback callback) {
+        expect(inputChannelId, outputChannelId, cmdId, 0, callback);
+    }
+
+    private void expect(int inputChannelId, int outputChannelId, byte cmdId, int keepaliveCount,
+            CtapCommunicationCallback callback) {
         RequestState state = new RequestState();
 
         UsbRequest usbRequestOut = mock(UsbRequest.class);
@@ -202,6 +238,10 @@ public class CtapHidTransportProtocolTest {
                 });
         requestQueue.add(usbRequestOut);
 
+        for (int i = 0; i < keepaliveCount; i++) {
+            expectKeepalive(outputChannelId);
+        }
+
         UsbRequest usbRequestIn = mock(UsbRequest.class);
         when(usbRequestIn.initialize(usbConnection, usbIntIn)).thenReturn(true);
         when(usbRequestIn.queue(any(ByteBuffer.class), eq(CtapHidFrameFactory.CTAPHID_BUFFER_SIZE))).thenAnswer(
@@ -224,6 +264,20 @@ public class CtapHidTransportProtocolTest {
         requestQueue.add(usbRequestIn);
     }
 
+    private void expectKeepalive(int outputChannelId) {
+        UsbRequest usbRequestIn = mock(UsbRequest.class);
+        when(usbRequestIn.initialize(usbConnection, usbIntIn)).thenReturn(true);
+        when(usbRequestIn.queue(any(ByteBuffer.class), eq(CtapHidFrameFactory.CTAPHID_BUFFER_SIZE))).thenAnswer(
+                (Answer<Boolean>) invocation -> {
+                    ByteBuffer buf = invocation.getArgument(0);
+                    buf.clear();
+                    buf.put(frameFactory.wrapFrame(outputChannelId, CtapHidFrameFactory.CTAPHID_KEEPALIVE,
+                            new byte[] { KEEPALIVE_TYPE_UPNEEDED }));
+                    return true;
+                });
+        requestQueue.add(usbRequestIn);
+    }
+
     static class RequestState {
         ByteArrayOutputStream inputAccumulator = new ByteArrayOutputStream();
         boolean inputFinished;
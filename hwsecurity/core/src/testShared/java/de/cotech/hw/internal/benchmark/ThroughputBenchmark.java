@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.benchmark;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * A minimal throughput harness for end-to-end scenarios against emulated security keys.
+ * <p>
+ * Every scenario is run for a number of warmup iterations, then measured for a fixed number of iterations on the
+ * calling thread. Results contain operations per second, average latency, and the average number of bytes allocated
+ * per operation, and are written as JSON so that reports from two library versions can be compared by tooling.
+ * <p>
+ * Benchmarks are opt-in, e.g. {@code ./gradlew test -Dhwsecurity.benchmark=true}. Reports are written to the
+ * directory given by {@code -Dhwsecurity.benchmark.outputDir}, or to stdout if it is not set.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ThroughputBenchmark {
+    public static final String PROPERTY_ENABLED = "hwsecurity.benchmark";
+    public static final String PROPERTY_OUTPUT_DIR = "hwsecurity.benchmark.outputDir";
+    public static final String PROPERTY_ITERATIONS = "hwsecurity.benchmark.iterations";
+    public static final String PROPERTY_WARMUP_ITERATIONS = "hwsecurity.benchmark.warmupIterations";
+
+    private static final int DEFAULT_ITERATIONS = 200;
+    private static final int DEFAULT_WARMUP_ITERATIONS = 50;
+    private static final long UNKNOWN = -1;
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    private final String suiteName;
+    private final int iterations;
+    private final int warmupIterations;
+    private final List<Result> results = new ArrayList<>();
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY_ENABLED);
+    }
+
+    public static ThroughputBenchmark create(String suiteName) {
+        return new ThroughputBenchmark(suiteName, Integer.getInteger(PROPERTY_ITERATIONS, DEFAULT_ITERATIONS),
+                Integer.getInteger(PROPERTY_WARMUP_ITERATIONS, DEFAULT_WARMUP_ITERATIONS));
+    }
+
+    public static ThroughputBenchmark create(String suiteName, int iterations, int warmupIterations) {
+        return new ThroughputBenchmark(suiteName, iterations, warmupIterations);
+    }
+
+    private ThroughputBenchmark(String suiteName, int iterations, int warmupIterations) {
+        if (iterations < 1 || warmupIterations < 0) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        this.suiteName = suiteName;
+        this.iterations = iterations;
+        this.warmupIterations = warmupIterations;
+    }
+
+    public Result measure(String scenarioName, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            operation.run();
+        }
+
+        long allocatedBytesBefore = getCurrentThreadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytesAfter = getCurrentThreadAllocatedBytes();
+
+        long allocatedBytesPerOp = UNKNOWN;
+        if (allocatedBytesBefore != UNKNOWN && allocatedBytesAfter != UNKNOWN) {
+            allocatedBytesPerOp = (allocatedBytesAfter - allocatedBytesBefore) / iterations;
+        }
+
+        Result result = new Result(scenarioName, iterations, elapsedNanos, allocatedBytesPerOp);
+        results.add(result);
+        return result;
+    }
+
+    public List<Result> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"suite\":\"").append(suiteName).append('"');
+        json.append(",\"timestampMs\":").append(System.currentTimeMillis());
+        json.append(",\"jvm\":\"").append(System.getProperty("java.vm.name")).append(' ')
+                .append(System.getProperty("java.version")).append('"');
+        json.append(",\"warmupIterations\":").append(warmupIterations);
+        json.append(",\"scenarios\":[");
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            results.get(i).appendJson(json);
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Writes the JSON report to {@code <outputDir>/<suite>.json}, or stdout if no output directory is configured.
+     */
+    public void writeReport() throws IOException {
+        String json = toJson();
+
+        String outputDir = System.getProperty(PROPERTY_OUTPUT_DIR);
+        if (outputDir == null) {
+            System.out.println(json);
+            return;
+        }
+
+        File dir = new File(outputDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create benchmark output directory " + dir);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, suiteName + ".json")), "UTF-8")) {
+            writer.write(json);
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if unavailable. This uses the HotSpot
+     * extension of ThreadMXBean, which is accessed reflectively since java.lang.management is not part of the
+     * Android API the tests are compiled against.
+     */
+    private static long getCurrentThreadAllocatedBytes() {
+        try {
+            Object threadMxBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Method getThreadAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) getThreadAllocatedBytes.invoke(threadMxBean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return UNKNOWN;
+        }
+    }
+
+    public static class Result {
+        public final String name;
+        public final int iterations;
+        public final long elapsedNanos;
+        /** Average bytes allocated on the benchmark thread per operation, or -1 if unavailable. */
+        public final long allocatedBytesPerOp;
+
+        Result(String name, int iterations, long elapsedNanos, long allocatedBytesPerOp) {
+            this.name = name;
+            this.iterations = iterations;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytesPerOp = allocatedBytesPerOp;
+        }
+
+        public double getOpsPerSecond() {
+            return iterations * 1e9 / Math.max(elapsedNanos, 1);
+        }
+
+        public long getNanosPerOp() {
+            return elapsedNanos / iterations;
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append("{\"name\":\"").append(name).append('"');
+            json.append(",\"iterations\":").append(iterations);
+            json.append(",\"opsPerSecond\":").append(String.format(Locale.ROOT, "%.2f", getOpsPerSecond()));
+            json.append(",\"nanosPerOp\":").append(getNanosPerOp());
+            json.append(",\"allocatedBytesPerOp\":").append(allocatedBytesPerOp);
+            json.append('}');
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %.2f ops/s, %d ns/op, %d B/op",
+                    name, getOpsPerSecond(), getNanosPerOp(), allocatedBytesPerOp);
+        }
+    }
+}
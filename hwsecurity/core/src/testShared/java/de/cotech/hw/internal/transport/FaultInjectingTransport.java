@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.internal.transport;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.Nullable;
+
+import de.cotech.hw.exceptions.SecurityKeyDisconnectedException;
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.SecurityKeyInfo.SecurityKeyType;
+import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
+
+
+/**
+ * A {@link Transport} decorator that injects the kind of faults seen with flaky NFC and USB connections:
+ * latency, disconnects (as thrown by NfcTransport on a TagLostException), truncated responses,
+ * 61xx response chaining, 6Cxx length corrections and CTAPHID keepalive storms.
+ * <p>
+ * Faults scheduled for a specific transceive are addressed by the zero-based index of the call to
+ * {@link #transceive(CommandApdu)}, counting every call including GET RESPONSE commands.
+ */
+@SuppressWarnings({ "WeakerAccess", "UnusedReturnValue" })
+public class FaultInjectingTransport implements Transport {
+    private static final int APDU_SW1_RESPONSE_AVAILABLE = 0x61;
+    private static final int RESPONSE_SW1_INCORRECT_LENGTH = 0x6C;
+    private static final int INS_GET_RESPONSE = 0xC0;
+
+    private final Transport delegate;
+
+    private long latencyMs;
+    private int splitResponseChunkSize;
+    private boolean exactLengthRequired;
+    private final Set<Integer> disconnects = new HashSet<>();
+    private final Map<Integer, Integer> truncations = new HashMap<>();
+    private final Map<Integer, Long> keepaliveStorms = new HashMap<>();
+
+    private boolean disconnected;
+    private byte[] pendingResponseData;
+    private int pendingResponseSw;
+    private CommandApdu pendingLengthCorrectionCommand;
+    private ResponseApdu pendingLengthCorrectionResponse;
+
+    private int transceiveCount;
+    private int delegateTransceiveCount;
+    private int injectedFaultCount;
+
+    private FaultInjectingTransport(Transport delegate) {
+        this.delegate = delegate;
+    }
+
+    public static FaultInjectingTransport wrap(Transport delegate) {
+        return new FaultInjectingTransport(delegate);
+    }
+
+    /** Adds a fixed delay to every transceive. */
+    public FaultInjectingTransport setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+        return this;
+    }
+
+    /**
+     * Splits every response with more than chunkSize bytes of data into 61xx chunks, which have to be
+     * fetched by GET RESPONSE.
+     */
+    public FaultInjectingTransport setSplitResponseChunkSize(int chunkSize) {
+        this.splitResponseChunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Answers every command whose Ne doesn't match the length of its response with 6Cxx, as cards do
+     * that require an exact Le. The command is executed only once, the response to the corrected
+     * command is replayed.
+     */
+    public FaultInjectingTransport setExactLengthRequired(boolean exactLengthRequired) {
+        this.exactLengthRequired = exactLengthRequired;
+        return this;
+    }
+
+    /**
+     * Loses the connection on the given transceive. As with a tag taken away from the reader, the
+     * card loses its state, so the underlying transport is released until {@link #connect()} is called.
+     */
+    public FaultInjectingTransport disconnectAt(int transceiveIndex) {
+        disconnects.add(transceiveIndex);
+        return this;
+    }
+
+    /** Cuts the raw response bytes of the given transceive, including status word, to the given length. */
+    public FaultInjectingTransport truncateResponseAt(int transceiveIndex, int length) {
+        truncations.put(transceiveIndex, length);
+        return this;
+    }
+
+    /**
+     * Stalls the given transceive as an authenticator does that sends a series of CTAPHID keepalive
+     * packets before the actual response. Keepalives are consumed inside the USB transport, so all
+     * that is visible at this layer is the delay.
+     */
+    public FaultInjectingTransport keepaliveStormAt(int transceiveIndex, int keepaliveCount, long keepaliveIntervalMs) {
+        keepaliveStorms.put(transceiveIndex, keepaliveCount * keepaliveIntervalMs);
+        return this;
+    }
+
+    public int getTransceiveCount() {
+        return transceiveCount;
+    }
+
+    public int getDelegateTransceiveCount() {
+        return delegateTransceiveCount;
+    }
+
+    public int getInjectedFaultCount() {
+        return injectedFaultCount;
+    }
+
+    @Override
+    public ResponseApdu transceive(CommandApdu commandApdu) throws IOException {
+        int transceiveIndex = transceiveCount++;
+        if (disconnected) {
+            throw new SecurityKeyDisconnectedException();
+        }
+
+        sleep(latencyMs);
+        Long keepaliveStormMs = keepaliveStorms.get(transceiveIndex);
+        if (keepaliveStormMs != null) {
+            injectedFaultCount++;
+            sleep(keepaliveStormMs);
+        }
+
+        if (disconnects.contains(transceiveIndex)) {
+            injectedFaultCount++;
+            disconnected = true;
+            delegate.release();
+            pendingResponseData = null;
+            pendingLengthCorrectionCommand = null;
+            throw new SecurityKeyDisconnectedException();
+        }
+
+        ResponseApdu response = transceiveWithInjectedStatus(commandApdu);
+
+        Integer truncatedLength = truncations.get(transceiveIndex);
+        if (truncatedLength != null) {
+            injectedFaultCount++;
+            byte[] rawResponse = response.toBytes();
+            return ResponseApdu.fromBytes(Arrays.copyOf(rawResponse, Math.min(truncatedLength, rawResponse.length)));
+        }
+
+        return response;
+    }
+
+    private ResponseApdu transceiveWithInjectedStatus(CommandApdu commandApdu) throws IOException {
+        if (pendingResponseData != null && commandApdu.getINS() == INS_GET_RESPONSE) {
+            return nextResponseChunk();
+        }
+        pendingResponseData = null;
+
+        if (pendingLengthCorrectionCommand != null) {
+            boolean isCorrectedCommand = commandApdu.equals(pendingLengthCorrectionCommand);
+            ResponseApdu response = pendingLengthCorrectionResponse;
+            pendingLengthCorrectionCommand = null;
+            pendingLengthCorrectionResponse = null;
+            if (isCorrectedCommand) {
+                return splitResponseIfNecessary(response);
+            }
+        }
+
+        delegateTransceiveCount++;
+        ResponseApdu response = delegate.transceive(commandApdu);
+
+        int dataLength = response.getData().length;
+        if (exactLengthRequired && dataLength > 0 && dataLength < 256 && commandApdu.getNe() != dataLength) {
+            injectedFaultCount++;
+            pendingLengthCorrectionCommand = commandApdu.withNe(dataLength);
+            pendingLengthCorrectionResponse = response;
+            return ResponseApdu.create(RESPONSE_SW1_INCORRECT_LENGTH << 8 | dataLength, new byte[0]);
+        }
+
+        return splitResponseIfNecessary(response);
+    }
+
+    private ResponseApdu splitResponseIfNecessary(ResponseApdu response) {
+        if (splitResponseChunkSize <= 0 || response.getData().length <= splitResponseChunkSize) {
+            return response;
+        }
+        injectedFaultCount++;
+        pendingResponseData = response.getData();
+        pendingResponseSw = response.getSw();
+        return nextResponseChunk();
+    }
+
+    private ResponseApdu nextResponseChunk() {
+        int chunkLength = Math.min(splitResponseChunkSize, pendingResponseData.length);
+        byte[] chunk = Arrays.copyOfRange(pendingResponseData, 0, chunkLength);
+        byte[] remaining = Arrays.copyOfRange(pendingResponseData, chunkLength, pendingResponseData.length);
+        if (remaining.length == 0) {
+            pendingResponseData = null;
+            return ResponseApdu.create(pendingResponseSw, chunk);
+        }
+        pendingResponseData = remaining;
+        return ResponseApdu.create(
+                APDU_SW1_RESPONSE_AVAILABLE << 8 | Math.min(remaining.length, 256) & 0xff, chunk);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void release() {
+        delegate.release();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !disconnected && delegate.isConnected();
+    }
+
+    @Override
+    public boolean isReleased() {
+        return delegate.isReleased();
+    }
+
+    @Override
+    public boolean isPersistentConnectionAllowed() {
+        return delegate.isPersistentConnectionAllowed();
+    }
+
+    @Override
+    public boolean isExtendedLengthSupported() {
+        return delegate.isExtendedLengthSupported();
+    }
+
+    @Override
+    public void connect() throws IOException {
+        delegate.connect();
+        disconnected = false;
+    }
+
+    @Override
+    public boolean ping() {
+        return !disconnected && delegate.ping();
+    }
+
+    @Override
+    public TransportType getTransportType() {
+        return delegate.getTransportType();
+    }
+
+    @Nullable
+    @Override
+    public SecurityKeyType getSecurityKeyTypeIfAvailable() {
+        return delegate.getSecurityKeyTypeIfAvailable();
+    }
+}
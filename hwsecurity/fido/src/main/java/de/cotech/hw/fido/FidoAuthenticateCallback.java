@@ -31,4 +31,10 @@ import java.io.IOException;
 public interface FidoAuthenticateCallback {
     void onAuthenticateResponse(FidoAuthenticateResponse response);
     void onIoException(IOException e);
+
+    /**
+     * Called once per operation when the security key waits for the user to touch it.
+     */
+    default void onUserPresenceRequired() {
+    }
 }
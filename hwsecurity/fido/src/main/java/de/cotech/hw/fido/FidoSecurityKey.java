@@ -26,7 +26,6 @@ package de.cotech.hw.fido;
 
 
 import java.io.IOException;
-import java.util.Objects;
 
 import android.os.Handler;
 import android.os.Looper;
@@ -37,12 +36,12 @@ import androidx.annotation.WorkerThread;
 import androidx.lifecycle.LifecycleOwner;
 import de.cotech.hw.SecurityKey;
 import de.cotech.hw.SecurityKeyManagerConfig;
-import de.cotech.hw.fido.exceptions.FidoWrongKeyHandleException;
 import de.cotech.hw.fido.internal.FidoU2fAppletConnection;
 import de.cotech.hw.fido.internal.async.FidoAsyncOperationManager;
-import de.cotech.hw.fido.internal.async.FidoAuthenticateOperationThread;
-import de.cotech.hw.fido.internal.async.FidoRegisterOperationThread;
+import de.cotech.hw.fido.internal.async.FidoAuthenticateAsyncOperation;
+import de.cotech.hw.fido.internal.async.FidoRegisterAsyncOperation;
 import de.cotech.hw.fido.internal.operations.AuthenticateOp;
+import de.cotech.hw.fido.internal.operations.AuthenticateOp.KeyHandleResponse;
 import de.cotech.hw.fido.internal.operations.RegisterOp;
 import de.cotech.hw.internal.transport.Transport;
 import de.cotech.hw.util.HashUtil;
@@ -84,9 +83,9 @@ public class FidoSecurityKey extends SecurityKey {
     @AnyThread
     public void registerAsync(FidoRegisterRequest registerRequest,
             FidoRegisterCallback callback, Handler handler, LifecycleOwner lifecycleOwner) {
-        FidoRegisterOperationThread fidoOperationThread = new FidoRegisterOperationThread(
+        FidoRegisterAsyncOperation fidoAsyncOperation = new FidoRegisterAsyncOperation(
                 fidoU2fAppletConnection, handler, callback, registerRequest, USER_PRESENCE_CHECK_DELAY_MS);
-        fidoAsyncOperationManager.startAsyncOperation(lifecycleOwner, fidoOperationThread);
+        fidoAsyncOperationManager.startAsyncOperation(lifecycleOwner, fidoAsyncOperation);
     }
 
     @WorkerThread
@@ -96,20 +95,11 @@ public class FidoSecurityKey extends SecurityKey {
         byte[] applicationParam = HashUtil.sha256(authenticateRequest.getAppId());
 
         AuthenticateOp authenticateOp = AuthenticateOp.create(fidoU2fAppletConnection);
+        KeyHandleResponse response = authenticateOp.authenticate(
+                challengeParam, applicationParam, authenticateRequest.getKeyHandles());
 
-        FidoWrongKeyHandleException lastWrongKeyHandleException = null;
-        for (byte[] keyHandle : authenticateRequest.getKeyHandles()) {
-            try {
-                byte[] response = authenticateOp.authenticate(
-                        challengeParam, applicationParam, keyHandle);
-
-                return FidoAuthenticateResponse.create(
-                        authenticateRequest.getClientData(), keyHandle, response, authenticateRequest.getCustomData());
-            } catch (FidoWrongKeyHandleException e) {
-                lastWrongKeyHandleException = e;
-            }
-        }
-        throw Objects.requireNonNull(lastWrongKeyHandleException);
+        return FidoAuthenticateResponse.create(authenticateRequest.getClientData(), response.keyHandle(),
+                response.responseData(), authenticateRequest.getCustomData());
     }
 
     @UiThread
@@ -122,9 +112,9 @@ public class FidoSecurityKey extends SecurityKey {
     @AnyThread
     public void authenticateAsync(FidoAuthenticateRequest authenticateRequest,
             FidoAuthenticateCallback callback, Handler handler, LifecycleOwner lifecycleOwner) {
-        FidoAuthenticateOperationThread fidoOperationThread = new FidoAuthenticateOperationThread(
+        FidoAuthenticateAsyncOperation fidoAsyncOperation = new FidoAuthenticateAsyncOperation(
                 fidoU2fAppletConnection, handler, callback, authenticateRequest, USER_PRESENCE_CHECK_DELAY_MS);
-        fidoAsyncOperationManager.startAsyncOperation(lifecycleOwner, fidoOperationThread);
+        fidoAsyncOperationManager.startAsyncOperation(lifecycleOwner, fidoAsyncOperation);
     }
 
     @AnyThread
@@ -32,6 +32,7 @@ import de.cotech.hw.SecurityKeyConnectionMode;
 import de.cotech.hw.SecurityKeyManagerConfig;
 import de.cotech.hw.fido.internal.FidoU2fAppletConnection;
 import de.cotech.hw.fido.internal.async.FidoAsyncOperationManager;
+import de.cotech.hw.internal.async.SecurityKeyOperationExecutor;
 import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
 import de.cotech.hw.internal.transport.Transport;
 
@@ -47,7 +48,9 @@ public class FidoSecurityKeyConnectionMode extends SecurityKeyConnectionMode<Fid
         FidoU2fAppletConnection fidoU2fAppletConnection = FidoU2fAppletConnection.getInstanceForTransport(transport);
         fidoU2fAppletConnection.connectIfNecessary();
 
-        return new FidoSecurityKey(config, fidoU2fAppletConnection, transport, new FidoAsyncOperationManager());
+        FidoAsyncOperationManager asyncOperationManager =
+                new FidoAsyncOperationManager(SecurityKeyOperationExecutor.getInstance(), transport);
+        return new FidoSecurityKey(config, fidoU2fAppletConnection, transport, asyncOperationManager);
     }
 
     @Override
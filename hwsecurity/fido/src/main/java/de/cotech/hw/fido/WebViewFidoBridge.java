@@ -28,8 +28,11 @@ package de.cotech.hw.fido;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 import android.annotation.TargetApi;
 import android.content.Context;
@@ -57,11 +60,11 @@ import de.cotech.hw.fido.internal.jsapi.U2fJsonSerializer;
 import de.cotech.hw.fido.internal.jsapi.U2fRegisterRequest;
 import de.cotech.hw.fido.internal.jsapi.U2fResponse;
 import de.cotech.hw.fido.internal.jsapi.U2fResponse.ErrorCode;
-import de.cotech.hw.fido.internal.utils.AndroidUtils;
 import de.cotech.hw.fido.ui.FidoDialogFragment;
 import de.cotech.hw.fido.ui.FidoDialogFragment.OnFidoAuthenticateCallback;
 import de.cotech.hw.fido.ui.FidoDialogFragment.OnFidoRegisterCallback;
 import de.cotech.hw.fido.ui.FidoDialogOptions;
+import de.cotech.hw.internal.webview.JavascriptBridgeScript;
 import de.cotech.hw.util.HwTimber;
 
 import de.cotech.hw.ui.R;
@@ -88,6 +91,7 @@ public class WebViewFidoBridge {
 
     private String currentLoadedHost;
     private boolean loadingNewPage;
+    private Set<String> allowedOrigins;
 
     @SuppressWarnings("unused") // public API
     public static WebViewFidoBridge createInstanceForWebView(AppCompatActivity activity, WebView webView) {
@@ -123,6 +127,8 @@ public class WebViewFidoBridge {
         this.fragmentManager = fragmentManager;
         this.webView = webView;
         this.optionsBuilder = optionsBuilder;
+        // start loading the script, so it is ready for the first page
+        JavascriptBridgeScript.getInstance(context, ASSETS_BRIDGE_JS);
     }
 
     private void addJavascriptInterfaceToWebView() {
@@ -144,6 +150,26 @@ public class WebViewFidoBridge {
         }
     }
 
+    /**
+     * Restricts injection of the bridge to pages with one of the given origins, e.g. "https://example.org". By
+     * default, the bridge is injected into all HTTPS pages.
+     */
+    @SuppressWarnings("unused") // public API
+    public void setAllowedOrigins(@Nullable Collection<String> allowedOrigins) {
+        if (allowedOrigins == null) {
+            this.allowedOrigins = null;
+            return;
+        }
+        this.allowedOrigins = new HashSet<>();
+        for (String allowedOrigin : allowedOrigins) {
+            this.allowedOrigins.add(allowedOrigin.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private boolean isOriginAllowed(String origin) {
+        return allowedOrigins == null || allowedOrigins.contains(origin.toLowerCase(Locale.ROOT));
+    }
+
     // region delegate
 
     /**
@@ -184,6 +210,11 @@ public class WebViewFidoBridge {
         }
 
         this.currentLoadedHost = uri.getHost();
+        String origin = "https://" + uri.getAuthority();
+        if (!isOriginAllowed(origin)) {
+            HwTimber.d("Not injecting fido bridge for origin %s", origin);
+            return;
+        }
         this.loadingNewPage = true;
     }
 
@@ -197,13 +228,7 @@ public class WebViewFidoBridge {
     }
 
     private void injectJavascriptBridge() {
-        try {
-            String jsContent = AndroidUtils.loadTextFromAssets(context, ASSETS_BRIDGE_JS, Charset.defaultCharset());
-            webView.evaluateJavascript("javascript:(" + jsContent + ")()", null);
-        } catch (IOException e) {
-            HwTimber.e(e);
-            throw new IllegalStateException();
-        }
+        JavascriptBridgeScript.getInstance(context, ASSETS_BRIDGE_JS).injectInto(webView);
     }
 
     // endregion
@@ -41,6 +41,7 @@ import de.cotech.hw.fido.exceptions.FidoPresenceRequiredException;
 import de.cotech.hw.fido.exceptions.FidoWrongKeyHandleException;
 import de.cotech.hw.internal.iso7816.CommandApdu;
 import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
 import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
 import de.cotech.hw.internal.transport.Transport;
 import de.cotech.hw.util.Hex;
@@ -107,6 +108,7 @@ public class FidoU2fAppletConnection {
     }
 
     private byte[] selectFilesFromPrefixOrFail() throws IOException {
+        AppletConnectionPool.getInstance().onAppletSelected(transport, this);
         for (byte[] fileAid : FIDO_AID_PREFIXES) {
             byte[] initializedAid = selectFileOrFail(fileAid);
             if (initializedAid != null) {
@@ -175,16 +177,27 @@ public class FidoU2fAppletConnection {
 
     // ISO/IEC 7816-4
     private ResponseApdu communicate(CommandApdu commandApdu) throws IOException {
-        ResponseApdu lastResponse;
+        synchronized (transport) {
+            ResponseApdu lastResponse;
 
-        lastResponse = sendWithChaining(commandApdu);
-        if (lastResponse.getSw1() == RESPONSE_SW1_INCORRECT_LENGTH && lastResponse.getSw2() != 0) {
-            commandApdu = commandApdu.withNe(lastResponse.getSw2());
             lastResponse = sendWithChaining(commandApdu);
+            if (lastResponse.getSw1() == RESPONSE_SW1_INCORRECT_LENGTH && lastResponse.getSw2() != 0) {
+                commandApdu = commandApdu.withNe(lastResponse.getSw2());
+                lastResponse = sendWithChaining(commandApdu);
+            }
+            lastResponse = readChainedResponseIfAvailable(lastResponse);
+
+            return lastResponse;
         }
-        lastResponse = readChainedResponseIfAvailable(lastResponse);
+    }
 
-        return lastResponse;
+    /**
+     * Returns the lock that is held while a command is exchanged with the transport. Holding it across several
+     * commands keeps commands from other threads from being interleaved with them.
+     */
+    @NonNull
+    public Object getTransportLock() {
+        return transport;
     }
 
     @NonNull
@@ -74,6 +74,11 @@ public class FidoU2fCommandApduFactory {
         return CommandApdu.create(CLA, U2F_AUTHENTICATE, U2F_AUTHENTICATE_P1_ENFORCE_USER_PRESENCE_AND_SIGN, P2_EMPTY, data).withDescriber(DESCRIBER);
     }
 
+    @NonNull
+    public CommandApdu createAuthenticationCheckOnlyCommand(byte[] data) {
+        return CommandApdu.create(CLA, U2F_AUTHENTICATE, U2F_AUTHENTICATE_P1_CHECK_ONLY, P2_EMPTY, data).withDescriber(DESCRIBER);
+    }
+
     @NonNull
     public CommandApdu createVersionCommand() {
         return CommandApdu.create(CLA, U2F_VERSION, P1_EMPTY, P2_EMPTY).withDescriber(DESCRIBER);
@@ -26,6 +26,7 @@ package de.cotech.hw.fido.internal.async;
 
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
 
 import android.os.Handler;
 
@@ -36,21 +37,23 @@ import androidx.annotation.WorkerThread;
 import androidx.lifecycle.Lifecycle.Event;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
-
 import de.cotech.hw.exceptions.SecurityKeyDisconnectedException;
 import de.cotech.hw.fido.exceptions.FidoPresenceRequiredException;
 import de.cotech.hw.fido.internal.FidoU2fAppletConnection;
+import de.cotech.hw.internal.async.OperationFuture;
+import de.cotech.hw.internal.async.PresenceCheckBackoff;
 import de.cotech.hw.util.HwTimber;
 
 
 @RestrictTo(Scope.LIBRARY_GROUP)
-abstract class FidoOperationThread<T> extends Thread implements LifecycleObserver {
+abstract class FidoAsyncOperation<T> implements Callable<T>, OperationFuture.Callback<T>, LifecycleObserver {
     private FidoAsyncOperationManager fidoAsyncOperationManager;
-    private final Handler handler;
+    final Handler handler;
     private final int presenceCheckDelayMs;
+    private boolean isUserPresenceRequiredPosted;
     final FidoU2fAppletConnection fidoU2fAppletConnection;
 
-    FidoOperationThread(FidoU2fAppletConnection fidoU2fAppletConnection, Handler handler, int presenceCheckDelayMs) {
+    FidoAsyncOperation(FidoU2fAppletConnection fidoU2fAppletConnection, Handler handler, int presenceCheckDelayMs) {
         this.fidoU2fAppletConnection = fidoU2fAppletConnection;
         this.handler = handler;
         this.presenceCheckDelayMs = presenceCheckDelayMs;
@@ -64,63 +67,69 @@ abstract class FidoOperationThread<T> extends Thread implements LifecycleObserve
     abstract void deliverResponse(T response);
     @UiThread
     abstract void deliverIoException(IOException e);
+    @UiThread
+    abstract void deliverUserPresenceRequired();
 
     void setFidoAsyncOperationManager(FidoAsyncOperationManager fidoAsyncOperationManager) {
         this.fidoAsyncOperationManager = fidoAsyncOperationManager;
     }
 
     @Override
-    public void run() {
-        try {
-            prepareOperation();
-        } catch (InterruptedException e) {
-            fidoAsyncOperationManager.clearAsyncOperation(false, this);
-            return;
-        }
-        while (!isInterrupted() && fidoU2fAppletConnection.isConnected()) {
+    @WorkerThread
+    public T call() throws IOException, InterruptedException {
+        prepareOperation();
+        PresenceCheckBackoff presenceCheckBackoff = new PresenceCheckBackoff(presenceCheckDelayMs);
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            if (!fidoU2fAppletConnection.isConnected()) {
+                throw new SecurityKeyDisconnectedException();
+            }
             try {
-                T response = performOperation();
-                postToHandler(() -> deliverResponse(response));
-                break;
-            } catch (InterruptedException e) {
-                HwTimber.e("Fido operation was interrupted");
-                break;
-            } catch (SecurityKeyDisconnectedException e) {
-                HwTimber.e("Transport gone during fido operation");
-                break;
+                return performOperation();
             } catch (FidoPresenceRequiredException e) {
-                try {
-                    Thread.sleep(presenceCheckDelayMs);
-                } catch (InterruptedException e1) {
-                    break;
-                }
-            } catch (IOException e) {
-                if (e.getCause() instanceof InterruptedException) {
-                    HwTimber.e("Fido operation was interrupted");
-                    break;
-                }
-                postToHandler(() -> deliverIoException(e));
-                break;
+                postUserPresenceRequired();
+                Thread.sleep(presenceCheckBackoff.nextDelayMs());
             }
         }
-        fidoAsyncOperationManager.clearAsyncOperation(false, this);
     }
 
-    private void postToHandler(Runnable runnable) {
-        if (isInterrupted()) {
+    @WorkerThread
+    void postUserPresenceRequired() {
+        if (isUserPresenceRequiredPosted || Thread.currentThread().isInterrupted()) {
             return;
         }
-        handler.post(() -> {
-            if (!isInterrupted()) {
-                runnable.run();
-            }
-        });
+        isUserPresenceRequiredPosted = true;
+        handler.post(this::deliverUserPresenceRequired);
+    }
+
+    @Override
+    @UiThread
+    public void onSuccess(T response) {
+        deliverResponse(response);
+    }
+
+    @Override
+    @UiThread
+    public void onFailure(Throwable throwable) {
+        if (throwable instanceof InterruptedException || throwable.getCause() instanceof InterruptedException) {
+            HwTimber.e("Fido operation was interrupted");
+        } else if (throwable instanceof SecurityKeyDisconnectedException) {
+            HwTimber.e("Transport gone during fido operation");
+        } else if (throwable instanceof IOException) {
+            deliverIoException((IOException) throwable);
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        } else if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else {
+            throw new RuntimeException(throwable);
+        }
     }
 
     @OnLifecycleEvent(Event.ON_STOP)
     public void onDestroy() {
-        if (isAlive() && !isInterrupted()) {
-            fidoAsyncOperationManager.clearAsyncOperation(true, this);
-        }
+        fidoAsyncOperationManager.clearAsyncOperation(true, this);
     }
 }
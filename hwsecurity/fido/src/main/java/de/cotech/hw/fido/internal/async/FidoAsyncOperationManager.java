@@ -26,35 +26,55 @@ package de.cotech.hw.fido.internal.async;
 
 
 import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
 import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.LifecycleOwner;
 import de.cotech.hw.fido.internal.utils.AndroidUtils;
+import de.cotech.hw.internal.async.OperationFuture;
+import de.cotech.hw.internal.async.SecurityKeyOperationExecutor;
 
 
 @RestrictTo(Scope.LIBRARY_GROUP)
 public class FidoAsyncOperationManager {
+    private final SecurityKeyOperationExecutor operationExecutor;
+    private final Object serializationKey;
     private final Object asyncOperationLock;
     @VisibleForTesting
-    FidoOperationThread<?> asyncOperationThread;
+    FidoAsyncOperation<?> asyncOperation;
+    @VisibleForTesting
+    OperationFuture<?> asyncOperationFuture;
 
     public FidoAsyncOperationManager() {
+        this(SecurityKeyOperationExecutor.getInstance(), null);
+    }
+
+    /**
+     * @param serializationKey operations of all managers with the same key run one after another, typically the
+     *         transport of the security key. If null, only operations of this manager are serialized.
+     */
+    public FidoAsyncOperationManager(SecurityKeyOperationExecutor operationExecutor,
+            @Nullable Object serializationKey) {
+        this.operationExecutor = operationExecutor;
+        this.serializationKey = serializationKey != null ? serializationKey : this;
         asyncOperationLock = new Object();
     }
 
     @AnyThread
-    public void startAsyncOperation(LifecycleOwner lifecycleOwner, FidoOperationThread<?> operationThread) {
+    public <T> void startAsyncOperation(LifecycleOwner lifecycleOwner, FidoAsyncOperation<T> operation) {
         synchronized (asyncOperationLock) {
-            if (asyncOperationThread != null) {
-                asyncOperationThread.interrupt();
-                asyncOperationThread = null;
+            if (asyncOperationFuture != null) {
+                asyncOperationFuture.cancel(true);
             }
 
-            asyncOperationThread = operationThread;
-            asyncOperationThread.setFidoAsyncOperationManager(this);
-            asyncOperationThread.start();
-            AndroidUtils.addLifecycleObserver(lifecycleOwner, asyncOperationThread);
+            operation.setFidoAsyncOperationManager(this);
+            OperationFuture<T> future = operationExecutor.submit(serializationKey, operation);
+            asyncOperation = operation;
+            asyncOperationFuture = future;
+            future.addCallback(operation.handler::post, operation);
+            future.addListener(() -> clearAsyncOperation(false, operation), Runnable::run);
+            AndroidUtils.addLifecycleObserver(lifecycleOwner, operation);
         }
     }
 
@@ -64,18 +84,16 @@ public class FidoAsyncOperationManager {
     }
 
     @AnyThread
-    void clearAsyncOperation(boolean interrupt, Thread specificThread) {
+    void clearAsyncOperation(boolean cancel, FidoAsyncOperation<?> specificOperation) {
         synchronized (asyncOperationLock) {
-            if (specificThread != null && asyncOperationThread != specificThread) {
-                if (interrupt) {
-                    specificThread.interrupt();
-                }
+            if (specificOperation != null && asyncOperation != specificOperation) {
                 return;
             }
-            if (asyncOperationThread != null && asyncOperationThread.isAlive() && interrupt) {
-                asyncOperationThread.interrupt();
+            if (asyncOperationFuture != null && cancel) {
+                asyncOperationFuture.cancel(true);
             }
-            asyncOperationThread = null;
+            asyncOperation = null;
+            asyncOperationFuture = null;
         }
     }
 }
@@ -26,7 +26,7 @@ package de.cotech.hw.fido.internal.async;
 
 
 import java.io.IOException;
-import java.util.Objects;
+import java.util.List;
 
 import android.os.Handler;
 
@@ -34,13 +34,9 @@ import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
 import androidx.annotation.UiThread;
 import androidx.annotation.WorkerThread;
-import de.cotech.hw.SecurityKeyException;
-import de.cotech.hw.exceptions.WrongRequestLengthException;
 import de.cotech.hw.fido.FidoAuthenticateCallback;
 import de.cotech.hw.fido.FidoAuthenticateRequest;
 import de.cotech.hw.fido.FidoAuthenticateResponse;
-import de.cotech.hw.fido.exceptions.FidoPresenceRequiredException;
-import de.cotech.hw.fido.exceptions.FidoWrongKeyHandleException;
 import de.cotech.hw.fido.internal.FidoU2fAppletConnection;
 import de.cotech.hw.fido.internal.operations.AuthenticateOp;
 import de.cotech.hw.util.HashUtil;
@@ -49,7 +45,7 @@ import de.cotech.hw.util.HwTimber;
 
 
 @RestrictTo(Scope.LIBRARY_GROUP)
-public class FidoAuthenticateOperationThread extends FidoOperationThread<FidoAuthenticateResponse> {
+public class FidoAuthenticateAsyncOperation extends FidoAsyncOperation<FidoAuthenticateResponse> {
     private final FidoAuthenticateCallback callback;
     private final FidoAuthenticateRequest authenticateRequest;
 
@@ -58,7 +54,7 @@ public class FidoAuthenticateOperationThread extends FidoOperationThread<FidoAut
     private byte[] applicationParam;
     private byte[] acceptedKeyHandle;
 
-    public FidoAuthenticateOperationThread(FidoU2fAppletConnection fidoU2fAppletConnection, Handler handler,
+    public FidoAuthenticateAsyncOperation(FidoU2fAppletConnection fidoU2fAppletConnection, Handler handler,
             FidoAuthenticateCallback callback, FidoAuthenticateRequest authenticateRequest,
             int userPresenceCheckDelayMs) {
         super(fidoU2fAppletConnection, handler, userPresenceCheckDelayMs);
@@ -90,22 +86,15 @@ public class FidoAuthenticateOperationThread extends FidoOperationThread<FidoAut
     }
 
     private FidoAuthenticateResponse attemptAuthWithAllKeyHandles() throws IOException {
-        SecurityKeyException lastWrongKeyHandleException = null;
-        for (byte[] keyHandle : authenticateRequest.getKeyHandles()) {
-            try {
-                return attemptAuthWithKeyHandle(keyHandle);
-            } catch (FidoPresenceRequiredException e) {
-                // if we get a presence required exception, it means the key handle was accepted
-                acceptedKeyHandle = keyHandle;
-                throw e;
-            } catch (WrongRequestLengthException e) {
-                HwTimber.d("Received %s, treating as WRONG_DATA", e.getShortErrorName());
-                lastWrongKeyHandleException = e;
-            } catch (FidoWrongKeyHandleException e) {
-                lastWrongKeyHandleException = e;
-            }
+        List<byte[]> keyHandles = authenticateRequest.getKeyHandles();
+        if (keyHandles.size() == 1) {
+            // a single key handle is checked by the signing request itself
+            acceptedKeyHandle = keyHandles.get(0);
+            return attemptAuthWithKeyHandle(acceptedKeyHandle);
         }
-        throw Objects.requireNonNull(lastWrongKeyHandleException);
+        // probe all key handles without signing, and remember the accepted one for presence polling
+        acceptedKeyHandle = authenticateOp.findKeyHandle(challengeParam, applicationParam, keyHandles);
+        return attemptAuthWithKeyHandle(acceptedKeyHandle);
     }
 
     private FidoAuthenticateResponse attemptAuthWithKeyHandle(byte[] acceptedKeyHandle) throws IOException {
@@ -125,4 +114,10 @@ public class FidoAuthenticateOperationThread extends FidoOperationThread<FidoAut
     void deliverIoException(IOException e) {
         callback.onIoException(e);
     }
+
+    @Override
+    @UiThread
+    void deliverUserPresenceRequired() {
+        callback.onUserPresenceRequired();
+    }
 }
@@ -45,7 +45,7 @@ import de.cotech.hw.util.HwTimber;
 
 
 @RestrictTo(Scope.LIBRARY_GROUP)
-public class FidoRegisterOperationThread extends FidoOperationThread<FidoRegisterResponse> {
+public class FidoRegisterAsyncOperation extends FidoAsyncOperation<FidoRegisterResponse> {
     private final FidoRegisterCallback callback;
     private final FidoRegisterRequest registerRequest;
 
@@ -53,7 +53,7 @@ public class FidoRegisterOperationThread extends FidoOperationThread<FidoRegiste
     private byte[] challengeParam;
     private byte[] applicationParam;
 
-    public FidoRegisterOperationThread(FidoU2fAppletConnection fidoU2fAppletConnection, Handler handler,
+    public FidoRegisterAsyncOperation(FidoU2fAppletConnection fidoU2fAppletConnection, Handler handler,
             FidoRegisterCallback callback, FidoRegisterRequest registerRequest, int userPresenceCheckDelayMs) {
         super(fidoU2fAppletConnection, handler, userPresenceCheckDelayMs);
         this.callback = callback;
@@ -90,4 +90,10 @@ public class FidoRegisterOperationThread extends FidoOperationThread<FidoRegiste
     void deliverIoException(IOException e) {
         callback.onIoException(e);
     }
+
+    @Override
+    @UiThread
+    void deliverUserPresenceRequired() {
+        callback.onUserPresenceRequired();
+    }
 }
@@ -26,15 +26,19 @@ package de.cotech.hw.fido.internal.operations;
 
 
 import java.io.IOException;
+import java.util.List;
 
 import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
 import androidx.annotation.WorkerThread;
+import com.google.auto.value.AutoValue;
+import de.cotech.hw.exceptions.WrongRequestLengthException;
 import de.cotech.hw.fido.exceptions.FidoPresenceRequiredException;
 import de.cotech.hw.fido.exceptions.FidoWrongKeyHandleException;
 import de.cotech.hw.fido.internal.FidoU2fAppletConnection;
 import de.cotech.hw.internal.iso7816.CommandApdu;
 import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.util.HwTimber;
 
 @RestrictTo(Scope.LIBRARY_GROUP)
 public class AuthenticateOp {
@@ -70,12 +74,7 @@ public class AuthenticateOp {
     @WorkerThread
     public byte[] authenticate(byte[] challengeParam, byte[] applicationParam, byte[] keyHandle)
             throws IOException, FidoPresenceRequiredException, FidoWrongKeyHandleException {
-        if (challengeParam.length != 32) {
-            throw new IllegalArgumentException("challenge parameter must be 32 bytes long!");
-        }
-        if (applicationParam.length != 32) {
-            throw new IllegalArgumentException("application parameter must be 32 bytes long!");
-        }
+        checkParams(challengeParam, applicationParam);
 
         byte[] data = prepareData(challengeParam, applicationParam, keyHandle);
         CommandApdu command = connection.getCommandFactory().createAuthenticationCommand(data);
@@ -84,6 +83,85 @@ public class AuthenticateOp {
         return response.getData();
     }
 
+    /**
+     * Authenticates with the first of the given key handles that was created by this security key.
+     * <p>
+     * Instead of attempting a signature with each key handle in turn, all key handles are probed with
+     * check-only requests first, and only the matching key handle is used for signing. The transport
+     * lock is held for the whole scan, so no other commands are interleaved with it. A single key handle
+     * is used for signing directly, as probing it would only add a round trip.
+     *
+     * @throws FidoPresenceRequiredException if a key handle matched, but user presence is required to sign
+     * @throws FidoWrongKeyHandleException if none of the key handles was created by this security key
+     */
+    @WorkerThread
+    public KeyHandleResponse authenticate(byte[] challengeParam, byte[] applicationParam, List<byte[]> keyHandles)
+            throws IOException, FidoPresenceRequiredException, FidoWrongKeyHandleException {
+        if (keyHandles.size() == 1) {
+            byte[] keyHandle = keyHandles.get(0);
+            byte[] response = authenticate(challengeParam, applicationParam, keyHandle);
+            return KeyHandleResponse.create(keyHandle, response);
+        }
+        synchronized (connection.getTransportLock()) {
+            byte[] keyHandle = findKeyHandle(challengeParam, applicationParam, keyHandles);
+            byte[] response = authenticate(challengeParam, applicationParam, keyHandle);
+            return KeyHandleResponse.create(keyHandle, response);
+        }
+    }
+
+    /**
+     * Probes the given key handles with check-only authentication requests, which neither require user
+     * presence nor produce a signature.
+     *
+     * @return the first key handle that was created by this security key for the application parameter
+     * @throws FidoWrongKeyHandleException if none of the key handles was created by this security key
+     */
+    @WorkerThread
+    public byte[] findKeyHandle(byte[] challengeParam, byte[] applicationParam, List<byte[]> keyHandles)
+            throws IOException, FidoWrongKeyHandleException {
+        checkParams(challengeParam, applicationParam);
+
+        synchronized (connection.getTransportLock()) {
+            for (int i = 0, count = keyHandles.size(); i < count; i++) {
+                byte[] keyHandle = keyHandles.get(i);
+                if (isKeyHandleAccepted(challengeParam, applicationParam, keyHandle)) {
+                    HwTimber.d("Key handle accepted (%d/%d)", i + 1, count);
+                    return keyHandle;
+                }
+            }
+        }
+        throw new FidoWrongKeyHandleException();
+    }
+
+    // see "FIDO U2F Raw Message Formats", Section 5.1: a check-only request is answered with
+    // "test-of-user-presence-required" if the key handle is valid, and with "bad-key-handle" otherwise.
+    private boolean isKeyHandleAccepted(byte[] challengeParam, byte[] applicationParam, byte[] keyHandle)
+            throws IOException {
+        byte[] data = prepareData(challengeParam, applicationParam, keyHandle);
+        CommandApdu command = connection.getCommandFactory().createAuthenticationCheckOnlyCommand(data);
+        try {
+            connection.communicateOrThrow(command);
+            HwTimber.d("Check-only request succeeded, treating key handle as accepted");
+            return true;
+        } catch (FidoPresenceRequiredException e) {
+            return true;
+        } catch (FidoWrongKeyHandleException e) {
+            return false;
+        } catch (WrongRequestLengthException e) {
+            HwTimber.d("Received %s, treating as WRONG_DATA", e.getShortErrorName());
+            return false;
+        }
+    }
+
+    private static void checkParams(byte[] challengeParam, byte[] applicationParam) {
+        if (challengeParam.length != 32) {
+            throw new IllegalArgumentException("challenge parameter must be 32 bytes long!");
+        }
+        if (applicationParam.length != 32) {
+            throw new IllegalArgumentException("application parameter must be 32 bytes long!");
+        }
+    }
+
     /**
      * Prepare data send to the security key according to specification:
      * The challenge parameter [32 bytes]
@@ -102,4 +180,13 @@ public class AuthenticateOp {
         return data;
     }
 
+    @AutoValue
+    public abstract static class KeyHandleResponse {
+        public abstract byte[] keyHandle();
+        public abstract byte[] responseData();
+
+        static KeyHandleResponse create(byte[] keyHandle, byte[] responseData) {
+            return new AutoValue_AuthenticateOp_KeyHandleResponse(keyHandle, responseData);
+        }
+    }
 }
@@ -67,6 +67,9 @@ public class FidoSecurityKeyTest {
     static final String AUTH_EXPECTED_CHALLENGE = "00020300a156493b7586f818b6d46127c0439232912d5e5a9ed526b864a228bb7c63c1437cabc34b4eb978b911e55240f345649cd3d7e8b583fbe066984d9881f7b5494dcb6049e0a7716673b4627f272ced3f52c511f1671a6e5e05d56d28681f8b54c9240f28960fc90df6b036fa934e3d5bed75a7ffbb4ea5f78d4e6daf0e78bdbb4b88b9cd4c6d0157ea5876c0c45c575e99c5e928a405bba76b780a1ec3ee9ff2598fa0";
     static final String AUTH_EXPECTED_CHALLENGE_BAD = "00020300a156493b7586f818b6d46127c0439232912d5e5a9ed526b864a228bb7c63c1437cabc34b4eb978b911e55240f345649cd3d7e8b583fbe066984d9881f7b5494dcb601047cad7b407bf7bf0a7b30bf7ddcb07ad7b21384732487237bdf0a87b21407bae19438b019843bc108bd018ba9eff9813ba08cde08341b0dba983ffbb4b88b9cd4c6d0157ea5876c0c45c575e99c5e928a405bba76b780a1ec3ee939201aefa";
 
+    static final String AUTH_EXPECTED_CHECK_ONLY = "00020700" + AUTH_EXPECTED_CHALLENGE.substring(8);
+    static final String AUTH_EXPECTED_CHECK_ONLY_BAD = "00020700" + AUTH_EXPECTED_CHALLENGE_BAD.substring(8);
+
     static final String AUTH_REPLY_OK = "0100001c243045022069d5c931a1644376c9d7bf6a7892f7409158b62ea74a04333d799077202cb959022100f74dcb8f2e32b74ca4b94f03259c74ff11ea7936e22a32806290502c56c998af9000";
     static final String AUTH_REPLY_EXPECTED = "0100001c243045022069d5c931a1644376c9d7bf6a7892f7409158b62ea74a04333d799077202cb959022100f74dcb8f2e32b74ca4b94f03259c74ff11ea7936e22a32806290502c56c998af";
 
@@ -128,7 +131,7 @@ public class FidoSecurityKeyTest {
                         countDownLatch.countDown();
                     }
                 },null);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
         assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
     }
@@ -153,7 +156,7 @@ public class FidoSecurityKeyTest {
                         countDownLatch.countDown();
                     }
                 },null);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
         assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
     }
@@ -173,7 +176,8 @@ public class FidoSecurityKeyTest {
     public void authenticate_multipleKeyHandles() throws Exception {
         FidoAuthenticateRequest authenticateRequest = FidoAuthenticateRequest.create(
                 FIDO_APP_ID, FACET_ID, AUTH_CHALLENGE, Arrays.asList(KEY_HANDLE_BAD, KEY_HANDLE));
-        fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY, REPLY_PRESENCE_REQUIRED);
         fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE, AUTH_REPLY_OK);
 
         FidoAuthenticateResponse authResponse = fidoSecurityKey.authenticate(authenticateRequest);
@@ -185,7 +189,8 @@ public class FidoSecurityKeyTest {
     public void authenticate_multipleKeyHandles_presenceCheck() throws Exception {
         FidoAuthenticateRequest authenticateRequest = FidoAuthenticateRequest.create(
                 FIDO_APP_ID, FACET_ID, AUTH_CHALLENGE, Arrays.asList(KEY_HANDLE_BAD, KEY_HANDLE));
-        fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY, REPLY_PRESENCE_REQUIRED);
         fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE, REPLY_PRESENCE_REQUIRED);
 
         fidoSecurityKey.authenticate(authenticateRequest);
@@ -195,8 +200,8 @@ public class FidoSecurityKeyTest {
     public void authenticate_multipleKeyHandles_allWrongKeyHandle() throws Exception {
         FidoAuthenticateRequest authenticateRequest = FidoAuthenticateRequest.create(
                 FIDO_APP_ID, FACET_ID, AUTH_CHALLENGE, Arrays.asList(KEY_HANDLE_BAD, KEY_HANDLE));
-        fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE_BAD, REPLY_WRONG_KEY_HANDLE);
-        fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY, REPLY_WRONG_KEY_HANDLE);
 
         fidoSecurityKey.authenticate(authenticateRequest);
     }
@@ -230,7 +235,7 @@ public class FidoSecurityKeyTest {
                         fail("Unexpected IOException!");
                     }
                 }, null);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
         assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
     }
@@ -257,7 +262,7 @@ public class FidoSecurityKeyTest {
                         fail("Unexpected IOException!");
                     }
                 }, null);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
         assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
     }
@@ -266,7 +271,8 @@ public class FidoSecurityKeyTest {
     public void authenticateAsync_multipleKeyHandles() throws Exception {
         FidoAuthenticateRequest authenticateRequest = FidoAuthenticateRequest.create(
                 FIDO_APP_ID, FACET_ID, AUTH_CHALLENGE, Arrays.asList(KEY_HANDLE_BAD, KEY_HANDLE));
-        fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY, REPLY_PRESENCE_REQUIRED);
         fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE, AUTH_REPLY_OK);
 
         CountDownLatch countDownLatch = new CountDownLatch(1);
@@ -283,7 +289,7 @@ public class FidoSecurityKeyTest {
                         fail("Unexpected IOException!");
                     }
                 }, null);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
         assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
     }
@@ -292,7 +298,8 @@ public class FidoSecurityKeyTest {
     public void authenticateAsync_multipleKeyHandles_withPresence() throws Exception {
         FidoAuthenticateRequest authenticateRequest = FidoAuthenticateRequest.create(
                 FIDO_APP_ID, FACET_ID, AUTH_CHALLENGE, Arrays.asList(KEY_HANDLE_BAD, KEY_HANDLE));
-        fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY, REPLY_PRESENCE_REQUIRED);
         fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE, REPLY_PRESENCE_REQUIRED);
         fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE, AUTH_REPLY_OK);
 
@@ -310,7 +317,7 @@ public class FidoSecurityKeyTest {
                         fail("Unexpected IOException!");
                     }
                 }, null);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
         assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
     }
@@ -319,8 +326,8 @@ public class FidoSecurityKeyTest {
     public void authenticateAsync_wrongKeyHandle() throws Exception {
         FidoAuthenticateRequest authenticateRequest = FidoAuthenticateRequest.create(
                 FIDO_APP_ID, FACET_ID, AUTH_CHALLENGE, Arrays.asList(KEY_HANDLE_BAD, KEY_HANDLE));
-        fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE_BAD, REPLY_WRONG_KEY_HANDLE);
-        fakeFidoConnection.expect(AUTH_EXPECTED_CHALLENGE, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY_BAD, REPLY_WRONG_KEY_HANDLE);
+        fakeFidoConnection.expect(AUTH_EXPECTED_CHECK_ONLY, REPLY_WRONG_KEY_HANDLE);
 
         IOException[] thrownException = new IOException[1];
         CountDownLatch countDownLatch = new CountDownLatch(1);
@@ -337,7 +344,7 @@ public class FidoSecurityKeyTest {
                         countDownLatch.countDown();
                     }
                 }, null);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
         assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
         assertEquals(FidoWrongKeyHandleException.class, thrownException[0].getClass());
@@ -364,7 +371,7 @@ public class FidoSecurityKeyTest {
                         countDownLatch.countDown();
                     }
                 }, null);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
         assertTrue(countDownLatch.await(1, TimeUnit.SECONDS));
         assertEquals(InsNotSupportedException.class, thrownException[0].getClass());
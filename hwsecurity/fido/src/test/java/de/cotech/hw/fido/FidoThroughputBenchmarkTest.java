@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido;
+
+
+import de.cotech.hw.SecurityKeyManagerConfig;
+import de.cotech.hw.fido.internal.FakeU2fFidoAppletConnection;
+import de.cotech.hw.fido.internal.async.FidoAsyncOperationManager;
+import de.cotech.hw.internal.benchmark.ThroughputBenchmark;
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.util.Hex;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static de.cotech.hw.fido.FidoSecurityKeyTest.AUTH_CHALLENGE;
+import static de.cotech.hw.fido.FidoSecurityKeyTest.AUTH_EXPECTED_CHALLENGE;
+import static de.cotech.hw.fido.FidoSecurityKeyTest.AUTH_REPLY_OK;
+import static de.cotech.hw.fido.FidoSecurityKeyTest.FACET_ID;
+import static de.cotech.hw.fido.FidoSecurityKeyTest.FIDO_APP_ID;
+import static de.cotech.hw.fido.FidoSecurityKeyTest.KEY_HANDLE;
+import static de.cotech.hw.fido.FidoSecurityKeyTest.REGISTER_CHALLENGE;
+import static de.cotech.hw.fido.FidoSecurityKeyTest.REGISTER_EXPECTED_CHALLENGE;
+import static de.cotech.hw.fido.FidoSecurityKeyTest.REGISTER_REPLY_OK;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * End-to-end throughput of U2F operations against recorded authenticator responses, see
+ * {@link ThroughputBenchmark}.
+ */
+@SuppressWarnings("WeakerAccess")
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 24)
+public class FidoThroughputBenchmarkTest {
+    FidoSecurityKey fidoSecurityKey;
+    FakeU2fFidoAppletConnection fakeFidoConnection;
+
+    @Before
+    public void setup() throws Exception {
+        assumeTrue(ThroughputBenchmark.isEnabled());
+
+        fakeFidoConnection = FakeU2fFidoAppletConnection.create();
+        fidoSecurityKey = new FidoSecurityKey(
+                new SecurityKeyManagerConfig.Builder().build(),
+                fakeFidoConnection.connection, null, new FidoAsyncOperationManager()
+        );
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        ThroughputBenchmark benchmark = ThroughputBenchmark.create("fido");
+
+        // parsed once, so the scenarios don't include hex decoding of the recorded exchange
+        CommandApdu registerCommand = CommandApdu.fromBytes(Hex.decodeHexOrFail(REGISTER_EXPECTED_CHALLENGE));
+        ResponseApdu registerReply = ResponseApdu.fromBytes(Hex.decodeHexOrFail(REGISTER_REPLY_OK));
+        FidoRegisterRequest registerRequest = FidoRegisterRequest.create(FIDO_APP_ID, FACET_ID, REGISTER_CHALLENGE);
+        benchmark.measure("u2f.register", () -> {
+            fakeFidoConnection.expect(registerCommand, registerReply);
+            fidoSecurityKey.register(registerRequest);
+        });
+
+        CommandApdu authenticateCommand = CommandApdu.fromBytes(Hex.decodeHexOrFail(AUTH_EXPECTED_CHALLENGE));
+        ResponseApdu authenticateReply = ResponseApdu.fromBytes(Hex.decodeHexOrFail(AUTH_REPLY_OK));
+        FidoAuthenticateRequest authenticateRequest =
+                FidoAuthenticateRequest.create(FIDO_APP_ID, FACET_ID, AUTH_CHALLENGE, KEY_HANDLE);
+        benchmark.measure("u2f.authenticate", () -> {
+            fakeFidoConnection.expect(authenticateCommand, authenticateReply);
+            fidoSecurityKey.authenticate(authenticateRequest);
+        });
+
+        benchmark.writeReport();
+    }
+}
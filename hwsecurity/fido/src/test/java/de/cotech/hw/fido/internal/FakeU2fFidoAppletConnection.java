@@ -27,6 +27,8 @@ package de.cotech.hw.fido.internal;
 
 import java.io.IOException;
 
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.iso7816.ResponseApdu;
 import de.cotech.hw.internal.transport.FakeTransport;
 
 
@@ -55,4 +57,8 @@ public class FakeU2fFidoAppletConnection {
     public void expect(String command, String reply) throws IOException {
         fakeTransport.expect(command, reply);
     }
+
+    public void expect(CommandApdu command, ResponseApdu reply) {
+        fakeTransport.expect(command.withExtendedApduNe(), reply);
+    }
 }
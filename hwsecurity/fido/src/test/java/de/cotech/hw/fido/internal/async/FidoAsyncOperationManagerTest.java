@@ -27,6 +27,7 @@ package de.cotech.hw.fido.internal.async;
 
 import java.util.concurrent.CountDownLatch;
 
+import de.cotech.hw.internal.async.OperationFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,6 +36,7 @@ import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLooper;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 
@@ -51,20 +53,22 @@ public class FidoAsyncOperationManagerTest {
 
     @Test
     public void startAsyncOperation() throws Exception {
-        TestFidoOperationThread thread = new TestFidoOperationThread();
-        fidoAsyncOperationManager.startAsyncOperation(null, thread);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        TestFidoAsyncOperation operation = new TestFidoAsyncOperation();
+        fidoAsyncOperationManager.startAsyncOperation(null, operation);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fidoAsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
-        thread.assertLatchOk();
+        operation.assertLatchOk();
     }
 
     @Test
     public void startAsyncOperation_thenClear() throws Exception {
         CountDownLatch delayLatch = new CountDownLatch(1);
-        TestFidoOperationThread thread = new TestFidoOperationThread(delayLatch);
-        fidoAsyncOperationManager.startAsyncOperation(null, thread);
+        TestFidoAsyncOperation operation = new TestFidoAsyncOperation(delayLatch);
+        fidoAsyncOperationManager.startAsyncOperation(null, operation);
+        OperationFuture<?> future = fidoAsyncOperationManager.asyncOperationFuture;
         fidoAsyncOperationManager.clearAsyncOperation();
-        FidoAsyncOperationManagerUtil.joinRunningThread(fidoAsyncOperationManager);
+        assertTrue(future.isCancelled());
+        assertNull(fidoAsyncOperationManager.asyncOperationFuture);
         assertFalse(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
     }
 
@@ -25,13 +25,28 @@
 package de.cotech.hw.fido.internal.async;
 
 
+import java.util.concurrent.CountDownLatch;
+
+import de.cotech.hw.internal.async.OperationFuture;
+
+
 public class FidoAsyncOperationManagerUtil {
-    public static void joinRunningThread(FidoAsyncOperationManager asyncOperationManager) throws InterruptedException {
-        Thread thread = asyncOperationManager.asyncOperationThread;
-        if (thread == null) {
+    public static void awaitRunningOperation(FidoAsyncOperationManager asyncOperationManager)
+            throws InterruptedException {
+        OperationFuture<?> future = asyncOperationManager.asyncOperationFuture;
+        if (future == null) {
             return;
         }
-        thread.join();
+        awaitListeners(future);
+    }
+
+    /**
+     * Waits until the future is done, and all listeners registered so far have been called.
+     */
+    public static void awaitListeners(OperationFuture<?> future) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        future.addListener(latch::countDown, Runnable::run);
+        latch.await();
     }
 
 }
@@ -25,28 +25,33 @@
 package de.cotech.hw.fido.internal.async;
 
 
+import de.cotech.hw.internal.async.OperationFuture;
+import de.cotech.hw.internal.async.SecurityKeyOperationExecutor;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLooper;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = 24)
-public class FidoOperationThreadTest {
+public class FidoAsyncOperationTest {
 
     @Test
-    public void testThread() throws Exception {
-        TestFidoOperationThread thread = new TestFidoOperationThread();
+    public void testOperation() throws Exception {
+        TestFidoAsyncOperation operation = new TestFidoAsyncOperation();
 
-        thread.start();
-        thread.join();
+        OperationFuture<Integer> future = SecurityKeyOperationExecutor.getInstance().submit(operation, operation);
+        future.addCallback(operation.handler::post, operation);
+        FidoAsyncOperationManagerUtil.awaitListeners(future);
+        assertEquals(Integer.valueOf(5), future.get());
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
 
-        thread.assertLatchOk();
+        operation.assertLatchOk();
     }
 
 }
\ No newline at end of file
@@ -25,18 +25,26 @@
 package de.cotech.hw.fido.internal.operations;
 
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import de.cotech.hw.fido.exceptions.FidoPresenceRequiredException;
+import de.cotech.hw.fido.exceptions.FidoWrongKeyHandleException;
 import de.cotech.hw.fido.internal.FakeU2fFidoAppletConnection;
+import de.cotech.hw.fido.internal.operations.AuthenticateOp.KeyHandleResponse;
 import de.cotech.hw.util.Hex;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+
 
 @SuppressWarnings({ "WeakerAccess", "SameParameterValue" })
 public class AuthenticateOpTest {
     static final byte[] CHALLENGE_PARAM = Hex.decodeHexOrFail("d05cf90f8fb8465872893527acc13581d955240181ffed27ddca929a8209b14c");
     static final byte[] APPLICATION_PARAM = Hex.decodeHexOrFail("abc34b4eb978b911e55240f345649cd3d7e8b583fbe066984d9881f7b5494dcb");
     static final String REPLY_PRESENCE_REQUIRED = "6985";
+    static final String REPLY_WRONG_KEY_HANDLE = "6a80";
 
     static final String EXPECTED_CHALLENGE =
             "0002030081d05cf90f8fb8465872893527acc13581d955240181ffed27ddca92" +
@@ -52,6 +60,12 @@ public class AuthenticateOpTest {
             "9111966c9e43e0245440325ab0c99d77d5c0ed35db0579fe2de080776c92c797" +
                     "ffedcd50eb8723a5a3354e654887a7ced66598994bbc079abde76bd041bb92da");
 
+    static final byte[] OTHER_KEY_HANDLE = new byte[64];
+    static final String EXPECTED_CHECK_ONLY_CHALLENGE = "00020700" + EXPECTED_CHALLENGE.substring(8);
+    static final String EXPECTED_CHECK_ONLY_CHALLENGE_OTHER =
+            "0002070081" + Hex.encodeHexString(CHALLENGE_PARAM) + Hex.encodeHexString(APPLICATION_PARAM) +
+                    "40" + Hex.encodeHexString(OTHER_KEY_HANDLE);
+
     AuthenticateOp authenticateOp;
     FakeU2fFidoAppletConnection fakeConnection;
 
@@ -74,4 +88,43 @@ public class AuthenticateOpTest {
 
         authenticateOp.authenticate(CHALLENGE_PARAM, APPLICATION_PARAM, KEY_HANDLE);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void authenticate_multipleKeyHandles() throws Exception {
+        fakeConnection.expect(EXPECTED_CHECK_ONLY_CHALLENGE_OTHER, REPLY_WRONG_KEY_HANDLE);
+        fakeConnection.expect(EXPECTED_CHECK_ONLY_CHALLENGE, REPLY_PRESENCE_REQUIRED);
+        fakeConnection.expect(EXPECTED_CHALLENGE, REPLY_OK);
+
+        KeyHandleResponse response = authenticateOp.authenticate(
+                CHALLENGE_PARAM, APPLICATION_PARAM, Arrays.asList(OTHER_KEY_HANDLE, KEY_HANDLE));
+
+        assertArrayEquals(KEY_HANDLE, response.keyHandle());
+    }
+
+    @Test
+    public void authenticate_singleKeyHandle_skipsCheckOnly() throws Exception {
+        fakeConnection.expect(EXPECTED_CHALLENGE, REPLY_OK);
+
+        KeyHandleResponse response = authenticateOp.authenticate(
+                CHALLENGE_PARAM, APPLICATION_PARAM, Collections.singletonList(KEY_HANDLE));
+
+        assertArrayEquals(KEY_HANDLE, response.keyHandle());
+    }
+
+    @Test
+    public void findKeyHandle_stopsAtFirstAccepted() throws Exception {
+        fakeConnection.expect(EXPECTED_CHECK_ONLY_CHALLENGE, REPLY_PRESENCE_REQUIRED);
+
+        byte[] keyHandle = authenticateOp.findKeyHandle(
+                CHALLENGE_PARAM, APPLICATION_PARAM, Arrays.asList(KEY_HANDLE, OTHER_KEY_HANDLE));
+
+        assertArrayEquals(KEY_HANDLE, keyHandle);
+    }
+
+    @Test(expected = FidoWrongKeyHandleException.class)
+    public void findKeyHandle_noneAccepted() throws Exception {
+        fakeConnection.expect(EXPECTED_CHECK_ONLY_CHALLENGE_OTHER, REPLY_WRONG_KEY_HANDLE);
+
+        authenticateOp.findKeyHandle(CHALLENGE_PARAM, APPLICATION_PARAM, Collections.singletonList(OTHER_KEY_HANDLE));
+    }
+}
@@ -33,4 +33,10 @@ import de.cotech.hw.fido2.internal.ctap2.Ctap2Response;
 public interface Ctap2Callback<CR extends Ctap2Response> {
     void onResponse(CR response);
     void onIoException(IOException e);
+
+    /**
+     * Called once per operation when the security key waits for the user to touch it.
+     */
+    default void onUserPresenceRequired() {
+    }
 }
@@ -38,9 +38,9 @@ import de.cotech.hw.SecurityKeyManagerConfig;
 import de.cotech.hw.fido2.domain.create.PublicKeyCredentialCreationOptions;
 import de.cotech.hw.fido2.domain.get.PublicKeyCredentialRequestOptions;
 import de.cotech.hw.fido2.internal.Fido2AppletConnection;
-import de.cotech.hw.fido2.internal.async.Ctap2Fido2OperationThread;
+import de.cotech.hw.fido2.internal.async.Ctap2Fido2AsyncOperation;
 import de.cotech.hw.fido2.internal.async.Fido2AsyncOperationManager;
-import de.cotech.hw.fido2.internal.async.WebauthnFido2OperationThread;
+import de.cotech.hw.fido2.internal.async.WebauthnFido2AsyncOperation;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Command;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Response;
 import de.cotech.hw.fido2.internal.json.JsonPublicKeyCredentialSerializer;
@@ -160,10 +160,10 @@ public class Fido2SecurityKey extends SecurityKey {
     void webauthnCommandAsync(
             WC command, WebauthnCallback<WR> callback, Handler handler,
             LifecycleOwner lifecycleOwner) {
-        WebauthnFido2OperationThread<WR, WC>
-                fidoOperationThread = new WebauthnFido2OperationThread<>(
+        WebauthnFido2AsyncOperation<WR, WC>
+                webauthnAsyncOperation = new WebauthnFido2AsyncOperation<>(
                 fido2AppletConnection, operationFactory, handler, callback, command, USER_PRESENCE_CHECK_DELAY_MS);
-        fido2AsyncOperationManager.startAsyncOperation(lifecycleOwner, fidoOperationThread);
+        fido2AsyncOperationManager.startAsyncOperation(lifecycleOwner, webauthnAsyncOperation);
     }
 
     @WorkerThread
@@ -182,9 +182,9 @@ public class Fido2SecurityKey extends SecurityKey {
     @AnyThread
     public <CR extends Ctap2Response> void ctap2RawCommandAsync(Ctap2Command<CR> command,
             Ctap2Callback<CR> callback, Handler handler, LifecycleOwner lifecycleOwner) {
-        Ctap2Fido2OperationThread<CR> ctap2Fido2OperationThread = new Ctap2Fido2OperationThread<>(
+        Ctap2Fido2AsyncOperation<CR> ctap2AsyncOperation = new Ctap2Fido2AsyncOperation<>(
                 fido2AppletConnection, handler, command, callback, USER_PRESENCE_CHECK_DELAY_MS);
-        fido2AsyncOperationManager.startAsyncOperation(lifecycleOwner, ctap2Fido2OperationThread);
+        fido2AsyncOperationManager.startAsyncOperation(lifecycleOwner, ctap2AsyncOperation);
     }
 
     @AnyThread
@@ -197,13 +197,18 @@ public class Fido2SecurityKey extends SecurityKey {
         return new WebauthnCallback<PublicKeyCredential>() {
             @Override
             public void onResponse(PublicKeyCredential jsonResponse) {
-                jsonPublicKeyCredentialSerializer.publicKeyCredentialToJsonString(jsonResponse);
+                callback.onResponse(jsonPublicKeyCredentialSerializer.publicKeyCredentialToJsonString(jsonResponse));
             }
 
             @Override
             public void onIoException(IOException e) {
                 callback.onIoException(e);
             }
+
+            @Override
+            public void onUserPresenceRequired() {
+                callback.onUserPresenceRequired();
+            }
         };
     }
 }
@@ -35,6 +35,11 @@ import de.cotech.hw.fido2.internal.async.Fido2AsyncOperationManager;
 import de.cotech.hw.fido2.internal.operations.WebauthnSecurityKeyOperationFactory;
 import de.cotech.hw.fido2.internal.pinauth.PinAuthCryptoUtil;
 import de.cotech.hw.fido2.internal.pinauth.PinProtocolV1;
+import de.cotech.hw.fido2.internal.pinauth.PinTokenCache;
+import de.cotech.hw.fido2.internal.pinauth.PlatformKeyPairPool;
+import de.cotech.hw.fido2.internal.routing.CredentialRoutingIndex;
+import de.cotech.hw.internal.async.SecurityKeyOperationExecutor;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
 import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
 import de.cotech.hw.internal.transport.Transport;
 
@@ -42,6 +47,9 @@ import de.cotech.hw.internal.transport.Transport;
 public class Fido2SecurityKeyConnectionMode extends SecurityKeyConnectionMode<Fido2SecurityKey> {
     private static Fido2SecurityKeyConnectionMode INSTANCE;
     private final Fido2SecurityKeyConnectionModeConfig fido2Config;
+    private final PinTokenCache pinTokenCache;
+    private final PlatformKeyPairPool platformKeyPairPool;
+    private final CredentialRoutingIndex credentialRoutingIndex;
 
     public static Fido2SecurityKeyConnectionMode getInstance() {
         if (INSTANCE == null) {
@@ -59,6 +67,11 @@ public class Fido2SecurityKeyConnectionMode extends SecurityKeyConnectionMode<Fi
 
     public Fido2SecurityKeyConnectionMode(Fido2SecurityKeyConnectionModeConfig fido2Config) {
         this.fido2Config = fido2Config;
+        long pinTokenCacheTimeoutMs = fido2Config.getPinTokenCacheTimeoutMs();
+        this.pinTokenCache = pinTokenCacheTimeoutMs > 0 ? PinTokenCache.createWithTimeout(pinTokenCacheTimeoutMs) : null;
+        this.platformKeyPairPool = PlatformKeyPairPool.create();
+        this.credentialRoutingIndex =
+                fido2Config.isCredentialRoutingEnabled() ? CredentialRoutingIndex.getInstance() : null;
     }
 
     @Override
@@ -67,14 +80,27 @@ public class Fido2SecurityKeyConnectionMode extends SecurityKeyConnectionMode<Fi
             throw new IllegalArgumentException("Received incompatible transport!");
         }
 
-        Fido2AppletConnection fido2AppletConnection = Fido2AppletConnection.getInstanceForTransport(transport);
+        Fido2AppletConnection fido2AppletConnection;
+        if (config.isEnableAppletConnectionPool()) {
+            fido2AppletConnection = AppletConnectionPool.getInstance().acquire(transport,
+                    Fido2AppletConnection.AID_FIDO, Fido2AppletConnection.class,
+                    Fido2AppletConnection::getInstanceForTransport);
+        } else {
+            fido2AppletConnection = Fido2AppletConnection.getInstanceForTransport(transport);
+        }
+        fido2AppletConnection.setOperationSpanListener(config.getOperationSpanListener());
+        fido2AppletConnection.setPinTokenCache(pinTokenCache);
         fido2AppletConnection.connectIfNecessary();
+        if (fido2AppletConnection.isSupportClientPin()) {
+            platformKeyPairPool.refill();
+        }
         fido2AppletConnection.setForceCtap1(fido2Config.isForceU2f());
 
-        WebauthnSecurityKeyOperationFactory operationFactory =
-                new WebauthnSecurityKeyOperationFactory(new PinProtocolV1(new PinAuthCryptoUtil()));
-        return new Fido2SecurityKey(config, fido2AppletConnection, transport, new Fido2AsyncOperationManager(),
-                operationFactory);
+        WebauthnSecurityKeyOperationFactory operationFactory = new WebauthnSecurityKeyOperationFactory(
+                new PinProtocolV1(new PinAuthCryptoUtil(platformKeyPairPool)), credentialRoutingIndex);
+        Fido2AsyncOperationManager asyncOperationManager =
+                new Fido2AsyncOperationManager(SecurityKeyOperationExecutor.getInstance(), transport);
+        return new Fido2SecurityKey(config, fido2AppletConnection, transport, asyncOperationManager, operationFactory);
     }
 
     @Override
@@ -34,19 +34,44 @@ import com.google.auto.value.AutoValue;
 public abstract class Fido2SecurityKeyConnectionModeConfig  implements Parcelable {
     public abstract boolean isForceU2f();
 
+    public abstract long getPinTokenCacheTimeoutMs();
+
+    public abstract boolean isCredentialRoutingEnabled();
+
     public static Fido2SecurityKeyConnectionModeConfig getDefaultConfig() {
         return builder().build();
     }
 
     public static Fido2SecurityKeyConnectionModeConfig.Builder builder() {
         return new AutoValue_Fido2SecurityKeyConnectionModeConfig.Builder()
-                .setForceU2f(false);
+                .setForceU2f(false)
+                .setPinTokenCacheTimeoutMs(0)
+                .setCredentialRoutingEnabled(false);
     }
 
     @AutoValue.Builder
     public static abstract class Builder {
         public abstract Builder setForceU2f(boolean forceU2f);
 
+        /**
+         * Keeps PIN tokens across connections to the same Security Key for the given time.
+         * <p>
+         * By default, the PIN is verified again for every connection. With a positive timeout, a PIN token obtained
+         * once is reused by later operations on a persistently connected Security Key, until the timeout elapses,
+         * the Security Key is disconnected, or it reports a PIN-related error.
+         */
+        public abstract Builder setPinTokenCacheTimeoutMs(long pinTokenCacheTimeoutMs);
+
+        /**
+         * Remembers which Security Key holds which credential, for users with several Security Keys.
+         * <p>
+         * When enabled, the credentials returned by successful operations are recorded in an in-memory index, which
+         * stores only salted hashes of credential ids. Authentication requests are then narrowed to the credentials
+         * the connected Security Key is known to hold, and fail right away on a Security Key that is known to hold
+         * none of them, so the user can be asked for another Security Key without touching this one.
+         */
+        public abstract Builder setCredentialRoutingEnabled(boolean credentialRoutingEnabled);
+
         public abstract Fido2SecurityKeyConnectionModeConfig build();
     }
 }
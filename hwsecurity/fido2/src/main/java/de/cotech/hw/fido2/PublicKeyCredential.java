@@ -25,6 +25,10 @@
 package de.cotech.hw.fido2;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import com.google.auto.value.AutoValue;
 import de.cotech.hw.fido2.domain.AuthenticatorResponse;
 import de.cotech.hw.fido2.internal.utils.WebsafeBase64;
@@ -35,6 +39,12 @@ import de.cotech.hw.fido2.internal.webauthn.WebauthnResponse;
 public abstract class PublicKeyCredential extends Credential implements WebauthnResponse {
     public abstract byte[] rawId();
     public abstract AuthenticatorResponse response();
+    /**
+     * Assertions for further discoverable credentials of the same relying party, if the authenticator holds more
+     * than one. They are retrieved in the same session as this assertion, so an account picker can offer all of
+     * them without asking for user presence again. Empty for other credentials.
+     */
+    public abstract List<PublicKeyCredential> additionalAssertions();
 
     public String id() {
         return WebsafeBase64.encodeToString(rawId());
@@ -46,6 +56,12 @@ public abstract class PublicKeyCredential extends Credential implements Webauthn
     }
 
     public static PublicKeyCredential create(byte[] rawId, AuthenticatorResponse response) {
-        return new AutoValue_PublicKeyCredential(rawId, response);
+        return new AutoValue_PublicKeyCredential(rawId, response, Collections.emptyList());
+    }
+
+    public static PublicKeyCredential create(byte[] rawId, AuthenticatorResponse response,
+            List<PublicKeyCredential> additionalAssertions) {
+        return new AutoValue_PublicKeyCredential(rawId, response,
+                Collections.unmodifiableList(new ArrayList<>(additionalAssertions)));
     }
 }
@@ -25,8 +25,11 @@
 package de.cotech.hw.fido2;
 
 
+import java.util.List;
+
 import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
 import de.cotech.hw.fido2.domain.get.PublicKeyCredentialRequestOptions;
 import de.cotech.hw.fido2.internal.webauthn.WebauthnCommand;
 
@@ -47,4 +50,10 @@ public abstract class PublicKeyCredentialGet extends WebauthnCommand {
     public PublicKeyCredentialGet withClientPin(String clientPin, boolean lastAttemptOk) {
         return new AutoValue_PublicKeyCredentialGet(origin(), options(), clientPin, lastAttemptOk);
     }
+
+    public PublicKeyCredentialGet withAllowCredentials(List<PublicKeyCredentialDescriptor> allowCredentials) {
+        PublicKeyCredentialRequestOptions options = PublicKeyCredentialRequestOptions.create(options().challenge(),
+                options().timeout(), options().rpId(), allowCredentials, options().userVerification());
+        return new AutoValue_PublicKeyCredentialGet(origin(), options, clientPin(), lastAttemptOk());
+    }
 }
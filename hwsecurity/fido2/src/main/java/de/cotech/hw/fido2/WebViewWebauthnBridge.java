@@ -25,10 +25,13 @@
 package de.cotech.hw.fido2;
 
 
-import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import android.annotation.TargetApi;
 import android.content.Context;
@@ -42,19 +45,21 @@ import android.webkit.WebView;
 
 import androidx.annotation.Keep;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.FragmentManager;
 import de.cotech.hw.fido2.domain.create.PublicKeyCredentialCreationOptions;
 import de.cotech.hw.fido2.domain.get.PublicKeyCredentialRequestOptions;
 import de.cotech.hw.fido2.internal.json.JsonPublicKeyCredentialSerializer;
 import de.cotech.hw.fido2.internal.json.JsonWebauthnOptionsParser;
-import de.cotech.hw.fido2.internal.utils.AndroidUtils;
 import de.cotech.hw.fido2.ui.WebauthnDialogFragment;
 import de.cotech.hw.fido2.ui.WebauthnDialogFragment.OnGetAssertionCallback;
 import de.cotech.hw.fido2.ui.WebauthnDialogFragment.OnMakeCredentialCallback;
 import de.cotech.hw.fido2.ui.WebauthnDialogOptions;
+import de.cotech.hw.internal.async.OperationFuture;
+import de.cotech.hw.internal.async.SecurityKeyOperationExecutor;
+import de.cotech.hw.internal.webview.JavascriptBridgeScript;
 import de.cotech.hw.util.HwTimber;
-import org.json.JSONException;
 
 import de.cotech.hw.ui.R;
 
@@ -73,12 +78,19 @@ public class WebViewWebauthnBridge {
     private final FragmentManager fragmentManager;
     private final WebView webView;
     private final WebauthnDialogOptions.Builder optionsBuilder;
-
-    private String currentOrigin;
+    private final Handler mainHandler;
+    // parses and serializes JSON in order, and never waits for security key operations blocked on user presence
+    private final Executor jsonExecutor =
+            SecurityKeyOperationExecutor.createThreadPool("hwsecurity-webauthn-bridge", 1);
+
+    // written on the main thread, read by JavaScript interface calls on the JavaBridge thread
+    private volatile String currentOrigin;
+    private volatile int pageLoadCount;
     private boolean loadingNewPage;
-    private JsonWebauthnOptionsParser jsonWebauthnOptionsParser =
+    private Set<String> allowedOrigins;
+    private final JsonWebauthnOptionsParser jsonWebauthnOptionsParser =
             new JsonWebauthnOptionsParser();
-    private JsonPublicKeyCredentialSerializer jsonPublicKeyCredentialSerializer =
+    private final JsonPublicKeyCredentialSerializer jsonPublicKeyCredentialSerializer =
             new JsonPublicKeyCredentialSerializer();
 
     @SuppressWarnings("unused") // public API
@@ -116,6 +128,9 @@ public class WebViewWebauthnBridge {
         this.fragmentManager = fragmentManager;
         this.webView = webView;
         this.optionsBuilder = optionsBuilder;
+        // start loading the script, so it is ready for the first page
+        JavascriptBridgeScript.getInstance(context, ASSETS_BRIDGE_JS);
+        this.mainHandler = new Handler(context.getMainLooper());
     }
 
     private void addJavascriptInterfaceToWebView() {
@@ -149,6 +164,26 @@ public class WebViewWebauthnBridge {
         }
     }
 
+    /**
+     * Restricts injection of the bridge to pages with one of the given origins, e.g. "https://example.org". By
+     * default, the bridge is injected into all HTTPS pages.
+     */
+    @SuppressWarnings("unused") // public API
+    public void setAllowedOrigins(@Nullable Collection<String> allowedOrigins) {
+        if (allowedOrigins == null) {
+            this.allowedOrigins = null;
+            return;
+        }
+        this.allowedOrigins = new HashSet<>();
+        for (String allowedOrigin : allowedOrigins) {
+            this.allowedOrigins.add(allowedOrigin.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private boolean isOriginAllowed(String origin) {
+        return allowedOrigins == null || allowedOrigins.contains(origin.toLowerCase(Locale.ROOT));
+    }
+
     // region delegate
 
     /**
@@ -176,6 +211,7 @@ public class WebViewWebauthnBridge {
     @SuppressWarnings("unused") // parity with WebViewClient.onPageStarted
     public void delegateOnPageStarted(WebView view, String url, Bitmap favicon) {
         this.currentOrigin = null;
+        this.pageLoadCount++;
         this.loadingNewPage = false;
 
         if (url == null) {
@@ -189,6 +225,10 @@ public class WebViewWebauthnBridge {
         }
 
         this.currentOrigin = "https://" + uri.getAuthority();
+        if (!isOriginAllowed(currentOrigin)) {
+            HwTimber.d("Not injecting WebAuthn bridge for origin %s", currentOrigin);
+            return;
+        }
         this.loadingNewPage = true;
     }
 
@@ -196,36 +236,47 @@ public class WebViewWebauthnBridge {
         if (loadingNewPage) {
             loadingNewPage = false;
             HwTimber.d("Scheduling WebAuthn bridge injection!");
-            Handler handler = new Handler(context.getMainLooper());
-            handler.postAtFrontOfQueue(this::injectJavascriptBridge);
+            mainHandler.postAtFrontOfQueue(this::injectJavascriptBridge);
         }
     }
 
     private void injectJavascriptBridge() {
-        try {
-            String jsContent = AndroidUtils.loadTextFromAssets(context, ASSETS_BRIDGE_JS, Charset.defaultCharset());
-            webView.evaluateJavascript("javascript:(" + jsContent + ")()", null);
-        } catch (IOException e) {
-            HwTimber.e(e);
-            throw new IllegalStateException();
-        }
+        JavascriptBridgeScript.getInstance(context, ASSETS_BRIDGE_JS).injectInto(webView);
     }
 
     // endregion
 
     private void javascriptPublicKeyCredentialGet(String optionsJsonString) {
         HwTimber.d("javascriptPublicKeyCredentialGet: %s", optionsJsonString);
-        try {
-            PublicKeyCredentialRequestOptions options = jsonWebauthnOptionsParser.fromOptionsJsonGetAssertion(optionsJsonString);
-            javascriptPublicKeyCredentialGet(options);
-        } catch (JSONException e) {
-            HwTimber.e(e);
+        // bind the request to the page it came from, before the page can change
+        String origin = currentOrigin;
+        int requestPageLoadCount = pageLoadCount;
+        if (origin == null) {
+            HwTimber.e("Ignoring WebAuthn request, page has no valid origin");
+            return;
         }
+        OperationFuture
+                .submit(jsonExecutor, () -> jsonWebauthnOptionsParser.fromOptionsJsonGetAssertion(optionsJsonString))
+                .addCallback(mainHandler::post, new OperationFuture.Callback<PublicKeyCredentialRequestOptions>() {
+                    @Override
+                    public void onSuccess(PublicKeyCredentialRequestOptions options) {
+                        if (!isCurrentPage(origin, requestPageLoadCount)) {
+                            HwTimber.e("Ignoring WebAuthn request, page changed while parsing it");
+                            return;
+                        }
+                        javascriptPublicKeyCredentialGet(origin, options);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable throwable) {
+                        HwTimber.e(throwable);
+                    }
+                });
     }
 
-    private void javascriptPublicKeyCredentialGet(PublicKeyCredentialRequestOptions options) {
+    private void javascriptPublicKeyCredentialGet(String origin, PublicKeyCredentialRequestOptions options) {
         PublicKeyCredentialGet
-                credentialGetCommand = PublicKeyCredentialGet.create(currentOrigin, options);
+                credentialGetCommand = PublicKeyCredentialGet.create(origin, options);
 
         OnGetAssertionCallback onGetCredentialCallback = new OnGetAssertionCallback() {
             @Override
@@ -248,7 +299,7 @@ public class WebViewWebauthnBridge {
         };
 
         optionsBuilder.setTimeoutMs(options.timeout());
-        optionsBuilder.setTitle(context.getString(R.string.hwsecurity_fido_title_default_authenticate_app_id, getDisplayOrigin(currentOrigin)));
+        optionsBuilder.setTitle(context.getString(R.string.hwsecurity_fido_title_default_authenticate_app_id, getDisplayOrigin(origin)));
 
         WebauthnDialogFragment webauthnDialogFragment = WebauthnDialogFragment.newInstance(
                 credentialGetCommand, optionsBuilder.build());
@@ -256,23 +307,45 @@ public class WebViewWebauthnBridge {
         webauthnDialogFragment.show(fragmentManager);
     }
 
+    private boolean isCurrentPage(String origin, int requestPageLoadCount) {
+        return requestPageLoadCount == pageLoadCount && origin.equals(currentOrigin);
+    }
+
     private void javascriptPublicKeyCredentialStore(String optionsJsonString) {
         HwTimber.e("store: Not implemented");
     }
 
     private void javascriptPublicKeyCredentialCreate(String optionsJsonString) {
         HwTimber.d("javascriptPublicKeyCredentialCreate: %s", optionsJsonString);
-        try {
-            PublicKeyCredentialCreationOptions options = jsonWebauthnOptionsParser.fromOptionsJsonMakeCredential(optionsJsonString);
-            javascriptPublicKeyCredentialCreate(options);
-        } catch (JSONException e) {
-            HwTimber.e(e);
+        // bind the request to the page it came from, before the page can change
+        String origin = currentOrigin;
+        int requestPageLoadCount = pageLoadCount;
+        if (origin == null) {
+            HwTimber.e("Ignoring WebAuthn request, page has no valid origin");
+            return;
         }
+        OperationFuture
+                .submit(jsonExecutor, () -> jsonWebauthnOptionsParser.fromOptionsJsonMakeCredential(optionsJsonString))
+                .addCallback(mainHandler::post, new OperationFuture.Callback<PublicKeyCredentialCreationOptions>() {
+                    @Override
+                    public void onSuccess(PublicKeyCredentialCreationOptions options) {
+                        if (!isCurrentPage(origin, requestPageLoadCount)) {
+                            HwTimber.e("Ignoring WebAuthn request, page changed while parsing it");
+                            return;
+                        }
+                        javascriptPublicKeyCredentialCreate(origin, options);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable throwable) {
+                        HwTimber.e(throwable);
+                    }
+                });
     }
 
-    private void javascriptPublicKeyCredentialCreate(PublicKeyCredentialCreationOptions options) {
+    private void javascriptPublicKeyCredentialCreate(String origin, PublicKeyCredentialCreationOptions options) {
         PublicKeyCredentialCreate
-                credentialCreateCommand = PublicKeyCredentialCreate.create(currentOrigin, options);
+                credentialCreateCommand = PublicKeyCredentialCreate.create(origin, options);
 
         OnMakeCredentialCallback onMakeCredentialCallback = new OnMakeCredentialCallback() {
             @Override
@@ -295,7 +368,7 @@ public class WebViewWebauthnBridge {
         };
 
         optionsBuilder.setTimeoutMs(options.timeout());
-        optionsBuilder.setTitle(context.getString(R.string.hwsecurity_fido_title_default_register_app_id, getDisplayOrigin(currentOrigin)));
+        optionsBuilder.setTitle(context.getString(R.string.hwsecurity_fido_title_default_register_app_id, getDisplayOrigin(origin)));
 
         WebauthnDialogFragment webauthnDialogFragment = WebauthnDialogFragment.newInstance(
                 credentialCreateCommand, optionsBuilder.build());
@@ -318,16 +391,33 @@ public class WebViewWebauthnBridge {
     }
 
     private void callJavascriptResolve(PublicKeyCredential publicKeyCredential) {
-        String publicKeyCredentialJson =
-                jsonPublicKeyCredentialSerializer.publicKeyCredentialToJsonString(publicKeyCredential);
-        String javascript = "javascript:webauthnbridge.handleResolve(" + publicKeyCredentialJson + ")";
-        webView.evaluateJavascript(javascript, null);
+        OperationFuture
+                .submit(jsonExecutor, () -> {
+                    String publicKeyCredentialJson =
+                            jsonPublicKeyCredentialSerializer.publicKeyCredentialToJsonString(publicKeyCredential);
+                    return "javascript:webauthnbridge.handleResolve(" + publicKeyCredentialJson + ")";
+                })
+                .addCallback(mainHandler::post, new OperationFuture.Callback<String>() {
+                    @Override
+                    public void onSuccess(String javascript) {
+                        webView.evaluateJavascript(javascript, null);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable throwable) {
+                        HwTimber.e(throwable);
+                    }
+                });
     }
 
     public void setForceU2f(boolean forceU2f) {
         optionsBuilder.setForceU2f(forceU2f);
     }
 
+    public void setCredentialRoutingEnabled(boolean credentialRoutingEnabled) {
+        optionsBuilder.setCredentialRoutingEnabled(credentialRoutingEnabled);
+    }
+
     private String getDisplayOrigin(String origin) {
         try {
             URI appIdUri = new URI(origin);
@@ -34,4 +34,10 @@ import de.cotech.hw.fido2.internal.webauthn.WebauthnResponse;
 public interface WebauthnCallback<R extends WebauthnResponse> {
     void onResponse(R response);
     void onIoException(IOException e);
+
+    /**
+     * Called once per operation when the security key waits for the user to touch it.
+     */
+    default void onUserPresenceRequired() {
+    }
 }
@@ -37,6 +37,8 @@ import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
 
 import de.cotech.hw.SecurityKeyException;
+import de.cotech.hw.SecurityKeyOperationSpan.SpanType;
+import de.cotech.hw.SecurityKeyOperationSpanListener;
 import de.cotech.hw.exceptions.AppletFileNotFoundException;
 import de.cotech.hw.exceptions.ClaNotSupportedException;
 import de.cotech.hw.exceptions.InsNotSupportedException;
@@ -52,23 +54,31 @@ import de.cotech.hw.fido2.internal.ctap2.CtapErrorResponse;
 import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorGetInfo;
 import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorGetInfoResponse;
 import de.cotech.hw.fido2.internal.pinauth.PinToken;
+import de.cotech.hw.fido2.internal.pinauth.PinTokenCache;
 import de.cotech.hw.internal.iso7816.CommandApdu;
 import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
+import de.cotech.hw.internal.transport.AppletConnectionPool.PooledAppletConnection;
+import de.cotech.hw.internal.transport.OperationSpanRecorder;
 import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
 import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.internal.transport.Transport.UserPresenceListener;
 import de.cotech.hw.util.Hex;
 import de.cotech.hw.util.HwTimber;
 
 
 @RestrictTo(Scope.LIBRARY_GROUP)
-public class Fido2AppletConnection {
+public class Fido2AppletConnection implements PooledAppletConnection {
     private static final int APDU_SW1_RESPONSE_AVAILABLE = 0x61;
     private static final int RESPONSE_SW1_INCORRECT_LENGTH = 0x6C;
+    private static final int AAGUID_LENGTH = 16;
+
+    // see to "FIDO U2F NFC protocol", Section 5. Applet selection
+    // https://fidoalliance.org/specs/fido-u2f-v1.2-ps-20170411/fido-u2f-nfc-protocol-v1.2-ps-20170411.html
+    public static final byte[] AID_FIDO = Hex.decodeHexOrFail("A0000006472F0001");
 
     private static final List<byte[]> FIDO_AID_PREFIXES = Arrays.asList(
-            // see to "FIDO U2F NFC protocol", Section 5. Applet selection
-            // https://fidoalliance.org/specs/fido-u2f-v1.2-ps-20170411/fido-u2f-nfc-protocol-v1.2-ps-20170411.html
-            Hex.decodeHexOrFail("A0000006472F0001"),
+            AID_FIDO,
             // Workaround for Solokey for firmware < 2.4.0: https://github.com/solokeys/solo/issues/213
             Hex.decodeHexOrFail("A0000006472F000100"),
             // old Yubico demo applet AID
@@ -81,12 +91,16 @@ public class Fido2AppletConnection {
     private final Fido2CommandApduFactory commandFactory;
     @NonNull
     private final Ctap2CommandApduTransformer ctap2CommandApduTransformer;
+    @NonNull
+    private OperationSpanRecorder spanRecorder = OperationSpanRecorder.createDisabled();
 
     private boolean isFidoAppletConnected;
     private AuthenticatorGetInfoResponse ctap2Info;
     private boolean isForceCtap1;
 
     private PinToken cachedPinToken;
+    @Nullable
+    private PinTokenCache pinTokenCache;
 
     public static Fido2AppletConnection getInstanceForTransport(@NonNull Transport transport) {
         return new Fido2AppletConnection(transport, new Fido2CommandApduFactory(), new Ctap2CommandApduTransformer());
@@ -99,6 +113,26 @@ public class Fido2AppletConnection {
         this.ctap2CommandApduTransformer = ctap2CommandApduTransformer;
     }
 
+    public void setOperationSpanListener(@Nullable SecurityKeyOperationSpanListener operationSpanListener) {
+        spanRecorder = OperationSpanRecorder.create(operationSpanListener);
+    }
+
+    /**
+     * Shares PIN tokens with other connections to the same authenticator. Without a cache, PIN tokens are only kept
+     * for the lifetime of this connection.
+     */
+    public void setPinTokenCache(@Nullable PinTokenCache pinTokenCache) {
+        this.pinTokenCache = pinTokenCache;
+    }
+
+    /**
+     * Notifies the listener when the authenticator signals that it is waiting for user presence while processing a
+     * CTAP2 command. Only supported over CTAPHID.
+     */
+    public void setUserPresenceListener(@Nullable UserPresenceListener userPresenceListener) {
+        transport.setUserPresenceListener(userPresenceListener);
+    }
+
     // region connection management
 
     public void connectIfNecessary() throws IOException {
@@ -135,6 +169,20 @@ public class Fido2AppletConnection {
         }
     }
 
+    @Override
+    public void reselectApplet() throws IOException {
+        if (!isFidoAppletConnected || transport.getTransportType() == TransportType.USB_CTAPHID) {
+            return;
+        }
+
+        try {
+            selectFilesFromPrefixOrFail();
+        } catch (IOException e) {
+            isFidoAppletConnected = false;
+            throw e;
+        }
+    }
+
     private AuthenticatorGetInfoResponse ctap2AuthenticatorGetInfo() throws IOException {
         return ctap2CommunicateOrThrow(AuthenticatorGetInfo.create());
     }
@@ -156,6 +204,9 @@ public class Fido2AppletConnection {
             throws IOException {
         byte[] data = responseApdu.getData();
         if (data[0] != CtapErrorResponse.CTAP2_OK) {
+            if (isPinTokenInvalidatingError(data[0])) {
+                setCachedPinToken(null);
+            }
             throw new Ctap2Exception(CtapErrorResponse.create(data[0]));
         }
 
@@ -163,7 +214,23 @@ public class Fido2AppletConnection {
         return command.getResponseFactory().createResponse(responseData);
     }
 
+    private static boolean isPinTokenInvalidatingError(byte errorCode) {
+        switch (errorCode) {
+            case CtapErrorResponse.CTAP2_ERR_PIN_INVALID:
+            case CtapErrorResponse.CTAP2_ERR_PIN_BLOCKED:
+            case CtapErrorResponse.CTAP2_ERR_PIN_AUTH_INVALID:
+            case CtapErrorResponse.CTAP2_ERR_PIN_AUTH_BLOCKED:
+            case CtapErrorResponse.CTAP2_ERR_PIN_NOT_SET:
+            case CtapErrorResponse.CTAP2_ERR_PIN_REQUIRED:
+            case CtapErrorResponse.CTAP2_ERR_PIN_TOKEN_EXPIRED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private byte[] selectFilesFromPrefixOrFail() throws IOException {
+        AppletConnectionPool.getInstance().onAppletSelected(transport, this);
         for (byte[] fileAid : FIDO_AID_PREFIXES) {
             byte[] initializedAid = selectFileOrFail(fileAid);
             if (initializedAid != null) {
@@ -232,16 +299,60 @@ public class Fido2AppletConnection {
 
     // ISO/IEC 7816-4
     private ResponseApdu communicate(CommandApdu commandApdu) throws IOException {
-        ResponseApdu lastResponse;
-
-        lastResponse = sendWithChaining(commandApdu);
-        if (lastResponse.getSw1() == RESPONSE_SW1_INCORRECT_LENGTH && lastResponse.getSw2() != 0) {
-            commandApdu = commandApdu.withNe(lastResponse.getSw2());
-            lastResponse = sendWithChaining(commandApdu);
+        synchronized (transport) {
+            spanRecorder.beginSpan(getSpanTypeForCommand(commandApdu));
+            try {
+                ResponseApdu lastResponse;
+
+                lastResponse = sendWithChaining(commandApdu);
+                if (lastResponse.getSw1() == RESPONSE_SW1_INCORRECT_LENGTH && lastResponse.getSw2() != 0) {
+                    commandApdu = commandApdu.withNe(lastResponse.getSw2());
+                    lastResponse = sendWithChaining(commandApdu);
+                }
+                lastResponse = readChainedResponseIfAvailable(lastResponse);
+
+                return lastResponse;
+            } finally {
+                spanRecorder.endSpan();
+            }
         }
-        lastResponse = readChainedResponseIfAvailable(lastResponse);
+    }
+
+    /**
+     * Returns the lock that is held while a command is exchanged with the transport. Holding it across several
+     * commands keeps commands from other threads from being interleaved with them.
+     */
+    @NonNull
+    public Object getTransportLock() {
+        return transport;
+    }
 
-        return lastResponse;
+    private static SpanType getSpanTypeForCommand(CommandApdu commandApdu) {
+        if (Ctap2CommandApduTransformer.isCtap2CommandApdu(commandApdu)) {
+            byte[] data = commandApdu.getData();
+            if (data.length == 0) {
+                return SpanType.COMMAND;
+            }
+            switch (data[0]) {
+                case Ctap2Command.COMMAND_MAKE_CREDENTIAL:
+                case Ctap2Command.COMMAND_GET_ASSERTION:
+                case Ctap2Command.COMMAND_GET_NEXT_ASSERTION:
+                    return SpanType.CRYPTO_OPERATION;
+                case Ctap2Command.COMMAND_CLIENT_PIN:
+                    return SpanType.VERIFY_PIN;
+                default:
+                    return SpanType.COMMAND;
+            }
+        }
+        switch (commandApdu.getINS()) {
+            case Fido2CommandApduFactory.INS_SELECT_FILE:
+                return SpanType.SELECT;
+            case Fido2CommandApduFactory.U2F_REGISTER:
+            case Fido2CommandApduFactory.U2F_AUTHENTICATE:
+                return SpanType.CRYPTO_OPERATION;
+            default:
+                return SpanType.COMMAND;
+        }
     }
 
     // ISO/IEC 7816-4
@@ -268,7 +379,7 @@ public class Fido2AppletConnection {
             HwTimber.w("Transport protocol does not support extended length. Probably an old device with NFC, such as Nexus 5X, Nexus 6P. We still try sending extended length!");
         }
 
-        ResponseApdu response = transport.transceive(commandApdu.withExtendedApduNe());
+        ResponseApdu response = spanRecorder.transceive(transport, commandApdu.withExtendedApduNe());
         if (response.getSw() != WrongRequestLengthException.SW_WRONG_REQUEST_LENGTH) {
             return response;
         } else {
@@ -276,27 +387,32 @@ public class Fido2AppletConnection {
         }
 
         if (commandFactory.isSuitableForSingleShortApdu(commandApdu)) {
-            return transport.transceive(commandApdu.withShortApduNe());
+            return spanRecorder.transceive(transport, commandApdu.withShortApduNe());
         }
 
-        ResponseApdu lastResponse = null;
-        List<CommandApdu> chainedApdus = commandFactory.createChainedApdus(commandApdu);
-        for (int i = 0, totalCommands = chainedApdus.size(); i < totalCommands; i++) {
-            CommandApdu chainedApdu = chainedApdus.get(i);
-            lastResponse = transport.transceive(chainedApdu);
+        spanRecorder.beginSpan(SpanType.CHAINING);
+        try {
+            ResponseApdu lastResponse = null;
+            List<CommandApdu> chainedApdus = commandFactory.createChainedApdus(commandApdu);
+            for (int i = 0, totalCommands = chainedApdus.size(); i < totalCommands; i++) {
+                CommandApdu chainedApdu = chainedApdus.get(i);
+                lastResponse = spanRecorder.transceive(transport, chainedApdu);
+
+                boolean isLastCommand = (i == totalCommands - 1);
+                if (!isLastCommand && !lastResponse.isSuccess()) {
+                    throw new IOException("Failed to chain apdu " +
+                            "(" + i + "/" + (totalCommands - 1) + ", last SW: " + Integer.toHexString(lastResponse.getSw()) + ")");
+                }
+            }
 
-            boolean isLastCommand = (i == totalCommands - 1);
-            if (!isLastCommand && !lastResponse.isSuccess()) {
-                throw new IOException("Failed to chain apdu " +
-                        "(" + i + "/" + (totalCommands - 1) + ", last SW: " + Integer.toHexString(lastResponse.getSw()) + ")");
+            if (lastResponse == null) {
+                throw new IllegalStateException();
             }
-        }
 
-        if (lastResponse == null) {
-            throw new IllegalStateException();
+            return lastResponse;
+        } finally {
+            spanRecorder.endSpan();
         }
-
-        return lastResponse;
     }
 
     // ISO/IEC 7816-4
@@ -307,20 +423,25 @@ public class Fido2AppletConnection {
             return lastResponse;
         }
 
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        result.write(lastResponse.getData());
-
-        do {
-            // GET RESPONSE ISO/IEC 7816-4 par.7.6.1
-            CommandApdu getResponse = commandFactory.createGetResponseCommand(lastResponse.getSw2());
-            lastResponse = transport.transceive(getResponse);
+        spanRecorder.beginSpan(SpanType.GET_RESPONSE);
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
             result.write(lastResponse.getData());
-        } while (lastResponse.getSw1() == APDU_SW1_RESPONSE_AVAILABLE);
 
-        result.write(lastResponse.getSw1());
-        result.write(lastResponse.getSw2());
+            do {
+                // GET RESPONSE ISO/IEC 7816-4 par.7.6.1
+                CommandApdu getResponse = commandFactory.createGetResponseCommand(lastResponse.getSw2());
+                lastResponse = spanRecorder.transceive(transport, getResponse);
+                result.write(lastResponse.getData());
+            } while (lastResponse.getSw1() == APDU_SW1_RESPONSE_AVAILABLE);
+
+            result.write(lastResponse.getSw1());
+            result.write(lastResponse.getSw2());
 
-        return ResponseApdu.fromBytes(result.toByteArray());
+            return ResponseApdu.fromBytes(result.toByteArray());
+        } finally {
+            spanRecorder.endSpan();
+        }
     }
 
     // endregion
@@ -368,6 +489,37 @@ public class Fido2AppletConnection {
         return ctap2Info != null && ctap2Info.options().uv() != null;
     }
 
+    /**
+     * Returns the maximum number of credentials the authenticator accepts in an allowList or excludeList, or null if
+     * it doesn't report a limit.
+     */
+    @Nullable
+    public Integer getMaxCredentialCountInList() {
+        return ctap2Info != null ? ctap2Info.maxCredentialCountInList() : null;
+    }
+
+    /**
+     * Returns the maximum credential id length the authenticator accepts, or null if it doesn't report a limit.
+     */
+    @Nullable
+    public Integer getMaxCredentialIdLength() {
+        return ctap2Info != null ? ctap2Info.maxCredentialIdLength() : null;
+    }
+
+    /**
+     * Returns the AAGUID reported by the authenticator, or the all-zero AAGUID used for CTAP1 authenticators.
+     * A CTAP2 authenticator reports its AAGUID even if CTAP1 is forced.
+     */
+    @NonNull
+    public byte[] getAaguid() {
+        return ctap2Info != null ? ctap2Info.aaguid() : new byte[AAGUID_LENGTH];
+    }
+
+    @NonNull
+    public Transport getTransport() {
+        return transport;
+    }
+
     public boolean isSupportUserPresence() {
         return ctap2Info != null && ctap2Info.options().up();
     }
@@ -382,10 +534,21 @@ public class Fido2AppletConnection {
 
     @Nullable
     public PinToken getCachedPinToken() {
-        return cachedPinToken;
+        if (pinTokenCache == null || ctap2Info == null) {
+            return cachedPinToken;
+        }
+        return pinTokenCache.get(transport, ctap2Info.aaguid());
     }
 
-    public void setCachedPinToken(PinToken pinToken) {
+    public void setCachedPinToken(@Nullable PinToken pinToken) {
         this.cachedPinToken = pinToken;
+        if (pinTokenCache == null || ctap2Info == null) {
+            return;
+        }
+        if (pinToken != null) {
+            pinTokenCache.put(transport, ctap2Info.aaguid(), pinToken);
+        } else {
+            pinTokenCache.invalidate(transport, ctap2Info.aaguid());
+        }
     }
 }
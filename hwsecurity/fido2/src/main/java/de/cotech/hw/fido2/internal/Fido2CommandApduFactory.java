@@ -45,7 +45,7 @@ public class Fido2CommandApduFactory {
     private static final int MASK_CLA_CHAINING = 1 << 4;
 
     private static final int CLA = 0x00;
-    private static final int INS_SELECT_FILE = 0xA4;
+    static final int INS_SELECT_FILE = 0xA4;
     private static final int P1_SELECT_FILE = 0x04;
     private static final int INS_GET_RESPONSE = 0xC0;
 
@@ -54,8 +54,8 @@ public class Fido2CommandApduFactory {
 
     // "FIDO U2F Raw Message Formats", Section 3.1.1 Command and parameter values
     // https://fidoalliance.org/specs/fido-u2f-v1.2-ps-20170411/fido-u2f-raw-message-formats-v1.2-ps-20170411.html
-    private static final int U2F_REGISTER = 0x01;
-    private static final int U2F_AUTHENTICATE = 0x02;
+    static final int U2F_REGISTER = 0x01;
+    static final int U2F_AUTHENTICATE = 0x02;
     private static final int U2F_VERSION = 0x03;
 
     private static final int U2F_AUTHENTICATE_P1_ENFORCE_USER_PRESENCE_AND_SIGN = 0x03;
@@ -73,6 +73,11 @@ public class Fido2CommandApduFactory {
         return CommandApdu.create(CLA, U2F_AUTHENTICATE, U2F_AUTHENTICATE_P1_ENFORCE_USER_PRESENCE_AND_SIGN, P2_EMPTY, data).withDescriber(DESCRIBER);
     }
 
+    @NonNull
+    public CommandApdu createAuthenticationCheckOnlyCommand(byte[] data) {
+        return CommandApdu.create(CLA, U2F_AUTHENTICATE, U2F_AUTHENTICATE_P1_CHECK_ONLY, P2_EMPTY, data).withDescriber(DESCRIBER);
+    }
+
     @NonNull
     public CommandApdu createVersionCommand() {
         return CommandApdu.create(CLA, U2F_VERSION, P1_EMPTY, P2_EMPTY).withDescriber(DESCRIBER);
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.async;
+
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import android.os.Handler;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+import androidx.lifecycle.Lifecycle.Event;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.OnLifecycleEvent;
+import de.cotech.hw.exceptions.SecurityKeyDisconnectedException;
+import de.cotech.hw.fido2.exceptions.FidoPresenceRequiredException;
+import de.cotech.hw.fido2.internal.Fido2AppletConnection;
+import de.cotech.hw.internal.async.OperationFuture;
+import de.cotech.hw.internal.async.PresenceCheckBackoff;
+import de.cotech.hw.util.HwTimber;
+
+
+@RestrictTo(Scope.LIBRARY_GROUP)
+abstract class Fido2AsyncOperation<T> implements Callable<T>, OperationFuture.Callback<T>, LifecycleObserver {
+    private Fido2AsyncOperationManager fido2AsyncOperationManager;
+    final Handler handler;
+    private final int presenceCheckDelayMs;
+    private boolean isUserPresenceRequiredPosted;
+    final Fido2AppletConnection fido2AppletConnection;
+
+    Fido2AsyncOperation(Fido2AppletConnection fido2AppletConnection, Handler handler, int presenceCheckDelayMs) {
+        this.fido2AppletConnection = fido2AppletConnection;
+        this.handler = handler;
+        this.presenceCheckDelayMs = presenceCheckDelayMs;
+    }
+
+    @WorkerThread
+    void prepareOperation() throws InterruptedException {
+
+    }
+
+    @WorkerThread
+    abstract T performOperation() throws IOException, InterruptedException;
+    @UiThread
+    abstract void deliverResponse(T response);
+    @UiThread
+    abstract void deliverIoException(IOException e);
+    @UiThread
+    abstract void deliverUserPresenceRequired();
+
+    void setFido2AsyncOperationManager(Fido2AsyncOperationManager fido2AsyncOperationManager) {
+        this.fido2AsyncOperationManager = fido2AsyncOperationManager;
+    }
+
+    @Override
+    @WorkerThread
+    public T call() throws IOException, InterruptedException {
+        prepareOperation();
+        // CTAP2 over CTAPHID blocks until the user is present, and signals that with keepalive messages.
+        // Otherwise, e.g. for U2F, the command is retried until it no longer fails with presence required.
+        PresenceCheckBackoff presenceCheckBackoff = new PresenceCheckBackoff(presenceCheckDelayMs);
+        fido2AppletConnection.setUserPresenceListener(this::postUserPresenceRequired);
+        try {
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                if (!fido2AppletConnection.isConnected()) {
+                    throw new SecurityKeyDisconnectedException();
+                }
+                try {
+                    return performOperation();
+                } catch (FidoPresenceRequiredException e) {
+                    postUserPresenceRequired();
+                    Thread.sleep(presenceCheckBackoff.nextDelayMs());
+                }
+            }
+        } finally {
+            fido2AppletConnection.setUserPresenceListener(null);
+        }
+    }
+
+    @WorkerThread
+    void postUserPresenceRequired() {
+        if (isUserPresenceRequiredPosted || Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        isUserPresenceRequiredPosted = true;
+        handler.post(this::deliverUserPresenceRequired);
+    }
+
+    @Override
+    @UiThread
+    public void onSuccess(T response) {
+        deliverResponse(response);
+    }
+
+    @Override
+    @UiThread
+    public void onFailure(Throwable throwable) {
+        if (throwable instanceof InterruptedException || throwable.getCause() instanceof InterruptedException) {
+            HwTimber.e("Fido 2 operation was interrupted");
+        } else if (throwable instanceof SecurityKeyDisconnectedException) {
+            HwTimber.e("Transport gone during fido 2 operation");
+        } else if (throwable instanceof IOException) {
+            deliverIoException((IOException) throwable);
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        } else if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    @OnLifecycleEvent(Event.ON_STOP)
+    public void onDestroy() {
+        fido2AsyncOperationManager.clearAsyncOperation(true, this);
+    }
+}
@@ -39,13 +39,13 @@ import de.cotech.hw.fido2.internal.webauthn.WebauthnCommand;
 import de.cotech.hw.fido2.internal.webauthn.WebauthnResponse;
 
 
-public class WebauthnFido2OperationThread<WR extends WebauthnResponse, WC extends WebauthnCommand>
-        extends Fido2OperationThread<WR> {
+public class WebauthnFido2AsyncOperation<WR extends WebauthnResponse, WC extends WebauthnCommand>
+        extends Fido2AsyncOperation<WR> {
     private final WC webauthnCommand;
     private final WebauthnCallback<WR> callback;
     private final WebauthnSecurityKeyOperation<WR, WC> operation;
 
-    public WebauthnFido2OperationThread(
+    public WebauthnFido2AsyncOperation(
             Fido2AppletConnection fido2AppletConnection,
             WebauthnSecurityKeyOperationFactory operationFactory,
             Handler handler, WebauthnCallback<WR> callback, WC webauthnCommand,
@@ -73,4 +73,10 @@ public class WebauthnFido2OperationThread<WR extends WebauthnResponse, WC extend
     void deliverIoException(IOException e) {
         callback.onIoException(e);
     }
+
+    @Override
+    @UiThread
+    void deliverUserPresenceRequired() {
+        callback.onUserPresenceRequired();
+    }
 }
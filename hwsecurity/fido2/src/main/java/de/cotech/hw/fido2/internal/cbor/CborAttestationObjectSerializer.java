@@ -26,35 +26,62 @@ package de.cotech.hw.fido2.internal.cbor;
 
 
 import java.io.IOException;
-import java.util.List;
 
-import de.cotech.hw.fido2.internal.cbor_java.CborBuilder;
-import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
 import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
-import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
-import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
 import de.cotech.hw.fido2.domain.create.AttestationObject;
 
 
+/**
+ * Writes attestation objects directly from their parts. The authData and attestation certificate bytes are passed
+ * through as byte strings, and attStmt is copied as is, so no intermediate tree of data items is built.
+ */
 public class CborAttestationObjectSerializer {
+    // map header, and the text string keys and fmt value, all of which are short
+    private static final int HEADER_CAPACITY = 64;
+
     public byte[] serializeAttestationObject(AttestationObject attestationObject) throws IOException {
+        return serializeAttestationObject(
+                attestationObject.fmt(), attestationObject.authData(), attestationObject.attStmt());
+    }
+
+    public byte[] serializeAttestationObject(String fmt, byte[] authData, byte[] attStmt) throws IOException {
+        checkSingleDataItem(attStmt);
+        CborWriter writer = new CborWriter(HEADER_CAPACITY + authData.length + attStmt.length);
+        writeHeader(writer, fmt);
+        writer.writeEncodedItem(attStmt);
+        writer.writeTextString(CborConstants.AUTH_DATA.getString()).writeByteString(authData);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Writes a fido-u2f attestation object for a CTAP1 register response, with the attestation statement built
+     * in place from the certificate and signature.
+     */
+    public byte[] serializeFidoU2fAttestationObject(byte[] authData, byte[] x509certificate, byte[] signature) {
+        CborWriter writer = new CborWriter(
+                HEADER_CAPACITY + authData.length + x509certificate.length + signature.length);
+        writeHeader(writer, "fido-u2f");
+        CborCtap1AttestationStatementUtil.writeAttestationStatement(writer, x509certificate, signature);
+        writer.writeTextString(CborConstants.AUTH_DATA.getString()).writeByteString(authData);
+        return writer.toByteArray();
+    }
+
+    // canonical key order is fmt, attStmt, authData
+    private static void writeHeader(CborWriter writer, String fmt) {
+        writer.writeMapHeader(3)
+                .writeTextString(CborConstants.FMT.getString()).writeTextString(fmt)
+                .writeTextString(CborConstants.ATT_STMT.getString());
+    }
+
+    private static void checkSingleDataItem(byte[] encodedItem) throws IOException {
         try {
-            return serializeAttestationObjectOrThrow(attestationObject);
+            CborReader reader = new CborReader(encodedItem);
+            reader.skipValue();
+            if (reader.hasRemaining()) {
+                throw new CborException("Unexpected data after attestation statement");
+            }
         } catch (CborException e) {
             throw new IOException(e);
         }
     }
-
-    private byte[] serializeAttestationObjectOrThrow(AttestationObject attestationObject)
-            throws CborException {
-        List<DataItem> cborData = new CborBuilder()
-                .addMap()
-                .put(CborConstants.FMT, new UnicodeString(attestationObject.fmt()))
-                .put(CborConstants.AUTH_DATA, new ByteString(attestationObject.authData()))
-                .put(CborConstants.ATT_STMT, CborDecoder.decode(attestationObject.attStmt()).get(0))
-                .end()
-                .build();
-        return CborUtils.writeCborDataToBytes(cborData);
-    }
 }
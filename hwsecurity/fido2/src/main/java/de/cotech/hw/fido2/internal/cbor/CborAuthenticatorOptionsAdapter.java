@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import de.cotech.hw.fido2.internal.cbor_java.CborException;
+import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorOptions;
+
+
+public class CborAuthenticatorOptionsAdapter {
+    public static void encode(CborWriter writer, AuthenticatorOptions options) {
+        // only user presence can be requested so far
+        writer.writeMapHeader(1).writeTextString("up").writeBoolean(options.up());
+    }
+
+    public static AuthenticatorOptions decode(CborReader reader) throws CborException {
+        Boolean plat = null;
+        Boolean rk = null;
+        Boolean clientPin = null;
+        Boolean up = null;
+        Boolean uv = null;
+
+        int numEntries = reader.readMapHeader();
+        for (int i = 0; i < numEntries; i++) {
+            String key = reader.readTextString();
+            boolean value = false;
+            if (reader.peekBoolean()) {
+                value = reader.readBoolean();
+            } else {
+                reader.skipValue();
+            }
+            switch (key) {
+                case "plat": {
+                    plat = value;
+                    break;
+                }
+                case "rk": {
+                    rk = value;
+                    break;
+                }
+                case "clientPin": {
+                    clientPin = value;
+                    break;
+                }
+                case "up": {
+                    up = value;
+                    break;
+                }
+                case "uv": {
+                    uv = value;
+                    break;
+                }
+            }
+        }
+
+        return AuthenticatorOptions.create(plat, rk, clientPin, up, uv);
+    }
+}
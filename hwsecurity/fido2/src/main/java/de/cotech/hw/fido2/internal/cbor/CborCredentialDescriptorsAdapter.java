@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import java.util.List;
+
+import de.cotech.hw.fido2.domain.AuthenticatorTransport;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+
+
+public class CborCredentialDescriptorsAdapter {
+    public static void encode(CborWriter writer, List<PublicKeyCredentialDescriptor> descriptors) {
+        writer.writeArrayHeader(descriptors.size());
+        for (PublicKeyCredentialDescriptor descriptor : descriptors) {
+            encode(writer, descriptor);
+        }
+    }
+
+    private static void encode(CborWriter writer, PublicKeyCredentialDescriptor descriptor) {
+        List<AuthenticatorTransport> transports = descriptor.transports();
+        writer.writeMapHeader(transports != null ? 3 : 2);
+        writer.writeTextString("id").writeByteString(descriptor.id());
+        writer.writeTextString("type").writeTextString(descriptor.type().type);
+        if (transports != null) {
+            writer.writeTextString("transports").writeArrayHeader(transports.size());
+            for (AuthenticatorTransport transport : transports) {
+                writer.writeTextString(transport.transport);
+            }
+        }
+    }
+}
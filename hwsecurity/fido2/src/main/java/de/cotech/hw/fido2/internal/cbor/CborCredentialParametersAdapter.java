@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import java.util.List;
+import java.util.Map.Entry;
+
+import de.cotech.hw.fido2.domain.PublicKeyCredentialParameters;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialType;
+import de.cotech.hw.fido2.internal.cose.CoseIdentifiers.CoseAlg;
+
+
+public class CborCredentialParametersAdapter {
+    public static void encode(CborWriter writer, List<PublicKeyCredentialParameters> parametersList) {
+        writer.writeArrayHeader(parametersList.size());
+        for (PublicKeyCredentialParameters parameters : parametersList) {
+            encode(writer, parameters);
+        }
+    }
+
+    private static void encode(CborWriter writer, PublicKeyCredentialParameters parameters) {
+        // only the last entry is written, as each entry uses the same keys
+        Entry<PublicKeyCredentialType, CoseAlg> lastEntry = null;
+        for (Entry<PublicKeyCredentialType, CoseAlg> entry : parameters.parameters().entrySet()) {
+            lastEntry = entry;
+        }
+        if (lastEntry == null) {
+            writer.writeMapHeader(0);
+            return;
+        }
+        writer.writeMapHeader(2);
+        writer.writeTextString("alg").writeInteger(lastEntry.getValue().label);
+        writer.writeTextString("type").writeTextString(lastEntry.getKey().type);
+    }
+}
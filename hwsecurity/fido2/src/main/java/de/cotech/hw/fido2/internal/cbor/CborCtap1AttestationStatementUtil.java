@@ -25,27 +25,19 @@
 package de.cotech.hw.fido2.internal.cbor;
 
 
-import java.util.List;
-
-import de.cotech.hw.fido2.internal.cbor_java.CborBuilder;
-import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
-
 public class CborCtap1AttestationStatementUtil {
     public static byte[] toAttestionStatement(byte[] x509certificate, byte[] signature) {
-        try {
-            List<DataItem> dataItems = new CborBuilder()
-                .addMap()
-                    .put("sig", signature)
-                    .putArray("x5c")
-                        .add(x509certificate)
-                    .end()
-                .end()
-                .build();
-            return CborUtils.writeCborDataToBytes(dataItems);
-        } catch (CborException e) {
-            // this operation will always work
-            throw new IllegalStateException(e);
-        }
+        CborWriter writer = new CborWriter(16 + x509certificate.length + signature.length);
+        writeAttestationStatement(writer, x509certificate, signature);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Writes a fido-u2f attestation statement, with its keys in canonical order.
+     */
+    static void writeAttestationStatement(CborWriter writer, byte[] x509certificate, byte[] signature) {
+        writer.writeMapHeader(2)
+                .writeTextString("sig").writeByteString(signature)
+                .writeTextString("x5c").writeArrayHeader(1).writeByteString(x509certificate);
     }
 }
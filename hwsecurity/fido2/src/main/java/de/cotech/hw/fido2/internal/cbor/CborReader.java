@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import de.cotech.hw.fido2.internal.cbor_java.CborException;
+import de.cotech.hw.fido2.internal.cbor_java.model.MajorType;
+
+
+/**
+ * Reads CBOR data items sequentially from a byte array, without building a tree of data items first.
+ * <p>
+ * The reader is a cursor: each read method consumes exactly one data item, or only the header of a map or array,
+ * in which case the caller reads the announced number of entries afterwards. Entries that are not of interest are
+ * consumed with {@link #skipValue()}. Indefinite length items are rejected, as CTAP2 canonical CBOR forbids them.
+ */
+public class CborReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAJOR_TYPE_UNSIGNED_INTEGER = 0;
+    private static final int MAJOR_TYPE_NEGATIVE_INTEGER = 1;
+    private static final int MAJOR_TYPE_BYTE_STRING = 2;
+    private static final int MAJOR_TYPE_UNICODE_STRING = 3;
+    private static final int MAJOR_TYPE_ARRAY = 4;
+    private static final int MAJOR_TYPE_MAP = 5;
+    private static final int MAJOR_TYPE_TAG = 6;
+
+    private static final int SIMPLE_VALUE_FALSE = 0xf4;
+    private static final int SIMPLE_VALUE_TRUE = 0xf5;
+    private static final int SIMPLE_VALUE_NULL = 0xf6;
+
+    private final byte[] data;
+    private final int limit;
+    private int position;
+
+    public CborReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public CborReader(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Creates a reader for the remaining bytes of buffer. The buffer's array is used directly if it has one.
+     */
+    public static CborReader wrap(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new CborReader(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return new CborReader(data);
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    public MajorType peekMajorType() throws CborException {
+        return MajorType.ofByte(peekInitialByte());
+    }
+
+    public boolean peekBoolean() throws CborException {
+        int initialByte = peekInitialByte();
+        return initialByte == SIMPLE_VALUE_TRUE || initialByte == SIMPLE_VALUE_FALSE;
+    }
+
+    public boolean peekNull() throws CborException {
+        return peekInitialByte() == SIMPLE_VALUE_NULL;
+    }
+
+    /**
+     * Reads the header of a map, and returns its number of entries. Each entry consists of a key and a value.
+     */
+    public int readMapHeader() throws CborException {
+        return readCount(MAJOR_TYPE_MAP, 2);
+    }
+
+    public int readArrayHeader() throws CborException {
+        return readCount(MAJOR_TYPE_ARRAY, 1);
+    }
+
+    public long readInteger() throws CborException {
+        int initialByte = readInitialByte();
+        int majorType = initialByte >> 5;
+        if (majorType != MAJOR_TYPE_UNSIGNED_INTEGER && majorType != MAJOR_TYPE_NEGATIVE_INTEGER) {
+            throw unexpectedType("integer", initialByte);
+        }
+        long value = readArgument(initialByte);
+        if (value < 0) {
+            throw new CborException("Integer exceeds 64 bit signed range");
+        }
+        return majorType == MAJOR_TYPE_UNSIGNED_INTEGER ? value : -1 - value;
+    }
+
+    public int readInt() throws CborException {
+        long value = readInteger();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new CborException("Integer exceeds 32 bit signed range: " + value);
+        }
+        return (int) value;
+    }
+
+    public boolean readBoolean() throws CborException {
+        int initialByte = readInitialByte();
+        if (initialByte == SIMPLE_VALUE_TRUE) {
+            return true;
+        }
+        if (initialByte == SIMPLE_VALUE_FALSE) {
+            return false;
+        }
+        throw unexpectedType("boolean", initialByte);
+    }
+
+    public void readNull() throws CborException {
+        int initialByte = readInitialByte();
+        if (initialByte != SIMPLE_VALUE_NULL) {
+            throw unexpectedType("null", initialByte);
+        }
+    }
+
+    /**
+     * Reads a byte string, and returns a copy of its content.
+     */
+    public byte[] readByteString() throws CborException {
+        int length = readStringLength(MAJOR_TYPE_BYTE_STRING);
+        byte[] result = new byte[length];
+        System.arraycopy(data, position, result, 0, length);
+        position += length;
+        return result;
+    }
+
+    /**
+     * Reads a byte string, and returns a read-only view of its content backed by the underlying array.
+     */
+    public ByteBuffer readByteStringSlice() throws CborException {
+        int length = readStringLength(MAJOR_TYPE_BYTE_STRING);
+        ByteBuffer result = ByteBuffer.wrap(data, position, length).slice().asReadOnlyBuffer();
+        position += length;
+        return result;
+    }
+
+    public String readTextString() throws CborException {
+        int length = readStringLength(MAJOR_TYPE_UNICODE_STRING);
+        String result = new String(data, position, length, UTF_8);
+        position += length;
+        return result;
+    }
+
+    /**
+     * Consumes the next data item, including all nested items of maps, arrays and tags.
+     */
+    public void skipValue() throws CborException {
+        long pendingItems = 1;
+        while (pendingItems > 0) {
+            pendingItems--;
+            int initialByte = readInitialByte();
+            int majorType = initialByte >> 5;
+            long argument = readArgument(initialByte);
+            switch (majorType) {
+                case MAJOR_TYPE_BYTE_STRING:
+                case MAJOR_TYPE_UNICODE_STRING:
+                    if (argument < 0 || argument > limit - position) {
+                        throw new CborException("Unexpected end of data");
+                    }
+                    position += (int) argument;
+                    break;
+                case MAJOR_TYPE_ARRAY:
+                    pendingItems += checkCount(argument, 1);
+                    break;
+                case MAJOR_TYPE_MAP:
+                    pendingItems += 2L * checkCount(argument, 2);
+                    break;
+                case MAJOR_TYPE_TAG:
+                    pendingItems++;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Consumes the next data item, and returns a copy of its exact encoding, e.g. to pass a nested structure on as is.
+     */
+    public byte[] readEncodedItem() throws CborException {
+        int start = position;
+        skipValue();
+        byte[] result = new byte[position - start];
+        System.arraycopy(data, start, result, 0, result.length);
+        return result;
+    }
+
+    private int readCount(int expectedMajorType, int minimumBytesPerEntry) throws CborException {
+        int initialByte = readInitialByte();
+        if (initialByte >> 5 != expectedMajorType) {
+            throw unexpectedType(MajorType.ofByte(expectedMajorType << 5).toString(), initialByte);
+        }
+        return checkCount(readArgument(initialByte), minimumBytesPerEntry);
+    }
+
+    private int checkCount(long count, int minimumBytesPerEntry) throws CborException {
+        // every entry takes up at least one byte per data item, which bounds counts by the remaining data
+        if (count < 0 || count > (limit - position) / minimumBytesPerEntry) {
+            throw new CborException("Unexpected end of data");
+        }
+        return (int) count;
+    }
+
+    private int readStringLength(int expectedMajorType) throws CborException {
+        int initialByte = readInitialByte();
+        if (initialByte >> 5 != expectedMajorType) {
+            throw unexpectedType(MajorType.ofByte(expectedMajorType << 5).toString(), initialByte);
+        }
+        long length = readArgument(initialByte);
+        if (length < 0 || length > limit - position) {
+            throw new CborException("Unexpected end of data");
+        }
+        return (int) length;
+    }
+
+    private long readArgument(int initialByte) throws CborException {
+        int additionalInformation = initialByte & 0x1f;
+        if (additionalInformation < 24) {
+            return additionalInformation;
+        }
+        switch (additionalInformation) {
+            case 24:
+                return readUnsigned(1);
+            case 25:
+                return readUnsigned(2);
+            case 26:
+                return readUnsigned(4);
+            case 27:
+                return readUnsigned(8);
+            case 31:
+                throw new CborException("Indefinite length items are not supported");
+            default:
+                throw new CborException("Reserved additional information: " + additionalInformation);
+        }
+    }
+
+    private long readUnsigned(int numBytes) throws CborException {
+        if (numBytes > limit - position) {
+            throw new CborException("Unexpected end of data");
+        }
+        long result = 0;
+        for (int i = 0; i < numBytes; i++) {
+            result = (result << 8) | (data[position++] & 0xff);
+        }
+        return result;
+    }
+
+    private int peekInitialByte() throws CborException {
+        if (position >= limit) {
+            throw new CborException("Unexpected end of data");
+        }
+        return data[position] & 0xff;
+    }
+
+    private int readInitialByte() throws CborException {
+        int initialByte = peekInitialByte();
+        position++;
+        return initialByte;
+    }
+
+    private static CborException unexpectedType(String expected, int initialByte) {
+        return new CborException("Expected " + expected + ", found " + MajorType.ofByte(initialByte) +
+                String.format(" (0x%02x)", initialByte));
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import de.cotech.hw.fido2.domain.PublicKeyCredentialRpEntity;
+
+
+/**
+ * Map entries in this and the other CTAP2 adapters are written in CTAP2 canonical order: shorter keys first, then
+ * lexical order.
+ */
+public class CborRpEntityAdapter {
+    public static void encode(CborWriter writer, PublicKeyCredentialRpEntity rpEntity) {
+        String id = rpEntity.id();
+        String icon = rpEntity.icon();
+        writer.writeMapHeader(1 + (id != null ? 1 : 0) + (icon != null ? 1 : 0));
+        if (id != null) {
+            writer.writeTextString("id").writeTextString(id);
+        }
+        if (icon != null) {
+            writer.writeTextString("icon").writeTextString(icon);
+        }
+        writer.writeTextString("name").writeTextString(rpEntity.name());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import de.cotech.hw.fido2.domain.PublicKeyCredentialUserEntity;
+import de.cotech.hw.fido2.internal.cbor_java.CborException;
+import de.cotech.hw.fido2.internal.cbor_java.model.MajorType;
+
+
+public class CborUserEntityAdapter {
+    public static void encode(CborWriter writer, PublicKeyCredentialUserEntity userEntity) {
+        String icon = userEntity.icon();
+        String displayName = userEntity.displayName();
+        writer.writeMapHeader(2 + (icon != null ? 1 : 0) + (displayName != null ? 1 : 0));
+        writer.writeTextString("id").writeByteString(userEntity.id());
+        if (icon != null) {
+            writer.writeTextString("icon").writeTextString(icon);
+        }
+        writer.writeTextString("name").writeTextString(userEntity.name());
+        if (displayName != null) {
+            writer.writeTextString("displayName").writeTextString(displayName);
+        }
+    }
+
+    public static PublicKeyCredentialUserEntity decode(CborReader reader) throws CborException {
+        MajorType majorType = reader.peekMajorType();
+        if (majorType != MajorType.MAP) {
+            throw new CborException("Expected user field to be of type Map, found " + majorType);
+        }
+
+        byte[] id = null;
+        String name = null;
+        String displayName = null;
+        String icon = null;
+        int numEntries = reader.readMapHeader();
+        for (int i = 0; i < numEntries; i++) {
+            switch (reader.readTextString()) {
+                case "id":
+                    id = reader.readByteString();
+                    break;
+                case "name":
+                    name = reader.readTextString();
+                    break;
+                case "displayName":
+                    displayName = reader.readTextString();
+                    break;
+                case "icon":
+                    icon = reader.readTextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        if (id == null) {
+            throw new CborException("Missing user id");
+        }
+        return PublicKeyCredentialUserEntity.create(id, name, displayName, icon);
+    }
+}
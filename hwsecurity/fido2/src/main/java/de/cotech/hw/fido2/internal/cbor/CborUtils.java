@@ -26,16 +26,11 @@ package de.cotech.hw.fido2.internal.cbor;
 
 
 import java.io.ByteArrayOutputStream;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import de.cotech.hw.fido2.internal.cbor_java.CborEncoder;
 import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.model.Array;
 import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
-import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
-import de.cotech.hw.fido2.internal.cbor_java.model.UnsignedInteger;
 
 
 public class CborUtils {
@@ -50,22 +45,4 @@ public class CborUtils {
         new CborEncoder(outputStream).encode(cborData);
         return outputStream.toByteArray();
     }
-
-    public static List<Integer> cborArrayToIntegerArray(Array array) {
-        ArrayList<Integer> result = new ArrayList<>();
-        for (DataItem versionDataItem : array.getDataItems()) {
-            UnsignedInteger unsignedInteger = (UnsignedInteger) versionDataItem;
-            result.add(unsignedInteger.getValue().intValue());
-        }
-        return Collections.unmodifiableList(result);
-    }
-
-    public static List<String> cborArrayToStringArray(Array array) {
-        ArrayList<String> result = new ArrayList<>();
-        for (DataItem versionDataItem : array.getDataItems()) {
-            UnicodeString string = (UnicodeString) versionDataItem;
-            result.add(string.getString());
-        }
-        return Collections.unmodifiableList(result);
-    }
 }
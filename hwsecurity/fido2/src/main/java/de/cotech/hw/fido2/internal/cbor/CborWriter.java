@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import java.util.Arrays;
+
+import androidx.annotation.Nullable;
+
+
+/**
+ * Writes CBOR data items directly into a growable byte buffer, without building a tree of data items first.
+ * <p>
+ * The writer does not sort map keys. To produce CTAP2 canonical CBOR, callers must write map entries in canonical
+ * order, i.e. integer keys in ascending order, and text keys ordered by length first, then lexically.
+ * A writer can be reused for multiple encodings by calling {@link #reset()}.
+ */
+public class CborWriter {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final int MAJOR_TYPE_UNSIGNED_INTEGER = 0;
+    private static final int MAJOR_TYPE_NEGATIVE_INTEGER = 1;
+    private static final int MAJOR_TYPE_BYTE_STRING = 2;
+    private static final int MAJOR_TYPE_UNICODE_STRING = 3;
+    private static final int MAJOR_TYPE_ARRAY = 4;
+    private static final int MAJOR_TYPE_MAP = 5;
+
+    private static final int SIMPLE_VALUE_FALSE = 0xf4;
+    private static final int SIMPLE_VALUE_TRUE = 0xf5;
+    private static final int SIMPLE_VALUE_NULL = 0xf6;
+
+    private byte[] buffer;
+    private int position;
+
+    public CborWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CborWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    public CborWriter reset() {
+        position = 0;
+        return this;
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Writes a single byte that is not part of the CBOR encoding, such as a CTAP2 command byte.
+     */
+    public CborWriter writeRawByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Writes bytes that are not part of the CBOR encoding, such as the parameters of a raw CTAP2 command.
+     */
+    public CborWriter writeRawBytes(byte[] bytes) {
+        return writeRawBytes(bytes, 0, bytes.length);
+    }
+
+    private CborWriter writeRawBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+    public CborWriter writeMapHeader(int size) {
+        writeTypeAndLength(MAJOR_TYPE_MAP, size);
+        return this;
+    }
+
+    public CborWriter writeArrayHeader(int size) {
+        writeTypeAndLength(MAJOR_TYPE_ARRAY, size);
+        return this;
+    }
+
+    public CborWriter writeInteger(long value) {
+        if (value >= 0) {
+            writeTypeAndLength(MAJOR_TYPE_UNSIGNED_INTEGER, value);
+        } else {
+            writeTypeAndLength(MAJOR_TYPE_NEGATIVE_INTEGER, -(value + 1));
+        }
+        return this;
+    }
+
+    public CborWriter writeBoolean(boolean value) {
+        return writeRawByte(value ? SIMPLE_VALUE_TRUE : SIMPLE_VALUE_FALSE);
+    }
+
+    public CborWriter writeNull() {
+        return writeRawByte(SIMPLE_VALUE_NULL);
+    }
+
+    /**
+     * Writes a byte string, or null if bytes is null.
+     */
+    public CborWriter writeByteString(@Nullable byte[] bytes) {
+        if (bytes == null) {
+            return writeNull();
+        }
+        writeTypeAndLength(MAJOR_TYPE_BYTE_STRING, bytes.length);
+        return writeRawBytes(bytes);
+    }
+
+    /**
+     * Writes a UTF-8 encoded text string, or null if string is null.
+     */
+    public CborWriter writeTextString(@Nullable String string) {
+        if (string == null) {
+            return writeNull();
+        }
+        int utf8Length = getUtf8Length(string);
+        writeTypeAndLength(MAJOR_TYPE_UNICODE_STRING, utf8Length);
+        ensureCapacity(utf8Length);
+        writeUtf8(string);
+        return this;
+    }
+
+    /**
+     * Writes a data item that is already CBOR encoded, such as a COSE key. The encoding is copied as is.
+     */
+    public CborWriter writeEncodedItem(byte[] encodedItem) {
+        return writeRawBytes(encodedItem);
+    }
+
+    private void writeTypeAndLength(int majorType, long length) {
+        int type = majorType << 5;
+        if (length < 24) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) (type | length);
+        } else if (length < 0x100) {
+            ensureCapacity(2);
+            buffer[position++] = (byte) (type | 24);
+            buffer[position++] = (byte) length;
+        } else if (length < 0x10000) {
+            ensureCapacity(3);
+            buffer[position++] = (byte) (type | 25);
+            buffer[position++] = (byte) (length >> 8);
+            buffer[position++] = (byte) length;
+        } else if (length < 0x100000000L) {
+            ensureCapacity(5);
+            buffer[position++] = (byte) (type | 26);
+            buffer[position++] = (byte) (length >> 24);
+            buffer[position++] = (byte) (length >> 16);
+            buffer[position++] = (byte) (length >> 8);
+            buffer[position++] = (byte) length;
+        } else {
+            ensureCapacity(9);
+            buffer[position++] = (byte) (type | 27);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (length >> shift);
+            }
+        }
+    }
+
+    private static int getUtf8Length(String string) {
+        int length = 0;
+        for (int i = 0, n = string.length(); i < n; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void writeUtf8(String string) {
+        for (int i = 0, n = string.length(); i < n; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replaced the same way as in String.getBytes(UTF_8)
+                buffer[position++] = (byte) '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        int requiredCapacity = position + additionalBytes;
+        if (requiredCapacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(requiredCapacity, buffer.length * 2));
+        }
+    }
+}
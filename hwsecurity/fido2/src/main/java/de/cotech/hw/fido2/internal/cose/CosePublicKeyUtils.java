@@ -25,107 +25,153 @@
 package de.cotech.hw.fido2.internal.cose;
 
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.List;
+import java.nio.ByteBuffer;
 
-import de.cotech.hw.fido2.internal.cbor_java.CborBuilder;
-import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
+import de.cotech.hw.fido2.internal.cbor.CborReader;
 import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
-import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
 import de.cotech.hw.fido2.internal.cbor_java.model.MajorType;
-import de.cotech.hw.fido2.internal.cbor_java.model.Map;
-import de.cotech.hw.fido2.internal.cbor.CborUtils;
 import de.cotech.hw.fido2.internal.cose.CoseIdentifiers.CoseAlg;
-import de.cotech.hw.util.Arrays;
 
 
 public class CosePublicKeyUtils {
+    public static final int X962_PUBLIC_KEY_LENGTH = 65;
+    public static final int COSE_PUBLIC_KEY_LENGTH = 77;
+
     private static final int X962_UNCOMPRESSED = 0x04;
+    private static final int COORDINATE_LENGTH = 32;
+    private static final int CBOR_BYTE_STRING_32 = 0x58;
+
+    private static final long COSE_KTY = 1;
+    private static final long COSE_ALG = 3;
+    private static final long COSE_CRV = -1;
+    private static final long COSE_X = -2;
+    private static final long COSE_Y = -3;
+    private static final long COSE_KTY_EC2 = 2;
+    private static final long COSE_CRV_P256 = 1;
+
+    // The encoding of a P-256 ES256 public key is fixed, so it's written from a template:
+    // {1: 2, 3: -7, -1: 1, -2: bstr(32), -3: bstr(32)}, with keys in canonical CBOR order
+    private static final byte[] COSE_HEADER = {
+            (byte) 0xa5, 0x01, 0x02, 0x03, 0x26, 0x20, 0x01, 0x21, CBOR_BYTE_STRING_32, COORDINATE_LENGTH };
+    private static final byte[] COSE_Y_HEADER = { 0x22, CBOR_BYTE_STRING_32, COORDINATE_LENGTH };
 
     public static byte[] encodex962PublicKeyAsCose(byte[] publicKey) throws IOException {
-        if (publicKey.length != 65) {
+        byte[] result = new byte[COSE_PUBLIC_KEY_LENGTH];
+        encodex962PublicKeyAsCose(publicKey, result, 0);
+        return result;
+    }
+
+    /**
+     * Writes the COSE encoding of an X9.62 public key to output, starting at offset. This takes exactly
+     * {@link #COSE_PUBLIC_KEY_LENGTH} bytes.
+     */
+    public static void encodex962PublicKeyAsCose(byte[] publicKey, byte[] output, int offset) throws IOException {
+        if (publicKey.length != X962_PUBLIC_KEY_LENGTH) {
             throw new IOException("Invalid length for X9.62 public key!");
         }
         if (publicKey[0] != X962_UNCOMPRESSED) {
             throw new IOException("X9.62 public key must be uncompressed format!");
         }
-        byte[] x = Arrays.copyOfRange(publicKey, 1, 33);
-        byte[] y = Arrays.copyOfRange(publicKey, 33, 65);
-        List<DataItem> coseKeyCbor = new CborBuilder()
-                .addMap()
-                    .put(CoseIdentifiers.KTY, CoseIdentifiers.KTY_EC2)
-                    .put(CoseIdentifiers.ALG, CoseAlg.ES256.cborLabel)
-                    .put(CoseIdentifiers.CRV, CoseIdentifiers.CRV_P256)
-                    .put(CoseIdentifiers.X, new ByteString(x))
-                    .put(CoseIdentifiers.Y, new ByteString(y))
-                .end()
-                .build();
-        try {
-            return CborUtils.writeCborDataToBytes(coseKeyCbor);
-        } catch (CborException e) {
-            throw new IllegalStateException(e);
-        }
+        int position = offset;
+        System.arraycopy(COSE_HEADER, 0, output, position, COSE_HEADER.length);
+        position += COSE_HEADER.length;
+        System.arraycopy(publicKey, 1, output, position, COORDINATE_LENGTH);
+        position += COORDINATE_LENGTH;
+        System.arraycopy(COSE_Y_HEADER, 0, output, position, COSE_Y_HEADER.length);
+        position += COSE_Y_HEADER.length;
+        System.arraycopy(publicKey, 1 + COORDINATE_LENGTH, output, position, COORDINATE_LENGTH);
     }
 
     public static byte[] encodeCosePublicKeyAsX962(byte[] publicKey) throws IOException {
-        DataItem dataItem;
+        byte[] result = new byte[X962_PUBLIC_KEY_LENGTH];
+        encodeCosePublicKeyAsX962(publicKey, 0, publicKey.length, result, 0);
+        return result;
+    }
+
+    /**
+     * Parses a COSE public key from {@code length} bytes of input, and writes its X9.62 encoding to output, starting
+     * at outputOffset. This takes exactly {@link #X962_PUBLIC_KEY_LENGTH} bytes.
+     */
+    public static void encodeCosePublicKeyAsX962(byte[] input, int offset, int length, byte[] output,
+            int outputOffset) throws IOException {
+        boolean hasX = false;
+        boolean hasY = false;
+        Long kty = null;
+        Long alg = null;
+        Long crv = null;
         try {
-            CborDecoder decoder = new CborDecoder(new ByteArrayInputStream(publicKey));
-            dataItem = decoder.decodeNext();
-            if (decoder.decodeNext() != null) {
+            CborReader reader = new CborReader(input, offset, length);
+            if (reader.peekMajorType() != MajorType.MAP) {
+                throw new IOException("Expected map in CBOR data, found " + reader.peekMajorType());
+            }
+            for (int i = reader.readMapHeader(); i > 0; i--) {
+                MajorType keyType = reader.peekMajorType();
+                if (keyType != MajorType.UNSIGNED_INTEGER && keyType != MajorType.NEGATIVE_INTEGER) {
+                    reader.skipValue();
+                    reader.skipValue();
+                    continue;
+                }
+                long key = reader.readInteger();
+                if (key == COSE_KTY) {
+                    kty = readIntegerOrNull(reader);
+                } else if (key == COSE_ALG) {
+                    alg = readIntegerOrNull(reader);
+                } else if (key == COSE_CRV) {
+                    crv = readIntegerOrNull(reader);
+                } else if (key == COSE_X) {
+                    readCoordinate(reader, "X", output, outputOffset + 1);
+                    hasX = true;
+                } else if (key == COSE_Y) {
+                    readCoordinate(reader, "Y", output, outputOffset + 1 + COORDINATE_LENGTH);
+                    hasY = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            if (reader.hasRemaining()) {
                 throw new IOException("Unexpected trailing CBOR data");
             }
         } catch (CborException e) {
             throw new IOException("Error parsing CBOR data for COSE public key!", e);
         }
-        if (dataItem.getMajorType() != MajorType.MAP) {
-            throw new IOException("Expected map in CBOR data, found " + dataItem.getMajorType());
-        }
 
-        Map map = (Map) dataItem;
-        DataItem kty = map.get(CoseIdentifiers.KTY);
-        if (!CoseIdentifiers.KTY_EC2.equals(kty)) {
+        if (kty == null || kty != COSE_KTY_EC2) {
             throw new IOException("Unexpected kty value. Expected " + CoseIdentifiers.KTY_EC2 + ", got " + kty);
         }
-        DataItem alg = map.get(CoseIdentifiers.ALG);
-        if (!CoseAlg.ECDH_ES_w_HKDF_256.cborLabel.equals(alg) && !CoseAlg.ES256.cborLabel.equals(alg)) {
+        if (alg == null || (alg != CoseAlg.ECDH_ES_w_HKDF_256.label && alg != CoseAlg.ES256.label)) {
             throw new IOException("Unexpected alg value. Expected " + CoseAlg.ES256.cborLabel + " or " + CoseAlg.ECDH_ES_w_HKDF_256.cborLabel + ", got " + alg);
         }
-        DataItem crv = map.get(CoseIdentifiers.CRV);
-        if (!CoseIdentifiers.CRV_P256.equals(crv)) {
+        if (crv == null || crv != COSE_CRV_P256) {
             throw new IOException("Unexpected crv value. Expected " + CoseIdentifiers.CRV_P256 + ", got " + crv);
         }
-
-        DataItem x = map.get(CoseIdentifiers.X);
-        if (x == null) {
+        if (!hasX) {
             throw new IOException("Missing CBOR field X in COSE public key!");
         }
-        if (x.getMajorType() != MajorType.BYTE_STRING) {
-            throw new IOException("Expected X CBOR field to be a ByteString!");
-        }
-        byte[] xBytes = ((ByteString) x).getBytes();
-        if (xBytes.length != 32) {
-            throw new IOException("Expected X field to be 32 bytes, got " + xBytes.length + "!");
+        if (!hasY) {
+            throw new IOException("Missing CBOR field Y in COSE public key!");
         }
+        output[outputOffset] = X962_UNCOMPRESSED;
+    }
 
-        DataItem y = map.get(CoseIdentifiers.Y);
-        if (y == null) {
-            throw new IOException("Missing CBOR field X in COSE public key!");
+    private static Long readIntegerOrNull(CborReader reader) throws CborException {
+        MajorType majorType = reader.peekMajorType();
+        if (majorType != MajorType.UNSIGNED_INTEGER && majorType != MajorType.NEGATIVE_INTEGER) {
+            reader.skipValue();
+            return null;
         }
-        if (y.getMajorType() != MajorType.BYTE_STRING) {
-            throw new IOException("Expected Y CBOR field to be a ByteString!");
+        return reader.readInteger();
+    }
+
+    private static void readCoordinate(CborReader reader, String name, byte[] output, int offset)
+            throws CborException, IOException {
+        if (reader.peekMajorType() != MajorType.BYTE_STRING) {
+            throw new IOException("Expected " + name + " CBOR field to be a ByteString!");
         }
-        byte[] yBytes = ((ByteString) y).getBytes();
-        if (yBytes.length != 32) {
-            throw new IOException("Expected X field to be 32 bytes, got " + xBytes.length + "!");
+        ByteBuffer coordinate = reader.readByteStringSlice();
+        if (coordinate.remaining() != COORDINATE_LENGTH) {
+            throw new IOException("Expected " + name + " field to be 32 bytes, got " + coordinate.remaining() + "!");
         }
-
-        byte[] x9PublicKey = new byte[65];
-        x9PublicKey[0] = X962_UNCOMPRESSED;
-        System.arraycopy(xBytes, 0, x9PublicKey, 1, 32);
-        System.arraycopy(yBytes, 0, x9PublicKey, 33, 32);
-        return x9PublicKey;
+        coordinate.get(output, offset, COORDINATE_LENGTH);
     }
 }
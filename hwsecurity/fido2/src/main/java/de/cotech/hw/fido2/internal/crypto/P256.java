@@ -45,6 +45,12 @@ public final class P256 {
     static final ECFieldFp FIELD;
     private static final EllipticCurve CURVE;
     private static final ECParameterSpec CURVE_SPEC;
+    private static final ThreadLocal<P256Field> FIELD_ARITHMETIC = new ThreadLocal<P256Field>() {
+        @Override
+        protected P256Field initialValue() {
+            return new P256Field();
+        }
+    };
 
     static {
         // Curve P-256
@@ -93,6 +99,17 @@ public final class P256 {
         return lhs.equals(rhs);
     }
 
+    /**
+     * Returns true if the two 32-byte big-endian coordinates starting at offset are a valid point on the curve.
+     * Unlike {@link #isPointOnCurve(ECPoint)}, this runs in constant time and doesn't allocate.
+     */
+    public static boolean isPointOnCurve(byte[] coordinates, int offset) {
+        if (offset < 0 || coordinates.length - offset < POINT_LENGTH) {
+            throw new IllegalArgumentException("coordinates are too short");
+        }
+        return FIELD_ARITHMETIC.get().isPointOnCurve(coordinates, offset);
+    }
+
     /** Performs a Diffie-Hellman key exchange and returns the result. */
     static byte[] ecdh(byte[] publicKey, byte[] privateKey) throws GeneralSecurityException {
         KeyAgreement ka = KeyAgreement.getInstance("ECDH");
@@ -106,15 +123,21 @@ public final class P256 {
      * publicKey, where each point is serialized as a 32-byte big-endian integer.
      */
     public static byte[] serializePublicKey(PublicKey publicKey) {
+        byte[] result = new byte[POINT_LENGTH + 1];
+        serializePublicKey(publicKey, result, 0);
+        return result;
+    }
+
+    /** Writes the 65-byte uncompressed X9.62 encoding of the publicKey to output, starting at offset. */
+    public static void serializePublicKey(PublicKey publicKey, byte[] output, int offset) {
         if (!(publicKey instanceof ECPublicKey)) {
             throw new IllegalArgumentException("publicKey is not of type ECPublicKey");
         }
         ECPoint point = ((ECPublicKey) publicKey).getW();
-        byte[] result = new byte[POINT_LENGTH + 1];
-        result[0] = 0x04;
-        fitBigInteger(point.getAffineX(), result, 1, FIELD_LENGTH);
-        fitBigInteger(point.getAffineY(), result, FIELD_LENGTH + 1, FIELD_LENGTH);
-        return result;
+        Arrays.fill(output, offset, offset + POINT_LENGTH + 1, (byte) 0);
+        output[offset] = 0x04;
+        fitBigInteger(point.getAffineX(), output, offset + 1, FIELD_LENGTH);
+        fitBigInteger(point.getAffineY(), output, offset + FIELD_LENGTH + 1, FIELD_LENGTH);
     }
 
     /**
@@ -130,13 +153,13 @@ public final class P256 {
                             + " bytes got "
                             + serializedPoint.length);
         }
+        if (!isPointOnCurve(serializedPoint, 1)) {
+            throw new GeneralSecurityException("point is not on the curve");
+        }
         BigInteger x = new BigInteger(1, Arrays.copyOfRange(serializedPoint, 1, FIELD_LENGTH + 1));
         BigInteger y = new BigInteger(1, Arrays.copyOfRange(serializedPoint, FIELD_LENGTH + 1, 2 * FIELD_LENGTH + 1));
 
         ECPoint publicPoint = new ECPoint(x, y);
-        if (!isPointOnCurve(publicPoint)) {
-            throw new GeneralSecurityException("point is not on the curve");
-        }
         ECPublicKeySpec publicSpec = new ECPublicKeySpec(publicPoint, CURVE_SPEC);
         KeyFactory kf = KeyFactory.getInstance("EC");
         return kf.generatePublic(publicSpec);
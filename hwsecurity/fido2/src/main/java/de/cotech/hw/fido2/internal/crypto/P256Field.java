@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.crypto;
+
+
+/**
+ * Fixed-width arithmetic in the field of curve P-256, used to validate points without BigInteger.
+ * <p>
+ * Field elements are eight 32-bit limbs, least significant first. All operations take the same time regardless of
+ * their operands, and work on buffers that are allocated once per instance. Instances are not thread-safe.
+ *
+ * @see <a href="https://nvlpubs.nist.gov/nistpubs/FIPS/NIST.FIPS.186-4.pdf">FIPS 186-4, D.2.3</a>
+ */
+final class P256Field {
+    static final int FIELD_LENGTH = 32;
+
+    private static final int LIMBS = 8;
+    private static final long MASK = 0xffffffffL;
+
+    // p = 2^256 - 2^224 + 2^192 + 2^96 - 1
+    private static final int[] P = { -1, -1, -1, 0, 0, 0, 1, -1 };
+    private static final int[] THREE = { 3, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int[] B = decodeConstant("5ac635d8aa3a93e7b3ebbd55769886bc651d06b0cc53b0f63bce3c3e27d2604b");
+
+    private final int[] x = new int[LIMBS];
+    private final int[] y = new int[LIMBS];
+    private final int[] lhs = new int[LIMBS];
+    private final int[] rhs = new int[LIMBS];
+    private final int[] product = new int[2 * LIMBS];
+    private final long[] accumulator = new long[LIMBS];
+
+    /**
+     * Returns true if the two 32-byte big-endian coordinates starting at {@code offset} are reduced modulo p and
+     * satisfy y^2 = x^3 - 3x + b.
+     */
+    boolean isPointOnCurve(byte[] coordinates, int offset) {
+        decode(coordinates, offset, x);
+        decode(coordinates, offset + FIELD_LENGTH, y);
+        int isReduced = isLessThanP(x) & isLessThanP(y);
+
+        mul(y, y, lhs);
+
+        mul(x, x, rhs);
+        sub(rhs, THREE, rhs);
+        mul(rhs, x, rhs);
+        add(rhs, B, rhs);
+
+        return (isReduced & isEqual(lhs, rhs)) == 1;
+    }
+
+    static void decode(byte[] input, int offset, int[] output) {
+        for (int i = 0; i < LIMBS; i++) {
+            int position = offset + FIELD_LENGTH - 4 * (i + 1);
+            output[i] = (input[position] & 0xff) << 24
+                    | (input[position + 1] & 0xff) << 16
+                    | (input[position + 2] & 0xff) << 8
+                    | (input[position + 3] & 0xff);
+        }
+    }
+
+    /** Returns 1 if a < p, 0 otherwise. */
+    static int isLessThanP(int[] a) {
+        long borrow = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            borrow = ((a[i] & MASK) - (P[i] & MASK) + borrow) >> 32;
+        }
+        return (int) -borrow;
+    }
+
+    /** Returns 1 if a == b, 0 otherwise. */
+    static int isEqual(int[] a, int[] b) {
+        int difference = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            difference |= a[i] ^ b[i];
+        }
+        return ((difference | -difference) >>> 31) ^ 1;
+    }
+
+    /** out = a + b mod p, for reduced a and b. */
+    static void add(int[] a, int[] b, int[] out) {
+        long carry = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            carry += (a[i] & MASK) + (b[i] & MASK);
+            out[i] = (int) carry;
+            carry >>>= 32;
+        }
+        // subtract p if the sum overflowed, or is not reduced
+        int subtractMask = (int) -carry | (isLessThanP(out) - 1);
+        long borrow = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            borrow = (out[i] & MASK) - (P[i] & subtractMask & MASK) + borrow;
+            out[i] = (int) borrow;
+            borrow >>= 32;
+        }
+    }
+
+    /** out = a - b mod p, for reduced a and b. */
+    static void sub(int[] a, int[] b, int[] out) {
+        long borrow = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            borrow += (a[i] & MASK) - (b[i] & MASK);
+            out[i] = (int) borrow;
+            borrow >>= 32;
+        }
+        // add p if the difference is negative
+        int addMask = (int) borrow;
+        long carry = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            carry += (out[i] & MASK) + (P[i] & addMask & MASK);
+            out[i] = (int) carry;
+            carry >>>= 32;
+        }
+    }
+
+    /** out = a * b mod p, for reduced a and b. out may be the same array as a or b. */
+    void mul(int[] a, int[] b, int[] out) {
+        for (int i = 0; i < 2 * LIMBS; i++) {
+            product[i] = 0;
+        }
+        for (int i = 0; i < LIMBS; i++) {
+            long carry = 0;
+            long ai = a[i] & MASK;
+            for (int j = 0; j < LIMBS; j++) {
+                carry += ai * (b[j] & MASK) + (product[i + j] & MASK);
+                product[i + j] = (int) carry;
+                carry >>>= 32;
+            }
+            product[i + LIMBS] = (int) carry;
+        }
+        reduce(out);
+    }
+
+    /**
+     * Reduces the 512-bit product modulo p, using the word-wise identities of FIPS 186-4, D.2.3:
+     * r = s1 + 2 s2 + 2 s3 + s4 + s5 - d1 - d2 - d3 - d4.
+     */
+    private void reduce(int[] out) {
+        long c0 = product[0] & MASK, c1 = product[1] & MASK, c2 = product[2] & MASK, c3 = product[3] & MASK;
+        long c4 = product[4] & MASK, c5 = product[5] & MASK, c6 = product[6] & MASK, c7 = product[7] & MASK;
+        long c8 = product[8] & MASK, c9 = product[9] & MASK, c10 = product[10] & MASK, c11 = product[11] & MASK;
+        long c12 = product[12] & MASK, c13 = product[13] & MASK, c14 = product[14] & MASK, c15 = product[15] & MASK;
+
+        long[] acc = accumulator;
+        acc[0] = c0 + c8 + c9 - c11 - c12 - c13 - c14;
+        acc[1] = c1 + c9 + c10 - c12 - c13 - c14 - c15;
+        acc[2] = c2 + c10 + c11 - c13 - c14 - c15;
+        acc[3] = c3 + 2 * c11 + 2 * c12 + c13 - c15 - c8 - c9;
+        acc[4] = c4 + 2 * c12 + 2 * c13 + c14 - c9 - c10;
+        acc[5] = c5 + 2 * c13 + 2 * c14 + c15 - c10 - c11;
+        acc[6] = c6 + 3 * c14 + 2 * c15 + c13 - c8 - c9;
+        acc[7] = c7 + 3 * c15 + c8 - c10 - c11 - c12 - c13;
+
+        // two rounds of folding the carry back in, using 2^256 = 2^224 - 2^192 - 2^96 + 1 (mod p), are enough
+        // to bring the result into [0, 2^256)
+        for (int round = 0; round < 2; round++) {
+            long carry = propagateCarry(acc);
+            acc[0] += carry;
+            acc[3] -= carry;
+            acc[6] -= carry;
+            acc[7] += carry;
+        }
+        propagateCarry(acc);
+
+        for (int i = 0; i < LIMBS; i++) {
+            out[i] = (int) acc[i];
+        }
+        // the result is below 2^256 < 2p, so subtracting p once fully reduces it
+        int subtractMask = isLessThanP(out) - 1;
+        long borrow = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            borrow = (out[i] & MASK) - (P[i] & subtractMask & MASK) + borrow;
+            out[i] = (int) borrow;
+            borrow >>= 32;
+        }
+    }
+
+    private static long propagateCarry(long[] acc) {
+        long carry = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            acc[i] += carry;
+            carry = acc[i] >> 32;
+            acc[i] &= MASK;
+        }
+        return carry;
+    }
+
+    private static int[] decodeConstant(String hex) {
+        byte[] bytes = new byte[FIELD_LENGTH];
+        for (int i = 0; i < FIELD_LENGTH; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        int[] result = new int[LIMBS];
+        decode(bytes, 0, result);
+        return result;
+    }
+}
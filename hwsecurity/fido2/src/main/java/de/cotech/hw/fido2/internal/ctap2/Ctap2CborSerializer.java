@@ -25,244 +25,52 @@
 package de.cotech.hw.fido2.internal.ctap2;
 
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.util.List;
-import java.util.Map.Entry;
-
-import de.cotech.hw.fido2.internal.cbor_java.CborBuilder;
-import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
-import de.cotech.hw.fido2.internal.cbor_java.CborEncoder;
-import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.builder.ArrayBuilder;
-import de.cotech.hw.fido2.internal.cbor_java.builder.MapBuilder;
-import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
-import de.cotech.hw.fido2.internal.cose.CoseIdentifiers.CoseAlg;
+import de.cotech.hw.fido2.internal.cbor.CborWriter;
 import de.cotech.hw.fido2.internal.ctap2.commands.clientPin.AuthenticatorClientPin;
+import de.cotech.hw.fido2.internal.ctap2.commands.clientPin.CborBinding_AuthenticatorClientPin;
 import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion;
-import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorGetInfo;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.CborBinding_AuthenticatorGetAssertion;
 import de.cotech.hw.fido2.internal.ctap2.commands.makeCredential.AuthenticatorMakeCredential;
-import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
-import de.cotech.hw.fido2.domain.AuthenticatorTransport;
-import de.cotech.hw.fido2.domain.PublicKeyCredentialParameters;
-import de.cotech.hw.fido2.domain.PublicKeyCredentialType;
-import de.cotech.hw.fido2.domain.PublicKeyCredentialEntity;
-import de.cotech.hw.fido2.domain.PublicKeyCredentialRpEntity;
-import de.cotech.hw.fido2.domain.PublicKeyCredentialUserEntity;
-import de.cotech.hw.fido2.internal.ctap2.commands.makeCredential.AuthenticatorMakeCredential.AuthenticatorMakeCredentialOptions;
+import de.cotech.hw.fido2.internal.ctap2.commands.makeCredential.CborBinding_AuthenticatorMakeCredential;
 import de.cotech.hw.fido2.internal.ctap2.commands.rawCommand.RawCtap2Command;
 
 
 class Ctap2CborSerializer {
+    private final CborWriter writer = new CborWriter();
 
-    byte[] toCborBytes(Ctap2Command command) {
-        if (command instanceof RawCtap2Command) {
-            return ((RawCtap2Command) command).data();
-        }
-
-        CborBuilder cborBuilder = new CborBuilder();
-        writeToBuilder(cborBuilder, command);
-        List<DataItem> cborData = cborBuilder.build();
-        return writeCborDataToBytes(cborData);
-    }
-
-    private byte[] writeCborDataToBytes(List<DataItem> cborData) {
-        try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            new CborEncoder(outputStream).encode(cborData);
-            return outputStream.toByteArray();
-        } catch (CborException e) {
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    private void writeToBuilder(CborBuilder cborBuilder, Ctap2Command command) {
-        if (command instanceof AuthenticatorMakeCredential) {
-            writeToBuilder(cborBuilder, (AuthenticatorMakeCredential) command);
-        } else if (command instanceof AuthenticatorGetAssertion) {
-            writeToBuilder(cborBuilder, (AuthenticatorGetAssertion) command);
-        } else if (command instanceof AuthenticatorGetInfo) {
-            // nothing to do, this command doesn't contain any parameters
-        } else if (command instanceof AuthenticatorClientPin) {
-            writeToBuilder(cborBuilder, (AuthenticatorClientPin) command);
-        } else {
-            throw new UnsupportedOperationException();
-        }
-    }
-
-    private void writeToBuilder(CborBuilder cborBuilder2, AuthenticatorMakeCredential amc) {
-        MapBuilder<?> cborBuilder = cborBuilder2.addMap();
-
-        // clientDataHash 	0x01 	byte string (CBOR major type 2).
-        cborBuilder.put(0x01, amc.clientDataHash());
-
-        // rp 	0x02 	CBOR definite length map (CBOR major type 5).
-        MapBuilder<?> rpMapBuilder = cborBuilder.putMap(0x02);
-        writeToMap(rpMapBuilder, amc.rp());
-
-        // user 	0x03 	CBOR definite length map (CBOR major type 5).
-        MapBuilder<?> userMapBuilder = cborBuilder.putMap(0x03);
-        writeToMap(userMapBuilder, amc.user());
-
-        // pubKeyCredParams 	0x04 	CBOR definite length array (CBOR major type 4) of CBOR definite length maps (CBOR major type 5).
-        ArrayBuilder<?> pubCredBuilder = cborBuilder.putArray(0x04);
-        for (PublicKeyCredentialParameters params : amc.pubKeyCredParams()) {
-            MapBuilder<?> pubCredMapBuidler = pubCredBuilder.addMap();
-            writeToMap(pubCredMapBuidler, params);
-        }
-
-        // optional parameters
-
-        // excludeList 	0x05 	CBOR definite length array (CBOR major type 4) of CBOR definite length maps (CBOR major type 5).
-        List<PublicKeyCredentialDescriptor> excludeList = amc.excludeList();
-        if (excludeList != null) {
-            ArrayBuilder<?> arrayBuilder = cborBuilder.putArray(0x05);
-            for (PublicKeyCredentialDescriptor descriptor : excludeList) {
-                MapBuilder<?> mapBuilder = arrayBuilder.addMap();
-                writeToMap(mapBuilder, descriptor);
-                mapBuilder.end();
-            }
-            arrayBuilder.end();
-        }
-        // extensions 	0x06 	CBOR definite length map (CBOR major type 5).
-
-        // options 	0x07 	CBOR definite length map (CBOR major type 5).
-        AuthenticatorMakeCredentialOptions options = amc.options();
-        if (options != null) {
-            MapBuilder<?> mapBuilder = cborBuilder.putMap(0x07);
-            Boolean rk = options.rk();
-            if (rk != null) {
-                mapBuilder.put("rk", rk);
-            }
-            mapBuilder.end();
-            /* not supported yet
-            Boolean uv = options.uv();
-            if (uv != null) {
-                mapBuilder.put("uv", rk);
-            }
-            */
-        }
-
-        // pinAuth 	0x08 	byte string (CBOR major type 2).
-        if (amc.pinAuth() != null) {
-            cborBuilder.put(0x08, amc.pinAuth());
-        }
-
-        // pinProtocol 	0x09 	PIN protocol version chosen by the client. For this version of the spec, this SHALL be the number 1.
-        Integer pinProtocol = amc.pinProtocol();
-        if (pinProtocol != null) {
-            cborBuilder.put(0x09, pinProtocol);
-        }
-    }
-
-    private void writeToBuilder(CborBuilder cborBuilder2, AuthenticatorGetAssertion aga) {
-        MapBuilder<?> cborBuilder = cborBuilder2.addMap();
-
-        // rpId 	0x01 	UTF-8 encoded text string (CBOR major type 3).
-        cborBuilder.put(0x01, aga.rpId());
-        // clientDataHash 	0x02 	byte string (CBOR major type 2).
-        cborBuilder.put(0x02, aga.clientDataHash());
-
-        // optional parameters
-
-        // allowList 	0x03 	CBOR definite length array (CBOR major type 4) of CBOR definite length maps (CBOR major type 5).
-        List<PublicKeyCredentialDescriptor> publicKeyCredentialDescriptors = aga.allowList();
-        if (publicKeyCredentialDescriptors != null && !publicKeyCredentialDescriptors.isEmpty()) {
-            ArrayBuilder<?> pubCredBuilder = cborBuilder.putArray(0x03);
-            for (PublicKeyCredentialDescriptor params : publicKeyCredentialDescriptors) {
-                MapBuilder<?> pubCredMapBuidler = pubCredBuilder.addMap();
-                writeToMap(pubCredMapBuidler, params);
-            }
-        }
-        // extensions 	0x04 	CBOR definite length map (CBOR major type 5).
-        // options 	0x05 	CBOR definite length map (CBOR major type 5).
+    /**
+     * Returns the command byte, followed by the CTAP2 canonical CBOR encoding of the command parameters.
+     * The parameter maps are written by the bindings that CborBindingProcessor generates from the @CborKey
+     * annotations of the command classes.
+     */
+    synchronized byte[] toCommandBytes(Ctap2Command command) {
+        writer.reset();
+        writer.writeRawByte(command.commandValue());
 
-        // pinAuth 	0x06 	byte string (CBOR major type 2).
-        if (aga.pinAuth() != null) {
-            cborBuilder.put(0x06, aga.pinAuth());
-        }
-
-        // pinProtocol 	0x07 	PIN protocol version chosen by the client. For this version of the spec, this SHALL be the number 1.
-        Integer pinProtocol = aga.pinProtocol();
-        if (pinProtocol != null) {
-            cborBuilder.put(0x07, pinProtocol);
-        }
-    }
-
-    private void writeToBuilder(CborBuilder cborBuilder2, AuthenticatorClientPin acp) {
-        MapBuilder<?> cborBuilder = cborBuilder2.addMap();
-
-        // pinProtocol (0x01) 	Unsigned Integer 	Required 	PIN protocol version chosen by the client. For this version of the spec, this SHALL be the number 1.
-        cborBuilder.put(0x01, acp.pinProtocol());
-        // subCommand (0x02) 	Unsigned Integer 	Required 	The authenticator Client PIN sub command currently being requested
-        cborBuilder.put(0x02, acp.subCommand());
-
-        // optional parameters
-
-        // keyAgreement (0x03) 	COSE_Key 	Optional 	Public key of platformKeyAgreementKey. The COSE_Key-encoded public key MUST contain the optional "alg" parameter and MUST NOT contain any other optional parameters. The "alg" parameter MUST contain a COSEAlgorithmIdentifier value.
-        if (acp.keyAgreement() != null) {
-            try {
-                cborBuilder.put(Ctap2CborConstants.CBOR_THREE, new CborDecoder(new ByteArrayInputStream(acp.keyAgreement())).decodeNext());
-            } catch (CborException e) {
-                throw new IllegalArgumentException(e);
-            }
-        }
-
-        // pinAuth (0x04) 	Byte Array 	Optional 	First 16 bytes of HMAC-SHA-256 of encrypted contents using sharedSecret. See Setting a new PIN, Changing existing PIN and Getting pinToken from the authenticator for more details.
-        if (acp.pinAuth() != null) {
-            cborBuilder.put(0x04, acp.pinAuth());
-        }
-
-        // newPinEnc (0x05) 	Byte Array 	Optional 	Encrypted new PIN using sharedSecret. Encryption is done over UTF-8 representation of new PIN.
-        if (acp.newPinEnc() != null) {
-            cborBuilder.put(0x05, acp.newPinEnc());
-        }
-
-        // pinHashEnc (0x06) 	Byte Array 	Optional 	Encrypted first 16 bytes of SHA-256 of PIN using sharedSecret.
-        if (acp.pinHashEnc() != null) {
-            cborBuilder.put(0x06, acp.pinHashEnc());
-        }
-    }
-
-    private void writeToMap(MapBuilder<?> mapBuilder, PublicKeyCredentialRpEntity rpEntity) {
-        writeToMap(mapBuilder, (PublicKeyCredentialEntity) rpEntity);
-        if (rpEntity.id() != null) {
-            mapBuilder.put("id", rpEntity.id());
-        }
-    }
-
-    private void writeToMap(MapBuilder<?> mapBuilder, PublicKeyCredentialUserEntity userEntity) {
-        writeToMap(mapBuilder, (PublicKeyCredentialEntity) userEntity);
-        mapBuilder.put("id", userEntity.id());
-        if (userEntity.displayName() != null) {
-            mapBuilder.put("displayName", userEntity.displayName());
-        }
-    }
-
-    private void writeToMap(MapBuilder<?> mapBuilder, PublicKeyCredentialParameters publicKeyCredentialParameters) {
-        for (Entry<PublicKeyCredentialType, CoseAlg> entry : publicKeyCredentialParameters.parameters().entrySet()) {
-            mapBuilder.put("type", entry.getKey().type);
-            mapBuilder.put("alg", entry.getValue().label);
-        }
-    }
-
-    private void writeToMap(MapBuilder<?> mapBuilder, PublicKeyCredentialEntity credentialEntity) {
-        mapBuilder.put("name", credentialEntity.name());
-        if (credentialEntity.icon() != null) {
-            mapBuilder.put("icon", credentialEntity.icon());
-        }
-    }
-
-    private void writeToMap(MapBuilder<?> mapBuilder, PublicKeyCredentialDescriptor descriptor) {
-        mapBuilder.put("type", descriptor.type().type);
-        mapBuilder.put("id", descriptor.id());
-        List<AuthenticatorTransport> transports = descriptor.transports();
-        if (transports != null) {
-            ArrayBuilder<?> arrayBuilder = mapBuilder.putArray("transports");
-            for (AuthenticatorTransport transport : transports) {
-                arrayBuilder.add(transport.transport);
-            }
-        }
+        if (command instanceof RawCtap2Command) {
+            writer.writeRawBytes(((RawCtap2Command) command).data());
+            return writer.toByteArray();
+        }
+
+        // dispatch on the command byte, which the command classes fix on creation
+        switch (command.commandValue()) {
+            case Ctap2Command.COMMAND_MAKE_CREDENTIAL:
+                CborBinding_AuthenticatorMakeCredential.encode(writer, (AuthenticatorMakeCredential) command);
+                break;
+            case Ctap2Command.COMMAND_GET_ASSERTION:
+                CborBinding_AuthenticatorGetAssertion.encode(writer, (AuthenticatorGetAssertion) command);
+                break;
+            case Ctap2Command.COMMAND_GET_INFO:
+            case Ctap2Command.COMMAND_GET_NEXT_ASSERTION:
+                // nothing to do, these commands don't contain any parameters
+                break;
+            case Ctap2Command.COMMAND_CLIENT_PIN:
+                CborBinding_AuthenticatorClientPin.encode(writer, (AuthenticatorClientPin) command);
+                break;
+            default:
+                throw new UnsupportedOperationException();
+        }
+
+        return writer.toByteArray();
     }
 }
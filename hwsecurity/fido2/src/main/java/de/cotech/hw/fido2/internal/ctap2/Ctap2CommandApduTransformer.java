@@ -26,7 +26,6 @@ package de.cotech.hw.fido2.internal.ctap2;
 
 
 import de.cotech.hw.internal.iso7816.CommandApdu;
-import de.cotech.hw.util.Arrays;
 
 
 public class Ctap2CommandApduTransformer {
@@ -42,12 +41,15 @@ public class Ctap2CommandApduTransformer {
         return transformCommandBytesToCommandApdu(commandBytes);
     }
 
+    public static boolean isCtap2CommandApdu(CommandApdu commandApdu) {
+        return commandApdu.getCLA() == FIDO2_CLA_PROPRIETARY && commandApdu.getINS() == FIDO2_INS;
+    }
+
     private CommandApdu transformCommandBytesToCommandApdu(byte[] commandBytes) {
         return CommandApdu.create(FIDO2_CLA_PROPRIETARY, FIDO2_INS, FIDO2_P1, FIDO2_P2, commandBytes);
     }
 
     private byte[] transformCommandToBytes(Ctap2Command command) {
-        byte[] cborBytes = ctap2CborSerializer.toCborBytes(command);
-        return Arrays.prepend(cborBytes, command.commandValue());
+        return ctap2CborSerializer.toCommandBytes(command);
     }
 }
@@ -27,11 +27,14 @@ package de.cotech.hw.fido2.internal.ctap2.commands.clientPin;
 
 import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborKey;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Command;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2ResponseFactory;
 
 
 @AutoValue
+@CborBinding(encoder = true)
 public abstract class AuthenticatorClientPin extends Ctap2Command<AuthenticatorClientPinResponse> {
     private static final byte PIN_PROTOCOL_V1 = 1;
     private static final byte SUBCOMMAND_GET_RETRIES = 1;
@@ -41,24 +44,30 @@ public abstract class AuthenticatorClientPin extends Ctap2Command<AuthenticatorC
     private static final byte SUBCOMMAND_GET_PIN_TOKEN = 5;
 
     // pinProtocol (0x01) 	Unsigned Integer 	Required 	PIN protocol version chosen by the client. For this version of the spec, this SHALL be the number 1.
+    @CborKey(0x01)
     public abstract byte pinProtocol();
     // subCommand (0x02) 	Unsigned Integer 	Required 	The authenticator Client PIN sub command currently being requested
+    @CborKey(0x02)
     public abstract byte subCommand();
     // keyAgreement (0x03) 	COSE_Key 	Optional 	Public key of platformKeyAgreementKey. The COSE_Key-encoded public key MUST contain the optional "alg" parameter and MUST NOT contain any other optional parameters. The "alg" parameter MUST contain a COSEAlgorithmIdentifier value.
     @Nullable
     @SuppressWarnings("mutable")
+    @CborKey(value = 0x03, encoded = true)
     public abstract byte[] keyAgreement();
     // pinAuth (0x04) 	Byte Array 	Optional 	First 16 bytes of HMAC-SHA-256 of encrypted contents using sharedSecret. See Setting a new PIN, Changing existing PIN and Getting pinToken from the authenticator for more details.
     @Nullable
     @SuppressWarnings("mutable")
+    @CborKey(0x04)
     public abstract byte[] pinAuth();
     // newPinEnc (0x05) 	Byte Array 	Optional 	Encrypted new PIN using sharedSecret. Encryption is done over UTF-8 representation of new PIN.
     @Nullable
     @SuppressWarnings("mutable")
+    @CborKey(0x05)
     public abstract byte[] newPinEnc();
     // pinHashEnc (0x06) 	Byte Array 	Optional 	Encrypted first 16 bytes of SHA-256 of PIN using sharedSecret.
     @Nullable
     @SuppressWarnings("mutable")
+    @CborKey(0x06)
     public abstract byte[] pinHashEnc();
 
     public static AuthenticatorClientPin createGetRetries() {
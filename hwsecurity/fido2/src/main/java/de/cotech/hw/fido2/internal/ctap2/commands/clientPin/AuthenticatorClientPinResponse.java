@@ -27,21 +27,29 @@ package de.cotech.hw.fido2.internal.ctap2.commands.clientPin;
 
 import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborFactory;
+import de.cotech.hw.cbor.annotations.CborKey;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Response;
 
 
 @AutoValue
+@CborBinding(decoder = true)
 public abstract class AuthenticatorClientPinResponse extends Ctap2Response {
     // KeyAgreement (0x01) 	COSE_Key 	Optional 	Authenticator key agreement public key in COSE_Key format. This will be used to establish a sharedSecret between platform and the authenticator. The COSE_Key-encoded public key MUST contain the optional "alg" parameter and MUST NOT contain any other optional parameters. The "alg" parameter MUST contain a COSEAlgorithmIdentifier value.
     @Nullable
+    @CborKey(value = 0x01, encoded = true)
     public abstract byte[] keyAgreement();
     // pinToken (0x02) 	Byte Array 	Optional 	Encrypted pinToken using sharedSecret to be used in subsequent authenticatorMakeCredential and authenticatorGetAssertion operations.
     @Nullable
+    @CborKey(0x02)
     public abstract byte[] pinToken();
     // retries (0x03) 	Unsigned Integer 	Optional 	Number of PIN attempts remaining before lockout. This is optionally used to show in UI when collecting the PIN in Setting a new PIN, Changing existing PIN and Getting pinToken from the authenticator flows.
     @Nullable
+    @CborKey(0x03)
     public abstract Integer retries();
 
+    @CborFactory
     public static AuthenticatorClientPinResponse create(
             @Nullable byte[] keyAgreement,
             @Nullable byte[] pinToken,
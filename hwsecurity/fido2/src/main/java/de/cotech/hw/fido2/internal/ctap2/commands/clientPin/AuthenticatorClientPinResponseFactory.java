@@ -26,16 +26,9 @@ package de.cotech.hw.fido2.internal.ctap2.commands.clientPin;
 
 
 import java.io.IOException;
-import java.util.List;
 
-import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
+import de.cotech.hw.fido2.internal.cbor.CborReader;
 import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
-import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
-import de.cotech.hw.fido2.internal.cbor_java.model.Map;
-import de.cotech.hw.fido2.internal.cbor_java.model.UnsignedInteger;
-import de.cotech.hw.fido2.internal.cbor.CborUtils;
-import de.cotech.hw.fido2.internal.ctap2.Ctap2CborConstants;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2ResponseFactory;
 
 
@@ -45,19 +38,7 @@ public class AuthenticatorClientPinResponseFactory implements
     public AuthenticatorClientPinResponse createResponse(byte[] rawResponseData)
             throws IOException {
         try {
-            List<DataItem> dataItems = CborDecoder.decode(rawResponseData);
-            Map map = (Map) dataItems.get(0);
-
-            Map keyAgreementCbor = (Map) map.get(Ctap2CborConstants.CBOR_ONE);
-            byte[] keyAgreement = CborUtils.writeCborDataToBytes(keyAgreementCbor);
-            ByteString pinToken = (ByteString) map.get(Ctap2CborConstants.CBOR_TWO);
-            UnsignedInteger retries = (UnsignedInteger) map.get(Ctap2CborConstants.CBOR_THREE);
-
-            return AuthenticatorClientPinResponse.create(
-                    keyAgreement,
-                    pinToken != null ? pinToken.getBytes() : null,
-                    retries != null ? retries.getValue().intValue() : null
-            );
+            return CborBinding_AuthenticatorClientPinResponse.decode(new CborReader(rawResponseData));
         } catch (CborException e) {
             throw new IOException(e);
         }
@@ -29,6 +29,10 @@ import java.util.List;
 
 import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborKey;
+import de.cotech.hw.fido2.internal.cbor.CborAuthenticatorOptionsAdapter;
+import de.cotech.hw.fido2.internal.cbor.CborCredentialDescriptorsAdapter;
 import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Command;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2ResponseFactory;
@@ -36,30 +40,38 @@ import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorOptions;
 
 
 @AutoValue
+@CborBinding(encoder = true)
 public abstract class AuthenticatorGetAssertion extends Ctap2Command<AuthenticatorGetAssertionResponse> {
     // rpId 	0x01 	UTF-8 encoded text string (CBOR major type 3).
+    @CborKey(0x01)
     public abstract String rpId();
     // clientDataHash 	0x02 	byte string (CBOR major type 2).
     @SuppressWarnings("mutable")
+    @CborKey(0x02)
     public abstract byte[] clientDataHash();
     // Out of spec: The clientDataJson object associated with this request
     public abstract String clientDataJson();
     // allowList 	0x03 	CBOR definite length array (CBOR major type 4) of CBOR definite length maps (CBOR major type 5).
     @Nullable
+    @CborKey(value = 0x03, omitEmpty = true, adapter = CborCredentialDescriptorsAdapter.class)
     public abstract List<PublicKeyCredentialDescriptor> allowList();
     // extensions 	0x04 	CBOR definite length map (CBOR major type 5).
     @Nullable
     @SuppressWarnings("mutable")
+    @CborKey(value = 0x04, encoded = true)
     abstract byte[] extensions();
     // options 	0x05 	CBOR definite length map (CBOR major type 5).
     @Nullable
-    abstract AuthenticatorOptions options();
+    @CborKey(value = 0x05, adapter = CborAuthenticatorOptionsAdapter.class)
+    public abstract AuthenticatorOptions options();
     // pinAuth 	0x06 	byte string (CBOR major type 2).
     @Nullable
     @SuppressWarnings("mutable")
+    @CborKey(0x06)
     public abstract byte[] pinAuth();
     // pinProtocol 	0x07 	PIN protocol version chosen by the client. For this version of the spec, this SHALL be the number 1.
     @Nullable
+    @CborKey(0x07)
     public abstract Integer pinProtocol();
 
     public static AuthenticatorGetAssertion create(String rpId, byte[] clientDataHash, String clientDataJson, List<PublicKeyCredentialDescriptor> allowCredentials, AuthenticatorOptions options) {
@@ -70,8 +82,16 @@ public abstract class AuthenticatorGetAssertion extends Ctap2Command<Authenticat
         return new AutoValue_AuthenticatorGetAssertion(COMMAND_GET_ASSERTION, rpId, clientDataHash, clientDataJson, allowCredentials, null, options, pinAuth, pinProtocol);
     }
 
+    /**
+     * Returns a copy of this command for the given allowList.
+     */
+    public AuthenticatorGetAssertion withAllowList(List<PublicKeyCredentialDescriptor> allowList) {
+        return new AutoValue_AuthenticatorGetAssertion(COMMAND_GET_ASSERTION, rpId(), clientDataHash(), clientDataJson(),
+                allowList, extensions(), options(), pinAuth(), pinProtocol());
+    }
+
     @Override
     public Ctap2ResponseFactory<AuthenticatorGetAssertionResponse> getResponseFactory() {
-        return new AuthenticatorGetAssertionResponseFactory(this);
+        return new AuthenticatorGetAssertionResponseFactory(clientDataJson());
     }
 }
@@ -27,29 +27,40 @@ package de.cotech.hw.fido2.internal.ctap2.commands.getAssertion;
 
 import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborFactory;
+import de.cotech.hw.cbor.annotations.CborKey;
 import de.cotech.hw.fido2.domain.PublicKeyCredentialUserEntity;
+import de.cotech.hw.fido2.internal.cbor.CborUserEntityAdapter;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Response;
 
 
 @AutoValue
+@CborBinding(decoder = true)
 public abstract class AuthenticatorGetAssertionResponse extends Ctap2Response {
     // credential 	0x01 	definite length map (CBOR major type 5).
     @Nullable
+    @CborKey(value = 0x01, encoded = true)
     public abstract byte[] credential();
     // authData 	0x02 	byte string (CBOR major type 2).
+    @CborKey(0x02)
     public abstract byte[] authData();
     // signature 	0x03 	byte string (CBOR major type 2).
+    @CborKey(0x03)
     public abstract byte[] signature();
     // publicKeyCredentialUserEntity 	0x04 	definite length map (CBOR major type 5).
     @Nullable
+    @CborKey(value = 0x04, adapter = CborUserEntityAdapter.class)
     public abstract PublicKeyCredentialUserEntity user();
     // numberOfCredentials 	0x05 	unsigned integer(CBOR major type 0).
     @Nullable
+    @CborKey(0x05)
     public abstract Integer numberOfCredentials();
 
     public abstract byte[] clientDataJSON();
 
 
+    @CborFactory
     public static AuthenticatorGetAssertionResponse create(
             @Nullable byte[] credential,
             byte[] authData,
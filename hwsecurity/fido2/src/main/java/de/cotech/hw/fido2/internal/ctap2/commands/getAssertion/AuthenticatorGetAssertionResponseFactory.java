@@ -26,87 +26,28 @@ package de.cotech.hw.fido2.internal.ctap2.commands.getAssertion;
 
 
 import java.io.IOException;
-import java.util.List;
 
-import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
+import de.cotech.hw.fido2.internal.cbor.CborReader;
 import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
-import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
-import de.cotech.hw.fido2.internal.cbor_java.model.MajorType;
-import de.cotech.hw.fido2.internal.cbor_java.model.Map;
-import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
-import de.cotech.hw.fido2.internal.cbor_java.model.UnsignedInteger;
-import de.cotech.hw.fido2.domain.PublicKeyCredentialUserEntity;
-import de.cotech.hw.fido2.internal.cbor.CborUtils;
-import de.cotech.hw.fido2.internal.ctap2.Ctap2CborConstants;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2ResponseFactory;
 
 
 public class AuthenticatorGetAssertionResponseFactory implements
         Ctap2ResponseFactory<AuthenticatorGetAssertionResponse> {
-    private final AuthenticatorGetAssertion authenticatorGetAssertion;
+    private final String clientDataJson;
 
-    AuthenticatorGetAssertionResponseFactory(AuthenticatorGetAssertion authenticatorGetAssertion) {
-        this.authenticatorGetAssertion = authenticatorGetAssertion;
+    public AuthenticatorGetAssertionResponseFactory(String clientDataJson) {
+        this.clientDataJson = clientDataJson;
     }
 
     @Override
     public AuthenticatorGetAssertionResponse createResponse(byte[] rawResponseData)
             throws IOException {
         try {
-            List<DataItem> dataItems = CborDecoder.decode(rawResponseData);
-            DataItem dataItem = dataItems.get(0);
-            return readAuthenticatorGetAssertionResponse(dataItem);
-        } catch (CborException | ClassCastException e) {
+            return CborBinding_AuthenticatorGetAssertionResponse.decode(
+                    new CborReader(rawResponseData), clientDataJson.getBytes());
+        } catch (CborException e) {
             throw new IOException("Received incorrectly formatted AuthenticatorGetAssertionResponse", e);
         }
     }
-
-    private AuthenticatorGetAssertionResponse readAuthenticatorGetAssertionResponse(DataItem dataItem)
-            throws CborException, IOException {
-        Map responseMap = (Map) dataItem;
-
-        DataItem credential = responseMap.get(Ctap2CborConstants.CBOR_ONE);
-        ByteString authData = (ByteString) responseMap.get(Ctap2CborConstants.CBOR_TWO);
-        ByteString signature = (ByteString) responseMap.get(Ctap2CborConstants.CBOR_THREE);
-        DataItem user = responseMap.get(Ctap2CborConstants.CBOR_FOUR);
-        UnsignedInteger numberOfCredentials =
-                (UnsignedInteger) responseMap.get(Ctap2CborConstants.CBOR_FIVE);
-
-        PublicKeyCredentialUserEntity publicKeyCredentialUserEntity =
-                readPublicKeyCredentialUserEntity(user);
-
-        return AuthenticatorGetAssertionResponse.create(
-                credential != null ? CborUtils.writeCborDataToBytes(credential) : null,
-                authData.getBytes(),
-                signature.getBytes(),
-                publicKeyCredentialUserEntity,
-                numberOfCredentials != null ? numberOfCredentials.getValue().intValue() : null,
-                authenticatorGetAssertion.clientDataJson().getBytes()
-        );
-    }
-
-    private PublicKeyCredentialUserEntity readPublicKeyCredentialUserEntity(DataItem dataItem)
-            throws IOException {
-        if (dataItem == null) {
-            return null;
-        }
-        if (dataItem.getMajorType() != MajorType.MAP) {
-            throw new IOException("Expected user field to be of type Map, found " +
-                    dataItem.getMajorType());
-        }
-
-        Map userMap = ((Map) dataItem);
-        ByteString id = (ByteString) userMap.get(Ctap2CborConstants.CBOR_ID);
-        UnicodeString name = (UnicodeString) userMap.get(Ctap2CborConstants.CBOR_NAME);
-        UnicodeString displayName =  (UnicodeString) userMap.get(Ctap2CborConstants.CBOR_DISPLAYNAME);
-        UnicodeString icon = (UnicodeString) userMap.get(Ctap2CborConstants.CBOR_ICON);
-
-        return PublicKeyCredentialUserEntity.create(
-                id.getBytes(),
-                name != null ? name.getString() : null,
-                displayName != null ? displayName.getString() : null,
-                icon != null ? icon.getString() : null
-        );
-    }
 }
@@ -30,30 +30,59 @@ import java.util.List;
 
 import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborFactory;
+import de.cotech.hw.cbor.annotations.CborKey;
+import de.cotech.hw.fido2.internal.cbor.CborAuthenticatorOptionsAdapter;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Response;
 
 
 @AutoValue
+@CborBinding(decoder = true)
 public abstract class AuthenticatorGetInfoResponse extends Ctap2Response {
     private static final int DEFAULT_MAX_MSG_SIZE = 1024;
 
+    @CborKey(0x01)
     public abstract List<String> versions();
+    @CborKey(0x02)
     public abstract List<String> extensions();
     @SuppressWarnings("mutable")
+    @CborKey(0x03)
     public abstract byte[] aaguid();
+    @CborKey(value = 0x04, adapter = CborAuthenticatorOptionsAdapter.class)
     public abstract AuthenticatorOptions options();
+    @CborKey(0x05)
     public abstract int maxMsgSize();
     @Nullable
+    @CborKey(0x06)
     public abstract List<Integer> pinProtocols();
+    @Nullable
+    @CborKey(0x07)
+    public abstract Integer maxCredentialCountInList();
+    @Nullable
+    @CborKey(0x08)
+    public abstract Integer maxCredentialIdLength();
 
     public static AuthenticatorGetInfoResponse create(List<String> versions, List<String> extensions, byte[] aaguid,
             AuthenticatorOptions options, Integer maxMsgSize, List<Integer> pinProtocols) {
+        return create(versions, extensions, aaguid, options, maxMsgSize, pinProtocols, null, null);
+    }
+
+    @CborFactory
+    public static AuthenticatorGetInfoResponse create(List<String> versions, @Nullable List<String> extensions,
+            byte[] aaguid, @Nullable AuthenticatorOptions options, @Nullable Integer maxMsgSize,
+            @Nullable List<Integer> pinProtocols, @Nullable Integer maxCredentialCountInList,
+            @Nullable Integer maxCredentialIdLength) {
         if (extensions == null) {
             extensions = Collections.emptyList();
         }
+        if (options == null) {
+            options = AuthenticatorOptions.create();
+        }
         if (maxMsgSize == null) {
             maxMsgSize = DEFAULT_MAX_MSG_SIZE;
         }
-        return new AutoValue_AuthenticatorGetInfoResponse(versions, extensions, aaguid, options, maxMsgSize, pinProtocols);
+        return new AutoValue_AuthenticatorGetInfoResponse(versions, extensions, aaguid, options, maxMsgSize, pinProtocols,
+                maxCredentialCountInList, maxCredentialIdLength);
     }
 }
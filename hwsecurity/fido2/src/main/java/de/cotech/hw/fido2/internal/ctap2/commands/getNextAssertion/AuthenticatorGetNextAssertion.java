@@ -25,6 +25,28 @@
 package de.cotech.hw.fido2.internal.ctap2.commands.getNextAssertion;
 
 
-class AuthenticatorGetNextAssertion {
+import com.google.auto.value.AutoValue;
+import de.cotech.hw.fido2.internal.ctap2.Ctap2Command;
+import de.cotech.hw.fido2.internal.ctap2.Ctap2ResponseFactory;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertionResponse;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertionResponseFactory;
 
+
+/**
+ * Retrieves the next assertion of a preceding getAssertion, if the authenticator reported more than one credential.
+ * This must directly follow getAssertion or another getNextAssertion, since the authenticator discards its state
+ * on any other command.
+ */
+@AutoValue
+public abstract class AuthenticatorGetNextAssertion extends Ctap2Command<AuthenticatorGetAssertionResponse> {
+    // not sent, the client data of the preceding getAssertion is part of each response
+    public abstract String clientDataJson();
+
+    public static AuthenticatorGetNextAssertion create(String clientDataJson) {
+        return new AutoValue_AuthenticatorGetNextAssertion(COMMAND_GET_NEXT_ASSERTION, clientDataJson);
+    }
+
+    public Ctap2ResponseFactory<AuthenticatorGetAssertionResponse> getResponseFactory() {
+        return new AuthenticatorGetAssertionResponseFactory(clientDataJson());
+    }
 }
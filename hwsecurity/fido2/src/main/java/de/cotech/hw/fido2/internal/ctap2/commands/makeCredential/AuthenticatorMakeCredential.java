@@ -29,6 +29,13 @@ import java.util.List;
 
 import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborKey;
+import de.cotech.hw.fido2.internal.cbor.CborCredentialDescriptorsAdapter;
+import de.cotech.hw.fido2.internal.cbor.CborCredentialParametersAdapter;
+import de.cotech.hw.fido2.internal.cbor.CborMakeCredentialOptionsAdapter;
+import de.cotech.hw.fido2.internal.cbor.CborRpEntityAdapter;
+import de.cotech.hw.fido2.internal.cbor.CborUserEntityAdapter;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Command;
 import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
 import de.cotech.hw.fido2.domain.PublicKeyCredentialParameters;
@@ -38,25 +45,31 @@ import de.cotech.hw.fido2.internal.ctap2.Ctap2ResponseFactory;
 
 
 @AutoValue
+@CborBinding(encoder = true)
 public abstract class AuthenticatorMakeCredential extends Ctap2Command<AuthenticatorMakeCredentialResponse> {
     // 	Byte Array 	Required 	Hash of the ClientData contextual binding specified by host. See [WebAuthN].
     @SuppressWarnings("mutable")
+    @CborKey(0x01)
     public abstract byte[] clientDataHash();
 
     // Out of spec: The clientDataJson object associated with this request
     public abstract String clientDataJson();
 
     // 	PublicKeyCredentialRpEntity 	Required 	This PublicKeyCredentialRpEntity data structure describes a Relying Party with which the new public key credential will be associated. It contains the Relying party identifier, (optionally) a human-friendly RP name, and (optionally) a URL referencing a RP icon image. The RP name is to be used by the authenticator when displaying the credential to the user for selection and usage authorization.
+    @CborKey(value = 0x02, adapter = CborRpEntityAdapter.class)
     public abstract PublicKeyCredentialRpEntity rp();
 
     // 	PublicKeyCredentialUserEntity 	Required 	This PublicKeyCredentialUserEntity data structure describes the user account to which the new public key credential will be associated at the RP. It contains an RP-specific user account identifier, (optionally) a user name, (optionally) a user display name, and (optionally) a URL referencing a user icon image (of a user avatar, for example). The authenticator associates the created public key credential with the account identifier, and MAY also associate any or all of the user name, user display name, and image data (pointed to by the URL, if any).
+    @CborKey(value = 0x03, adapter = CborUserEntityAdapter.class)
     public abstract PublicKeyCredentialUserEntity user();
 
     // 	CBOR Array 	Required 	A sequence of CBOR maps consisting of pairs of PublicKeyCredentialType (a string) and cryptographic algorithm (a positive or negative integer), where algorithm identifiers are values that SHOULD be registered in the IANA COSE Algorithms registry [IANA-COSE-ALGS-REG]. This sequence is ordered from most preferred (by the RP) to least preferred.
+    @CborKey(value = 0x04, adapter = CborCredentialParametersAdapter.class)
     public abstract List<PublicKeyCredentialParameters> pubKeyCredParams();
 
     // 	Sequence of PublicKeyCredentialDescriptors 	Optional 	A sequence of PublicKeyCredentialDescriptor structures, as specified in [WebAuthN]. The authenticator returns an error if the authenticator already contains one of the credentials enumerated in this sequence. This allows RPs to limit the creation of multiple credentials for the same account on a single authenticator.
     @Nullable
+    @CborKey(value = 0x05, adapter = CborCredentialDescriptorsAdapter.class)
     public abstract List<PublicKeyCredentialDescriptor> excludeList();
 
     // 	CBOR map of extension identifier → authenticator extension input values 	Optional 	Parameters to influence authenticator operation, as specified in [WebAuthN]. These parameters might be authenticator specific.
@@ -64,15 +77,18 @@ public abstract class AuthenticatorMakeCredential extends Ctap2Command<Authentic
 
     // Map of authenticator options 	Optional 	Parameters to influence authenticator operation, as specified in in the table below.
     @Nullable
+    @CborKey(value = 0x07, adapter = CborMakeCredentialOptionsAdapter.class)
     public abstract AuthenticatorMakeCredentialOptions options();
 
     // Byte Array 	Optional 	First 16 bytes of HMAC-SHA-256 of clientDataHash using pinToken which platform got from the authenticator: HMAC-SHA-256(pinToken, clientDataHash).
     @Nullable
     @SuppressWarnings("mutable")
+    @CborKey(0x08)
     public abstract byte[] pinAuth();
 
     // Unsigned Integer 	Optional 	PIN protocol version chosen by the client
     @Nullable
+    @CborKey(0x09)
     public abstract Integer pinProtocol();
 
     @AutoValue
@@ -87,6 +103,14 @@ public abstract class AuthenticatorMakeCredential extends Ctap2Command<Authentic
         }
     }
 
+    /**
+     * Returns a copy of this command for the given excludeList.
+     */
+    public AuthenticatorMakeCredential withExcludeList(@Nullable List<PublicKeyCredentialDescriptor> excludeList) {
+        return new AutoValue_AuthenticatorMakeCredential(Ctap2Command.COMMAND_MAKE_CREDENTIAL, clientDataHash(),
+                clientDataJson(), rp(), user(), pubKeyCredParams(), excludeList, options(), pinAuth(), pinProtocol());
+    }
+
     @Override
     public Ctap2ResponseFactory<AuthenticatorMakeCredentialResponse> getResponseFactory() {
         return new AuthenticatorMakeCredentialResponseFactory(this);
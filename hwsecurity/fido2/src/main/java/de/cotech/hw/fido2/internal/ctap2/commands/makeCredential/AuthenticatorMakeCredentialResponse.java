@@ -26,21 +26,29 @@ package de.cotech.hw.fido2.internal.ctap2.commands.makeCredential;
 
 
 import com.google.auto.value.AutoValue;
+import de.cotech.hw.cbor.annotations.CborBinding;
+import de.cotech.hw.cbor.annotations.CborFactory;
+import de.cotech.hw.cbor.annotations.CborKey;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2Response;
 
 
 @AutoValue
+@CborBinding(decoder = true)
 public abstract class AuthenticatorMakeCredentialResponse extends Ctap2Response {
     // fmt 	0x01 	text string (CBOR major type 3).
+    @CborKey(0x01)
     public abstract String fmt();
     // authData 	0x02 	byte string (CBOR major type 2).
+    @CborKey(0x02)
     public abstract byte[] authData();
     // attStmt 	0x03 	definite length map (CBOR major type 5).
+    @CborKey(value = 0x03, encoded = true)
     public abstract byte[] attStmt();
 
     public abstract byte[] clientDataJSON();
 
 
+    @CborFactory
     public static AuthenticatorMakeCredentialResponse create(String fmt, byte[] authData, byte[] attStmt, byte[] clientDataJSON) {
         return new AutoValue_AuthenticatorMakeCredentialResponse(fmt, authData, attStmt, clientDataJSON);
     }
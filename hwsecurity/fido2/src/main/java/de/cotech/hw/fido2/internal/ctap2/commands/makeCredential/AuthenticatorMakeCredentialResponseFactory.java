@@ -26,16 +26,9 @@ package de.cotech.hw.fido2.internal.ctap2.commands.makeCredential;
 
 
 import java.io.IOException;
-import java.util.List;
 
-import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
+import de.cotech.hw.fido2.internal.cbor.CborReader;
 import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
-import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
-import de.cotech.hw.fido2.internal.cbor_java.model.Map;
-import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
-import de.cotech.hw.fido2.internal.cbor.CborUtils;
-import de.cotech.hw.fido2.internal.ctap2.Ctap2CborConstants;
 import de.cotech.hw.fido2.internal.ctap2.Ctap2ResponseFactory;
 
 
@@ -51,19 +44,8 @@ public class AuthenticatorMakeCredentialResponseFactory implements
     public AuthenticatorMakeCredentialResponse createResponse(byte[] rawResponseData)
             throws IOException {
         try {
-            List<DataItem> dataItems = CborDecoder.decode(rawResponseData);
-            Map map = (Map) dataItems.get(0);
-
-            UnicodeString fmt = (UnicodeString) map.get(Ctap2CborConstants.CBOR_ONE);
-            ByteString authData = (ByteString) map.get(Ctap2CborConstants.CBOR_TWO);
-            DataItem attStmt = map.get(Ctap2CborConstants.CBOR_THREE);
-
-            return AuthenticatorMakeCredentialResponse.create(
-                    fmt.getString(),
-                    authData.getBytes(),
-                    CborUtils.writeCborDataToBytes(attStmt),
-                    authenticatorMakeCredential.clientDataJson().getBytes()
-            );
+            return CborBinding_AuthenticatorMakeCredentialResponse.decode(
+                    new CborReader(rawResponseData), authenticatorMakeCredential.clientDataJson().getBytes());
         } catch (CborException e) {
             throw new IOException(e);
         }
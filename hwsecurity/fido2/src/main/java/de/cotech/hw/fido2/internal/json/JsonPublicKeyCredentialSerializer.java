@@ -21,66 +21,63 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package de.cotech.hw.fido2.internal.json;
 
 
-import de.cotech.hw.fido2.internal.utils.WebsafeBase64;
 import de.cotech.hw.fido2.domain.create.AuthenticatorAttestationResponse;
 import de.cotech.hw.fido2.domain.get.AuthenticatorAssertionResponse;
 import de.cotech.hw.fido2.domain.AuthenticatorResponse;
 import de.cotech.hw.fido2.PublicKeyCredential;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 
 public class JsonPublicKeyCredentialSerializer {
+    private static final int JSON_OVERHEAD = 256;
+
     public String publicKeyCredentialToJsonString(PublicKeyCredential publicKeyCredential) {
-        return publicKeyCredentialToJson(publicKeyCredential).toString();
+        JsonWriter writer = new JsonWriter(estimateJsonLength(publicKeyCredential));
+        writer.beginObject()
+                .name("type").value(publicKeyCredential.type())
+                .name("id").valueWebsafeBase64(publicKeyCredential.rawId())
+                .name("response");
+        writeAuthenticatorResponse(writer, publicKeyCredential.response());
+        writer.endObject();
+        return writer.toString();
     }
 
-    private JSONObject publicKeyCredentialToJson(PublicKeyCredential publicKeyCredential) {
-        try {
-            JSONObject result = new JSONObject();
-            result.put("type", publicKeyCredential.type());
-            result.put("id", publicKeyCredential.id());
-            result.put("response", authenticatorResponseToJson(publicKeyCredential.response()));
-            return result;
-        } catch (JSONException e) {
-            throw new IllegalArgumentException(e);
+    private void writeAuthenticatorResponse(JsonWriter writer, AuthenticatorResponse authenticatorResponse) {
+        writer.beginObject()
+                .name("clientDataJsonB64").valueWebsafeBase64(authenticatorResponse.clientDataJson());
+        if (authenticatorResponse instanceof AuthenticatorAttestationResponse) {
+            AuthenticatorAttestationResponse authenticatorAttestationResponse =
+                    (AuthenticatorAttestationResponse) authenticatorResponse;
+            writer.name("attestationObjectB64")
+                    .valueWebsafeBase64(authenticatorAttestationResponse.attestationObject());
         }
-    }
+        if (authenticatorResponse instanceof AuthenticatorAssertionResponse) {
+            AuthenticatorAssertionResponse authenticatorAssertionResponse =
+                    (AuthenticatorAssertionResponse) authenticatorResponse;
+            writer.name("authenticatorDataB64")
+                    .valueWebsafeBase64(authenticatorAssertionResponse.authenticatorData());
+            writer.name("signatureB64").valueWebsafeBase64(authenticatorAssertionResponse.signature());
 
-    private JSONObject authenticatorResponseToJson(AuthenticatorResponse authenticatorResponse) {
-        try {
-            JSONObject result = new JSONObject();
-            result.put("clientDataJsonB64", WebsafeBase64.encodeToString(authenticatorResponse.clientDataJson()));
-            if (authenticatorResponse instanceof AuthenticatorAttestationResponse) {
-                AuthenticatorAttestationResponse authenticatorAttestationResponse =
-                        (AuthenticatorAttestationResponse) authenticatorResponse;
-                String attestationObjectB64 = WebsafeBase64.encodeToString(
-                        authenticatorAttestationResponse.attestationObject());
-                result.put("attestationObjectB64", attestationObjectB64);
+            byte[] userHandle = authenticatorAssertionResponse.userHandle();
+            if (userHandle != null) {
+                writer.name("userHandleB64").valueWebsafeBase64(userHandle);
             }
-            if (authenticatorResponse instanceof AuthenticatorAssertionResponse) {
-                AuthenticatorAssertionResponse authenticatorAttestationResponse =
-                        (AuthenticatorAssertionResponse) authenticatorResponse;
-                String authenticatorDataB64 = WebsafeBase64.encodeToString(
-                        authenticatorAttestationResponse.authenticatorData());
-                result.put("authenticatorDataB64", authenticatorDataB64);
-                String signatureB64 = WebsafeBase64.encodeToString(
-                        authenticatorAttestationResponse.signature());
-                result.put("signatureB64", signatureB64);
+        }
+        writer.endObject();
+    }
 
-                byte[] userHandle = authenticatorAttestationResponse.userHandle();
-                if (userHandle != null) {
-                    String userHandleB64 = WebsafeBase64.encodeToString(userHandle);
-                    result.put("userHandleB64", userHandleB64);
-                }
-            }
-            return result;
-        } catch (JSONException e) {
-            throw new IllegalArgumentException(e);
+    private static int estimateJsonLength(PublicKeyCredential publicKeyCredential) {
+        AuthenticatorResponse response = publicKeyCredential.response();
+        int binaryLength = publicKeyCredential.rawId().length + response.clientDataJson().length;
+        if (response instanceof AuthenticatorAttestationResponse) {
+            binaryLength += ((AuthenticatorAttestationResponse) response).attestationObject().length;
+        }
+        if (response instanceof AuthenticatorAssertionResponse) {
+            AuthenticatorAssertionResponse assertionResponse = (AuthenticatorAssertionResponse) response;
+            binaryLength += assertionResponse.authenticatorData().length + assertionResponse.signature().length;
         }
+        return binaryLength * 4 / 3 + JSON_OVERHEAD;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.json;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.cotech.hw.fido2.internal.utils.WebsafeBase64;
+
+
+/**
+ * Reads JSON token by token from a string, without building a tree of JSON objects first.
+ * <p>
+ * The API follows android.util.JsonReader, but binary values can be decoded from websafe Base64 directly with
+ * {@link #nextWebsafeBase64()}, without creating an intermediate string. Syntax errors and unexpected tokens are
+ * reported as {@link IOException}.
+ */
+public class JsonReader {
+    private static final int MAX_DEPTH = 64;
+
+    private static final int SCOPE_EMPTY_DOCUMENT = 0;
+    private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+    private static final int SCOPE_EMPTY_ARRAY = 2;
+    private static final int SCOPE_NONEMPTY_ARRAY = 3;
+    private static final int SCOPE_EMPTY_OBJECT = 4;
+    private static final int SCOPE_NONEMPTY_OBJECT = 5;
+    private static final int SCOPE_DANGLING_NAME = 6;
+
+    public enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private final String input;
+    private int position;
+
+    private int[] scopes = new int[8];
+    private int depth;
+
+    /**
+     * The next token, if it has been peeked but not consumed yet. The position is then at the first character of the
+     * token, or after the opening quote for names and strings.
+     */
+    private Token peeked;
+
+    public JsonReader(String input) {
+        this.input = input;
+        scopes[depth++] = SCOPE_EMPTY_DOCUMENT;
+    }
+
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        position++;
+        push(SCOPE_EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        position++;
+        depth--;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        position++;
+        push(SCOPE_EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        position++;
+        depth--;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Consumes the next name, and returns whether it equals the expected one, without creating a string for it.
+     */
+    public boolean nextNameEquals(String expected) throws IOException {
+        expect(Token.NAME);
+        int end = position + expected.length();
+        if (end < input.length() && input.charAt(end) == '"' && input.startsWith(expected, position)) {
+            position = end + 1;
+            return true;
+        }
+        return expected.equals(readString());
+    }
+
+    public String nextString() throws IOException {
+        expect(Token.STRING);
+        return readString();
+    }
+
+    /**
+     * Decodes the next string value as websafe or standard Base64.
+     */
+    public byte[] nextWebsafeBase64() throws IOException {
+        expect(Token.STRING);
+        int start = position;
+        int end = input.indexOf('"', start);
+        if (end < 0) {
+            throw syntaxError("Unterminated string");
+        }
+        try {
+            if (!containsEscape(start, end)) {
+                position = end + 1;
+                return WebsafeBase64.decode(input, start, end);
+            }
+            String encoded = readString();
+            return WebsafeBase64.decode(encoded, 0, encoded.length());
+        } catch (IllegalArgumentException e) {
+            throw syntaxError(e.getMessage());
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        if (input.startsWith("true", position)) {
+            position += 4;
+            return true;
+        }
+        if (input.startsWith("false", position)) {
+            position += 5;
+            return false;
+        }
+        throw syntaxError("Expected boolean");
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        if (!input.startsWith("null", position)) {
+            throw syntaxError("Expected null");
+        }
+        position += 4;
+    }
+
+    public long nextLong() throws IOException {
+        expect(Token.NUMBER);
+        long integer = readSmallInteger();
+        if (integer != Long.MIN_VALUE) {
+            return integer;
+        }
+        String number = readNumber();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            // may still be an integer in exponent notation, e.g. 6e4
+        }
+        double value;
+        try {
+            value = Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid number: " + number);
+        }
+        if ((long) value != value) {
+            throw syntaxError("Expected integer, but was " + number);
+        }
+        return (long) value;
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw syntaxError("Integer out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    public void skipValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_ARRAY:
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case BEGIN_OBJECT:
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case STRING:
+                nextString();
+                break;
+            case NUMBER:
+                expect(Token.NUMBER);
+                readNumber();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            default:
+                throw syntaxError("Expected a value, but was " + peek());
+        }
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + ", but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw syntaxError("Nesting too deep");
+        }
+        if (depth == scopes.length) {
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        }
+        scopes[depth++] = scope;
+    }
+
+    private Token doPeek() throws IOException {
+        int scope = scopes[depth - 1];
+        switch (scope) {
+            case SCOPE_EMPTY_ARRAY:
+                scopes[depth - 1] = SCOPE_NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    return Token.END_ARRAY;
+                }
+                break;
+            case SCOPE_NONEMPTY_ARRAY: {
+                int c = nextNonWhitespace();
+                if (c == ']') {
+                    return Token.END_ARRAY;
+                }
+                consume(',');
+                break;
+            }
+            case SCOPE_EMPTY_OBJECT:
+            case SCOPE_NONEMPTY_OBJECT: {
+                scopes[depth - 1] = SCOPE_DANGLING_NAME;
+                int c = nextNonWhitespace();
+                if (c == '}') {
+                    return Token.END_OBJECT;
+                }
+                if (scope == SCOPE_NONEMPTY_OBJECT) {
+                    consume(',');
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected name");
+                }
+                position++;
+                return Token.NAME;
+            }
+            case SCOPE_DANGLING_NAME:
+                scopes[depth - 1] = SCOPE_NONEMPTY_OBJECT;
+                nextNonWhitespace();
+                consume(':');
+                break;
+            case SCOPE_EMPTY_DOCUMENT:
+                scopes[depth - 1] = SCOPE_NONEMPTY_DOCUMENT;
+                break;
+            case SCOPE_NONEMPTY_DOCUMENT:
+                if (nextNonWhitespace() == -1) {
+                    return Token.END_DOCUMENT;
+                }
+                throw syntaxError("Trailing data");
+        }
+
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '"':
+                position++;
+                return Token.STRING;
+            case 't':
+            case 'f':
+                return Token.BOOLEAN;
+            case 'n':
+                return Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                throw syntaxError(c == -1 ? "Unexpected end of input" : "Unexpected character");
+        }
+    }
+
+    private void consume(char expected) throws IOException {
+        if (position >= input.length() || input.charAt(position) != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it, or -1 at the end of the input.
+     */
+    private int nextNonWhitespace() {
+        while (position < input.length()) {
+            char c = input.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    private String readString() throws IOException {
+        int start = position;
+        StringBuilder builder = null;
+        while (position < input.length()) {
+            char c = input.charAt(position++);
+            if (c == '"') {
+                if (builder == null) {
+                    return input.substring(start, position - 1);
+                }
+                builder.append(input, start, position - 1);
+                return builder.toString();
+            }
+            if (c == '\\') {
+                if (builder == null) {
+                    builder = new StringBuilder();
+                }
+                builder.append(input, start, position - 1);
+                builder.append(readEscapeCharacter());
+                start = position;
+            } else if (c < 0x20) {
+                throw syntaxError("Unescaped control character in string");
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private char readEscapeCharacter() throws IOException {
+        if (position >= input.length()) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        char escaped = input.charAt(position++);
+        switch (escaped) {
+            case '"':
+            case '\\':
+            case '/':
+                return escaped;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (position + 4 > input.length()) {
+                    throw syntaxError("Unterminated escape sequence");
+                }
+                try {
+                    char result = (char) Integer.parseInt(input.substring(position, position + 4), 16);
+                    position += 4;
+                    return result;
+                } catch (NumberFormatException e) {
+                    throw syntaxError("Invalid unicode escape");
+                }
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Reads a plain integer of up to 18 digits in place, or returns Long.MIN_VALUE and leaves the position unchanged
+     * for any other number.
+     */
+    private long readSmallInteger() {
+        int start = position;
+        int i = start;
+        boolean negative = i < input.length() && input.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        int digitsStart = i;
+        while (i < input.length() && i - digitsStart < 18) {
+            char c = input.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+            i++;
+        }
+        if (i == digitsStart || (i < input.length() && isNumberCharacter(input.charAt(i)))) {
+            return Long.MIN_VALUE;
+        }
+        position = i;
+        return negative ? -value : value;
+    }
+
+    private static boolean isNumberCharacter(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private boolean containsEscape(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (input.charAt(i) == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String readNumber() {
+        int start = position;
+        while (position < input.length()) {
+            if (!isNumberCharacter(input.charAt(position))) {
+                break;
+            }
+            position++;
+        }
+        return input.substring(start, position);
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at position " + position);
+    }
+}
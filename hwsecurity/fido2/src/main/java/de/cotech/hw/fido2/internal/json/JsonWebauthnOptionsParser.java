@@ -25,9 +25,9 @@
 package de.cotech.hw.fido2.internal.json;
 
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 
 import de.cotech.hw.fido2.domain.AuthenticatorTransport;
@@ -44,91 +44,240 @@ import de.cotech.hw.fido2.domain.create.PublicKeyCredentialCreationOptions;
 import de.cotech.hw.fido2.domain.get.PublicKeyCredentialRequestOptions;
 import de.cotech.hw.fido2.internal.cose.CoseIdentifiers.CoseAlg;
 import de.cotech.hw.util.HwTimber;
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 
+/**
+ * Parses the options passed to navigator.credentials.create() and get() by the WebAuthn bridge.
+ * <p>
+ * The options are read token by token with {@link JsonReader}, without building a JSON object tree. Binary fields
+ * such as the challenge are decoded directly to bytes, and may be given as websafe base64 string, as array, or as
+ * object with numeric keys, which is how JSON.stringify serializes an Uint8Array.
+ */
 public class JsonWebauthnOptionsParser {
+    private static final String[] INDEX_KEYS = new String[256];
+
+    static {
+        for (int i = 0; i < INDEX_KEYS.length; i++) {
+            INDEX_KEYS[i] = Integer.toString(i);
+        }
+    }
+
     public PublicKeyCredentialCreationOptions fromOptionsJsonMakeCredential(String jsonString) throws JSONException {
-        JSONObject jsonObject = new JSONObject(jsonString);
-        return fromJsonMakeCredential(jsonObject);
+        try {
+            JsonReader reader = new JsonReader(jsonString);
+            beginPublicKeyObject(reader);
+            return readMakeCredentialOptions(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new JSONException("Invalid options: " + e.getMessage());
+        }
+    }
+
+    public PublicKeyCredentialRequestOptions fromOptionsJsonGetAssertion(String jsonString) throws JSONException {
+        try {
+            JsonReader reader = new JsonReader(jsonString);
+            beginPublicKeyObject(reader);
+            return readGetAssertionOptions(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new JSONException("Invalid options: " + e.getMessage());
+        }
+    }
+
+    private void beginPublicKeyObject(JsonReader reader) throws IOException, JSONException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("publicKey".equals(reader.nextName())) {
+                return;
+            }
+            reader.skipValue();
+        }
+        throw new JSONException("Missing 'publicKey' in options!");
     }
 
-    private PublicKeyCredentialCreationOptions fromJsonMakeCredential(JSONObject jsonObject) throws JSONException {
-        JSONObject publicKeyObject = jsonObject.getJSONObject("publicKey");
+    private PublicKeyCredentialCreationOptions readMakeCredentialOptions(JsonReader reader)
+            throws IOException, JSONException {
+        PublicKeyCredentialRpEntity rp = null;
+        PublicKeyCredentialUserEntity user = null;
+        byte[] challenge = null;
+        List<PublicKeyCredentialParameters> pubKeyCredParams = new ArrayList<>();
+        Long timeout = null;
+        String attestation = null;
+        AuthenticatorSelectionCriteria authenticatorSelection = null;
 
-        PublicKeyCredentialRpEntity rp = jsonToRpEntity(publicKeyObject.getJSONObject("rp"));
-        PublicKeyCredentialUserEntity user = jsonToUserEntity(publicKeyObject.getJSONObject("user"));
-        byte[] challenge = jsonObjectOrArrayToByteArray(publicKeyObject.getJSONObject("challenge"));
-        List<PublicKeyCredentialParameters> pubKeyCredParams = jsonToPubKeyCredParamsList(publicKeyObject.optJSONArray("pubKeyCredParams"));
-        Long timeout = !publicKeyObject.isNull("timeout") ? publicKeyObject.getLong("timeout") : null;
-        AttestationConveyancePreference attestationConveyancePreference =
-                AttestationConveyancePreference.fromString(publicKeyObject.optString("attestation", null));
-        AuthenticatorSelectionCriteria authenticatorSelection = jsonToAuthenticatorSelectionCriteria(
-                publicKeyObject.optJSONObject("authenticatorSelection"));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "rp":
+                    rp = readRpEntity(reader);
+                    break;
+                case "user":
+                    user = readUserEntity(reader);
+                    break;
+                case "challenge":
+                    challenge = readByteArray(reader);
+                    break;
+                case "pubKeyCredParams":
+                    pubKeyCredParams = readPubKeyCredParamsList(reader);
+                    break;
+                case "timeout":
+                    timeout = reader.nextLong();
+                    break;
+                case "attestation":
+                    attestation = reader.nextString();
+                    break;
+                case "authenticatorSelection":
+                    authenticatorSelection = readAuthenticatorSelectionCriteria(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
 
+        if (rp == null || user == null || challenge == null) {
+            throw new JSONException("Missing 'rp', 'user', or 'challenge' in options!");
+        }
+        AttestationConveyancePreference attestationConveyancePreference =
+                AttestationConveyancePreference.fromString(attestation);
         return PublicKeyCredentialCreationOptions.create(rp, user, challenge, pubKeyCredParams, timeout,
                 authenticatorSelection, null, attestationConveyancePreference);
     }
 
-    private List<PublicKeyCredentialParameters> jsonToPubKeyCredParamsList(
-            JSONArray pubKeyCredParams) throws JSONException {
-        List<PublicKeyCredentialParameters> result = new ArrayList<>();
-        if (pubKeyCredParams == null) {
-            return result;
+    private PublicKeyCredentialRequestOptions readGetAssertionOptions(JsonReader reader)
+            throws IOException, JSONException {
+        byte[] challenge = null;
+        Long timeout = null;
+        String rpId = null;
+        List<PublicKeyCredentialDescriptor> allowCredentials = null;
+        String userVerification = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "challenge":
+                    challenge = readByteArray(reader);
+                    break;
+                case "timeout":
+                    timeout = reader.nextLong();
+                    break;
+                case "rpId":
+                    rpId = reader.nextString();
+                    break;
+                case "allowCredentials":
+                    allowCredentials = readPubKeyCredDescriptorList(reader);
+                    break;
+                case "userVerification":
+                    userVerification = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (challenge == null) {
+            throw new JSONException("Missing 'challenge' in options!");
         }
+        return PublicKeyCredentialRequestOptions.create(
+                challenge,
+                timeout,
+                rpId,
+                allowCredentials,
+                UserVerificationRequirement.fromString(userVerification)
+        );
+    }
+
+    private List<PublicKeyCredentialParameters> readPubKeyCredParamsList(JsonReader reader)
+            throws IOException, JSONException {
+        List<PublicKeyCredentialParameters> result = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String type = null;
+            Integer algIdentifier = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "type":
+                        type = reader.nextString();
+                        break;
+                    case "alg":
+                        algIdentifier = reader.nextInt();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-        for (int i = 0; i < pubKeyCredParams.length(); i++) {
-            JSONObject pubkeyCredParam = pubKeyCredParams.getJSONObject(i);
-            PublicKeyCredentialType type = PublicKeyCredentialType.fromString(pubkeyCredParam.getString("type"));
-            CoseAlg alg = CoseAlg.fromIdentifier(pubkeyCredParam.getInt("alg"));
+            if (type == null || algIdentifier == null) {
+                throw new JSONException("Missing 'type' or 'alg' in pubKeyCredParams!");
+            }
+            CoseAlg alg = CoseAlg.fromIdentifier(algIdentifier);
             if (alg == null) {
-                HwTimber.d("Skipping unknown COSE identifier: %s", pubkeyCredParam.getInt("alg"));
+                HwTimber.d("Skipping unknown COSE identifier: %s", algIdentifier);
                 continue;
             }
-            PublicKeyCredentialParameters parameters =
-                    PublicKeyCredentialParameters.createSingle(type, alg);
-            result.add(parameters);
+            result.add(PublicKeyCredentialParameters.createSingle(PublicKeyCredentialType.fromString(type), alg));
         }
+        reader.endArray();
         return result;
     }
 
-    private List<PublicKeyCredentialDescriptor> jsonToPubKeyKeyCredDescriptorList(JSONArray allowCredentials)
-            throws JSONException {
+    private List<PublicKeyCredentialDescriptor> readPubKeyCredDescriptorList(JsonReader reader)
+            throws IOException, JSONException {
         List<PublicKeyCredentialDescriptor> result = new ArrayList<>();
-        if (allowCredentials == null) {
-            return null;
-        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String type = null;
+            byte[] id = null;
+            List<AuthenticatorTransport> transports = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonReader.Token.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "type":
+                        type = reader.nextString();
+                        break;
+                    case "id":
+                        id = readByteArray(reader);
+                        break;
+                    case "transports":
+                        transports = readAuthenticatorTransports(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-        for (int i = 0; i < allowCredentials.length(); i++) {
-            JSONObject pubkeyCredParam = allowCredentials.getJSONObject(i);
-            PublicKeyCredentialType type = PublicKeyCredentialType.fromString(pubkeyCredParam.getString("type"));
-            byte[] id = jsonObjectOrArrayToByteArray(pubkeyCredParam.get("id"));
-            List<AuthenticatorTransport> transports = jsonToAuthenticatorTransports(pubkeyCredParam.optJSONArray("transports"));
-            PublicKeyCredentialDescriptor parameters =
-                    PublicKeyCredentialDescriptor.create(type, id, transports);
-            result.add(parameters);
+            if (type == null || id == null) {
+                throw new JSONException("Missing 'type' or 'id' in credential descriptor!");
+            }
+            result.add(PublicKeyCredentialDescriptor.create(PublicKeyCredentialType.fromString(type), id, transports));
         }
+        reader.endArray();
         return result;
     }
 
-    private List<AuthenticatorTransport> jsonToAuthenticatorTransports(JSONArray transports) {
-        if (transports == null) {
-            return null;
-        }
-        try {
-            return jsonToAuthenticatorTransportsOrThrow(transports);
-        } catch(JSONException e){
-            return null;
-        }
-    }
-
-    private List<AuthenticatorTransport> jsonToAuthenticatorTransportsOrThrow(JSONArray transports)
-            throws JSONException {
+    private List<AuthenticatorTransport> readAuthenticatorTransports(JsonReader reader) throws IOException {
         List<AuthenticatorTransport> result = new ArrayList<>();
-        for (int i = 0; i < transports.length(); i++) {
-            String transportName = transports.getString(i);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String transportName = reader.nextString();
             AuthenticatorTransport transport = AuthenticatorTransport.fromString(transportName);
             if (transport != null) {
                 result.add(transport);
@@ -136,82 +285,156 @@ public class JsonWebauthnOptionsParser {
                 HwTimber.e("Ignoring unknown transport value: %s", transportName);
             }
         }
+        reader.endArray();
         return result;
     }
 
-    private AuthenticatorSelectionCriteria jsonToAuthenticatorSelectionCriteria(
-            JSONObject authenticatorSelection) {
-        if (authenticatorSelection == null) {
-            return null;
+    private AuthenticatorSelectionCriteria readAuthenticatorSelectionCriteria(JsonReader reader)
+            throws IOException {
+        String authenticatorAttachment = null;
+        boolean requireResidentKey = false;
+        String userVerification = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "authenticatorAttachment":
+                    authenticatorAttachment = reader.nextString();
+                    break;
+                case "requireResidentKey":
+                    requireResidentKey = reader.nextBoolean();
+                    break;
+                case "userVerification":
+                    userVerification = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
         }
-        AuthenticatorAttachment authenticatorAttachment = AuthenticatorAttachment.fromString(
-                authenticatorSelection.optString("authenticatorAttachment", null));
-        boolean requireResidentKey = authenticatorSelection.optBoolean("requireResidentKey", false);
-        UserVerificationRequirement userVerification = UserVerificationRequirement.fromString(
-                authenticatorSelection.optString("userVerification", null));
+        reader.endObject();
 
-        return AuthenticatorSelectionCriteria.create(authenticatorAttachment, requireResidentKey, userVerification);
+        return AuthenticatorSelectionCriteria.create(AuthenticatorAttachment.fromString(authenticatorAttachment),
+                requireResidentKey, UserVerificationRequirement.fromString(userVerification));
     }
 
-    private PublicKeyCredentialUserEntity jsonToUserEntity(JSONObject jsonObject) throws JSONException {
-        byte[] id = jsonObjectOrArrayToByteArray(jsonObject.get("id"));
-        String name = jsonObject.optString("name", null);
-        String displayName = jsonObject.optString("displayName", null);
-        String icon = jsonObject.optString("icon", null);
+    private PublicKeyCredentialUserEntity readUserEntity(JsonReader reader) throws IOException, JSONException {
+        byte[] id = null;
+        String name = null;
+        String displayName = null;
+        String icon = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String fieldName = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (fieldName) {
+                case "id":
+                    id = readByteArray(reader);
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "displayName":
+                    displayName = reader.nextString();
+                    break;
+                case "icon":
+                    icon = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
 
+        if (id == null) {
+            throw new JSONException("Missing 'id' in user entity!");
+        }
         return PublicKeyCredentialUserEntity.create(id, name, displayName, icon);
     }
 
-    private PublicKeyCredentialRpEntity jsonToRpEntity(JSONObject jsonObject) {
-        String id = jsonObject.optString("id", null);
-        String name = jsonObject.optString("name", null);
-        String icon = jsonObject.optString("icon", null);
+    private PublicKeyCredentialRpEntity readRpEntity(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        String icon = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String fieldName = reader.nextName();
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (fieldName) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "icon":
+                    icon = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
 
         return PublicKeyCredentialRpEntity.create(id, name, icon);
     }
 
-    private byte[] jsonObjectOrArrayToByteArray(Object object) throws JSONException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        if (object instanceof JSONObject) {
-            JSONObject jsonObject = (JSONObject) object;
-            for (int i = 0; i < jsonObject.length(); i++) {
-                String key = Integer.toString(i);
-                if (!jsonObject.has(key)) {
-                    throw new JSONException("Missing key '" + key + "' for byte array in JSON object!");
+    private byte[] readByteArray(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case STRING:
+                return reader.nextWebsafeBase64();
+            case BEGIN_ARRAY: {
+                byte[] result = new byte[32];
+                int length = 0;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (length == result.length) {
+                        result = Arrays.copyOf(result, length * 2);
+                    }
+                    result[length++] = readByte(reader);
                 }
-                baos.write(jsonObject.getInt(key));
+                reader.endArray();
+                return Arrays.copyOf(result, length);
             }
-        } else if (object instanceof JSONArray) {
-            JSONArray jsonArray = (JSONArray) object;
-            for (int i = 0; i < jsonArray.length(); i++) {
-                baos.write(jsonArray.getInt(i));
+            case BEGIN_OBJECT: {
+                byte[] result = new byte[32];
+                int length = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = length < INDEX_KEYS.length ? INDEX_KEYS[length] : Integer.toString(length);
+                    if (!reader.nextNameEquals(key)) {
+                        throw new JSONException("Missing key '" + key + "' for byte array in JSON object!");
+                    }
+                    if (length == result.length) {
+                        result = Arrays.copyOf(result, length * 2);
+                    }
+                    result[length++] = readByte(reader);
+                }
+                reader.endObject();
+                return Arrays.copyOf(result, length);
             }
+            default:
+                throw new JSONException("Expected byte array, found " + reader.peek());
         }
-        return baos.toByteArray();
-    }
-
-    public PublicKeyCredentialRequestOptions fromOptionsJsonGetAssertion(String jsonString) throws JSONException {
-        JSONObject jsonObject = new JSONObject(jsonString);
-        return fromOptionsJsonGetAssertion(jsonObject);
     }
 
-    private PublicKeyCredentialRequestOptions fromOptionsJsonGetAssertion(JSONObject jsonObject)
-            throws JSONException {
-        JSONObject publicKeyObject = jsonObject.getJSONObject("publicKey");
-
-        byte[] challenge = jsonObjectOrArrayToByteArray(publicKeyObject.getJSONObject("challenge"));
-        Long timeout = !publicKeyObject.isNull("timeout") ? publicKeyObject.getLong("timeout") : null;
-        String rpId = publicKeyObject.optString("rpId", null);
-        List<PublicKeyCredentialDescriptor> allowCredentials = jsonToPubKeyKeyCredDescriptorList(publicKeyObject.optJSONArray("allowCredentials"));
-        UserVerificationRequirement userVerification = UserVerificationRequirement.fromString(
-                publicKeyObject.optString("userVerification", null));
-
-        return PublicKeyCredentialRequestOptions.create(
-                challenge,
-                timeout,
-                rpId,
-                allowCredentials,
-                userVerification
-        );
+    private byte readByte(JsonReader reader) throws IOException, JSONException {
+        int value = reader.nextInt();
+        if (value < 0 || value > 0xff) {
+            throw new JSONException("Byte value out of range: " + value);
+        }
+        return (byte) value;
     }
 }
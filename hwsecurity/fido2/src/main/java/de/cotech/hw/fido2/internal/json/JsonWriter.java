@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.json;
+
+
+import de.cotech.hw.fido2.internal.utils.WebsafeBase64;
+
+
+/**
+ * Writes JSON directly into a string buffer, without building a tree of JSON objects first.
+ * <p>
+ * Binary values are encoded as websafe Base64 directly into the buffer with {@link #valueWebsafeBase64(byte[])}.
+ * The writer does not validate its input, callers are responsible for writing names and values in a valid order.
+ * Strings are escaped so that the output can also be embedded in JavaScript code.
+ */
+public class JsonWriter {
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder out;
+    private boolean needsSeparator;
+
+    public JsonWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public JsonWriter(int initialCapacity) {
+        out = new StringBuilder(initialCapacity);
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        out.append('{');
+        needsSeparator = false;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        out.append('}');
+        needsSeparator = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        out.append('[');
+        needsSeparator = false;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        out.append(']');
+        needsSeparator = true;
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        beforeValue();
+        writeString(name);
+        out.append(':');
+        needsSeparator = false;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        needsSeparator = true;
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        out.append(value);
+        needsSeparator = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        out.append(value);
+        needsSeparator = true;
+        return this;
+    }
+
+    public JsonWriter valueWebsafeBase64(byte[] value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        out.append('"');
+        WebsafeBase64.encodeTo(value, out);
+        out.append('"');
+        needsSeparator = true;
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        beforeValue();
+        out.append("null");
+        needsSeparator = true;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private void beforeValue() {
+        if (needsSeparator) {
+            out.append(',');
+        }
+    }
+
+    private void writeString(String value) {
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '"') {
+                replacement = "\\\"";
+            } else if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else if (c == '\t') {
+                replacement = "\\t";
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                // line separators are valid in JSON strings, but not in JavaScript string literals
+                replacement = null;
+            } else {
+                continue;
+            }
+            out.append(value, start, i);
+            if (replacement != null) {
+                out.append(replacement);
+            } else {
+                out.append("\\u")
+                        .append(HEX_DIGITS[c >>> 12])
+                        .append(HEX_DIGITS[(c >>> 8) & 0xf])
+                        .append(HEX_DIGITS[(c >>> 4) & 0xf])
+                        .append(HEX_DIGITS[c & 0xf]);
+            }
+            start = i + 1;
+        }
+        out.append(value, start, value.length());
+        out.append('"');
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.operations;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.cotech.hw.fido2.PublicKeyCredential;
+import de.cotech.hw.fido2.PublicKeyCredentialGet;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.exceptions.FidoInvalidCredentialException;
+import de.cotech.hw.fido2.internal.Fido2AppletConnection;
+import de.cotech.hw.fido2.internal.routing.CredentialRoutingIndex;
+import de.cotech.hw.fido2.internal.webauthn.WebauthnCommand;
+import de.cotech.hw.fido2.internal.webauthn.WebauthnResponse;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.util.HwTimber;
+
+
+/**
+ * Wraps an operation to route it via the {@link CredentialRoutingIndex}.
+ * <p>
+ * The allowList of a getAssertion request is narrowed to the credentials the connected authenticator may hold. If it
+ * holds none of them, the request fails right away, without waiting for user presence on the wrong authenticator.
+ * Credentials returned by successful operations are learned for the connected authenticator.
+ */
+public class CredentialRoutingOperation<WR extends WebauthnResponse, WC extends WebauthnCommand>
+        extends WebauthnSecurityKeyOperation<WR, WC> {
+    private final WebauthnSecurityKeyOperation<WR, WC> operation;
+    private final CredentialRoutingIndex credentialRoutingIndex;
+
+    public CredentialRoutingOperation(WebauthnSecurityKeyOperation<WR, WC> operation,
+            CredentialRoutingIndex credentialRoutingIndex) {
+        this.operation = operation;
+        this.credentialRoutingIndex = credentialRoutingIndex;
+    }
+
+    @Override
+    public WR performWebauthnSecurityKeyOperation(Fido2AppletConnection fido2AppletConnection, WC webauthnCommand)
+            throws IOException {
+        Transport transport = fido2AppletConnection.getTransport();
+        byte[] aaguid = fido2AppletConnection.getAaguid();
+
+        List<PublicKeyCredentialDescriptor> routedCredentials = null;
+        if (webauthnCommand instanceof PublicKeyCredentialGet) {
+            PublicKeyCredentialGet credentialGet = (PublicKeyCredentialGet) webauthnCommand;
+            List<PublicKeyCredentialDescriptor> allowCredentials = credentialGet.options().allowCredentials();
+            if (allowCredentials != null && !allowCredentials.isEmpty()) {
+                routedCredentials = credentialRoutingIndex.filterAllowList(transport, aaguid, allowCredentials);
+                if (routedCredentials.isEmpty()) {
+                    HwTimber.d("Authenticator is known to hold none of the allowed credentials");
+                    throw new FidoInvalidCredentialException();
+                }
+                if (routedCredentials.size() < allowCredentials.size()) {
+                    HwTimber.d("Routed allowList to %d of %d credentials",
+                            routedCredentials.size(), allowCredentials.size());
+                    webauthnCommand = withAllowCredentials(credentialGet, routedCredentials);
+                } else {
+                    routedCredentials = null;
+                }
+            }
+        }
+
+        WR response;
+        try {
+            response = operation.performWebauthnSecurityKeyOperation(fido2AppletConnection, webauthnCommand);
+        } catch (FidoInvalidCredentialException e) {
+            if (routedCredentials != null) {
+                // the authenticator no longer recognizes credentials it was known to hold, e.g. after a reset
+                credentialRoutingIndex.forgetCredentials(routedCredentials);
+            }
+            throw e;
+        }
+
+        if (response instanceof PublicKeyCredential) {
+            credentialRoutingIndex.learnCredentials(transport, aaguid, getCredentialIds((PublicKeyCredential) response));
+        }
+        return response;
+    }
+
+    @SuppressWarnings("unchecked") // WC is PublicKeyCredentialGet here
+    private WC withAllowCredentials(PublicKeyCredentialGet credentialGet,
+            List<PublicKeyCredentialDescriptor> allowCredentials) {
+        return (WC) credentialGet.withAllowCredentials(allowCredentials);
+    }
+
+    private static List<byte[]> getCredentialIds(PublicKeyCredential publicKeyCredential) {
+        List<byte[]> credentialIds = new ArrayList<>(1 + publicKeyCredential.additionalAssertions().size());
+        credentialIds.add(publicKeyCredential.rawId());
+        for (PublicKeyCredential additionalAssertion : publicKeyCredential.additionalAssertions()) {
+            credentialIds.add(additionalAssertion.rawId());
+        }
+        return credentialIds;
+    }
+}
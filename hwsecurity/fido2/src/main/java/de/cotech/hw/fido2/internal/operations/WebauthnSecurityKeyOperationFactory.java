@@ -25,15 +25,19 @@
 package de.cotech.hw.fido2.internal.operations;
 
 
+import androidx.annotation.Nullable;
 import de.cotech.hw.fido2.PublicKeyCredentialCreate;
 import de.cotech.hw.fido2.PublicKeyCredentialGet;
 import de.cotech.hw.fido2.internal.cbor.CborPublicKeyCredentialDescriptorParser;
 import de.cotech.hw.fido2.internal.json.JsonCollectedClientDataSerializer;
 import de.cotech.hw.fido2.internal.operations.ctap1.AuthenticatorGetAssertionCtap1Operation;
 import de.cotech.hw.fido2.internal.operations.ctap1.AuthenticatorMakeCredentialCtap1Operation;
+import de.cotech.hw.fido2.internal.operations.ctap1.U2fCredentialPreflight;
 import de.cotech.hw.fido2.internal.operations.ctap2.AuthenticatorGetAssertionOperation;
 import de.cotech.hw.fido2.internal.operations.ctap2.AuthenticatorMakeCredentialOperation;
+import de.cotech.hw.fido2.internal.operations.ctap2.CredentialListPreflight;
 import de.cotech.hw.fido2.internal.pinauth.PinProtocolV1;
+import de.cotech.hw.fido2.internal.routing.CredentialRoutingIndex;
 import de.cotech.hw.fido2.internal.webauthn.ConstructCredentialAlg;
 import de.cotech.hw.fido2.internal.webauthn.WebauthnCommand;
 import de.cotech.hw.fido2.internal.webauthn.WebauthnResponse;
@@ -41,24 +45,39 @@ import de.cotech.hw.fido2.internal.webauthn.WebauthnResponse;
 
 public class WebauthnSecurityKeyOperationFactory {
     private final PinProtocolV1 pinProtocolV1;
+    private final CredentialRoutingIndex credentialRoutingIndex;
     private static final CborPublicKeyCredentialDescriptorParser
             CBOR_PUBLIC_KEY_CREDENTIAL_DESCRIPTOR_PARSER = new CborPublicKeyCredentialDescriptorParser();
     private static final ConstructCredentialAlg CONSTRUCT_CREDENTIAL_ALG = new ConstructCredentialAlg();
     private static final JsonCollectedClientDataSerializer JSON_COLLECTED_CLIENT_DATA_SERIALIZER =
             new JsonCollectedClientDataSerializer();
+    private static final CredentialListPreflight CREDENTIAL_LIST_PREFLIGHT =
+            new CredentialListPreflight(CBOR_PUBLIC_KEY_CREDENTIAL_DESCRIPTOR_PARSER);
+    private static final U2fCredentialPreflight U2F_CREDENTIAL_PREFLIGHT = new U2fCredentialPreflight();
 
     public WebauthnSecurityKeyOperationFactory(PinProtocolV1 pinProtocolV1) {
+        this(pinProtocolV1, null);
+    }
+
+    public WebauthnSecurityKeyOperationFactory(PinProtocolV1 pinProtocolV1,
+            @Nullable CredentialRoutingIndex credentialRoutingIndex) {
         this.pinProtocolV1 = pinProtocolV1;
+        this.credentialRoutingIndex = credentialRoutingIndex;
     }
 
 
     public <WR extends WebauthnResponse, WC extends WebauthnCommand>
             WebauthnSecurityKeyOperation<WR, WC> getOperation(WC webauthnCommand, boolean isCtap2Supported) {
+        WebauthnSecurityKeyOperation<WR, WC> operation;
         if (isCtap2Supported) {
-            return getCtap2Operation(webauthnCommand);
+            operation = getCtap2Operation(webauthnCommand);
         } else {
-            return getCtap1Operation(webauthnCommand);
+            operation = getCtap1Operation(webauthnCommand);
+        }
+        if (credentialRoutingIndex != null) {
+            operation = new CredentialRoutingOperation<>(operation, credentialRoutingIndex);
         }
+        return operation;
     }
 
     @SuppressWarnings("unchecked") // we hand out only correctly matching operations
@@ -78,22 +97,23 @@ public class WebauthnSecurityKeyOperationFactory {
             WC webauthnCommand) {
         if (webauthnCommand instanceof PublicKeyCredentialCreate) {
             return (WebauthnSecurityKeyOperation<WR, WC>) new AuthenticatorMakeCredentialCtap1Operation(
-                    getAuthenticatorMakeCredentialOperation());
+                    getAuthenticatorMakeCredentialOperation(), U2F_CREDENTIAL_PREFLIGHT);
         } else if (webauthnCommand instanceof PublicKeyCredentialGet) {
             return (WebauthnSecurityKeyOperation<WR, WC>) new AuthenticatorGetAssertionCtap1Operation(
-                    getAuthenticatorGetAssertionOperation());
+                    getAuthenticatorGetAssertionOperation(), U2F_CREDENTIAL_PREFLIGHT);
         } else {
             throw new UnsupportedOperationException();
         }
     }
 
     private AuthenticatorMakeCredentialOperation getAuthenticatorMakeCredentialOperation() {
-        return new AuthenticatorMakeCredentialOperation(CONSTRUCT_CREDENTIAL_ALG, pinProtocolV1);
+        return new AuthenticatorMakeCredentialOperation(CONSTRUCT_CREDENTIAL_ALG, pinProtocolV1,
+                CREDENTIAL_LIST_PREFLIGHT);
     }
 
     private AuthenticatorGetAssertionOperation getAuthenticatorGetAssertionOperation() {
         return new AuthenticatorGetAssertionOperation(
                 CBOR_PUBLIC_KEY_CREDENTIAL_DESCRIPTOR_PARSER, pinProtocolV1,
-                JSON_COLLECTED_CLIENT_DATA_SERIALIZER);
+                JSON_COLLECTED_CLIENT_DATA_SERIALIZER, CREDENTIAL_LIST_PREFLIGHT);
     }
 }
@@ -33,7 +33,8 @@ import de.cotech.hw.fido2.PublicKeyCredentialGet;
 import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
 import de.cotech.hw.fido2.domain.create.AuthenticatorData;
 import de.cotech.hw.fido2.domain.get.AuthenticatorAssertionResponse;
-import de.cotech.hw.fido2.exceptions.FidoWrongKeyHandleException;
+import de.cotech.hw.fido2.exceptions.FidoInvalidCredentialException;
+import de.cotech.hw.fido2.exceptions.FidoResidentKeyNotSupportedException;
 import de.cotech.hw.fido2.internal.Fido2AppletConnection;
 import de.cotech.hw.fido2.internal.Fido2CommandApduFactory;
 import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion;
@@ -42,7 +43,6 @@ import de.cotech.hw.fido2.internal.operations.ctap2.AuthenticatorGetAssertionOpe
 import de.cotech.hw.fido2.internal.webauthn.AuthenticatorDataParser;
 import de.cotech.hw.internal.iso7816.CommandApdu;
 import de.cotech.hw.internal.iso7816.ResponseApdu;
-import de.cotech.hw.util.Arrays;
 import de.cotech.hw.util.HashUtil;
 import de.cotech.hw.util.HwTimber;
 
@@ -50,11 +50,13 @@ import de.cotech.hw.util.HwTimber;
 public class AuthenticatorGetAssertionCtap1Operation extends
         WebauthnSecurityKeyOperation<PublicKeyCredential, PublicKeyCredentialGet> {
     private final AuthenticatorGetAssertionOperation ctap2Operation;
+    private final U2fCredentialPreflight u2fCredentialPreflight;
     private final Fido2CommandApduFactory fido2CommandApduFactory = new Fido2CommandApduFactory();
 
     public AuthenticatorGetAssertionCtap1Operation(
-            AuthenticatorGetAssertionOperation ctap2Operation) {
+            AuthenticatorGetAssertionOperation ctap2Operation, U2fCredentialPreflight u2fCredentialPreflight) {
         this.ctap2Operation = ctap2Operation;
+        this.u2fCredentialPreflight = u2fCredentialPreflight;
     }
 
     @Override
@@ -68,19 +70,19 @@ public class AuthenticatorGetAssertionCtap1Operation extends
 
         List<PublicKeyCredentialDescriptor> allowedCredentials =
                 authenticatorGetAssertion.allowList();
-        for (int i = 0, count = allowedCredentials.size(); i < count; i++) {
-            try {
-                PublicKeyCredentialDescriptor credential = allowedCredentials.get(i);
-                HwTimber.i("Attempting credentials (%d/%d): %s", i+1, count, credential);
-                return attemptU2fAuthentication(fido2AppletConnection, authenticatorGetAssertion,
-                        rpIdHash, credential);
-            } catch (FidoWrongKeyHandleException e) {
-                HwTimber.d("Key handle rejected");
+        if (allowedCredentials == null || allowedCredentials.isEmpty()) {
+            throw new FidoResidentKeyNotSupportedException();
+        }
+        synchronized (fido2AppletConnection.getTransportLock()) {
+            PublicKeyCredentialDescriptor credential = u2fCredentialPreflight.findAcceptedCredential(
+                    fido2AppletConnection, authenticatorGetAssertion.clientDataHash(), rpIdHash, allowedCredentials);
+            if (credential == null) {
+                HwTimber.d("None of %d credentials accepted", allowedCredentials.size());
+                throw new FidoInvalidCredentialException();
             }
+            return attemptU2fAuthentication(fido2AppletConnection, authenticatorGetAssertion,
+                    rpIdHash, credential);
         }
-
-        // CtapErrorResponse.create(CtapErrorResponse.CTAP2_ERR_NO_CREDENTIALS);
-        throw new IOException("No valid credentials provided!");
     }
 
     private PublicKeyCredential attemptU2fAuthentication(
@@ -95,9 +97,8 @@ public class AuthenticatorGetAssertionCtap1Operation extends
 
     private CommandApdu createCtap1CommandApdu(
             byte[] challengeParam, byte[] applicationParam, byte[] keyHandle) {
-        byte[] keyHandleLength = new byte[] { (byte) keyHandle.length };
-        byte[] payload = Arrays.concatenate(challengeParam, applicationParam, keyHandleLength, keyHandle);
-        return fido2CommandApduFactory.createAuthenticationCommand(payload);
+        return fido2CommandApduFactory.createAuthenticationCommand(
+                U2fCredentialPreflight.createPayload(challengeParam, applicationParam, keyHandle));
     }
 
     private PublicKeyCredential ctap1ResponseApduToWebauthnResponse(
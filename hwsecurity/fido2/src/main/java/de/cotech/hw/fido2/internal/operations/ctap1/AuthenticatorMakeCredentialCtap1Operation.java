@@ -26,15 +26,17 @@ package de.cotech.hw.fido2.internal.operations.ctap1;
 
 
 import java.io.IOException;
+import java.util.List;
 
-import de.cotech.hw.fido2.internal.cbor.CborCtap1AttestationStatementUtil;
 import de.cotech.hw.fido2.internal.cose.CosePublicKeyUtils;
+import de.cotech.hw.fido2.internal.ctap2.Ctap2Exception;
+import de.cotech.hw.fido2.internal.ctap2.CtapErrorResponse;
 import de.cotech.hw.fido2.internal.ctap2.commands.makeCredential.AuthenticatorMakeCredential;
-import de.cotech.hw.fido2.domain.create.AttestationObject;
 import de.cotech.hw.fido2.domain.create.AttestedCredentialData;
 import de.cotech.hw.fido2.domain.create.AuthenticatorAttestationResponse;
 import de.cotech.hw.fido2.domain.create.AuthenticatorData;
 import de.cotech.hw.fido2.PublicKeyCredentialCreate;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
 import de.cotech.hw.fido2.internal.Fido2AppletConnection;
 import de.cotech.hw.fido2.internal.Fido2CommandApduFactory;
 import de.cotech.hw.fido2.internal.operations.WebauthnSecurityKeyOperation;
@@ -46,17 +48,23 @@ import de.cotech.hw.internal.iso7816.CommandApdu;
 import de.cotech.hw.internal.iso7816.ResponseApdu;
 import de.cotech.hw.util.Arrays;
 import de.cotech.hw.util.HashUtil;
+import de.cotech.hw.util.HwTimber;
 
 
 public class AuthenticatorMakeCredentialCtap1Operation extends
         WebauthnSecurityKeyOperation<PublicKeyCredential, PublicKeyCredentialCreate> {
+    private static final byte[] BOGUS_CHALLENGE_PARAM = createFilledArray((byte) 0x42);
+    private static final byte[] BOGUS_APPLICATION_PARAM = createFilledArray((byte) 0x41);
+
     private final AuthenticatorMakeCredentialOperation ctap2Operation;
+    private final U2fCredentialPreflight u2fCredentialPreflight;
     private final Fido2CommandApduFactory fido2CommandApduFactory = new Fido2CommandApduFactory();
     private final AuthenticatorDataParser authenticatorDataParser = new AuthenticatorDataParser();
 
     public AuthenticatorMakeCredentialCtap1Operation(
-            AuthenticatorMakeCredentialOperation ctap2Operation) {
+            AuthenticatorMakeCredentialOperation ctap2Operation, U2fCredentialPreflight u2fCredentialPreflight) {
         this.ctap2Operation = ctap2Operation;
+        this.u2fCredentialPreflight = u2fCredentialPreflight;
     }
 
     @Override
@@ -68,15 +76,39 @@ public class AuthenticatorMakeCredentialCtap1Operation extends
 
         byte[] rpIdHash = HashUtil.sha256(authenticatorGetAssertion.rp().id());
 
-        CommandApdu registrationCommand = createCtap1CommandApdu(authenticatorGetAssertion, rpIdHash);
-        ResponseApdu responseApdu = fido2AppletConnection.communicateOrThrow(registrationCommand);
-        return ctap1ResponseApduToWebauthnResponse(authenticatorGetAssertion, rpIdHash, responseApdu);
+        synchronized (fido2AppletConnection.getTransportLock()) {
+            checkExcludeList(fido2AppletConnection, authenticatorGetAssertion, rpIdHash);
+
+            CommandApdu registrationCommand = createCtap1CommandApdu(
+                    authenticatorGetAssertion.clientDataHash(), rpIdHash);
+            ResponseApdu responseApdu = fido2AppletConnection.communicateOrThrow(registrationCommand);
+            return ctap1ResponseApduToWebauthnResponse(authenticatorGetAssertion, rpIdHash, responseApdu);
+        }
+    }
+
+    /**
+     * See CTAP 2.0, Section 8.2: if the authenticator holds an excluded credential, user presence is still collected
+     * with a registration for a bogus application parameter, before the credential is reported as excluded.
+     */
+    private void checkExcludeList(Fido2AppletConnection fido2AppletConnection,
+            AuthenticatorMakeCredential authenticatorMakeCredential, byte[] rpIdHash) throws IOException {
+        List<PublicKeyCredentialDescriptor> excludeList = authenticatorMakeCredential.excludeList();
+        if (excludeList == null || excludeList.isEmpty()) {
+            return;
+        }
+        PublicKeyCredentialDescriptor excludedCredential = u2fCredentialPreflight.findAcceptedCredential(
+                fido2AppletConnection, authenticatorMakeCredential.clientDataHash(), rpIdHash, excludeList);
+        if (excludedCredential == null) {
+            return;
+        }
+
+        HwTimber.d("Authenticator holds an excluded credential, waiting for user presence");
+        fido2AppletConnection.communicateOrThrow(createCtap1CommandApdu(BOGUS_CHALLENGE_PARAM, BOGUS_APPLICATION_PARAM));
+        throw new Ctap2Exception(CtapErrorResponse.create(CtapErrorResponse.CTAP2_ERR_CREDENTIAL_EXCLUDED));
     }
 
-    private CommandApdu createCtap1CommandApdu(
-            AuthenticatorMakeCredential authenticatorGetAssertion, byte[] rpIdHash) {
-        byte[] challengeParam = authenticatorGetAssertion.clientDataHash();
-        byte[] payload = Arrays.concatenate(challengeParam, rpIdHash);
+    private CommandApdu createCtap1CommandApdu(byte[] challengeParam, byte[] applicationParam) {
+        byte[] payload = Arrays.concatenate(challengeParam, applicationParam);
         return fido2CommandApduFactory.createRegistrationCommand(payload);
     }
 
@@ -92,15 +124,18 @@ public class AuthenticatorMakeCredentialCtap1Operation extends
         AuthenticatorData authenticatorData = AuthenticatorData
                 .create(applicationParam, flags, 0, attestedCredentialData, null);
         byte[] authData = authenticatorDataParser.toBytes(authenticatorData);
-        byte[] attStmt = CborCtap1AttestationStatementUtil.toAttestionStatement(
-                u2fResponse.attestationCertificate(), u2fResponse.signature());
-
-        AttestationObject attestationObject = AttestationObject.create("fido-u2f", authData, attStmt);
 
         byte[] rawId = authenticatorData.attestedCredentialData().credentialId();
-        byte[] attestationObjectBytes = new CborAttestationObjectSerializer().serializeAttestationObject(attestationObject);
+        byte[] attestationObjectBytes = new CborAttestationObjectSerializer().serializeFidoU2fAttestationObject(
+                authData, u2fResponse.attestationCertificate(), u2fResponse.signature());
         AuthenticatorAttestationResponse response = AuthenticatorAttestationResponse.create(
                 authenticatorGetAssertion.clientDataJson().getBytes(), attestationObjectBytes);
         return PublicKeyCredential.create(rawId, response);
     }
+
+    private static byte[] createFilledArray(byte value) {
+        byte[] result = new byte[32];
+        Arrays.fill(result, value);
+        return result;
+    }
 }
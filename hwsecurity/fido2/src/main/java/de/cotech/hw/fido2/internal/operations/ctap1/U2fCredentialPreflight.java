@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.operations.ctap1;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.annotation.VisibleForTesting;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.exceptions.FidoPresenceRequiredException;
+import de.cotech.hw.fido2.exceptions.FidoWrongKeyHandleException;
+import de.cotech.hw.fido2.internal.Fido2AppletConnection;
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.util.Arrays;
+import de.cotech.hw.util.Hex;
+import de.cotech.hw.util.HwTimber;
+
+
+/**
+ * Probes allowList and excludeList entries on CTAP1 authenticators with check-only authentication requests, which
+ * neither require user presence nor produce a signature, so the actual operation needs only a single
+ * presence-gated request.
+ * <p>
+ * All credentials are probed in one pass while the transport lock is held. Results are cached per transport, so
+ * retries while polling for user presence, and further operations with the same connected authenticator, don't
+ * probe the same credentials again. Results are discarded once their transport has been released.
+ *
+ * @see <a href="https://fidoalliance.org/specs/fido-u2f-v1.2-ps-20170411/fido-u2f-raw-message-formats-v1.2-ps-20170411.html">FIDO U2F Raw Message Formats, Section 5.1</a>
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class U2fCredentialPreflight {
+    private final LinkedList<TransportResults> cachedResults = new LinkedList<>();
+
+    /**
+     * Returns the first of the given credentials that was created by the connected authenticator for the given
+     * application parameter, or null if none of them was.
+     */
+    @Nullable
+    public PublicKeyCredentialDescriptor findAcceptedCredential(Fido2AppletConnection fido2AppletConnection,
+            byte[] challengeParam, byte[] applicationParam,
+            @NonNull List<PublicKeyCredentialDescriptor> credentials) throws IOException {
+        synchronized (fido2AppletConnection.getTransportLock()) {
+            for (int i = 0, count = credentials.size(); i < count; i++) {
+                PublicKeyCredentialDescriptor credential = credentials.get(i);
+                if (isCredentialAccepted(fido2AppletConnection, challengeParam, applicationParam, credential.id())) {
+                    HwTimber.d("Credential accepted (%d/%d)", i + 1, count);
+                    return credential;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isCredentialAccepted(Fido2AppletConnection fido2AppletConnection,
+            byte[] challengeParam, byte[] applicationParam, byte[] keyHandle) throws IOException {
+        Transport transport = fido2AppletConnection.getTransport();
+        String resultKey = Hex.encodeHexString(applicationParam) + Hex.encodeHexString(keyHandle);
+        Boolean cachedResult = getCachedResult(transport, resultKey);
+        if (cachedResult != null) {
+            return cachedResult;
+        }
+
+        CommandApdu checkOnlyCommand = fido2AppletConnection.getCommandFactory().createAuthenticationCheckOnlyCommand(
+                createPayload(challengeParam, applicationParam, keyHandle));
+        boolean isAccepted;
+        try {
+            fido2AppletConnection.communicateOrThrow(checkOnlyCommand);
+            isAccepted = true;
+        } catch (FidoPresenceRequiredException e) {
+            // "test-of-user-presence-required" signals an accepted key handle here
+            isAccepted = true;
+        } catch (FidoWrongKeyHandleException e) {
+            isAccepted = false;
+        }
+        putCachedResult(transport, resultKey, isAccepted);
+        return isAccepted;
+    }
+
+    static byte[] createPayload(byte[] challengeParam, byte[] applicationParam, byte[] keyHandle) {
+        byte[] keyHandleLength = new byte[] { (byte) keyHandle.length };
+        return Arrays.concatenate(challengeParam, applicationParam, keyHandleLength, keyHandle);
+    }
+
+    private synchronized Boolean getCachedResult(Transport transport, String resultKey) {
+        TransportResults transportResults = getTransportResults(transport);
+        return transportResults != null ? transportResults.results.get(resultKey) : null;
+    }
+
+    private synchronized void putCachedResult(Transport transport, String resultKey, boolean isAccepted) {
+        TransportResults transportResults = getTransportResults(transport);
+        if (transportResults == null) {
+            transportResults = new TransportResults(transport);
+            cachedResults.add(transportResults);
+        }
+        transportResults.results.put(resultKey, isAccepted);
+    }
+
+    private TransportResults getTransportResults(Transport transport) {
+        Iterator<TransportResults> iterator = cachedResults.iterator();
+        while (iterator.hasNext()) {
+            TransportResults transportResults = iterator.next();
+            if (transportResults.transport.isReleased()) {
+                iterator.remove();
+            } else if (transportResults.transport == transport) {
+                return transportResults;
+            }
+        }
+        return null;
+    }
+
+    @VisibleForTesting
+    synchronized int getCachedResultCount() {
+        int count = 0;
+        for (TransportResults transportResults : cachedResults) {
+            count += transportResults.results.size();
+        }
+        return count;
+    }
+
+    private static class TransportResults {
+        // transports are compared by identity, a reconnected authenticator gets a new transport
+        final Transport transport;
+        final HashMap<String, Boolean> results = new HashMap<>();
+
+        TransportResults(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
@@ -26,6 +26,8 @@ package de.cotech.hw.fido2.internal.operations.ctap2;
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import android.net.Uri;
@@ -52,6 +54,7 @@ import de.cotech.hw.fido2.internal.ctap2.Ctap2Exception;
 import de.cotech.hw.fido2.internal.ctap2.CtapErrorResponse;
 import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion;
 import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertionResponse;
+import de.cotech.hw.fido2.internal.ctap2.commands.getNextAssertion.AuthenticatorGetNextAssertion;
 import de.cotech.hw.fido2.internal.json.JsonCollectedClientDataSerializer;
 import de.cotech.hw.fido2.internal.operations.WebauthnSecurityKeyOperation;
 import de.cotech.hw.fido2.internal.pinauth.PinProtocolV1;
@@ -67,14 +70,17 @@ public class AuthenticatorGetAssertionOperation extends
     private final CborPublicKeyCredentialDescriptorParser cborPublicKeyCredentialDescriptorParser;
     private final PinProtocolV1 pinProtocolV1;
     private final JsonCollectedClientDataSerializer jsonCollectedClientDataSerializer;
+    private final CredentialListPreflight credentialListPreflight;
 
     public AuthenticatorGetAssertionOperation(
             CborPublicKeyCredentialDescriptorParser cborPublicKeyCredentialDescriptorParser,
             PinProtocolV1 pinProtocolV1,
-            JsonCollectedClientDataSerializer jsonCollectedClientDataSerializer) {
+            JsonCollectedClientDataSerializer jsonCollectedClientDataSerializer,
+            CredentialListPreflight credentialListPreflight) {
         this.cborPublicKeyCredentialDescriptorParser = cborPublicKeyCredentialDescriptorParser;
         this.pinProtocolV1 = pinProtocolV1;
         this.jsonCollectedClientDataSerializer = jsonCollectedClientDataSerializer;
+        this.credentialListPreflight = credentialListPreflight;
     }
 
     @Override
@@ -90,11 +96,13 @@ public class AuthenticatorGetAssertionOperation extends
 
         PinToken pinToken = acquirePinToken(fido2AppletConnection, request);
         AuthenticatorGetAssertion authenticatorGetAssertion = webauthnCommandToCtap2Command(request, pinToken);
+        if (!isResidentKey) {
+            authenticatorGetAssertion = narrowAllowList(fido2AppletConnection, authenticatorGetAssertion);
+        }
         HwTimber.d(authenticatorGetAssertion.toString());
+        AuthenticatorGetAssertionResponse response;
         try {
-            AuthenticatorGetAssertionResponse response =
-                    fido2AppletConnection.ctap2CommunicateOrThrow(authenticatorGetAssertion);
-            return ctap2ResponseToWebauthnResponse(request, response);
+            response = fido2AppletConnection.ctap2CommunicateOrThrow(authenticatorGetAssertion);
         } catch (Ctap2Exception e) {
             switch (e.ctapErrorResponse.errorCode()) {
                 case CtapErrorResponse.CTAP2_ERR_PIN_REQUIRED:
@@ -110,6 +118,56 @@ public class AuthenticatorGetAssertionOperation extends
             }
             throw e;
         }
+
+        List<PublicKeyCredential> additionalAssertions =
+                retrieveAdditionalAssertions(fido2AppletConnection, request, authenticatorGetAssertion, response);
+        return ctap2ResponseToWebauthnResponse(request, authenticatorGetAssertion, response, additionalAssertions);
+    }
+
+    private AuthenticatorGetAssertion narrowAllowList(
+            Fido2AppletConnection fido2AppletConnection,
+            AuthenticatorGetAssertion authenticatorGetAssertion
+    ) throws IOException {
+        List<PublicKeyCredentialDescriptor> allowList = credentialListPreflight.narrowCredentialList(
+                fido2AppletConnection, authenticatorGetAssertion.rpId(), authenticatorGetAssertion.clientDataHash(),
+                authenticatorGetAssertion.clientDataJson(), authenticatorGetAssertion.allowList());
+        if (allowList.isEmpty()) {
+            throw new FidoInvalidCredentialException();
+        }
+        return authenticatorGetAssertion.withAllowList(allowList);
+    }
+
+    /**
+     * Fetches the assertions of all further credentials right away, while the authenticator still holds the state of
+     * the getAssertion operation. This doesn't require user presence again.
+     */
+    private List<PublicKeyCredential> retrieveAdditionalAssertions(
+            Fido2AppletConnection fido2AppletConnection,
+            PublicKeyCredentialGet request,
+            AuthenticatorGetAssertion authenticatorGetAssertion,
+            AuthenticatorGetAssertionResponse response
+    ) throws IOException {
+        Integer numberOfCredentials = response.numberOfCredentials();
+        if (numberOfCredentials == null || numberOfCredentials <= 1) {
+            return Collections.emptyList();
+        }
+
+        AuthenticatorGetNextAssertion authenticatorGetNextAssertion =
+                AuthenticatorGetNextAssertion.create(authenticatorGetAssertion.clientDataJson());
+        List<PublicKeyCredential> additionalAssertions = new ArrayList<>();
+        for (int i = 1; i < numberOfCredentials; i++) {
+            try {
+                AuthenticatorGetAssertionResponse nextResponse =
+                        fido2AppletConnection.ctap2CommunicateOrThrow(authenticatorGetNextAssertion);
+                additionalAssertions.add(ctap2ResponseToWebauthnResponse(
+                        request, authenticatorGetAssertion, nextResponse, Collections.emptyList()));
+            } catch (Ctap2Exception e) {
+                HwTimber.w("getNextAssertion failed after %d of %d credentials, error 0x%02x",
+                        i, numberOfCredentials, e.ctapErrorResponse.errorCode());
+                break;
+            }
+        }
+        return additionalAssertions;
     }
 
     private PinToken acquirePinToken(
@@ -170,9 +228,11 @@ public class AuthenticatorGetAssertionOperation extends
 
     private PublicKeyCredential ctap2ResponseToWebauthnResponse(
             PublicKeyCredentialGet credentialCreate,
-            AuthenticatorGetAssertionResponse response
+            AuthenticatorGetAssertion authenticatorGetAssertion,
+            AuthenticatorGetAssertionResponse response,
+            List<PublicKeyCredential> additionalAssertions
     ) throws IOException {
-        byte[] credential = determinePublicKeyCredentialId(credentialCreate, response);
+        byte[] credential = determinePublicKeyCredentialId(authenticatorGetAssertion, response);
 
         PublicKeyCredentialUserEntity user = response.user();
         AssertionCreationData assertionCreationData = AssertionCreationData.create(
@@ -193,21 +253,17 @@ public class AuthenticatorGetAssertionOperation extends
                 assertionCreationData.userHandleResult()
         );
         return PublicKeyCredential
-                .create(assertionCreationData.credentialIdResult(), authenticatorResponse);
+                .create(assertionCreationData.credentialIdResult(), authenticatorResponse, additionalAssertions);
     }
 
-    private byte[] determinePublicKeyCredentialId(PublicKeyCredentialGet credentialCreate,
+    private byte[] determinePublicKeyCredentialId(AuthenticatorGetAssertion authenticatorGetAssertion,
             AuthenticatorGetAssertionResponse response) throws IOException {
         byte[] credential;
-        List<PublicKeyCredentialDescriptor> requestedCredentials =
-                credentialCreate.options().allowCredentials();
+        // this is the allowList actually sent, which may have been narrowed down to a single credential
+        List<PublicKeyCredentialDescriptor> requestedCredentials = authenticatorGetAssertion.allowList();
         if (requestedCredentials != null && requestedCredentials.size() == 1) {
             credential = requestedCredentials.get(0).id();
         } else if (response.credential() != null) {
-            Integer numberOfCredentials = response.numberOfCredentials();
-            if (numberOfCredentials != null && numberOfCredentials > 1) {
-                HwTimber.d("More than one credential returned, but not supported. Returning first.");
-            }
             PublicKeyCredentialDescriptor publicKeyCredentialDescriptor =
                     cborPublicKeyCredentialDescriptorParser.parse(response.credential());
             credential = publicKeyCredentialDescriptor.id();
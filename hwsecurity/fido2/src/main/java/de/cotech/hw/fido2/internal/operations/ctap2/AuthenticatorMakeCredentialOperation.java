@@ -26,12 +26,14 @@ package de.cotech.hw.fido2.internal.operations.ctap2;
 
 
 import java.io.IOException;
+import java.util.List;
 
 import android.net.Uri;
 
 import de.cotech.hw.fido2.PublicKeyCredential;
 import de.cotech.hw.fido2.PublicKeyCredentialCreate;
 import de.cotech.hw.fido2.domain.CollectedClientData;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
 import de.cotech.hw.fido2.domain.PublicKeyCredentialRpEntity;
 import de.cotech.hw.fido2.domain.UserVerificationRequirement;
 import de.cotech.hw.fido2.domain.create.AttestationObject;
@@ -61,12 +63,15 @@ public class AuthenticatorMakeCredentialOperation extends
     private static final String CLIENT_DATA_TYPE_CREATE = "webauthn.create";
     private final ConstructCredentialAlg constructCredentialAlg;
     private final PinProtocolV1 pinProtocolV1;
+    private final CredentialListPreflight credentialListPreflight;
 
     public AuthenticatorMakeCredentialOperation(
             ConstructCredentialAlg constructCredentialAlg,
-            PinProtocolV1 pinProtocolV1) {
+            PinProtocolV1 pinProtocolV1,
+            CredentialListPreflight credentialListPreflight) {
         this.constructCredentialAlg = constructCredentialAlg;
         this.pinProtocolV1 = pinProtocolV1;
+        this.credentialListPreflight = credentialListPreflight;
     }
 
     @Override
@@ -75,6 +80,7 @@ public class AuthenticatorMakeCredentialOperation extends
             PublicKeyCredentialCreate request) throws IOException {
         PinToken pinToken = acquirePinToken(fido2AppletConnection, request);
         AuthenticatorMakeCredential authenticatorMakeCredential = webauthnToCtap2Command(request, pinToken);
+        authenticatorMakeCredential = narrowExcludeList(fido2AppletConnection, authenticatorMakeCredential);
         HwTimber.d(authenticatorMakeCredential.toString());
         try {
             AuthenticatorMakeCredentialResponse response =
@@ -89,6 +95,20 @@ public class AuthenticatorMakeCredentialOperation extends
         }
     }
 
+    private AuthenticatorMakeCredential narrowExcludeList(
+            Fido2AppletConnection fido2AppletConnection,
+            AuthenticatorMakeCredential authenticatorMakeCredential
+    ) throws IOException {
+        List<PublicKeyCredentialDescriptor> excludeList = authenticatorMakeCredential.excludeList();
+        if (excludeList == null || excludeList.isEmpty()) {
+            return authenticatorMakeCredential;
+        }
+        excludeList = credentialListPreflight.narrowCredentialList(
+                fido2AppletConnection, authenticatorMakeCredential.rp().id(),
+                authenticatorMakeCredential.clientDataHash(), authenticatorMakeCredential.clientDataJson(), excludeList);
+        return authenticatorMakeCredential.withExcludeList(excludeList.isEmpty() ? null : excludeList);
+    }
+
     private PinToken acquirePinToken(
             Fido2AppletConnection fido2AppletConnection,
             PublicKeyCredentialCreate request
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.operations.ctap2;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.internal.Fido2AppletConnection;
+import de.cotech.hw.fido2.internal.cbor.CborPublicKeyCredentialDescriptorParser;
+import de.cotech.hw.fido2.internal.ctap2.Ctap2Exception;
+import de.cotech.hw.fido2.internal.ctap2.CtapErrorResponse;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertionResponse;
+import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorOptions;
+import de.cotech.hw.util.HwTimber;
+
+
+/**
+ * Narrows down allowList and excludeList parameters that exceed the limits reported by the authenticator.
+ * <p>
+ * Credentials with ids longer than maxCredentialIdLength can't belong to the authenticator and are dropped. If the
+ * remaining list is longer than maxCredentialCountInList, it is split into batches, which are probed with silent
+ * (up=false) getAssertion commands until one of them matches. Only the matching credential is returned, so the
+ * actual operation can be performed with user presence against that single credential.
+ *
+ * @see <a href="https://fidoalliance.org/specs/fido-v2.1-ps-20210615/fido-client-to-authenticator-protocol-v2.1-ps-20210615.html#pre-flight">CTAP 2.1, pre-flight</a>
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class CredentialListPreflight {
+    private static final AuthenticatorOptions OPTIONS_SILENT = AuthenticatorOptions.create(null, null, null, false, null);
+
+    private final CborPublicKeyCredentialDescriptorParser cborPublicKeyCredentialDescriptorParser;
+
+    public CredentialListPreflight(CborPublicKeyCredentialDescriptorParser cborPublicKeyCredentialDescriptorParser) {
+        this.cborPublicKeyCredentialDescriptorParser = cborPublicKeyCredentialDescriptorParser;
+    }
+
+    /**
+     * Returns the given credentials if they are within the authenticator's limits. Otherwise, returns a list with
+     * only the credential that the authenticator recognizes, or an empty list if it recognizes none of them.
+     */
+    @NonNull
+    public List<PublicKeyCredentialDescriptor> narrowCredentialList(Fido2AppletConnection fido2AppletConnection,
+            String rpId, byte[] clientDataHash, String clientDataJson,
+            @NonNull List<PublicKeyCredentialDescriptor> credentials) throws IOException {
+        List<PublicKeyCredentialDescriptor> supportedCredentials =
+                filterByMaxCredentialIdLength(credentials, fido2AppletConnection.getMaxCredentialIdLength());
+
+        Integer maxCredentialCount = fido2AppletConnection.getMaxCredentialCountInList();
+        if (maxCredentialCount == null || maxCredentialCount < 1 || supportedCredentials.size() <= maxCredentialCount) {
+            return supportedCredentials;
+        }
+
+        HwTimber.d("Credential list of %d exceeds authenticator limit of %d, probing in batches",
+                supportedCredentials.size(), maxCredentialCount);
+        for (int start = 0; start < supportedCredentials.size(); start += maxCredentialCount) {
+            int end = Math.min(start + maxCredentialCount, supportedCredentials.size());
+            List<PublicKeyCredentialDescriptor> batch = supportedCredentials.subList(start, end);
+            PublicKeyCredentialDescriptor match =
+                    probeBatch(fido2AppletConnection, rpId, clientDataHash, clientDataJson, batch);
+            if (match != null) {
+                return Collections.singletonList(match);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private PublicKeyCredentialDescriptor probeBatch(Fido2AppletConnection fido2AppletConnection,
+            String rpId, byte[] clientDataHash, String clientDataJson,
+            List<PublicKeyCredentialDescriptor> batch) throws IOException {
+        AuthenticatorGetAssertion probe = AuthenticatorGetAssertion.create(
+                rpId, clientDataHash, clientDataJson, new ArrayList<>(batch), OPTIONS_SILENT);
+        AuthenticatorGetAssertionResponse response;
+        try {
+            response = fido2AppletConnection.ctap2CommunicateOrThrow(probe);
+        } catch (Ctap2Exception e) {
+            switch (e.ctapErrorResponse.errorCode()) {
+                case CtapErrorResponse.CTAP2_ERR_INVALID_CREDENTIAL:
+                case CtapErrorResponse.CTAP2_ERR_NO_CREDENTIALS:
+                    return null;
+            }
+            throw e;
+        }
+
+        if (response.credential() == null) {
+            if (batch.size() == 1) {
+                return batch.get(0);
+            }
+            throw new IOException("Authenticator failed to transmit credential!");
+        }
+        byte[] credentialId = cborPublicKeyCredentialDescriptorParser.parse(response.credential()).id();
+        for (PublicKeyCredentialDescriptor descriptor : batch) {
+            if (Arrays.equals(descriptor.id(), credentialId)) {
+                return descriptor;
+            }
+        }
+        throw new IOException("Authenticator returned a credential that was not requested!");
+    }
+
+    private static List<PublicKeyCredentialDescriptor> filterByMaxCredentialIdLength(
+            List<PublicKeyCredentialDescriptor> credentials, Integer maxCredentialIdLength) {
+        if (maxCredentialIdLength == null) {
+            return credentials;
+        }
+        List<PublicKeyCredentialDescriptor> result = new ArrayList<>(credentials.size());
+        for (PublicKeyCredentialDescriptor descriptor : credentials) {
+            if (descriptor.id().length <= maxCredentialIdLength) {
+                result.add(descriptor);
+            }
+        }
+        return result;
+    }
+}
@@ -58,6 +58,16 @@ public class PinAuthCryptoUtil {
 
     private static final byte ZERO_BYTE = 0;
 
+    private final PlatformKeyPairPool platformKeyPairPool;
+
+    public PinAuthCryptoUtil() {
+        this(null);
+    }
+
+    public PinAuthCryptoUtil(PlatformKeyPairPool platformKeyPairPool) {
+        this.platformKeyPairPool = platformKeyPairPool;
+    }
+
     /**
      * CTAP2 pinAuth, used for authentication of operations based on pinToken.
      * https://fidoalliance.org/specs/fido-v2.0-ps-20190130/fido-client-to-authenticator-protocol-v2.0-ps-20190130.html#authenticatorClientPIN
@@ -147,6 +157,9 @@ public class PinAuthCryptoUtil {
 
     public KeyPair generatePlatformKeyPair() {
         try {
+            if (platformKeyPairPool != null) {
+                return platformKeyPairPool.take();
+            }
             return P256.newKeyPair();
         } catch (NoSuchAlgorithmException e) {
             throw new IllegalStateException(e);
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.pinauth;
+
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.annotation.VisibleForTesting;
+import de.cotech.hw.internal.transport.Transport;
+
+
+/**
+ * Caches PIN tokens per authenticator, identified by its AAGUID and the transport it is connected through.
+ * <p>
+ * A PIN token stays valid on the authenticator until it is power cycled, so it can be reused for subsequent
+ * operations on the same transport. Tokens are discarded once they are older than the configured timeout, or once
+ * their transport has been released.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class PinTokenCache {
+    private final long timeoutMs;
+    private final LinkedList<CachedPinToken> cachedPinTokens = new LinkedList<>();
+
+    public static PinTokenCache createWithTimeout(long timeoutMs) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        return new PinTokenCache(timeoutMs);
+    }
+
+    private PinTokenCache(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    @AnyThread
+    @Nullable
+    public PinToken get(@NonNull Transport transport, @NonNull byte[] aaguid) {
+        return get(transport, aaguid, System.currentTimeMillis());
+    }
+
+    @AnyThread
+    public void put(@NonNull Transport transport, @NonNull byte[] aaguid, @NonNull PinToken pinToken) {
+        put(transport, aaguid, pinToken, System.currentTimeMillis());
+    }
+
+    @AnyThread
+    public synchronized void invalidate(@NonNull Transport transport, @NonNull byte[] aaguid) {
+        Iterator<CachedPinToken> iterator = cachedPinTokens.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().matches(transport, aaguid)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @AnyThread
+    public synchronized void invalidateAll() {
+        cachedPinTokens.clear();
+    }
+
+    @VisibleForTesting
+    synchronized PinToken get(Transport transport, byte[] aaguid, long currentTimeMs) {
+        evictExpiredPinTokens(currentTimeMs);
+        for (CachedPinToken cachedPinToken : cachedPinTokens) {
+            if (cachedPinToken.matches(transport, aaguid)) {
+                return cachedPinToken.pinToken;
+            }
+        }
+        return null;
+    }
+
+    @VisibleForTesting
+    synchronized void put(Transport transport, byte[] aaguid, PinToken pinToken, long currentTimeMs) {
+        invalidate(transport, aaguid);
+        evictExpiredPinTokens(currentTimeMs);
+        cachedPinTokens.add(new CachedPinToken(transport, aaguid, pinToken, currentTimeMs));
+    }
+
+    private void evictExpiredPinTokens(long currentTimeMs) {
+        Iterator<CachedPinToken> iterator = cachedPinTokens.iterator();
+        while (iterator.hasNext()) {
+            CachedPinToken cachedPinToken = iterator.next();
+            if (currentTimeMs - cachedPinToken.createdTime >= timeoutMs || cachedPinToken.transport.isReleased()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class CachedPinToken {
+        final Transport transport;
+        final byte[] aaguid;
+        final PinToken pinToken;
+        final long createdTime;
+
+        CachedPinToken(Transport transport, byte[] aaguid, PinToken pinToken, long createdTime) {
+            this.transport = transport;
+            this.aaguid = aaguid;
+            this.pinToken = pinToken;
+            this.createdTime = createdTime;
+        }
+
+        boolean matches(Transport transport, byte[] aaguid) {
+            // transports are compared by identity, a reconnected authenticator gets a new transport
+            return this.transport == transport && Arrays.equals(this.aaguid, aaguid);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.pinauth;
+
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.annotation.VisibleForTesting;
+import de.cotech.hw.fido2.internal.crypto.P256;
+import de.cotech.hw.util.HwTimber;
+
+
+/**
+ * Keeps a few ephemeral P-256 key pairs for the ClientPIN key agreement ready, so they don't have to be generated
+ * while the Security Key is connected.
+ * <p>
+ * Each key pair is handed out exactly once. The pool is refilled on a background thread after every use. If it is
+ * empty, a key pair is generated right away. All pools share a single background thread, which stops when idle.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class PlatformKeyPairPool {
+    private static final int DEFAULT_CAPACITY = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static Executor sharedExecutor;
+
+    private final int capacity;
+    private final Executor executor;
+    private final KeyPairGenerator keyPairGenerator;
+    private final ConcurrentLinkedQueue<KeyPair> keyPairs = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isRefillScheduled = new AtomicBoolean();
+
+    interface KeyPairGenerator {
+        KeyPair generateKeyPair() throws GeneralSecurityException;
+    }
+
+    public static PlatformKeyPairPool create() {
+        return new PlatformKeyPairPool(DEFAULT_CAPACITY, getSharedExecutor(), P256::newKeyPair);
+    }
+
+    private static synchronized Executor getSharedExecutor() {
+        if (sharedExecutor == null) {
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(1, 1,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "hwsecurity-keypair-pool");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            threadPool.allowCoreThreadTimeOut(true);
+            sharedExecutor = threadPool;
+        }
+        return sharedExecutor;
+    }
+
+    @VisibleForTesting
+    PlatformKeyPairPool(int capacity, Executor executor, KeyPairGenerator keyPairGenerator) {
+        this.capacity = capacity;
+        this.executor = executor;
+        this.keyPairGenerator = keyPairGenerator;
+    }
+
+    /**
+     * Fills the pool in the background.
+     */
+    @AnyThread
+    public void refill() {
+        if (!isRefillScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                while (keyPairs.size() < capacity) {
+                    keyPairs.add(keyPairGenerator.generateKeyPair());
+                }
+            } catch (GeneralSecurityException e) {
+                HwTimber.e(e, "Failed to generate platform key pair in background");
+            } finally {
+                isRefillScheduled.set(false);
+            }
+        });
+    }
+
+    /**
+     * Removes a key pair from the pool, or generates a new one if the pool is empty.
+     */
+    @AnyThread
+    @NonNull
+    public KeyPair take() throws GeneralSecurityException {
+        KeyPair keyPair = keyPairs.poll();
+        if (keyPair == null) {
+            HwTimber.d("No pre-generated platform key pair available");
+            keyPair = keyPairGenerator.generateKeyPair();
+        }
+        refill();
+        return keyPair;
+    }
+
+    @VisibleForTesting
+    int size() {
+        return keyPairs.size();
+    }
+}
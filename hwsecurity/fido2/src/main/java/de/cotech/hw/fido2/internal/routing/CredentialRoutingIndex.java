@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.routing;
+
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.annotation.VisibleForTesting;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.util.HashUtil;
+import de.cotech.hw.util.Hex;
+import de.cotech.hw.util.HwTimber;
+
+
+/**
+ * Remembers which authenticator holds which credential, to route requests of users with several Security Keys.
+ * <p>
+ * An authenticator is identified by its AAGUID, and a key id that is generated locally the first time one of its
+ * credentials is used. Since CTAP offers no serial number, the key id of a connected authenticator is learned by
+ * association: once it successfully uses a credential that is already known, it is assumed to be the authenticator
+ * that credential was learned from.
+ * <p>
+ * Credential ids are never stored. They are hashed with a random salt that only lives in memory, and only a
+ * truncated hash is kept, in a bounded LRU index. Nothing is persisted.
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public class CredentialRoutingIndex {
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+    private static final int SALT_LENGTH = 32;
+    private static final int CREDENTIAL_HASH_LENGTH = 16;
+
+    private static CredentialRoutingIndex instance;
+
+    private final byte[] salt;
+    private final LinkedHashMap<String, AuthenticatorIdentity> credentialRoutes;
+    private final LinkedList<ConnectedAuthenticator> connectedAuthenticators = new LinkedList<>();
+
+    @AnyThread
+    public static synchronized CredentialRoutingIndex getInstance() {
+        if (instance == null) {
+            instance = createWithMaxEntries(DEFAULT_MAX_ENTRIES);
+        }
+        return instance;
+    }
+
+    public static CredentialRoutingIndex createWithMaxEntries(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive");
+        }
+        byte[] salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+        return new CredentialRoutingIndex(salt, maxEntries);
+    }
+
+    private CredentialRoutingIndex(byte[] salt, int maxEntries) {
+        this.salt = salt;
+        this.credentialRoutes = new LinkedHashMap<String, AuthenticatorIdentity>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AuthenticatorIdentity> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Narrows the allowList for the authenticator connected through the given transport.
+     * <p>
+     * Credentials that are known to belong to an authenticator with a different AAGUID are dropped. If the connected
+     * authenticator is already known to hold some of the credentials, only those are returned. Unknown credentials are
+     * kept otherwise. An empty result means the connected authenticator holds none of the credentials.
+     */
+    @AnyThread
+    @NonNull
+    public synchronized List<PublicKeyCredentialDescriptor> filterAllowList(@NonNull Transport transport,
+            @NonNull byte[] aaguid, @NonNull List<PublicKeyCredentialDescriptor> allowList) {
+        AuthenticatorIdentity connectedIdentity = getConnectedIdentity(transport, aaguid);
+
+        List<PublicKeyCredentialDescriptor> possibleCredentials = new ArrayList<>(allowList.size());
+        List<PublicKeyCredentialDescriptor> knownCredentials = new ArrayList<>();
+        for (PublicKeyCredentialDescriptor descriptor : allowList) {
+            AuthenticatorIdentity identity = credentialRoutes.get(hashCredentialId(descriptor.id()));
+            if (identity == null) {
+                possibleCredentials.add(descriptor);
+            } else if (Arrays.equals(identity.aaguid, aaguid)) {
+                possibleCredentials.add(descriptor);
+                if (identity == connectedIdentity) {
+                    knownCredentials.add(descriptor);
+                }
+            }
+        }
+        return knownCredentials.isEmpty() ? possibleCredentials : knownCredentials;
+    }
+
+    /**
+     * Records that the authenticator connected through the given transport holds the given credentials.
+     */
+    @AnyThread
+    public synchronized void learnCredentials(@NonNull Transport transport, @NonNull byte[] aaguid,
+            @NonNull List<byte[]> credentialIds) {
+        AuthenticatorIdentity connectedIdentity = getConnectedIdentity(transport, aaguid);
+
+        AuthenticatorIdentity knownIdentity = null;
+        for (byte[] credentialId : credentialIds) {
+            AuthenticatorIdentity identity = credentialRoutes.get(hashCredentialId(credentialId));
+            if (identity != null && Arrays.equals(identity.aaguid, aaguid)) {
+                knownIdentity = identity;
+                break;
+            }
+        }
+
+        AuthenticatorIdentity identity;
+        if (knownIdentity != null) {
+            if (connectedIdentity != null && connectedIdentity != knownIdentity) {
+                // both ids were learned from the same authenticator, without a credential in common until now
+                replaceIdentity(connectedIdentity, knownIdentity);
+            }
+            identity = knownIdentity;
+        } else if (connectedIdentity != null) {
+            identity = connectedIdentity;
+        } else {
+            identity = new AuthenticatorIdentity(aaguid.clone(), UUID.randomUUID().toString());
+        }
+
+        setConnectedIdentity(transport, identity);
+        for (byte[] credentialId : credentialIds) {
+            credentialRoutes.put(hashCredentialId(credentialId), identity);
+        }
+        HwTimber.d("Learned %d credential(s) for %s", credentialIds.size(), identity);
+    }
+
+    /**
+     * Removes the given credentials, e.g. after an authenticator no longer recognized them.
+     */
+    @AnyThread
+    public synchronized void forgetCredentials(@NonNull List<PublicKeyCredentialDescriptor> credentials) {
+        for (PublicKeyCredentialDescriptor descriptor : credentials) {
+            credentialRoutes.remove(hashCredentialId(descriptor.id()));
+        }
+    }
+
+    @AnyThread
+    public synchronized void clear() {
+        credentialRoutes.clear();
+        connectedAuthenticators.clear();
+    }
+
+    @VisibleForTesting
+    synchronized int getCredentialCount() {
+        return credentialRoutes.size();
+    }
+
+    @Nullable
+    private AuthenticatorIdentity getConnectedIdentity(Transport transport, byte[] aaguid) {
+        Iterator<ConnectedAuthenticator> iterator = connectedAuthenticators.iterator();
+        while (iterator.hasNext()) {
+            ConnectedAuthenticator connectedAuthenticator = iterator.next();
+            if (connectedAuthenticator.transport.isReleased()) {
+                iterator.remove();
+            } else if (connectedAuthenticator.transport == transport) {
+                AuthenticatorIdentity identity = connectedAuthenticator.identity;
+                return Arrays.equals(identity.aaguid, aaguid) ? identity : null;
+            }
+        }
+        return null;
+    }
+
+    private void setConnectedIdentity(Transport transport, AuthenticatorIdentity identity) {
+        for (ConnectedAuthenticator connectedAuthenticator : connectedAuthenticators) {
+            // transports are compared by identity, a reconnected authenticator gets a new transport
+            if (connectedAuthenticator.transport == transport) {
+                connectedAuthenticator.identity = identity;
+                return;
+            }
+        }
+        connectedAuthenticators.add(new ConnectedAuthenticator(transport, identity));
+    }
+
+    private void replaceIdentity(AuthenticatorIdentity oldIdentity, AuthenticatorIdentity newIdentity) {
+        for (Map.Entry<String, AuthenticatorIdentity> entry : credentialRoutes.entrySet()) {
+            if (entry.getValue() == oldIdentity) {
+                entry.setValue(newIdentity);
+            }
+        }
+        for (ConnectedAuthenticator connectedAuthenticator : connectedAuthenticators) {
+            if (connectedAuthenticator.identity == oldIdentity) {
+                connectedAuthenticator.identity = newIdentity;
+            }
+        }
+    }
+
+    private String hashCredentialId(byte[] credentialId) {
+        byte[] saltedCredentialId = new byte[salt.length + credentialId.length];
+        System.arraycopy(salt, 0, saltedCredentialId, 0, salt.length);
+        System.arraycopy(credentialId, 0, saltedCredentialId, salt.length, credentialId.length);
+        byte[] hash = HashUtil.sha256(saltedCredentialId);
+        return Hex.encodeHexString(Arrays.copyOf(hash, CREDENTIAL_HASH_LENGTH));
+    }
+
+    private static class AuthenticatorIdentity {
+        final byte[] aaguid;
+        final String keyId;
+
+        AuthenticatorIdentity(byte[] aaguid, String keyId) {
+            this.aaguid = aaguid;
+            this.keyId = keyId;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "AuthenticatorIdentity{aaguid=" + Hex.encodeHexString(aaguid) + ", keyId=" + keyId + "}";
+        }
+    }
+
+    private static class ConnectedAuthenticator {
+        final Transport transport;
+        AuthenticatorIdentity identity;
+
+        ConnectedAuthenticator(Transport transport, AuthenticatorIdentity identity) {
+            this.transport = transport;
+            this.identity = identity;
+        }
+    }
+}
@@ -25,13 +25,7 @@
 package de.cotech.hw.fido2.internal.utils;
 
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.Charset;
-
 import android.annotation.SuppressLint;
-import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 
@@ -59,16 +53,4 @@ public class AndroidUtils {
             }
         }
     }
-
-    public static String loadTextFromAssets(Context context, String assetsPath, Charset charset) throws IOException {
-        InputStream is = context.getResources().getAssets().open(assetsPath);
-        byte[] buffer = new byte[1024];
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        for (int length = is.read(buffer); length != -1; length = is.read(buffer)) {
-            baos.write(buffer, 0, length);
-        }
-        is.close();
-        baos.close();
-        return charset == null ? new String(baos.toByteArray()) : new String(baos.toByteArray(), charset);
-    }
 }
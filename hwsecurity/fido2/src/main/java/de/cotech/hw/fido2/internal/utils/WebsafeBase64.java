@@ -31,6 +31,21 @@ import androidx.annotation.RestrictTo.Scope;
 
 
 public class WebsafeBase64 {
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final int[] DECODING_TABLE = new int[128];
+
+    static {
+        for (int i = 0; i < DECODING_TABLE.length; i++) {
+            DECODING_TABLE[i] = -1;
+        }
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODING_TABLE[ALPHABET[i]] = i;
+        }
+        // also accept the standard alphabet
+        DECODING_TABLE['+'] = 62;
+        DECODING_TABLE['/'] = 63;
+    }
 
     /**
      * Websafe Base64 encoding as specified by the FIDO U2F specification:
@@ -43,4 +58,59 @@ public class WebsafeBase64 {
     public static byte[] decode(String encoded) {
         return Base64.decode(encoded, Base64.NO_PADDING | Base64.NO_WRAP | Base64.URL_SAFE);
     }
+
+    /**
+     * Appends the websafe Base64 encoding of the given bytes, without padding, to the given StringBuilder.
+     */
+    public static void encodeTo(byte[] decoded, StringBuilder out) {
+        int i = 0;
+        for (; i + 2 < decoded.length; i += 3) {
+            int bits = (decoded[i] & 0xff) << 16 | (decoded[i + 1] & 0xff) << 8 | (decoded[i + 2] & 0xff);
+            out.append(ALPHABET[bits >>> 18])
+                    .append(ALPHABET[(bits >>> 12) & 0x3f])
+                    .append(ALPHABET[(bits >>> 6) & 0x3f])
+                    .append(ALPHABET[bits & 0x3f]);
+        }
+        int remaining = decoded.length - i;
+        if (remaining == 1) {
+            int bits = (decoded[i] & 0xff) << 16;
+            out.append(ALPHABET[bits >>> 18]).append(ALPHABET[(bits >>> 12) & 0x3f]);
+        } else if (remaining == 2) {
+            int bits = (decoded[i] & 0xff) << 16 | (decoded[i + 1] & 0xff) << 8;
+            out.append(ALPHABET[bits >>> 18])
+                    .append(ALPHABET[(bits >>> 12) & 0x3f])
+                    .append(ALPHABET[(bits >>> 6) & 0x3f]);
+        }
+    }
+
+    /**
+     * Decodes websafe or standard Base64 from the given range of characters. Padding is optional.
+     */
+    public static byte[] decode(CharSequence encoded, int start, int end) {
+        while (end > start && encoded.charAt(end - 1) == '=') {
+            end--;
+        }
+        int length = end - start;
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("Invalid Base64 length");
+        }
+        byte[] result = new byte[length * 3 / 4];
+        int bits = 0;
+        int bitCount = 0;
+        int position = 0;
+        for (int i = start; i < end; i++) {
+            char c = encoded.charAt(i);
+            int value = c < DECODING_TABLE.length ? DECODING_TABLE[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid Base64 character: " + c);
+            }
+            bits = bits << 6 | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                result[position++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return result;
+    }
 }
@@ -25,17 +25,12 @@
 package de.cotech.hw.fido2.internal.webauthn;
 
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
-import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
-import de.cotech.hw.fido2.internal.cbor_java.CborException;
-import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
 import de.cotech.hw.fido2.domain.create.AttestedCredentialData;
 import de.cotech.hw.fido2.domain.create.AuthenticatorData;
-import de.cotech.hw.fido2.internal.cbor.CborUtils;
 
 
 public class AuthenticatorDataParser {
@@ -44,34 +39,17 @@ public class AuthenticatorDataParser {
 
     private static final int LENGTH_AAGUID = 16;
 
+    /**
+     * Returns a view of the given bytes, which decodes fields on first access. The bytes are not copied.
+     */
     AuthenticatorData fromBytes(byte[] bytes) throws IOException {
-        ByteBuffer buf = ByteBuffer.wrap(bytes).duplicate();
-        buf.order(ByteOrder.BIG_ENDIAN);
-
-        byte[] rpIdHash = new byte[LENGTH_RPIDHASH];
-        buf.get(rpIdHash);
-        byte flags = buf.get();
-        int sigCounter = buf.getInt();
-
-        AttestedCredentialData attestedCredentialData = null;
-        byte[] extensionData = null;
-
-        boolean hasAttestedCredentialData = (flags & AuthenticatorData.FLAG_ATTESTED_CREDENTIAL_DATA) != 0;
-        if (hasAttestedCredentialData) {
-            attestedCredentialData = parseAttestedCredentialData(buf);
-        }
-
-        boolean hasExtensionData = (flags & AuthenticatorData.FLAG_EXTENSION_DATA) != 0;
-        if (hasExtensionData) {
-            extensionData = new byte[buf.remaining()];
-            buf.get(extensionData);
-        }
-
-        return AuthenticatorData.create(
-                rpIdHash, flags, sigCounter, attestedCredentialData, extensionData);
+        return AuthenticatorDataView.wrap(bytes);
     }
 
     public byte[] toBytes(AuthenticatorData authenticatorData) {
+        if (authenticatorData instanceof AuthenticatorDataView) {
+            return ((AuthenticatorDataView) authenticatorData).getEncoded();
+        }
         byte[] attestedCredentialData = serializeAttestedCredentialData(authenticatorData.attestedCredentialData());
 
         byte[] extensionData = authenticatorData.extensions();
@@ -107,23 +85,4 @@ public class AuthenticatorDataParser {
 
         return result.array();
     }
-
-    private static AttestedCredentialData parseAttestedCredentialData(ByteBuffer buf) throws IOException {
-        byte[] aaguid = new byte[LENGTH_AAGUID];
-        buf.get(aaguid);
-        int credentialIdLength = buf.getShort() & 0xFFFF;
-        byte[] credentialId = new byte[credentialIdLength];
-        buf.get(credentialId);
-
-        try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(
-                    buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
-            DataItem dataItem = new CborDecoder(inputStream).decodeNext();
-            byte[] credentialPublicKey = CborUtils.writeCborDataToBytes(dataItem);
-            buf.position(buf.position() + credentialPublicKey.length);
-            return AttestedCredentialData.create(aaguid, credentialId, credentialPublicKey);
-        } catch (CborException e) {
-            throw new IOException("Error reading CBOR-encoded credential data!", e);
-        }
-    }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.webauthn;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import androidx.annotation.Nullable;
+import de.cotech.hw.fido2.domain.create.AttestedCredentialData;
+import de.cotech.hw.fido2.domain.create.AuthenticatorData;
+import de.cotech.hw.fido2.internal.cbor.CborReader;
+import de.cotech.hw.fido2.internal.cbor_java.CborException;
+
+
+/**
+ * Authenticator data backed by its encoded bytes.
+ * <p>
+ * Only the boundaries of the attested credential data and extensions are determined when wrapping the bytes. The
+ * individual fields are copied out of the buffer on first access, so callers that only pass the authenticator data on
+ * as is do not pay for decoding it. The buffer is not copied, and must not be modified afterwards.
+ */
+class AuthenticatorDataView extends AuthenticatorData {
+    private static final int LENGTH_RPIDHASH = 32;
+    private static final int OFFSET_FLAGS = LENGTH_RPIDHASH;
+    private static final int OFFSET_SIG_COUNTER = OFFSET_FLAGS + 1;
+    private static final int TOTAL_LENGTH_HEADER = OFFSET_SIG_COUNTER + 4;
+
+    private static final int LENGTH_AAGUID = 16;
+    private static final int LENGTH_CREDENTIAL_ID_LENGTH = 2;
+
+    private final byte[] bytes;
+    private final int credentialIdLength;
+    private final int credentialPublicKeyOffset;
+    private final int extensionsOffset;
+
+    private byte[] rpIdHash;
+    private AttestedCredentialData attestedCredentialData;
+    private byte[] extensions;
+
+    private AuthenticatorDataView(byte[] bytes, int credentialIdLength, int credentialPublicKeyOffset,
+            int extensionsOffset) {
+        this.bytes = bytes;
+        this.credentialIdLength = credentialIdLength;
+        this.credentialPublicKeyOffset = credentialPublicKeyOffset;
+        this.extensionsOffset = extensionsOffset;
+    }
+
+    static AuthenticatorDataView wrap(byte[] bytes) throws IOException {
+        if (bytes.length < TOTAL_LENGTH_HEADER) {
+            throw new IOException("Authenticator data too short!");
+        }
+        byte flags = bytes[OFFSET_FLAGS];
+
+        int credentialIdLength = 0;
+        int credentialPublicKeyOffset = TOTAL_LENGTH_HEADER;
+        int extensionsOffset = TOTAL_LENGTH_HEADER;
+        if ((flags & FLAG_ATTESTED_CREDENTIAL_DATA) != 0) {
+            int credentialIdLengthOffset = TOTAL_LENGTH_HEADER + LENGTH_AAGUID;
+            if (bytes.length < credentialIdLengthOffset + LENGTH_CREDENTIAL_ID_LENGTH) {
+                throw new IOException("Attested credential data too short!");
+            }
+            credentialIdLength =
+                    (bytes[credentialIdLengthOffset] & 0xff) << 8 | (bytes[credentialIdLengthOffset + 1] & 0xff);
+            credentialPublicKeyOffset = credentialIdLengthOffset + LENGTH_CREDENTIAL_ID_LENGTH + credentialIdLength;
+            if (bytes.length < credentialPublicKeyOffset) {
+                throw new IOException("Attested credential data too short!");
+            }
+            try {
+                CborReader reader = new CborReader(
+                        bytes, credentialPublicKeyOffset, bytes.length - credentialPublicKeyOffset);
+                reader.skipValue();
+                extensionsOffset = reader.position();
+            } catch (CborException e) {
+                throw new IOException("Error reading CBOR-encoded credential data!", e);
+            }
+        }
+
+        return new AuthenticatorDataView(bytes, credentialIdLength, credentialPublicKeyOffset, extensionsOffset);
+    }
+
+    /**
+     * Returns the bytes this authenticator data was read from.
+     */
+    byte[] getEncoded() {
+        return bytes;
+    }
+
+    @Override
+    public byte[] rpIdHash() {
+        if (rpIdHash == null) {
+            rpIdHash = Arrays.copyOf(bytes, LENGTH_RPIDHASH);
+        }
+        return rpIdHash;
+    }
+
+    @Override
+    public byte flags() {
+        return bytes[OFFSET_FLAGS];
+    }
+
+    @Override
+    public int sigCounter() {
+        return (bytes[OFFSET_SIG_COUNTER] & 0xff) << 24 | (bytes[OFFSET_SIG_COUNTER + 1] & 0xff) << 16
+                | (bytes[OFFSET_SIG_COUNTER + 2] & 0xff) << 8 | (bytes[OFFSET_SIG_COUNTER + 3] & 0xff);
+    }
+
+    @Nullable
+    @Override
+    public AttestedCredentialData attestedCredentialData() {
+        if (attestedCredentialData == null && hasAttestedCredentialData()) {
+            int credentialIdOffset = credentialPublicKeyOffset - credentialIdLength;
+            attestedCredentialData = AttestedCredentialData.create(
+                    Arrays.copyOfRange(bytes, TOTAL_LENGTH_HEADER, TOTAL_LENGTH_HEADER + LENGTH_AAGUID),
+                    Arrays.copyOfRange(bytes, credentialIdOffset, credentialPublicKeyOffset),
+                    Arrays.copyOfRange(bytes, credentialPublicKeyOffset, extensionsOffset));
+        }
+        return attestedCredentialData;
+    }
+
+    @Nullable
+    @Override
+    public byte[] extensions() {
+        if (extensions == null && hasExtensionData()) {
+            extensions = Arrays.copyOfRange(bytes, extensionsOffset, bytes.length);
+        }
+        return extensions;
+    }
+
+    /**
+     * Returns a view of a copy of the bytes, with the AAGUID set to zero in place.
+     */
+    @Override
+    public AuthenticatorData withEmptyAaguid() {
+        if (!hasAttestedCredentialData()) {
+            return this;
+        }
+        byte[] anonymizedBytes = bytes.clone();
+        Arrays.fill(anonymizedBytes, TOTAL_LENGTH_HEADER, TOTAL_LENGTH_HEADER + LENGTH_AAGUID, (byte) 0);
+        return new AuthenticatorDataView(
+                anonymizedBytes, credentialIdLength, credentialPublicKeyOffset, extensionsOffset);
+    }
+
+    private AuthenticatorData toAuthenticatorData() {
+        return AuthenticatorData.create(rpIdHash(), flags(), sigCounter(), attestedCredentialData(), extensions());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AuthenticatorData && toAuthenticatorData().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return toAuthenticatorData().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toAuthenticatorData().toString();
+    }
+}
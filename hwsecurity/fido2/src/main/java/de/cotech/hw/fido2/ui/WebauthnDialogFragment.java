@@ -267,6 +267,7 @@ public class WebauthnDialogFragment extends BottomSheetDialogFragment
 
         Fido2SecurityKeyConnectionModeConfig config = Fido2SecurityKeyConnectionModeConfig.builder()
                 .setForceU2f(options.isForceU2f())
+                .setCredentialRoutingEnabled(options.isCredentialRoutingEnabled())
                 .build();
         SecurityKeyManager.getInstance().registerCallback(
                 Fido2SecurityKeyConnectionMode.getInstance(config), this, this);
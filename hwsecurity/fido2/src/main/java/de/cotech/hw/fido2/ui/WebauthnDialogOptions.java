@@ -54,6 +54,8 @@ public abstract class WebauthnDialogOptions implements Parcelable {
 
     public abstract boolean isForceU2f();
 
+    public abstract boolean isCredentialRoutingEnabled();
+
     public abstract FormFactor getFormFactor();
 
     public abstract boolean getAllowKeyboard();
@@ -67,6 +69,7 @@ public abstract class WebauthnDialogOptions implements Parcelable {
         return new AutoValue_WebauthnDialogOptions.Builder()
                 .setPreventScreenshots(false)
                 .setForceU2f(false)
+                .setCredentialRoutingEnabled(false)
                 .setAllowKeyboard(false)
                 .setAllowSkipPin(false)
                 .setShowSdkLogo(false)
@@ -115,6 +118,15 @@ public abstract class WebauthnDialogOptions implements Parcelable {
 
         public abstract Builder setForceU2f(boolean forceU2f);
 
+        /**
+         * Remembers which Security Key holds which credential, so that a Security Key known to hold none of the
+         * allowed credentials is rejected right away, see
+         * {@link de.cotech.hw.fido2.Fido2SecurityKeyConnectionModeConfig.Builder#setCredentialRoutingEnabled}.
+         * <p>
+         * Default: false
+         */
+        public abstract Builder setCredentialRoutingEnabled(boolean credentialRoutingEnabled);
+
         /**
          * Option to choose the form factor displayed after the PIN input.
          * <p>
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2;
+
+
+import de.cotech.hw.exceptions.SecurityKeyDisconnectedException;
+import de.cotech.hw.fido2.internal.Fido2AppletConnection;
+import de.cotech.hw.fido2.internal.Fido2ReplayTransport;
+import de.cotech.hw.internal.transport.FaultInjectingTransport;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static de.cotech.hw.fido2.Fido2ThroughputBenchmarkTest.createGetAssertionRequest;
+import static de.cotech.hw.fido2.Fido2ThroughputBenchmarkTest.createMakeCredentialRequest;
+import static de.cotech.hw.fido2.Fido2ThroughputBenchmarkTest.createReplayTransport;
+import static de.cotech.hw.fido2.Fido2ThroughputBenchmarkTest.createSecurityKey;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Checks that {@link Fido2AppletConnection} handles the faults injected by {@link FaultInjectingTransport}
+ * without sending the authenticator more commands than necessary.
+ */
+@SuppressWarnings("WeakerAccess")
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 24)
+public class Fido2FaultInjectionTest {
+    // GET VERSION and authenticatorGetInfo
+    static final int CONNECT_COMMANDS = 2;
+
+    @Test
+    public void getAssertion_withSplitResponses() throws Exception {
+        Fido2ReplayTransport replayTransport = createReplayTransport(false);
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(replayTransport)
+                .setSplitResponseChunkSize(32);
+
+        PublicKeyCredential credential = connectSecurityKey(transport).webauthnCommand(createGetAssertionRequest());
+
+        assertArrayEquals(Fido2SecurityKeyTest.CREDENTIAL_ID, credential.rawId());
+        assertTrue(transport.getInjectedFaultCount() > 0);
+        assertEquals(CONNECT_COMMANDS + 1, replayTransport.getTransceiveCount());
+    }
+
+    @Test
+    public void getAssertion_withExactLengthRequired() throws Exception {
+        Fido2ReplayTransport replayTransport = createReplayTransport(false);
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(replayTransport)
+                .setExactLengthRequired(true);
+
+        PublicKeyCredential credential = connectSecurityKey(transport).webauthnCommand(createGetAssertionRequest());
+
+        assertArrayEquals(Fido2SecurityKeyTest.CREDENTIAL_ID, credential.rawId());
+        assertTrue(transport.getInjectedFaultCount() > 0);
+        assertEquals(CONNECT_COMMANDS + 1, replayTransport.getTransceiveCount());
+    }
+
+    @Test
+    public void makeCredential_withKeepaliveStorm() throws Exception {
+        Fido2ReplayTransport replayTransport = createReplayTransport(false);
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(replayTransport)
+                .setLatencyMs(1)
+                .keepaliveStormAt(CONNECT_COMMANDS, 20, 10);
+
+        PublicKeyCredential credential = connectSecurityKey(transport).webauthnCommand(createMakeCredentialRequest());
+
+        assertArrayEquals(Fido2SecurityKeyTest.CREDENTIAL_ID, credential.rawId());
+        assertEquals(1, transport.getInjectedFaultCount());
+        assertEquals(CONNECT_COMMANDS + 1, replayTransport.getTransceiveCount());
+    }
+
+    @Test
+    public void getAssertion_withClientPin_disconnectDuringPinProtocol() throws Exception {
+        Fido2ReplayTransport replayTransport = createReplayTransport(true);
+        // getRetries, then disconnect on getKeyAgreement
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(replayTransport)
+                .disconnectAt(CONNECT_COMMANDS + 1);
+        Fido2SecurityKey securityKey = connectSecurityKey(transport);
+
+        try {
+            securityKey.webauthnCommand(createGetAssertionRequest().withClientPin("1234", false));
+            fail();
+        } catch (SecurityKeyDisconnectedException e) {
+            // expected
+        }
+        assertEquals(CONNECT_COMMANDS + 1, replayTransport.getTransceiveCount());
+    }
+
+    static Fido2SecurityKey connectSecurityKey(FaultInjectingTransport transport) throws Exception {
+        Fido2AppletConnection connection = Fido2AppletConnection.getInstanceForTransport(transport);
+        connection.connectIfNecessary();
+        return createSecurityKey(connection);
+    }
+}
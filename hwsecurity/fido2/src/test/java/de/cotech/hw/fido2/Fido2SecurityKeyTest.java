@@ -30,6 +30,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import de.cotech.hw.SecurityKeyManagerConfig;
 import de.cotech.hw.fido2.domain.AuthenticatorTransport;
@@ -84,6 +85,11 @@ public class Fido2SecurityKeyTest {
     static final String GET_ATTESTATION_USERNAMELESS_REQUEST = "8010000000003b02a201747777772e70617373776f72646c6573732e6465760258202365959d0ee11f2435d495bb1ae45fa009791231ca7924014a6c6d57f2ace3320000";
     static final String GET_ATTESTATION_USERNAMELESS_RESPONSE = "00a501a262696450569f7b7441d8a21477c89666de4d04de64747970656a7075626c69632d6b6579025825e628e3d57a75e0a221131be840c2dbd5c6d779c12fad3e631fba871494612d6e010000002a03584730450220571dd10ec977ff31ce1ee58e8eb97391187082a4bcf20016df869037d415cde5022100efe23a62efc504feca19cd6440c180952a39395880c4f568857a5f5e9fa7523804a162696458342028557365726e616d656c6573732075736572206372656174656420617420362f392f323032302031323a33363a323620504d2905039000";
 
+    static final String GET_NEXT_ASSERTION_REQUEST = "801000000108";
+    static final String GET_NEXT_ASSERTION_RESPONSE_TWO = "00a401a2626964502222222222222222222222222222222264747970656a7075626c69632d6b6579025825e628e3d57a75e0a221131be840c2dbd5c6d779c12fad3e631fba871494612d6e010000002a0358253045022100222222222222222222222222222222222222222222222222222222222222222204a162696448757365722074776f9000";
+    static final String GET_NEXT_ASSERTION_RESPONSE_THREE = "00a401a2626964503333333333333333333333333333333364747970656a7075626c69632d6b6579025825e628e3d57a75e0a221131be840c2dbd5c6d779c12fad3e631fba871494612d6e010000002a0358253045022100333333333333333333333333333333333333333333333333333333333333333304a16269644a757365722074687265659000";
+    static final String GET_NEXT_ASSERTION_RESPONSE_NOT_ALLOWED = "309000";
+
     static final String CLIENT_PIN_GET_RETRIES = "801000000606a201010201";
     static final String CLIENT_PIN_GET_RETRIES_RESPONSE_EIGHT = "00a103089000";
     static final String CLIENT_PIN_GET_AGREEMENT = "801000000606a201010202";
@@ -91,7 +97,7 @@ public class Fido2SecurityKeyTest {
     static final byte[] AUTHENTICATOR_KEY_AGREEMENT = Hex.decodeHexOrFail(
             "a501020338182001215820f370174f29f360cff04035c4b46daf2a93468398521ac7fc7bf8f8f986d9e08f2258202ba85af4992d37ef3977eea283b65a00e7c06dc473aeecc24b70f9b9d22d5e8d");
     static final byte[] PLATFORM_KEY_AGREEMENT = Hex.decodeHexOrFail(
-            "a501020326200121582099401f6ffa9446585074d1058578f4c68ab46953ccf8cb7910d8b3c9350e1040225820a3c962cddad166b1fdea8a95a377dbf8efbedd82778a8004b884f0009bd6df9506");
+            "a501020326200121582099401f6ffa9446585074d1058578f4c68ab46953ccf8cb7910d8b3c9350e1040225820a3c962cddad166b1fdea8a95a377dbf8efbedd82778a8004b884f0009bd6df95");
     static final byte[] PIN_HASH_ENC = Hex.decodeHexOrFail("2eb756ae474f7ca032b5111b2eef6959");
     static final byte[] PIN_TOKEN_ENC = Hex.decodeHexOrFail("554df3802226935b2bf49f30aae3096f");
     static final String CLIENT_PIN_GET_TOKEN = "801000006606a40101020503a501020326200121582099401f6ffa9446585074d1058578f4c68ab46953ccf8cb7910d8b3c9350e1040225820a3c962cddad166b1fdea8a95a377dbf8efbedd82778a8004b884f0009bd6df9506502eb756ae474f7ca032b5111b2eef6959";
@@ -205,6 +211,8 @@ public class Fido2SecurityKeyTest {
                         Collections.emptyList(), UserVerificationRequirement.PREFERRED)
         );
         fakeFidoConnection.expect(GET_ATTESTATION_USERNAMELESS_REQUEST, GET_ATTESTATION_USERNAMELESS_RESPONSE);
+        fakeFidoConnection.expect(GET_NEXT_ASSERTION_REQUEST, GET_NEXT_ASSERTION_RESPONSE_TWO);
+        fakeFidoConnection.expect(GET_NEXT_ASSERTION_REQUEST, GET_NEXT_ASSERTION_RESPONSE_THREE);
 
         PublicKeyCredential publicKeyCredential = fido2SecurityKey.webauthnCommand(getParameters);
 
@@ -218,6 +226,38 @@ public class Fido2SecurityKeyTest {
         assertEquals("IChVc2VybmFtZWxlc3MgdXNlciBjcmVhdGVkIGF0IDYvOS8yMDIwIDEyOjM2OjI2IFBNKQ", WebsafeBase64.encodeToString(response.userHandle()));
         assertEquals("{\"type\":\"webauthn.get\",\"origin\":\"https:\\/\\/www.passwordless.dev\",\"challenge\":\"n46bFSgRdToqeoIeef252g\",\"hashAlgorithm\":\"SHA-256\"}",
                 new String(publicKeyCredential.response().clientDataJson()));
+
+        List<PublicKeyCredential> additionalAssertions = publicKeyCredential.additionalAssertions();
+        assertEquals(2, additionalAssertions.size());
+        assertArrayEquals(Hex.decodeHexOrFail("22222222222222222222222222222222"), additionalAssertions.get(0).rawId());
+        assertArrayEquals("user two".getBytes(),
+                ((AuthenticatorAssertionResponse) additionalAssertions.get(0).response()).userHandle());
+        assertArrayEquals(Hex.decodeHexOrFail("33333333333333333333333333333333"), additionalAssertions.get(1).rawId());
+        assertArrayEquals("user three".getBytes(),
+                ((AuthenticatorAssertionResponse) additionalAssertions.get(1).response()).userHandle());
+        assertArrayEquals(publicKeyCredential.response().clientDataJson(),
+                additionalAssertions.get(1).response().clientDataJson());
+    }
+
+    @Test
+    public void getAssertion_usernameless_nextAssertionNotAllowed() throws Exception {
+        PublicKeyCredentialGet getParameters = PublicKeyCredentialGet.create(
+                "https://www.passwordless.dev",
+                PublicKeyCredentialRequestOptions.create(
+                        WebsafeBase64.decode("n46bFSgRdToqeoIeef252g"),
+                        null,
+                        "www.passwordless.dev",
+                        Collections.emptyList(), UserVerificationRequirement.PREFERRED)
+        );
+        fakeFidoConnection.expect(GET_ATTESTATION_USERNAMELESS_REQUEST, GET_ATTESTATION_USERNAMELESS_RESPONSE);
+        fakeFidoConnection.expect(GET_NEXT_ASSERTION_REQUEST, GET_NEXT_ASSERTION_RESPONSE_TWO);
+        fakeFidoConnection.expect(GET_NEXT_ASSERTION_REQUEST, GET_NEXT_ASSERTION_RESPONSE_NOT_ALLOWED);
+
+        PublicKeyCredential publicKeyCredential = fido2SecurityKey.webauthnCommand(getParameters);
+
+        fakeFidoConnection.verify();
+        assertArrayEquals(WebsafeBase64.decode("Vp97dEHYohR3yJZm3k0E3g"), publicKeyCredential.rawId());
+        assertEquals(1, publicKeyCredential.additionalAssertions().size());
     }
 
     @Test
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import de.cotech.hw.SecurityKeyManagerConfig;
+import de.cotech.hw.fido2.domain.AuthenticatorTransport;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialParameters;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialRpEntity;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialType;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialUserEntity;
+import de.cotech.hw.fido2.domain.UserVerificationRequirement;
+import de.cotech.hw.fido2.domain.create.AttestationConveyancePreference;
+import de.cotech.hw.fido2.domain.create.AuthenticatorSelectionCriteria;
+import de.cotech.hw.fido2.domain.create.PublicKeyCredentialCreationOptions;
+import de.cotech.hw.fido2.domain.get.PublicKeyCredentialRequestOptions;
+import de.cotech.hw.fido2.internal.Fido2AppletConnection;
+import de.cotech.hw.fido2.internal.Fido2ReplayTransport;
+import de.cotech.hw.fido2.internal.async.Fido2AsyncOperationManager;
+import de.cotech.hw.fido2.internal.operations.WebauthnSecurityKeyOperationFactory;
+import de.cotech.hw.fido2.internal.pinauth.PinAuthCryptoUtil;
+import de.cotech.hw.fido2.internal.pinauth.PinProtocolV1;
+import de.cotech.hw.fido2.internal.utils.WebsafeBase64;
+import de.cotech.hw.internal.benchmark.ThroughputBenchmark;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.CLIENT_PIN_GET_AGREEMENT_RESPONSE;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.CLIENT_PIN_GET_RETRIES_RESPONSE_EIGHT;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.CLIENT_PIN_GET_TOKEN_RESPONSE;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.CREDENTIAL_ID;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.GET_ATTESTATION_RESPONSE;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.MAKE_ATTESTATION_RESPONSE;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.ORIGIN;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.USER_DISPLAYNAME;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.USER_ICON;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.USER_ID;
+import static de.cotech.hw.fido2.Fido2SecurityKeyTest.USER_NAME;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * End-to-end throughput of WebAuthn operations against recorded authenticator responses, see
+ * {@link ThroughputBenchmark}. The clientPin scenarios run the complete PIN protocol including the platform
+ * side key agreement for every operation.
+ */
+@SuppressWarnings("WeakerAccess")
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 24)
+public class Fido2ThroughputBenchmarkTest {
+    static final int CTAP2_CMD_MAKE_CREDENTIAL = 0x01;
+    static final int CTAP2_CMD_GET_ASSERTION = 0x02;
+    static final int CLIENT_PIN_GET_RETRIES = 0x01;
+    static final int CLIENT_PIN_GET_KEY_AGREEMENT = 0x02;
+    static final int CLIENT_PIN_GET_PIN_TOKEN = 0x05;
+
+    @Before
+    public void setup() {
+        assumeTrue(ThroughputBenchmark.isEnabled());
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        ThroughputBenchmark benchmark = ThroughputBenchmark.create("fido2");
+
+        PublicKeyCredentialCreate create = createMakeCredentialRequest();
+        PublicKeyCredentialGet get = createGetAssertionRequest();
+
+        Fido2SecurityKey securityKey = createSecurityKey(connect(createReplayTransport(false)));
+        benchmark.measure("fido2.makeCredential", () -> securityKey.webauthnCommand(create));
+        benchmark.measure("fido2.getAssertion", () -> securityKey.webauthnCommand(get));
+
+        PublicKeyCredentialCreate createWithPin = create.withClientPin("1234", false);
+        PublicKeyCredentialGet getWithPin = get.withClientPin("1234", false);
+
+        Fido2AppletConnection connectionWithPin = connect(createReplayTransport(true));
+        Fido2SecurityKey securityKeyWithPin = createSecurityKey(connectionWithPin);
+        benchmark.measure("fido2.makeCredential.clientPin", () -> {
+            connectionWithPin.setCachedPinToken(null);
+            securityKeyWithPin.webauthnCommand(createWithPin);
+        });
+        benchmark.measure("fido2.getAssertion.clientPin", () -> {
+            connectionWithPin.setCachedPinToken(null);
+            securityKeyWithPin.webauthnCommand(getWithPin);
+        });
+
+        benchmark.writeReport();
+    }
+
+    static Fido2ReplayTransport createReplayTransport(boolean hasClientPin) throws Exception {
+        return Fido2ReplayTransport.create(hasClientPin)
+                .replyCtap2(CTAP2_CMD_MAKE_CREDENTIAL, MAKE_ATTESTATION_RESPONSE)
+                .replyCtap2(CTAP2_CMD_GET_ASSERTION, GET_ATTESTATION_RESPONSE)
+                .replyClientPin(CLIENT_PIN_GET_RETRIES, CLIENT_PIN_GET_RETRIES_RESPONSE_EIGHT)
+                .replyClientPin(CLIENT_PIN_GET_KEY_AGREEMENT, CLIENT_PIN_GET_AGREEMENT_RESPONSE)
+                .replyClientPin(CLIENT_PIN_GET_PIN_TOKEN, CLIENT_PIN_GET_TOKEN_RESPONSE);
+    }
+
+    static Fido2AppletConnection connect(Fido2ReplayTransport transport) throws Exception {
+        Fido2AppletConnection connection = Fido2AppletConnection.getInstanceForTransport(transport);
+        connection.connectIfNecessary();
+        return connection;
+    }
+
+    static Fido2SecurityKey createSecurityKey(Fido2AppletConnection connection) {
+        WebauthnSecurityKeyOperationFactory operationFactory =
+                new WebauthnSecurityKeyOperationFactory(new PinProtocolV1(new PinAuthCryptoUtil()));
+        return new Fido2SecurityKey(new SecurityKeyManagerConfig.Builder().build(), connection, null,
+                new Fido2AsyncOperationManager(), operationFactory);
+    }
+
+    static PublicKeyCredentialCreate createMakeCredentialRequest() {
+        return PublicKeyCredentialCreate.create(ORIGIN,
+                PublicKeyCredentialCreationOptions.create(
+                        PublicKeyCredentialRpEntity.create("webauthn.hwsecurity.dev", "Acme", null),
+                        PublicKeyCredentialUserEntity.create(USER_ID, USER_NAME, USER_DISPLAYNAME, USER_ICON),
+                        WebsafeBase64.decode("GNxfVQfEVOoi9uU1W_jM-w"),
+                        Collections.singletonList(PublicKeyCredentialParameters.createDefaultEs256()),
+                        null,
+                        AuthenticatorSelectionCriteria.create(null, false, UserVerificationRequirement.PREFERRED),
+                        null,
+                        AttestationConveyancePreference.NONE
+                )
+        );
+    }
+
+    static PublicKeyCredentialGet createGetAssertionRequest() {
+        return PublicKeyCredentialGet.create(ORIGIN,
+                PublicKeyCredentialRequestOptions.create(
+                        WebsafeBase64.decode("BCNrbzS9WfmkDbISaw6WQg"),
+                        null,
+                        "webauthn.hwsecurity.dev",
+                        Collections.singletonList(PublicKeyCredentialDescriptor.create(
+                                PublicKeyCredentialType.PUBLIC_KEY, CREDENTIAL_ID, Arrays.asList(
+                                        AuthenticatorTransport.USB,
+                                        AuthenticatorTransport.NFC,
+                                        AuthenticatorTransport.BLE
+                                )
+                        )), UserVerificationRequirement.PREFERRED)
+        );
+    }
+}
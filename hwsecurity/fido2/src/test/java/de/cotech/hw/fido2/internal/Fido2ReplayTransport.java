@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal;
+
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.SecurityKeyInfo.SecurityKeyType;
+import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.util.Hex;
+
+
+/**
+ * A lenient counterpart to {@link de.cotech.hw.internal.transport.FakeTransport}: instead of expecting an exact
+ * sequence of commands, it answers every CTAP2 command with a recorded response chosen by its command byte
+ * (and clientPin subcommand). This allows requests containing fresh randomness, such as the platform key
+ * agreement of the PIN protocol, to be replayed any number of times.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Fido2ReplayTransport implements Transport {
+    private static final int CTAP2_CLA = 0x80;
+    private static final int CTAP2_INS = 0x10;
+    private static final byte CTAP2_CMD_CLIENT_PIN = 0x06;
+    // offset of the subCommand value in an encoded clientPin map {1: pinProtocol, 2: subCommand, ...}
+    private static final int CLIENT_PIN_SUB_COMMAND_OFFSET = 5;
+
+    private final Map<Integer, ResponseApdu> ctap2Responses = new HashMap<>();
+    private final Map<Integer, ResponseApdu> clientPinResponses = new HashMap<>();
+    private ResponseApdu versionResponse;
+    private int transceiveCount;
+
+    public static Fido2ReplayTransport create(boolean hasClientPin) throws IOException {
+        Fido2ReplayTransport transport = new Fido2ReplayTransport();
+        transport.versionResponse = parseResponse(FakeFido2AppletConnection.GET_VERSION_RESPONSE);
+        transport.replyCtap2(0x04, hasClientPin ?
+                FakeFido2AppletConnection.GET_INFO_RESPONSE_PIN_YES : FakeFido2AppletConnection.GET_INFO_RESPONSE_PIN_NO);
+        return transport;
+    }
+
+    public Fido2ReplayTransport replyCtap2(int commandByte, String responseBytesHex) throws IOException {
+        ctap2Responses.put(commandByte, parseResponse(responseBytesHex));
+        return this;
+    }
+
+    public Fido2ReplayTransport replyClientPin(int subCommand, String responseBytesHex) throws IOException {
+        clientPinResponses.put(subCommand, parseResponse(responseBytesHex));
+        return this;
+    }
+
+    public int getTransceiveCount() {
+        return transceiveCount;
+    }
+
+    @Override
+    public ResponseApdu transceive(CommandApdu commandApdu) throws IOException {
+        transceiveCount++;
+        if (commandApdu.getCLA() != CTAP2_CLA || commandApdu.getINS() != CTAP2_INS) {
+            return versionResponse;
+        }
+
+        byte[] data = commandApdu.getData();
+        ResponseApdu response;
+        if (data[0] == CTAP2_CMD_CLIENT_PIN) {
+            response = clientPinResponses.get((int) data[CLIENT_PIN_SUB_COMMAND_OFFSET]);
+        } else {
+            response = ctap2Responses.get((int) data[0]);
+        }
+        if (response == null) {
+            throw new IOException("No recorded response for command " + commandApdu);
+        }
+        return response;
+    }
+
+    private static ResponseApdu parseResponse(String responseBytesHex) throws IOException {
+        return ResponseApdu.fromBytes(Hex.decodeHexOrFail(responseBytesHex));
+    }
+
+    @Override
+    public void release() {
+
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public boolean isReleased() {
+        return false;
+    }
+
+    @Override
+    public boolean isPersistentConnectionAllowed() {
+        return false;
+    }
+
+    @Override
+    public void connect() {
+
+    }
+
+    @Override
+    public boolean ping() {
+        return true;
+    }
+
+    @Override
+    public TransportType getTransportType() {
+        return TransportType.USB_CTAPHID;
+    }
+
+    @Nullable
+    @Override
+    public SecurityKeyType getSecurityKeyTypeIfAvailable() {
+        return null;
+    }
+
+    @Override
+    public boolean isExtendedLengthSupported() {
+        return true;
+    }
+}
@@ -27,6 +27,7 @@ package de.cotech.hw.fido2.internal.async;
 
 import java.util.concurrent.CountDownLatch;
 
+import de.cotech.hw.internal.async.OperationFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,6 +36,7 @@ import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLooper;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 
@@ -51,20 +53,22 @@ public class Fido2AsyncOperationManagerTest {
 
     @Test
     public void startAsyncOperation() throws Exception {
-        TestFido2OperationThread thread = new TestFido2OperationThread();
-        fido2AsyncOperationManager.startAsyncOperation(null, thread);
-        FidoAsyncOperationManagerUtil.joinRunningThread(fido2AsyncOperationManager);
+        TestFido2AsyncOperation operation = new TestFido2AsyncOperation();
+        fido2AsyncOperationManager.startAsyncOperation(null, operation);
+        FidoAsyncOperationManagerUtil.awaitRunningOperation(fido2AsyncOperationManager);
         assertTrue(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
-        thread.assertLatchOk();
+        operation.assertLatchOk();
     }
 
     @Test
     public void startAsyncOperation_thenClear() throws Exception {
         CountDownLatch delayLatch = new CountDownLatch(1);
-        TestFido2OperationThread thread = new TestFido2OperationThread(delayLatch);
-        fido2AsyncOperationManager.startAsyncOperation(null, thread);
+        TestFido2AsyncOperation operation = new TestFido2AsyncOperation(delayLatch);
+        fido2AsyncOperationManager.startAsyncOperation(null, operation);
+        OperationFuture<?> future = fido2AsyncOperationManager.asyncOperationFuture;
         fido2AsyncOperationManager.clearAsyncOperation();
-        FidoAsyncOperationManagerUtil.joinRunningThread(fido2AsyncOperationManager);
+        assertTrue(future.isCancelled());
+        assertNull(fido2AsyncOperationManager.asyncOperationFuture);
         assertFalse(ShadowLooper.getShadowMainLooper().getScheduler().runOneTask());
     }
 
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import java.io.IOException;
+
+import de.cotech.hw.fido2.domain.create.AttestationObject;
+import de.cotech.hw.fido2.internal.cbor_java.CborBuilder;
+import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
+import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
+import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+
+@SuppressWarnings("WeakerAccess")
+public class CborAttestationObjectSerializerTest {
+    static final byte[] AUTH_DATA = createBytes(196);
+    static final byte[] CERTIFICATE = createBytes(704);
+    static final byte[] SIGNATURE = createBytes(71);
+
+    CborAttestationObjectSerializer serializer = new CborAttestationObjectSerializer();
+
+    @Test
+    public void serializeAttestationObject() throws Exception {
+        byte[] attStmt = CborCtap1AttestationStatementUtil.toAttestionStatement(CERTIFICATE, SIGNATURE);
+
+        byte[] result = serializer.serializeAttestationObject(AttestationObject.create("packed", AUTH_DATA, attStmt));
+
+        assertArrayEquals(encodeWithCborJava("packed", AUTH_DATA, attStmt), result);
+    }
+
+    @Test
+    public void serializeAttestationObject_withEmptyAttStmt() throws Exception {
+        byte[] result = serializer.serializeAttestationObject("none", AUTH_DATA, CborConstants.EMPTY_MAP_BYTES);
+
+        assertArrayEquals(encodeWithCborJava("none", AUTH_DATA, CborConstants.EMPTY_MAP_BYTES), result);
+    }
+
+    @Test(expected = IOException.class)
+    public void serializeAttestationObject_withTruncatedAttStmt() throws Exception {
+        byte[] attStmt = CborCtap1AttestationStatementUtil.toAttestionStatement(CERTIFICATE, SIGNATURE);
+        byte[] truncatedAttStmt = new byte[attStmt.length - 1];
+        System.arraycopy(attStmt, 0, truncatedAttStmt, 0, truncatedAttStmt.length);
+
+        serializer.serializeAttestationObject("packed", AUTH_DATA, truncatedAttStmt);
+    }
+
+    @Test
+    public void toAttestationStatement() throws Exception {
+        byte[] expected = CborUtils.writeCborDataToBytes(new CborBuilder()
+                .addMap()
+                    .put("sig", SIGNATURE)
+                    .putArray("x5c")
+                        .add(CERTIFICATE)
+                    .end()
+                .end()
+                .build());
+
+        assertArrayEquals(expected, CborCtap1AttestationStatementUtil.toAttestionStatement(CERTIFICATE, SIGNATURE));
+    }
+
+    @Test
+    public void serializeFidoU2fAttestationObject() throws Exception {
+        byte[] attStmt = CborCtap1AttestationStatementUtil.toAttestionStatement(CERTIFICATE, SIGNATURE);
+
+        byte[] result = serializer.serializeFidoU2fAttestationObject(AUTH_DATA, CERTIFICATE, SIGNATURE);
+
+        assertArrayEquals(encodeWithCborJava("fido-u2f", AUTH_DATA, attStmt), result);
+    }
+
+    /**
+     * Encodes an attestation object as a tree of cbor_java data items, the way it was done before
+     * {@link CborWriter} was used.
+     */
+    static byte[] encodeWithCborJava(String fmt, byte[] authData, byte[] attStmt) throws Exception {
+        return CborUtils.writeCborDataToBytes(new CborBuilder()
+                .addMap()
+                .put(CborConstants.FMT, new UnicodeString(fmt))
+                .put(CborConstants.AUTH_DATA, new ByteString(authData))
+                .put(CborConstants.ATT_STMT, CborDecoder.decode(attStmt).get(0))
+                .end()
+                .build());
+    }
+
+    static byte[] createBytes(int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) i;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
+import de.cotech.hw.fido2.internal.cbor_java.CborException;
+import de.cotech.hw.fido2.internal.cbor_java.model.Array;
+import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
+import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
+import de.cotech.hw.fido2.internal.cbor_java.model.Map;
+import de.cotech.hw.fido2.internal.cbor_java.model.NegativeInteger;
+import de.cotech.hw.fido2.internal.cbor_java.model.SimpleValue;
+import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
+import de.cotech.hw.fido2.internal.cbor_java.model.UnsignedInteger;
+import de.cotech.hw.util.Hex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Cross-checks {@link CborWriter} and {@link CborReader} against the cbor_java codec on randomly generated data
+ * items, and checks that the reader rejects corrupted input only with {@link CborException}.
+ * <p>
+ * Runs are deterministic. Failure messages contain the seed of the failing case, which can be passed to the
+ * individual check methods to reproduce it.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CborDifferentialFuzzTest {
+    static final long SEED = 0x5ec0de1d;
+    static final int ITERATIONS = 2000;
+    static final int MAX_DEPTH = 4;
+
+    static final long[] INTERESTING_INTEGERS = {
+            0, 1, 23, 24, 255, 256, 65535, 65536, 0xffffffffL, 0x100000000L, Long.MAX_VALUE,
+            -1, -24, -25, -256, -257, -65536, -65537, -0x100000000L, Long.MIN_VALUE
+    };
+
+    @Test
+    public void writerMatchesCborJavaEncoder() throws Exception {
+        Random seeds = new Random(SEED);
+        for (int i = 0; i < ITERATIONS; i++) {
+            checkWriter(seeds.nextLong());
+        }
+    }
+
+    @Test
+    public void readerMatchesCborJavaDecoder() throws Exception {
+        Random seeds = new Random(SEED + 1);
+        for (int i = 0; i < ITERATIONS; i++) {
+            checkReader(seeds.nextLong());
+        }
+    }
+
+    @Test
+    public void readerRejectsCorruptedInputCleanly() throws Exception {
+        Random seeds = new Random(SEED + 2);
+        for (int i = 0; i < ITERATIONS; i++) {
+            checkCorruptedInput(seeds.nextLong());
+        }
+    }
+
+    static void checkWriter(long seed) throws Exception {
+        DataItem dataItem = generateDataItem(new Random(seed), 0);
+
+        CborWriter writer = new CborWriter(1);
+        write(writer, dataItem);
+
+        assertArrayEquals("seed " + seed, CborUtils.writeCborDataToBytes(dataItem), writer.toByteArray());
+    }
+
+    static void checkReader(long seed) throws Exception {
+        DataItem dataItem = generateDataItem(new Random(seed), 0);
+        byte[] encoded = CborUtils.writeCborDataToBytes(dataItem);
+
+        assertEquals("seed " + seed, dataItem, read(new CborReader(encoded)));
+
+        CborReader reader = new CborReader(encoded);
+        reader.skipValue();
+        assertEquals("seed " + seed, encoded.length, reader.position());
+        assertArrayEquals("seed " + seed, encoded, new CborReader(encoded).readEncodedItem());
+    }
+
+    static void checkCorruptedInput(long seed) throws Exception {
+        Random random = new Random(seed);
+        byte[] encoded = corrupt(random, CborUtils.writeCborDataToBytes(generateDataItem(random, 0)));
+
+        DataItem readerResult;
+        try {
+            readerResult = read(new CborReader(encoded));
+        } catch (CborException e) {
+            return;
+        } catch (RuntimeException | StackOverflowError | OutOfMemoryError e) {
+            throw new AssertionError("seed " + seed + ", input " + Hex.encodeHexString(encoded), e);
+        }
+
+        // whatever the reader accepts must be decoded identically by cbor_java
+        DataItem legacyResult;
+        try {
+            legacyResult = new CborDecoder(new ByteArrayInputStream(encoded)).decodeNext();
+        } catch (CborException e) {
+            fail("seed " + seed + ": reader accepted input rejected by cbor_java: " + Hex.encodeHexString(encoded));
+            return;
+        }
+        assertEquals("seed " + seed + ", input " + Hex.encodeHexString(encoded), legacyResult, readerResult);
+    }
+
+    static byte[] corrupt(Random random, byte[] encoded) {
+        switch (random.nextInt(4)) {
+            case 0: {
+                byte[] result = encoded.clone();
+                for (int i = 1 + random.nextInt(3); i > 0; i--) {
+                    result[random.nextInt(result.length)] ^= (byte) (1 << random.nextInt(8));
+                }
+                return result;
+            }
+            case 1: {
+                return Arrays.copyOf(encoded, random.nextInt(encoded.length));
+            }
+            case 2: {
+                byte[] result = encoded.clone();
+                result[random.nextInt(result.length)] = (byte) random.nextInt(256);
+                return result;
+            }
+            default: {
+                int position = random.nextInt(encoded.length + 1);
+                byte[] result = new byte[encoded.length + 1];
+                System.arraycopy(encoded, 0, result, 0, position);
+                result[position] = (byte) random.nextInt(256);
+                System.arraycopy(encoded, position, result, position + 1, encoded.length - position);
+                return result;
+            }
+        }
+    }
+
+    static DataItem generateDataItem(Random random, int depth) throws CborException {
+        int type = random.nextInt(depth < MAX_DEPTH ? 8 : 6);
+        switch (type) {
+            case 0:
+                return integerDataItem(generateInteger(random));
+            case 1:
+                return new ByteString(generateBytes(random));
+            case 2:
+                return new UnicodeString(generateString(random));
+            case 3:
+                return random.nextBoolean() ? SimpleValue.TRUE : SimpleValue.FALSE;
+            case 4:
+                return SimpleValue.NULL;
+            case 5:
+                return integerDataItem(random.nextInt(64) - 32);
+            case 6: {
+                Array array = new Array();
+                for (int i = random.nextInt(6); i > 0; i--) {
+                    array.add(generateDataItem(random, depth + 1));
+                }
+                return array;
+            }
+            default: {
+                // insert keys in canonical order, which is the order cbor_java encodes them in. Keys are limited to
+                // small integers and ASCII, like in CTAP2: cbor_java compares key bytes as signed values, which
+                // deviates from the canonical order for key bytes of 0x80 and above.
+                List<DataItem> keys = new ArrayList<>();
+                List<byte[]> encodedKeys = new ArrayList<>();
+                for (int i = random.nextInt(6); i > 0; i--) {
+                    DataItem key = random.nextBoolean() ?
+                            integerDataItem(random.nextInt(40) - 8) : new UnicodeString(generateAsciiString(random));
+                    byte[] encodedKey = CborUtils.writeCborDataToBytes(key);
+                    if (!containsArray(encodedKeys, encodedKey)) {
+                        keys.add(key);
+                        encodedKeys.add(encodedKey);
+                    }
+                }
+                Integer[] order = new Integer[keys.size()];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparing(encodedKeys::get, CborDifferentialFuzzTest::compareCanonical));
+
+                Map map = new Map();
+                for (Integer index : order) {
+                    map.put(keys.get(index), generateDataItem(random, depth + 1));
+                }
+                return map;
+            }
+        }
+    }
+
+    static long generateInteger(Random random) {
+        if (random.nextBoolean()) {
+            return INTERESTING_INTEGERS[random.nextInt(INTERESTING_INTEGERS.length)];
+        }
+        return random.nextLong() >> random.nextInt(64);
+    }
+
+    static byte[] generateBytes(Random random) {
+        byte[] result = new byte[random.nextInt(10) == 0 ? 200 + random.nextInt(200) : random.nextInt(40)];
+        random.nextBytes(result);
+        return result;
+    }
+
+    static String generateString(Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int i = random.nextInt(12); i > 0; i--) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    result.appendCodePoint(0x80 + random.nextInt(0x780));
+                    break;
+                case 1:
+                    result.appendCodePoint(0x800 + random.nextInt(0xd000));
+                    break;
+                case 2:
+                    result.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    break;
+                default:
+                    result.append((char) (0x20 + random.nextInt(0x5f)));
+            }
+        }
+        return result.toString();
+    }
+
+    static String generateAsciiString(Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int i = random.nextInt(12); i > 0; i--) {
+            result.append((char) (0x20 + random.nextInt(0x5f)));
+        }
+        return result.toString();
+    }
+
+    static DataItem integerDataItem(long value) {
+        return value >= 0 ? new UnsignedInteger(value) : new NegativeInteger(value);
+    }
+
+    static boolean containsArray(List<byte[]> arrays, byte[] array) {
+        for (byte[] element : arrays) {
+            if (Arrays.equals(element, array)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int compareCanonical(byte[] left, byte[] right) {
+        if (left.length != right.length) {
+            return left.length - right.length;
+        }
+        for (int i = 0; i < left.length; i++) {
+            if (left[i] != right[i]) {
+                return (left[i] & 0xff) - (right[i] & 0xff);
+            }
+        }
+        return 0;
+    }
+
+    static void write(CborWriter writer, DataItem dataItem) {
+        switch (dataItem.getMajorType()) {
+            case UNSIGNED_INTEGER:
+                writer.writeInteger(((UnsignedInteger) dataItem).getValue().longValue());
+                break;
+            case NEGATIVE_INTEGER:
+                writer.writeInteger(((NegativeInteger) dataItem).getValue().longValue());
+                break;
+            case BYTE_STRING:
+                writer.writeByteString(((ByteString) dataItem).getBytes());
+                break;
+            case UNICODE_STRING:
+                writer.writeTextString(((UnicodeString) dataItem).getString());
+                break;
+            case ARRAY: {
+                List<DataItem> dataItems = ((Array) dataItem).getDataItems();
+                writer.writeArrayHeader(dataItems.size());
+                for (DataItem element : dataItems) {
+                    write(writer, element);
+                }
+                break;
+            }
+            case MAP: {
+                Map map = (Map) dataItem;
+                writer.writeMapHeader(map.getKeys().size());
+                for (DataItem key : map.getKeys()) {
+                    write(writer, key);
+                    write(writer, map.get(key));
+                }
+                break;
+            }
+            default: {
+                if (dataItem.equals(SimpleValue.NULL)) {
+                    writer.writeNull();
+                } else {
+                    writer.writeBoolean(dataItem.equals(SimpleValue.TRUE));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a data item into the cbor_java model, for the subset of CBOR that CTAP2 uses.
+     */
+    static DataItem read(CborReader reader) throws CborException {
+        switch (reader.peekMajorType()) {
+            case UNSIGNED_INTEGER:
+            case NEGATIVE_INTEGER:
+                return integerDataItem(reader.readInteger());
+            case BYTE_STRING:
+                return new ByteString(reader.readByteString());
+            case UNICODE_STRING:
+                return new UnicodeString(reader.readTextString());
+            case ARRAY: {
+                Array array = new Array();
+                for (int i = reader.readArrayHeader(); i > 0; i--) {
+                    array.add(read(reader));
+                }
+                return array;
+            }
+            case MAP: {
+                Map map = new Map();
+                for (int i = reader.readMapHeader(); i > 0; i--) {
+                    DataItem key = read(reader);
+                    map.put(key, read(reader));
+                }
+                return map;
+            }
+            default: {
+                if (reader.peekNull()) {
+                    reader.readNull();
+                    return SimpleValue.NULL;
+                }
+                if (reader.peekBoolean()) {
+                    return reader.readBoolean() ? SimpleValue.TRUE : SimpleValue.FALSE;
+                }
+                throw new CborException("Unsupported data item");
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.cotech.hw.fido2.internal.cbor_java.CborBuilder;
+import de.cotech.hw.fido2.internal.cbor_java.CborException;
+import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
+import de.cotech.hw.fido2.internal.cbor_java.model.MajorType;
+import de.cotech.hw.util.Hex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+@SuppressWarnings("WeakerAccess")
+public class CborReaderTest {
+    @Test
+    public void readInteger() throws Exception {
+        for (long value : CborWriterTest.INTEGERS) {
+            CborReader reader = new CborReader(new CborWriter().writeInteger(value).toByteArray());
+            assertEquals(value, reader.readInteger());
+            assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test(expected = CborException.class)
+    public void readInt_outOfRange() throws Exception {
+        new CborReader(new CborWriter().writeInteger(0x100000000L).toByteArray()).readInt();
+    }
+
+    @Test
+    public void readTextString() throws Exception {
+        for (String value : CborWriterTest.STRINGS) {
+            byte[] encoded = new CborWriter().writeTextString(value).toByteArray();
+            assertEquals(new String(value.getBytes("UTF-8"), "UTF-8"), new CborReader(encoded).readTextString());
+        }
+    }
+
+    @Test
+    public void readByteString() throws Exception {
+        for (int length : new int[] { 0, 23, 24, 255, 256, 70000 }) {
+            byte[] value = new byte[length];
+            Arrays.fill(value, (byte) 42);
+            byte[] encoded = new CborWriter().writeByteString(value).toByteArray();
+            assertArrayEquals(value, new CborReader(encoded).readByteString());
+        }
+    }
+
+    @Test
+    public void readByteStringSlice_sharesUnderlyingArray() throws Exception {
+        byte[] encoded = Hex.decodeHexOrFail("a1014301020304");
+        CborReader reader = new CborReader(encoded);
+        assertEquals(1, reader.readMapHeader());
+        assertEquals(1, reader.readInt());
+
+        ByteBuffer slice = reader.readByteStringSlice();
+
+        assertEquals(3, slice.remaining());
+        assertEquals(1, slice.get(0));
+        assertEquals(3, slice.get(2));
+        assertTrue(reader.hasRemaining());
+        assertEquals(4, reader.readInt());
+    }
+
+    @Test
+    public void readMapWithBooleanAndNull() throws Exception {
+        CborReader reader = new CborReader(Hex.decodeHexOrFail("a3627570f56475736572f6627576f4"));
+
+        assertEquals(MajorType.MAP, reader.peekMajorType());
+        assertEquals(3, reader.readMapHeader());
+        assertEquals("up", reader.readTextString());
+        assertTrue(reader.peekBoolean());
+        assertTrue(reader.readBoolean());
+        assertEquals("user", reader.readTextString());
+        assertTrue(reader.peekNull());
+        reader.readNull();
+        assertEquals("uv", reader.readTextString());
+        assertFalse(reader.readBoolean());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test
+    public void skipValue_nestedItems() throws Exception {
+        DataItem nested = new CborBuilder().addMap()
+                .put(1, "one")
+                .putArray(2).add(new byte[100]).add(-5).add(true).add(1.5).end()
+                .putMap(3).put("x", "y").end()
+                .end().build().get(0);
+        byte[] encoded = CborUtils.writeCborDataToBytes(nested);
+        byte[] withTrailer = new byte[encoded.length + 1];
+        System.arraycopy(encoded, 0, withTrailer, 0, encoded.length);
+        withTrailer[encoded.length] = 0x07;
+
+        CborReader reader = new CborReader(withTrailer);
+        reader.skipValue();
+
+        assertEquals(encoded.length, reader.position());
+        assertEquals(7, reader.readInt());
+    }
+
+    @Test
+    public void readEncodedItem_keepsOriginalEncoding() throws Exception {
+        // map keys are not in canonical order, and 0x1801 is a non-minimal encoding of 1
+        byte[] encoded = Hex.decodeHexOrFail("82a26474797065617862696418014101");
+        CborReader reader = new CborReader(encoded);
+        assertEquals(2, reader.readArrayHeader());
+
+        byte[] encodedItem = reader.readEncodedItem();
+
+        assertEquals("a2647479706561786269641801", Hex.encodeHexString(encodedItem));
+        assertArrayEquals(new byte[] { 1 }, reader.readByteString());
+    }
+
+    @Test
+    public void wrap_respectsBufferPosition() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(Hex.decodeHexOrFail("ff0518ff"));
+        buffer.position(1);
+
+        CborReader reader = CborReader.wrap(buffer);
+
+        assertEquals(5, reader.readInt());
+        assertEquals(255, reader.readInt());
+        assertFalse(reader.hasRemaining());
+    }
+
+    @Test(expected = CborException.class)
+    public void readByteString_truncated() throws Exception {
+        new CborReader(Hex.decodeHexOrFail("43010203"), 0, 3).readByteString();
+    }
+
+    @Test(expected = CborException.class)
+    public void readMapHeader_truncatedLength() throws Exception {
+        new CborReader(Hex.decodeHexOrFail("ba0001")).readMapHeader();
+    }
+
+    @Test(expected = CborException.class)
+    public void skipValue_indefiniteLength() throws Exception {
+        new CborReader(Hex.decodeHexOrFail("9f01ff")).skipValue();
+    }
+
+    @Test(expected = CborException.class)
+    public void skipValue_bogusArraySize() throws Exception {
+        new CborReader(Hex.decodeHexOrFail("9bffffffffffffffff")).skipValue();
+    }
+
+    @Test(expected = CborException.class)
+    public void readTextString_wrongType() throws Exception {
+        new CborReader(Hex.decodeHexOrFail("4161")).readTextString();
+    }
+}
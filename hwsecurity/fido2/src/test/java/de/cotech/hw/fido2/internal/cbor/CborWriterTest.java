@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.cbor;
+
+
+import de.cotech.hw.fido2.internal.cbor_java.CborBuilder;
+import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
+import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
+import de.cotech.hw.fido2.internal.cbor_java.model.NegativeInteger;
+import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
+import de.cotech.hw.fido2.internal.cbor_java.model.UnsignedInteger;
+import de.cotech.hw.util.Hex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+@SuppressWarnings("WeakerAccess")
+public class CborWriterTest {
+    static final long[] INTEGERS = {
+            0, 1, 23, 24, 255, 256, 65535, 65536, 0xffffffffL, 0x100000000L, Long.MAX_VALUE,
+            -1, -24, -25, -256, -257, -65536, -65537, Long.MIN_VALUE
+    };
+    static final String[] STRINGS = {
+            "", "rk", "webauthn.hwsecurity.dev", "Jörg", "€", "🔑", "broken\ud83d", repeat('a', 300),
+            repeat('ä', 40000)
+    };
+
+    @Test
+    public void writeInteger() throws Exception {
+        for (long value : INTEGERS) {
+            DataItem expected = value >= 0 ? new UnsignedInteger(value) : new NegativeInteger(value);
+            assertArrayEquals(Long.toString(value), CborUtils.writeCborDataToBytes(expected),
+                    new CborWriter().writeInteger(value).toByteArray());
+        }
+    }
+
+    @Test
+    public void writeTextString() throws Exception {
+        for (String value : STRINGS) {
+            assertArrayEquals(CborUtils.writeCborDataToBytes(new UnicodeString(value)),
+                    new CborWriter().writeTextString(value).toByteArray());
+        }
+    }
+
+    @Test
+    public void writeByteString() throws Exception {
+        for (int length : new int[] { 0, 23, 24, 255, 256, 70000 }) {
+            byte[] value = new byte[length];
+            assertArrayEquals(CborUtils.writeCborDataToBytes(new ByteString(value)),
+                    new CborWriter().writeByteString(value).toByteArray());
+        }
+    }
+
+    @Test
+    public void writeNull() {
+        assertEquals("f6f6", Hex.encodeHexString(
+                new CborWriter().writeTextString(null).writeByteString(null).toByteArray()));
+    }
+
+    @Test
+    public void writeEncodedItem() {
+        byte[] coseKey = Hex.decodeHexOrFail("a301020338182001");
+        assertEquals("a103a301020338182001", Hex.encodeHexString(
+                new CborWriter().writeMapHeader(1).writeInteger(3).writeEncodedItem(coseKey).toByteArray()));
+    }
+
+    @Test
+    public void writeNestedStructure() throws Exception {
+        byte[] expected = CborUtils.writeCborDataToBytes(new CborBuilder()
+                .addMap()
+                    .put(1, true)
+                    .putArray(2)
+                        .add("usb")
+                        .add(new byte[] { 1, 2, 3 })
+                        .end()
+                    .put(3, -7)
+                    .end()
+                .build());
+
+        CborWriter writer = new CborWriter(1);
+        writer.writeMapHeader(3)
+                .writeInteger(1).writeBoolean(true)
+                .writeInteger(2).writeArrayHeader(2)
+                    .writeTextString("usb")
+                    .writeByteString(new byte[] { 1, 2, 3 })
+                .writeInteger(3).writeInteger(-7);
+
+        assertArrayEquals(expected, writer.toByteArray());
+    }
+
+    @Test
+    public void reset_reusesWriter() {
+        CborWriter writer = new CborWriter();
+        writer.writeRawByte(0x02).writeTextString("first");
+        writer.reset();
+        writer.writeRawByte(0x04);
+
+        assertEquals("04", Hex.encodeHexString(writer.toByteArray()));
+    }
+
+    static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
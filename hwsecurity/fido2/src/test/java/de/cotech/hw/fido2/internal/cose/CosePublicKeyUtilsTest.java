@@ -1,10 +1,16 @@
 package de.cotech.hw.fido2.internal.cose;
 
 
+import de.cotech.hw.fido2.internal.cbor.CborWriter;
 import de.cotech.hw.util.Hex;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 
 public class CosePublicKeyUtilsTest {
@@ -25,4 +31,73 @@ public class CosePublicKeyUtilsTest {
         byte[] x9EncodedKey = CosePublicKeyUtils.encodeCosePublicKeyAsX962(PUBLIC_KEY_COSE);
         assertArrayEquals(PUBLIC_KEY_X9_62, x9EncodedKey);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void encodex9PublicKeyAsCose_toBuffer() throws Exception {
+        byte[] buffer = new byte[80];
+        Arrays.fill(buffer, (byte) 0xff);
+
+        CosePublicKeyUtils.encodex962PublicKeyAsCose(PUBLIC_KEY_X9_62, buffer, 2);
+
+        assertArrayEquals(PUBLIC_KEY_COSE, Arrays.copyOfRange(buffer, 2, 79));
+        assertEquals((byte) 0xff, buffer[79]);
+    }
+
+    @Test
+    public void encodeCosePublicKeyAsX9_fromBuffer() throws Exception {
+        byte[] input = new byte[PUBLIC_KEY_COSE.length + 4];
+        System.arraycopy(PUBLIC_KEY_COSE, 0, input, 2, PUBLIC_KEY_COSE.length);
+        byte[] output = new byte[67];
+
+        CosePublicKeyUtils.encodeCosePublicKeyAsX962(input, 2, PUBLIC_KEY_COSE.length, output, 1);
+
+        assertArrayEquals(PUBLIC_KEY_X9_62, Arrays.copyOfRange(output, 1, 66));
+    }
+
+    @Test
+    public void encodeCosePublicKeyAsX9_keyAgreement() throws Exception {
+        // authenticator key agreement keys use alg ECDH-ES+HKDF-256, and may be in any key order
+        byte[] coseKey = new CborWriter()
+                .writeMapHeader(6)
+                .writeInteger(-3).writeByteString(Arrays.copyOfRange(PUBLIC_KEY_X9_62, 33, 65))
+                .writeInteger(-2).writeByteString(Arrays.copyOfRange(PUBLIC_KEY_X9_62, 1, 33))
+                .writeTextString("ignored").writeInteger(0)
+                .writeInteger(3).writeInteger(-25)
+                .writeInteger(-1).writeInteger(1)
+                .writeInteger(1).writeInteger(2)
+                .toByteArray();
+
+        byte[] x9EncodedKey = CosePublicKeyUtils.encodeCosePublicKeyAsX962(coseKey);
+
+        assertArrayEquals(PUBLIC_KEY_X9_62, x9EncodedKey);
+    }
+
+    @Test
+    public void encodeCosePublicKeyAsX9_invalid() throws Exception {
+        assertInvalidCoseKey(Arrays.copyOf(PUBLIC_KEY_COSE, PUBLIC_KEY_COSE.length - 1), "Error parsing CBOR");
+        assertInvalidCoseKey(Arrays.copyOf(PUBLIC_KEY_COSE, PUBLIC_KEY_COSE.length + 1), "trailing CBOR data");
+        assertInvalidCoseKey(Hex.decodeHexOrFail("80"), "Expected map");
+        assertInvalidCoseKey(replaceByte(4, 0x27), "Unexpected alg value");
+        assertInvalidCoseKey(replaceByte(2, 0x03), "Unexpected kty value");
+        assertInvalidCoseKey(replaceByte(6, 0x02), "Unexpected crv value");
+        assertInvalidCoseKey(replaceByte(8, 0x78), "Expected X CBOR field to be a ByteString");
+        assertInvalidCoseKey(Arrays.copyOf(replaceByte(0, 0xa4), 42), "Missing CBOR field Y");
+    }
+
+    private static byte[] replaceByte(int index, int value) {
+        byte[] result = PUBLIC_KEY_COSE.clone();
+        result[index] = (byte) value;
+        return result;
+    }
+
+    private static void assertInvalidCoseKey(byte[] coseKey, String message) {
+        try {
+            CosePublicKeyUtils.encodeCosePublicKeyAsX962(coseKey);
+            fail();
+        } catch (IOException e) {
+            if (!e.getMessage().contains(message)) {
+                throw new AssertionError("Expected '" + message + "', got '" + e.getMessage() + "'");
+            }
+        }
+    }
+}
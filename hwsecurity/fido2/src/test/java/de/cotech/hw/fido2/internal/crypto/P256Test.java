@@ -23,12 +23,14 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.ECPoint;
 import java.util.Arrays;
+import java.util.Random;
 
 import de.cotech.hw.util.Hex;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -173,4 +175,106 @@ public class P256Test {
             assertTrue(expected.getMessage().contains("privateKey is the wrong size"));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSerializedPointOnCurve() throws GeneralSecurityException {
+        byte[] valid = Hex.decodeHexOrFail("00"
+                + "2442A5CC0ECD015FA3CA31DC8E2BBC70BF42D60CBCA20085E0822CB04235E970"
+                + "6FC98BD7E50211A4A27102FA3549DF79EBCB4BF246B80945CDDFE7D509BBFD7D");
+        assertTrue(P256.isPointOnCurve(valid, 1));
+
+        byte[] invalid = valid.clone();
+        invalid[32] ^= 1;
+        assertFalse(P256.isPointOnCurve(invalid, 1));
+
+        // (x + p, y) is congruent to a point on the curve, but not reduced
+        byte[] largeX = valid.clone();
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(valid, 1, 33));
+        writeCoordinate(x.add(P256.FIELD.getP()).mod(BigInteger.ONE.shiftLeft(256)), largeX, 1);
+        assertFalse(P256.isPointOnCurve(largeX, 1));
+
+        try {
+            P256.isPointOnCurve(valid, 2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("too short"));
+        }
+    }
+
+    @Test
+    public void testSerializedPointOnCurve_matchesBigInteger() throws GeneralSecurityException {
+        Random random = new Random(0x9256);
+        BigInteger p = P256.FIELD.getP();
+        byte[] point = new byte[64];
+        for (int i = 0; i < 50; i++) {
+            byte[] serialized = P256.serializePublicKey(P256.newKeyPair().getPublic());
+            assertTrue(P256.isPointOnCurve(serialized, 1));
+        }
+        for (int i = 0; i < 500; i++) {
+            random.nextBytes(point);
+            if (i % 2 == 0) {
+                // values close to p exercise the final reduction
+                writeCoordinate(p.subtract(BigInteger.valueOf(random.nextInt(4) + 1)), point, 0);
+            }
+            BigInteger x = new BigInteger(1, Arrays.copyOfRange(point, 0, 32));
+            BigInteger y = new BigInteger(1, Arrays.copyOfRange(point, 32, 64));
+            boolean expected = x.compareTo(p) < 0 && y.compareTo(p) < 0
+                    && P256.isPointOnCurve(new ECPoint(x, y));
+            assertEquals(expected, P256.isPointOnCurve(point, 0));
+        }
+    }
+
+    @Test
+    public void testFieldArithmetic_matchesBigInteger() {
+        Random random = new Random(0x256);
+        BigInteger p = P256.FIELD.getP();
+        P256Field field = new P256Field();
+        int[] a = new int[8];
+        int[] b = new int[8];
+        int[] out = new int[8];
+        byte[] bytes = new byte[32];
+        for (int i = 0; i < 1000; i++) {
+            BigInteger valueA = i < 4 ? p.subtract(BigInteger.ONE) : new BigInteger(256, random).mod(p);
+            BigInteger valueB = i < 2 ? p.subtract(BigInteger.ONE) : new BigInteger(256, random).mod(p);
+            writeCoordinate(valueA, bytes, 0);
+            P256Field.decode(bytes, 0, a);
+            writeCoordinate(valueB, bytes, 0);
+            P256Field.decode(bytes, 0, b);
+
+            field.mul(a, b, out);
+            assertEquals(valueA.multiply(valueB).mod(p), toBigInteger(out));
+            P256Field.add(a, b, out);
+            assertEquals(valueA.add(valueB).mod(p), toBigInteger(out));
+            P256Field.sub(a, b, out);
+            assertEquals(valueA.subtract(valueB).mod(p), toBigInteger(out));
+        }
+    }
+
+    @Test
+    public void testSerializePublicKey_toBuffer() throws GeneralSecurityException {
+        PublicKey key = P256.newKeyPair().getPublic();
+        byte[] buffer = new byte[70];
+        Arrays.fill(buffer, (byte) 0xff);
+
+        P256.serializePublicKey(key, buffer, 3);
+
+        assertArrayEquals(P256.serializePublicKey(key), Arrays.copyOfRange(buffer, 3, 68));
+        assertEquals((byte) 0xff, buffer[2]);
+        assertEquals((byte) 0xff, buffer[68]);
+    }
+
+    private static void writeCoordinate(BigInteger value, byte[] output, int offset) {
+        byte[] bytes = value.toByteArray();
+        Arrays.fill(output, offset, offset + 32, (byte) 0);
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, output, offset + 32 - length, length);
+    }
+
+    private static BigInteger toBigInteger(int[] limbs) {
+        BigInteger result = BigInteger.ZERO;
+        for (int i = limbs.length - 1; i >= 0; i--) {
+            result = result.shiftLeft(32).or(BigInteger.valueOf(limbs[i] & 0xffffffffL));
+        }
+        return result;
+    }
+}
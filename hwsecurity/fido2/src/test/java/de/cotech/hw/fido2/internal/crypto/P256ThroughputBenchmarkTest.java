@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.crypto;
+
+
+import java.math.BigInteger;
+import java.security.spec.ECPoint;
+import java.util.Arrays;
+import java.util.List;
+
+import de.cotech.hw.fido2.internal.cbor.CborUtils;
+import de.cotech.hw.fido2.internal.cbor_java.CborBuilder;
+import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
+import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
+import de.cotech.hw.fido2.internal.cbor_java.model.DataItem;
+import de.cotech.hw.fido2.internal.cbor_java.model.Map;
+import de.cotech.hw.fido2.internal.cose.CoseIdentifiers;
+import de.cotech.hw.fido2.internal.cose.CoseIdentifiers.CoseAlg;
+import de.cotech.hw.fido2.internal.cose.CosePublicKeyUtils;
+import de.cotech.hw.internal.benchmark.ThroughputBenchmark;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Throughput of P-256 point validation and COSE key conversion, as done for every ClientPIN key agreement, see
+ * {@link ThroughputBenchmark}. Each operation is measured with BigInteger and cbor_java, and with {@link P256Field}
+ * and the buffer-based {@link CosePublicKeyUtils} methods.
+ */
+public class P256ThroughputBenchmarkTest {
+    @Before
+    public void setup() {
+        assumeTrue(ThroughputBenchmark.isEnabled());
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        ThroughputBenchmark benchmark = ThroughputBenchmark.create("fido2-p256", 20000, 5000);
+
+        byte[] x962PublicKey = P256.serializePublicKey(P256.newKeyPair().getPublic());
+        benchmark.measure("pointValidation.bigInteger", () -> isPointOnCurveBigInteger(x962PublicKey));
+        benchmark.measure("pointValidation.field", () -> P256.isPointOnCurve(x962PublicKey, 1));
+
+        byte[] coseBuffer = new byte[CosePublicKeyUtils.COSE_PUBLIC_KEY_LENGTH];
+        benchmark.measure("cose.encode.cborJava", () -> encodeCoseCborJava(x962PublicKey));
+        benchmark.measure("cose.encode.buffer",
+                () -> CosePublicKeyUtils.encodex962PublicKeyAsCose(x962PublicKey, coseBuffer, 0));
+
+        byte[] cosePublicKey = CosePublicKeyUtils.encodex962PublicKeyAsCose(x962PublicKey);
+        byte[] x962Buffer = new byte[CosePublicKeyUtils.X962_PUBLIC_KEY_LENGTH];
+        benchmark.measure("cose.decode.cborJava", () -> decodeCoseCborJava(cosePublicKey));
+        benchmark.measure("cose.decode.buffer", () -> CosePublicKeyUtils.encodeCosePublicKeyAsX962(
+                cosePublicKey, 0, cosePublicKey.length, x962Buffer, 0));
+
+        benchmark.writeReport();
+    }
+
+    static boolean isPointOnCurveBigInteger(byte[] x962PublicKey) throws Exception {
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(x962PublicKey, 1, 33));
+        BigInteger y = new BigInteger(1, Arrays.copyOfRange(x962PublicKey, 33, 65));
+        return P256.isPointOnCurve(new ECPoint(x, y));
+    }
+
+    static byte[] encodeCoseCborJava(byte[] x962PublicKey) throws Exception {
+        List<DataItem> coseKeyCbor = new CborBuilder()
+                .addMap()
+                    .put(CoseIdentifiers.KTY, CoseIdentifiers.KTY_EC2)
+                    .put(CoseIdentifiers.ALG, CoseAlg.ES256.cborLabel)
+                    .put(CoseIdentifiers.CRV, CoseIdentifiers.CRV_P256)
+                    .put(CoseIdentifiers.X, new ByteString(Arrays.copyOfRange(x962PublicKey, 1, 33)))
+                    .put(CoseIdentifiers.Y, new ByteString(Arrays.copyOfRange(x962PublicKey, 33, 65)))
+                .end()
+                .build();
+        return CborUtils.writeCborDataToBytes(coseKeyCbor);
+    }
+
+    static byte[] decodeCoseCborJava(byte[] cosePublicKey) throws Exception {
+        Map map = (Map) CborDecoder.decode(cosePublicKey).get(0);
+        byte[] result = new byte[65];
+        result[0] = 0x04;
+        System.arraycopy(((ByteString) map.get(CoseIdentifiers.X)).getBytes(), 0, result, 1, 32);
+        System.arraycopy(((ByteString) map.get(CoseIdentifiers.Y)).getBytes(), 0, result, 33, 32);
+        return result;
+    }
+}
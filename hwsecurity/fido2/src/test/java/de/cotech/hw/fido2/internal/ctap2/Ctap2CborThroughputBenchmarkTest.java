@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.ctap2;
+
+
+import java.util.List;
+
+import de.cotech.hw.fido2.domain.AuthenticatorTransport;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.internal.cbor.CborReader;
+import de.cotech.hw.fido2.internal.cbor.CborUtils;
+import de.cotech.hw.fido2.internal.cbor.CborWriter;
+import de.cotech.hw.fido2.internal.cbor_java.CborDecoder;
+import de.cotech.hw.fido2.internal.cbor_java.model.Array;
+import de.cotech.hw.fido2.internal.cbor_java.model.ByteString;
+import de.cotech.hw.fido2.internal.cbor_java.model.Map;
+import de.cotech.hw.fido2.internal.cbor_java.model.UnicodeString;
+import de.cotech.hw.fido2.internal.cbor_java.model.UnsignedInteger;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion;
+import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorGetInfo;
+import de.cotech.hw.internal.benchmark.ThroughputBenchmark;
+import de.cotech.hw.util.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import static de.cotech.hw.fido2.internal.ctap2.Ctap2CommandApduTransformerTest.CLIENT_DATA_HASH;
+import static de.cotech.hw.fido2.internal.ctap2.Ctap2CommandApduTransformerTest.CLIENT_DATA_JSON;
+import static de.cotech.hw.fido2.internal.ctap2.Ctap2CommandApduTransformerTest.createDescriptors;
+import static de.cotech.hw.fido2.internal.ctap2.Ctap2ResponseFactoryTest.GET_INFO_RESPONSE;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Throughput of CBOR encoding and decoding for typical CTAP2 payloads, see {@link ThroughputBenchmark}. Each
+ * payload is measured with the cbor_java codec, and with the streaming {@link CborReader} and {@link CborWriter},
+ * so both can be compared in a single report.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Ctap2CborThroughputBenchmarkTest {
+    static final int[] ALLOW_LIST_SIZES = { 1, 16, 64 };
+
+    @Before
+    public void setup() {
+        assumeTrue(ThroughputBenchmark.isEnabled());
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        ThroughputBenchmark benchmark = ThroughputBenchmark.create("fido2-cbor", 20000, 5000);
+
+        byte[] getInfoResponse = Hex.decodeHexOrFail(GET_INFO_RESPONSE);
+        benchmark.measure("getInfoResponse.decode.cborJava", () -> CborDecoder.decode(getInfoResponse));
+        benchmark.measure("getInfoResponse.decode.reader",
+                () -> AuthenticatorGetInfo.create().getResponseFactory().createResponse(getInfoResponse));
+
+        byte[] attestationObject = createAttestationObject();
+        benchmark.measure("attestationObject.decode.cborJava", () -> CborDecoder.decode(attestationObject));
+        benchmark.measure("attestationObject.decode.reader", () -> readAttestationObject(attestationObject));
+
+        Ctap2CborSerializer serializer = new Ctap2CborSerializer();
+        for (int allowListSize : ALLOW_LIST_SIZES) {
+            AuthenticatorGetAssertion command = AuthenticatorGetAssertion.create("webauthn.hwsecurity.dev",
+                    CLIENT_DATA_HASH, CLIENT_DATA_JSON, createDescriptors(allowListSize), null);
+            byte[] encoded = serializer.toCommandBytes(command);
+            byte[] parameters = new byte[encoded.length - 1];
+            System.arraycopy(encoded, 1, parameters, 0, parameters.length);
+
+            String prefix = "getAssertion.allowList" + allowListSize;
+            benchmark.measure(prefix + ".encode.cborJava",
+                    () -> CborUtils.writeCborDataToBytes(toCborJavaMap(command)));
+            benchmark.measure(prefix + ".encode.writer", () -> serializer.toCommandBytes(command));
+            benchmark.measure(prefix + ".decode.cborJava", () -> CborDecoder.decode(parameters));
+            benchmark.measure(prefix + ".decode.reader", () -> new CborReader(parameters).skipValue());
+        }
+
+        benchmark.writeReport();
+    }
+
+    /**
+     * A packed attestation object with a certificate chain, as returned by makeCredential.
+     */
+    static byte[] createAttestationObject() {
+        return new CborWriter()
+                .writeMapHeader(3)
+                .writeTextString("fmt").writeTextString("packed")
+                .writeTextString("attStmt").writeMapHeader(3)
+                .writeTextString("alg").writeInteger(-7)
+                .writeTextString("sig").writeByteString(new byte[71])
+                .writeTextString("x5c").writeArrayHeader(1).writeByteString(new byte[704])
+                .writeTextString("authData").writeByteString(new byte[196])
+                .toByteArray();
+    }
+
+    static void readAttestationObject(byte[] attestationObject) throws Exception {
+        CborReader reader = new CborReader(attestationObject);
+        for (int i = reader.readMapHeader(); i > 0; i--) {
+            switch (reader.readTextString()) {
+                case "fmt":
+                    reader.readTextString();
+                    break;
+                case "attStmt":
+                    reader.readEncodedItem();
+                    break;
+                case "authData":
+                    reader.readByteString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+    }
+
+    /**
+     * Builds the getAssertion parameters as a tree of cbor_java data items, the way they were encoded before
+     * {@link CborWriter} was introduced.
+     */
+    static Map toCborJavaMap(AuthenticatorGetAssertion command) {
+        Array allowList = new Array();
+        for (PublicKeyCredentialDescriptor descriptor : command.allowList()) {
+            Map descriptorMap = new Map()
+                    .put(new UnicodeString("id"), new ByteString(descriptor.id()))
+                    .put(new UnicodeString("type"), new UnicodeString(descriptor.type().type));
+            List<AuthenticatorTransport> transports = descriptor.transports();
+            if (transports != null) {
+                Array transportArray = new Array();
+                for (AuthenticatorTransport transport : transports) {
+                    transportArray.add(new UnicodeString(transport.transport));
+                }
+                descriptorMap.put(new UnicodeString("transports"), transportArray);
+            }
+            allowList.add(descriptorMap);
+        }
+        return new Map()
+                .put(new UnsignedInteger(1), new UnicodeString(command.rpId()))
+                .put(new UnsignedInteger(2), new ByteString(command.clientDataHash()))
+                .put(new UnsignedInteger(3), allowList);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.ctap2;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.cotech.hw.fido2.domain.AuthenticatorTransport;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialParameters;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialRpEntity;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialType;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialUserEntity;
+import de.cotech.hw.fido2.internal.ctap2.commands.clientPin.AuthenticatorClientPin;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion;
+import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorGetInfo;
+import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorOptions;
+import de.cotech.hw.fido2.internal.ctap2.commands.makeCredential.AuthenticatorMakeCredential;
+import de.cotech.hw.fido2.internal.ctap2.commands.makeCredential.AuthenticatorMakeCredential.AuthenticatorMakeCredentialOptions;
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.util.Hex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+@SuppressWarnings("WeakerAccess")
+public class Ctap2CommandApduTransformerTest {
+    static final byte[] CLIENT_DATA_HASH = Hex.decodeHexOrFail(
+            "687134968222ec17202e42505f8ed2b16ae22f16bb05b88c25db9e602645f141");
+    static final String CLIENT_DATA_JSON = "{}";
+    static final byte[] USER_ID = Hex.decodeHexOrFail("3082019330820138a0030201023082019330820138a003020102");
+    static final byte[] PIN_AUTH = Hex.decodeHexOrFail("6a2c7bde5ab0b4f9a3e6bb5e0e5e9a10");
+    static final byte[] KEY_AGREEMENT = Hex.decodeHexOrFail(
+            "a501020338182001215820e87625896ee4e46dc032766e8087962f36df9dfe8b567f3763015b1990a60e14"
+                    + "22582027de612d66418bda1950581ebc5c8c1dad710cb14c22f8c97045f4612fb20c91");
+    static final byte[] PIN_HASH_ENC = Hex.decodeHexOrFail("afe8327ce416da8ee3d057589c2ce1a9");
+
+    Ctap2CommandApduTransformer transformer = new Ctap2CommandApduTransformer();
+
+    @Test
+    public void makeCredential() {
+        AuthenticatorMakeCredential command = AuthenticatorMakeCredential.create(CLIENT_DATA_HASH, CLIENT_DATA_JSON,
+                PublicKeyCredentialRpEntity.create("webauthn.hwsecurity.dev", "Acme", null),
+                PublicKeyCredentialUserEntity.create(USER_ID, "johnpsmith@example.com", "John P. Smith",
+                        "https://pics.example.com/00/p/aBjjjpqPb.png"),
+                PublicKeyCredentialParameters.createDefaultEs256List());
+
+        assertTransformsTo(
+                "01a4015820687134968222ec17202e42505f8ed2b16ae22f16bb05b88c25db9e602645f14102a2626964777765626175"
+                + "74686e2e687773656375726974792e646576646e616d656441636d6503a4626964581a3082019330820138a003020102"
+                + "3082019330820138a0030201026469636f6e782b68747470733a2f2f706963732e6578616d706c652e636f6d2f30302f"
+                + "702f61426a6a6a707150622e706e67646e616d65766a6f686e70736d697468406578616d706c652e636f6d6b64697370"
+                + "6c61794e616d656d4a6f686e20502e20536d6974680481a263616c672664747970656a7075626c69632d6b6579",
+                command);
+    }
+
+    @Test
+    public void makeCredential_withAllParameters() {
+        AuthenticatorMakeCredential command = AuthenticatorMakeCredential.create(CLIENT_DATA_HASH, CLIENT_DATA_JSON,
+                PublicKeyCredentialRpEntity.create("webauthn.hwsecurity.dev", "Acme", "https://acme.example/icon.png"),
+                PublicKeyCredentialUserEntity.create(USER_ID, null, null, null),
+                PublicKeyCredentialParameters.createDefaultEs256List(),
+                createDescriptors(2),
+                AuthenticatorMakeCredentialOptions.create(true, null),
+                PIN_AUTH, 1);
+
+        assertTransformsTo(
+                "01a8015820687134968222ec17202e42505f8ed2b16ae22f16bb05b88c25db9e602645f14102a3626964777765626175"
+                + "74686e2e687773656375726974792e6465766469636f6e781d68747470733a2f2f61636d652e6578616d706c652f6963"
+                + "6f6e2e706e67646e616d656441636d6503a2626964581a3082019330820138a0030201023082019330820138a0030201"
+                + "02646e616d65f60481a263616c672664747970656a7075626c69632d6b65790582a36269645840000000000000000000"
+                + "000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000"
+                + "0000000000000064747970656a7075626c69632d6b65796a7472616e73706f7274738263757362636e6663a262696458"
+                + "400101010101010101010101010101010101010101010101010101010101010101010101010101010101010101010101"
+                + "010101010101010101010101010101010164747970656a7075626c69632d6b657907a162726bf508506a2c7bde5ab0b4"
+                + "f9a3e6bb5e0e5e9a100901", command);
+    }
+
+    @Test
+    public void getAssertion() {
+        AuthenticatorGetAssertion command = AuthenticatorGetAssertion.create("webauthn.hwsecurity.dev",
+                CLIENT_DATA_HASH, CLIENT_DATA_JSON, null, null);
+
+        assertTransformsTo(
+                "02a20177776562617574686e2e687773656375726974792e646576025820687134968222ec17202e42505f8ed2b16ae2"
+                + "2f16bb05b88c25db9e602645f141", command);
+    }
+
+    @Test
+    public void getAssertion_silent() {
+        AuthenticatorGetAssertion command = AuthenticatorGetAssertion.create("webauthn.hwsecurity.dev",
+                CLIENT_DATA_HASH, CLIENT_DATA_JSON, null, AuthenticatorOptions.create(null, null, null, false, null));
+
+        assertTransformsTo(
+                "02a30177776562617574686e2e687773656375726974792e646576025820687134968222ec17202e42505f8ed2b16ae2"
+                + "2f16bb05b88c25db9e602645f14105a1627570f4", command);
+    }
+
+    @Test
+    public void getAssertion_withAllowList() {
+        AuthenticatorGetAssertion command = AuthenticatorGetAssertion.create("webauthn.hwsecurity.dev",
+                CLIENT_DATA_HASH, CLIENT_DATA_JSON, createDescriptors(3), null, PIN_AUTH, 1);
+
+        assertTransformsTo(
+                "02a50177776562617574686e2e687773656375726974792e646576025820687134968222ec17202e42505f8ed2b16ae2"
+                + "2f16bb05b88c25db9e602645f1410383a362696458400000000000000000000000000000000000000000000000000000"
+                + "000000000000000000000000000000000000000000000000000000000000000000000000000064747970656a7075626c"
+                + "69632d6b65796a7472616e73706f7274738263757362636e6663a2626964584001010101010101010101010101010101"
+                + "010101010101010101010101010101010101010101010101010101010101010101010101010101010101010101010101"
+                + "64747970656a7075626c69632d6b6579a362696458400202020202020202020202020202020202020202020202020202"
+                + "020202020202020202020202020202020202020202020202020202020202020202020202020264747970656a7075626c"
+                + "69632d6b65796a7472616e73706f7274738263757362636e666306506a2c7bde5ab0b4f9a3e6bb5e0e5e9a100701",
+                command);
+    }
+
+    @Test
+    public void clientPin_getRetries() {
+        assertTransformsTo("06a201010201", AuthenticatorClientPin.createGetRetries());
+    }
+
+    @Test
+    public void clientPin_getPinToken() {
+        assertTransformsTo(
+                "06a40101020503a501020338182001215820e87625896ee4e46dc032766e8087962f36df9dfe8b567f3763015b1990a6"
+                + "0e1422582027de612d66418bda1950581ebc5c8c1dad710cb14c22f8c97045f4612fb20c910650afe8327ce416da8ee3"
+                + "d057589c2ce1a9", AuthenticatorClientPin.createGetPinToken(KEY_AGREEMENT, PIN_HASH_ENC));
+    }
+
+    @Test
+    public void getInfo() {
+        assertTransformsTo("04", AuthenticatorGetInfo.create());
+    }
+
+    void assertTransformsTo(String expectedHex, Ctap2Command<?> command) {
+        CommandApdu commandApdu = transformer.toCommandApdu(command);
+
+        assertEquals(0x80, commandApdu.getCLA());
+        assertEquals(0x10, commandApdu.getINS());
+        assertEquals(expectedHex, Hex.encodeHexString(commandApdu.getData()));
+    }
+
+    static List<PublicKeyCredentialDescriptor> createDescriptors(int count) {
+        List<PublicKeyCredentialDescriptor> descriptors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] credentialId = new byte[64];
+            Arrays.fill(credentialId, (byte) i);
+            List<AuthenticatorTransport> transports = (i % 2 == 0) ?
+                    Arrays.asList(AuthenticatorTransport.USB, AuthenticatorTransport.NFC) : null;
+            descriptors.add(PublicKeyCredentialDescriptor.create(
+                    PublicKeyCredentialType.PUBLIC_KEY, credentialId, transports));
+        }
+        return Collections.unmodifiableList(descriptors);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.ctap2;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.cotech.hw.fido2.domain.PublicKeyCredentialRpEntity;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialUserEntity;
+import de.cotech.hw.fido2.internal.cbor.CborWriter;
+import de.cotech.hw.fido2.internal.ctap2.commands.clientPin.AuthenticatorClientPin;
+import de.cotech.hw.fido2.internal.ctap2.commands.clientPin.AuthenticatorClientPinResponse;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertionResponse;
+import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorGetInfo;
+import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorGetInfoResponse;
+import de.cotech.hw.fido2.internal.ctap2.commands.makeCredential.AuthenticatorMakeCredential;
+import de.cotech.hw.fido2.internal.ctap2.commands.makeCredential.AuthenticatorMakeCredentialResponse;
+import de.cotech.hw.util.Hex;
+import org.junit.Test;
+
+import static de.cotech.hw.fido2.internal.ctap2.Ctap2CommandApduTransformerTest.CLIENT_DATA_HASH;
+import static de.cotech.hw.fido2.internal.ctap2.Ctap2CommandApduTransformerTest.CLIENT_DATA_JSON;
+import static de.cotech.hw.fido2.internal.ctap2.Ctap2CommandApduTransformerTest.KEY_AGREEMENT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+@SuppressWarnings("WeakerAccess")
+public class Ctap2ResponseFactoryTest {
+    // example response from the CTAP2 specification, section 5.4
+    static final String GET_INFO_RESPONSE =
+            "a60182665532465f5632684649444f5f325f3002816b686d61632d7365637265740350f8a011f38c0a4d15800617111f9edc7d"
+            + "04a462726bf5627570f564706c6174f469636c69656e7450696ef4051904b0068101";
+    static final byte[] AUTH_DATA = Hex.decodeHexOrFail(
+            "bad5d2a4a48a22ca5d7a62b54a8f7c9f9a7e3c3b1a4bb6d5c1f3d4e1b6d5c2a10100000009");
+    static final byte[] SIGNATURE = Hex.decodeHexOrFail("304402201a2b3c4d5e6f");
+    static final byte[] USER_ID = Hex.decodeHexOrFail("0102030405");
+
+    @Test
+    public void getInfo() throws Exception {
+        AuthenticatorGetInfoResponse response = AuthenticatorGetInfo.create().getResponseFactory()
+                .createResponse(Hex.decodeHexOrFail(GET_INFO_RESPONSE));
+
+        assertEquals(Arrays.asList("U2F_V2", "FIDO_2_0"), response.versions());
+        assertEquals(Arrays.asList("hmac-secret"), response.extensions());
+        assertEquals("f8a011f38c0a4d15800617111f9edc7d", Hex.encodeHexString(response.aaguid()));
+        assertTrue(response.options().rk());
+        assertTrue(response.options().up());
+        assertFalse(response.options().plat());
+        assertEquals(Boolean.FALSE, response.options().clientPin());
+        assertEquals(1200, response.maxMsgSize());
+        assertEquals(Arrays.asList(1), response.pinProtocols());
+    }
+
+    @Test
+    public void getInfo_ignoresUnknownEntries() throws Exception {
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(5)
+                .writeInteger(1).writeArrayHeader(1).writeTextString("FIDO_2_0")
+                .writeInteger(3).writeByteString(new byte[16])
+                .writeInteger(4).writeMapHeader(2)
+                .writeTextString("rk").writeBoolean(true)
+                .writeTextString("newOption").writeInteger(3)
+                .writeInteger(5).writeInteger(2048)
+                .writeInteger(9).writeArrayHeader(2).writeTextString("usb").writeTextString("nfc")
+                .toByteArray();
+
+        AuthenticatorGetInfoResponse response =
+                AuthenticatorGetInfo.create().getResponseFactory().createResponse(responseBytes);
+
+        assertEquals(Arrays.asList("FIDO_2_0"), response.versions());
+        assertTrue(response.options().rk());
+        assertEquals(2048, response.maxMsgSize());
+        assertNull(response.pinProtocols());
+    }
+
+    @Test
+    public void getInfo_credentialListLimits() throws Exception {
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(4)
+                .writeInteger(1).writeArrayHeader(1).writeTextString("FIDO_2_0")
+                .writeInteger(3).writeByteString(new byte[16])
+                .writeInteger(7).writeInteger(8)
+                .writeInteger(8).writeInteger(128)
+                .toByteArray();
+
+        AuthenticatorGetInfoResponse response =
+                AuthenticatorGetInfo.create().getResponseFactory().createResponse(responseBytes);
+
+        assertEquals(Integer.valueOf(8), response.maxCredentialCountInList());
+        assertEquals(Integer.valueOf(128), response.maxCredentialIdLength());
+    }
+
+    @Test
+    public void getAssertion() throws Exception {
+        byte[] credential = new CborWriter()
+                .writeMapHeader(2)
+                .writeTextString("id").writeByteString(new byte[] { 1, 2, 3 })
+                .writeTextString("type").writeTextString("public-key")
+                .toByteArray();
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(5)
+                .writeInteger(1).writeEncodedItem(credential)
+                .writeInteger(2).writeByteString(AUTH_DATA)
+                .writeInteger(3).writeByteString(SIGNATURE)
+                .writeInteger(4).writeMapHeader(3)
+                .writeTextString("id").writeByteString(USER_ID)
+                .writeTextString("icon").writeTextString("https://example.org/icon.png")
+                .writeTextString("name").writeTextString("jane")
+                .writeInteger(5).writeInteger(2)
+                .toByteArray();
+
+        AuthenticatorGetAssertionResponse response = createGetAssertion().getResponseFactory()
+                .createResponse(responseBytes);
+
+        assertArrayEquals(credential, response.credential());
+        assertArrayEquals(AUTH_DATA, response.authData());
+        assertArrayEquals(SIGNATURE, response.signature());
+        assertArrayEquals(USER_ID, response.user().id());
+        assertEquals("jane", response.user().name());
+        assertEquals("https://example.org/icon.png", response.user().icon());
+        assertNull(response.user().displayName());
+        assertEquals(Integer.valueOf(2), response.numberOfCredentials());
+        assertArrayEquals(CLIENT_DATA_JSON.getBytes(), response.clientDataJSON());
+    }
+
+    @Test
+    public void getAssertion_keepsCredentialEncoding() throws Exception {
+        // non-canonical key order must survive, the credential is passed on as the authenticator encoded it
+        byte[] credential = new CborWriter()
+                .writeMapHeader(2)
+                .writeTextString("type").writeTextString("public-key")
+                .writeTextString("id").writeByteString(new byte[] { 1, 2, 3 })
+                .toByteArray();
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(3)
+                .writeInteger(1).writeEncodedItem(credential)
+                .writeInteger(2).writeByteString(AUTH_DATA)
+                .writeInteger(3).writeByteString(SIGNATURE)
+                .toByteArray();
+
+        AuthenticatorGetAssertionResponse response = createGetAssertion().getResponseFactory()
+                .createResponse(responseBytes);
+
+        assertArrayEquals(credential, response.credential());
+    }
+
+    @Test
+    public void getAssertion_minimal() throws Exception {
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(2)
+                .writeInteger(2).writeByteString(AUTH_DATA)
+                .writeInteger(3).writeByteString(SIGNATURE)
+                .toByteArray();
+
+        AuthenticatorGetAssertionResponse response = createGetAssertion().getResponseFactory()
+                .createResponse(responseBytes);
+
+        assertNull(response.credential());
+        assertNull(response.user());
+        assertNull(response.numberOfCredentials());
+        assertArrayEquals(SIGNATURE, response.signature());
+    }
+
+    @Test(expected = IOException.class)
+    public void getAssertion_userNotAMap() throws Exception {
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(3)
+                .writeInteger(2).writeByteString(AUTH_DATA)
+                .writeInteger(3).writeByteString(SIGNATURE)
+                .writeInteger(4).writeByteString(USER_ID)
+                .toByteArray();
+
+        createGetAssertion().getResponseFactory().createResponse(responseBytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void getAssertion_truncated() throws Exception {
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(2)
+                .writeInteger(2).writeByteString(AUTH_DATA)
+                .writeInteger(3).writeByteString(SIGNATURE)
+                .toByteArray();
+
+        createGetAssertion().getResponseFactory().createResponse(Arrays.copyOf(responseBytes, 20));
+    }
+
+    @Test
+    public void makeCredential() throws Exception {
+        byte[] attStmt = new CborWriter()
+                .writeMapHeader(2)
+                .writeTextString("alg").writeInteger(-7)
+                .writeTextString("sig").writeByteString(SIGNATURE)
+                .toByteArray();
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(3)
+                .writeInteger(1).writeTextString("packed")
+                .writeInteger(2).writeByteString(AUTH_DATA)
+                .writeInteger(3).writeEncodedItem(attStmt)
+                .toByteArray();
+        AuthenticatorMakeCredential command = AuthenticatorMakeCredential.create(CLIENT_DATA_HASH, CLIENT_DATA_JSON,
+                PublicKeyCredentialRpEntity.create("webauthn.hwsecurity.dev", "Acme", null),
+                PublicKeyCredentialUserEntity.create(USER_ID, "jane", null, null));
+
+        AuthenticatorMakeCredentialResponse response = command.getResponseFactory().createResponse(responseBytes);
+
+        assertEquals("packed", response.fmt());
+        assertArrayEquals(AUTH_DATA, response.authData());
+        assertArrayEquals(attStmt, response.attStmt());
+    }
+
+    @Test
+    public void clientPin_keyAgreement() throws Exception {
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(1)
+                .writeInteger(1).writeEncodedItem(KEY_AGREEMENT)
+                .toByteArray();
+
+        AuthenticatorClientPinResponse response =
+                AuthenticatorClientPin.createGetKeyAgreement().getResponseFactory().createResponse(responseBytes);
+
+        assertArrayEquals(KEY_AGREEMENT, response.keyAgreement());
+        assertNull(response.pinToken());
+        assertNull(response.retries());
+    }
+
+    @Test
+    public void clientPin_retries() throws Exception {
+        byte[] responseBytes = new CborWriter()
+                .writeMapHeader(1)
+                .writeInteger(3).writeInteger(8)
+                .toByteArray();
+
+        AuthenticatorClientPinResponse response =
+                AuthenticatorClientPin.createGetRetries().getResponseFactory().createResponse(responseBytes);
+
+        assertNull(response.keyAgreement());
+        assertEquals(Integer.valueOf(8), response.retries());
+    }
+
+    private static AuthenticatorGetAssertion createGetAssertion() {
+        return AuthenticatorGetAssertion.create("webauthn.hwsecurity.dev", CLIENT_DATA_HASH, CLIENT_DATA_JSON,
+                null, null);
+    }
+}
@@ -1,7 +1,12 @@
 package de.cotech.hw.fido2.internal.jsapi;
 
 
+import java.util.Collections;
+
+import de.cotech.hw.fido2.domain.AuthenticatorTransport;
+import de.cotech.hw.fido2.domain.UserVerificationRequirement;
 import de.cotech.hw.fido2.domain.create.PublicKeyCredentialCreationOptions;
+import de.cotech.hw.fido2.domain.get.PublicKeyCredentialRequestOptions;
 import de.cotech.hw.fido2.internal.json.JsonWebauthnOptionsParser;
 import de.cotech.hw.util.Hex;
 import org.json.JSONException;
@@ -33,4 +38,35 @@ public class JsonWebauthnOptionsParserTest {
         assertNull(authenticatorMakeCredential.rp().id());
         assertNull(authenticatorMakeCredential.excludeCredentials());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void fromJsonGetAssertion_byteArrayEncodings() throws JSONException {
+        String x = "{\"publicKey\":{\"challenge\":\"2x7vCYJGPgMjmm2flkzYPw\",\"timeout\":30000," +
+                "\"rpId\":\"example.org\",\"userVerification\":\"discouraged\",\"allowCredentials\":[" +
+                "{\"type\":\"public-key\",\"id\":[1,2,3],\"transports\":[\"usb\",\"carrier-pigeon\"]}," +
+                "{\"type\":\"public-key\",\"id\":{\"0\":4,\"1\":5}}]},\"signal\":{}}";
+
+        PublicKeyCredentialRequestOptions options = parser.fromOptionsJsonGetAssertion(x);
+
+        assertEquals("db1eef0982463e03239a6d9f964cd83f", Hex.encodeHexString(options.challenge()));
+        assertEquals(Long.valueOf(30000), options.timeout());
+        assertEquals("example.org", options.rpId());
+        assertEquals(UserVerificationRequirement.DISCOURAGED, options.userVerification());
+        assertEquals(2, options.allowCredentials().size());
+        assertEquals("010203", Hex.encodeHexString(options.allowCredentials().get(0).id()));
+        assertEquals(Collections.singletonList(AuthenticatorTransport.USB),
+                options.allowCredentials().get(0).transports());
+        assertEquals("0405", Hex.encodeHexString(options.allowCredentials().get(1).id()));
+        assertNull(options.allowCredentials().get(1).transports());
+    }
+
+    @Test(expected = JSONException.class)
+    public void fromJsonGetAssertion_byteOutOfRange() throws JSONException {
+        parser.fromOptionsJsonGetAssertion("{\"publicKey\":{\"challenge\":[1,256]}}");
+    }
+
+    @Test(expected = JSONException.class)
+    public void fromJsonGetAssertion_missingChallenge() throws JSONException {
+        parser.fromOptionsJsonGetAssertion("{\"publicKey\":{\"rpId\":\"example.org\"}}");
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.json;
+
+
+import java.io.IOException;
+
+import de.cotech.hw.fido2.internal.json.JsonReader.Token;
+import de.cotech.hw.util.Hex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class JsonReaderTest {
+    @Test
+    public void readNestedStructure() throws Exception {
+        JsonReader reader = new JsonReader(
+                " { \"a\" : [1, -2, 6e4, true, false, null], \"b\": {}, \"c\": [], \"d\": \"x\" } ");
+
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        reader.beginArray();
+        assertEquals(1, reader.nextInt());
+        assertEquals(-2L, reader.nextLong());
+        assertEquals(60000, reader.nextInt());
+        assertTrue(reader.nextBoolean());
+        assertFalse(reader.nextBoolean());
+        assertEquals(Token.NULL, reader.peek());
+        reader.nextNull();
+        assertFalse(reader.hasNext());
+        reader.endArray();
+        assertEquals("b", reader.nextName());
+        reader.beginObject();
+        reader.endObject();
+        assertEquals("c", reader.nextName());
+        reader.beginArray();
+        reader.endArray();
+        assertEquals("d", reader.nextName());
+        assertEquals("x", reader.nextString());
+        reader.endObject();
+        assertEquals(Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void nextString_escapes() throws Exception {
+        JsonReader reader = new JsonReader("[\"a\\\"b\\\\c\\/d\\n\\u00e4\\u2028\"]");
+        reader.beginArray();
+        assertEquals("a\"b\\c/d\nä ", reader.nextString());
+        reader.endArray();
+    }
+
+    @Test
+    public void nextWebsafeBase64() throws Exception {
+        JsonReader reader = new JsonReader("[\"GNxfVQfEVOoi9uU1W_jM-w\", \"GNxfVQfEVOoi9uU1W/jM+w==\", " +
+                "\"GNxfVQfEVOoi9uU1W\\/jM+w\", \"\"]");
+        reader.beginArray();
+        assertEquals("18dc5f5507c454ea22f6e5355bf8ccfb", Hex.encodeHexString(reader.nextWebsafeBase64()));
+        assertEquals("18dc5f5507c454ea22f6e5355bf8ccfb", Hex.encodeHexString(reader.nextWebsafeBase64()));
+        assertEquals("18dc5f5507c454ea22f6e5355bf8ccfb", Hex.encodeHexString(reader.nextWebsafeBase64()));
+        assertEquals("", Hex.encodeHexString(reader.nextWebsafeBase64()));
+        reader.endArray();
+    }
+
+    @Test
+    public void skipValue() throws Exception {
+        JsonReader reader = new JsonReader("{\"skip\":{\"x\":[1,{\"y\":\"}\"}],\"z\":null},\"keep\":true}");
+        reader.beginObject();
+        assertEquals("skip", reader.nextName());
+        reader.skipValue();
+        assertEquals("keep", reader.nextName());
+        assertTrue(reader.nextBoolean());
+        reader.endObject();
+    }
+
+    @Test
+    public void nextNameEquals() throws Exception {
+        JsonReader reader = new JsonReader("{\"0\":1,\"1\":2,\"\\u0032\":3,\"4\":4}");
+        reader.beginObject();
+        assertTrue(reader.nextNameEquals("0"));
+        assertEquals(1, reader.nextInt());
+        assertTrue(reader.nextNameEquals("1"));
+        assertEquals(2, reader.nextInt());
+        assertTrue(reader.nextNameEquals("2"));
+        assertEquals(3, reader.nextInt());
+        assertFalse(reader.nextNameEquals("3"));
+        assertEquals(4, reader.nextInt());
+        reader.endObject();
+    }
+
+    @Test
+    public void nextLong_largeNumbers() throws Exception {
+        JsonReader reader = new JsonReader("[9223372036854775807, -9223372036854775808, 1.5e3]");
+        reader.beginArray();
+        assertEquals(Long.MAX_VALUE, reader.nextLong());
+        assertEquals(Long.MIN_VALUE, reader.nextLong());
+        assertEquals(1500L, reader.nextLong());
+        reader.endArray();
+    }
+
+    @Test(expected = IOException.class)
+    public void unexpectedToken() throws Exception {
+        new JsonReader("[1]").beginObject();
+    }
+
+    @Test(expected = IOException.class)
+    public void missingSeparator() throws Exception {
+        JsonReader reader = new JsonReader("[1 2]");
+        reader.beginArray();
+        reader.nextInt();
+        reader.nextInt();
+    }
+
+    @Test(expected = IOException.class)
+    public void unterminatedString() throws Exception {
+        new JsonReader("\"abc").nextString();
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidBase64() throws Exception {
+        new JsonReader("\"a*b\"").nextWebsafeBase64();
+    }
+
+    @Test(expected = IOException.class)
+    public void fractionalInteger() throws Exception {
+        new JsonReader("1.5").nextInt();
+    }
+
+    @Test(expected = IOException.class)
+    public void nestingTooDeep() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            json.append('[');
+        }
+        new JsonReader(json.toString()).skipValue();
+    }
+}
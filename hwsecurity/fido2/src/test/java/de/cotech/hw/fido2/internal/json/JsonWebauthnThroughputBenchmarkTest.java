@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.json;
+
+
+import java.io.ByteArrayOutputStream;
+
+import de.cotech.hw.fido2.PublicKeyCredential;
+import de.cotech.hw.fido2.domain.get.AuthenticatorAssertionResponse;
+import de.cotech.hw.fido2.internal.utils.WebsafeBase64;
+import de.cotech.hw.internal.benchmark.ThroughputBenchmark;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Throughput of the WebAuthn bridge JSON codec, see {@link ThroughputBenchmark}. Each payload is measured with a
+ * {@link JSONObject} tree, the way options were parsed and credentials serialized before, and with the streaming
+ * {@link JsonReader} and {@link JsonWriter}, so both can be compared in a single report.
+ */
+@SuppressWarnings("WeakerAccess")
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 24)
+public class JsonWebauthnThroughputBenchmarkTest {
+    static final int[] ALLOW_LIST_SIZES = { 1, 16, 64, 256 };
+    static final int CREDENTIAL_ID_LENGTH = 64;
+
+    @Before
+    public void setup() {
+        assumeTrue(ThroughputBenchmark.isEnabled());
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        ThroughputBenchmark benchmark = ThroughputBenchmark.create("fido2-json", 5000, 1000);
+        JsonWebauthnOptionsParser parser = new JsonWebauthnOptionsParser();
+
+        for (int allowListSize : ALLOW_LIST_SIZES) {
+            String byteObjectOptions = createGetAssertionOptions(allowListSize, false);
+            String base64Options = createGetAssertionOptions(allowListSize, true);
+
+            String prefix = "getAssertionOptions.allowList" + allowListSize;
+            benchmark.measure(prefix + ".decode.jsonObject", () -> readWithJsonObject(byteObjectOptions));
+            benchmark.measure(prefix + ".decode.reader", () -> parser.fromOptionsJsonGetAssertion(byteObjectOptions));
+            benchmark.measure(prefix + ".decode.reader.base64",
+                    () -> parser.fromOptionsJsonGetAssertion(base64Options));
+        }
+
+        JsonPublicKeyCredentialSerializer serializer = new JsonPublicKeyCredentialSerializer();
+        PublicKeyCredential publicKeyCredential = PublicKeyCredential.create(new byte[CREDENTIAL_ID_LENGTH],
+                AuthenticatorAssertionResponse.create(new byte[180], new byte[37], new byte[71], new byte[32]));
+        benchmark.measure("publicKeyCredential.encode.jsonObject",
+                () -> writeWithJsonObject(publicKeyCredential));
+        benchmark.measure("publicKeyCredential.encode.writer",
+                () -> serializer.publicKeyCredentialToJsonString(publicKeyCredential));
+
+        benchmark.writeReport();
+    }
+
+    /**
+     * Options for navigator.credentials.get(), with binary fields as websafe base64 or in the format of
+     * JSON.stringify for an Uint8Array, i.e. an object with numeric keys.
+     */
+    static String createGetAssertionOptions(int allowListSize, boolean base64) {
+        JsonWriter writer = new JsonWriter();
+        writer.beginObject().name("publicKey").beginObject()
+                .name("rpId").value("webauthn.hwsecurity.dev")
+                .name("timeout").value(60000)
+                .name("userVerification").value("discouraged")
+                .name("challenge");
+        writeBytes(writer, new byte[32], base64);
+        writer.name("allowCredentials").beginArray();
+        for (int i = 0; i < allowListSize; i++) {
+            byte[] credentialId = new byte[CREDENTIAL_ID_LENGTH];
+            credentialId[0] = (byte) i;
+            writer.beginObject().name("type").value("public-key").name("id");
+            writeBytes(writer, credentialId, base64);
+            writer.name("transports").beginArray().value("usb").value("nfc").endArray().endObject();
+        }
+        writer.endArray().endObject().endObject();
+        return writer.toString();
+    }
+
+    private static void writeBytes(JsonWriter writer, byte[] bytes, boolean base64) {
+        if (base64) {
+            writer.valueWebsafeBase64(bytes);
+            return;
+        }
+        writer.beginObject();
+        for (int i = 0; i < bytes.length; i++) {
+            writer.name(Integer.toString(i)).value(bytes[i] & 0xff);
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Reads the binary fields of the options from a JSONObject tree, the way they were parsed before
+     * {@link JsonReader} was introduced.
+     */
+    static int readWithJsonObject(String optionsJson) throws JSONException {
+        JSONObject publicKeyObject = new JSONObject(optionsJson).getJSONObject("publicKey");
+        int length = byteObjectToByteArray(publicKeyObject.getJSONObject("challenge")).length;
+        JSONArray allowCredentials = publicKeyObject.getJSONArray("allowCredentials");
+        for (int i = 0; i < allowCredentials.length(); i++) {
+            JSONObject descriptor = allowCredentials.getJSONObject(i);
+            descriptor.getString("type");
+            length += byteObjectToByteArray(descriptor.getJSONObject("id")).length;
+            descriptor.getJSONArray("transports");
+        }
+        return length;
+    }
+
+    private static byte[] byteObjectToByteArray(JSONObject jsonObject) throws JSONException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (int i = 0; i < jsonObject.length(); i++) {
+            baos.write(jsonObject.getInt(Integer.toString(i)));
+        }
+        return baos.toByteArray();
+    }
+
+    static String writeWithJsonObject(PublicKeyCredential publicKeyCredential) throws JSONException {
+        AuthenticatorAssertionResponse response = (AuthenticatorAssertionResponse) publicKeyCredential.response();
+        JSONObject responseObject = new JSONObject()
+                .put("clientDataJsonB64", WebsafeBase64.encodeToString(response.clientDataJson()))
+                .put("authenticatorDataB64", WebsafeBase64.encodeToString(response.authenticatorData()))
+                .put("signatureB64", WebsafeBase64.encodeToString(response.signature()))
+                .put("userHandleB64", WebsafeBase64.encodeToString(response.userHandle()));
+        return new JSONObject()
+                .put("type", publicKeyCredential.type())
+                .put("id", publicKeyCredential.id())
+                .put("response", responseObject)
+                .toString();
+    }
+}
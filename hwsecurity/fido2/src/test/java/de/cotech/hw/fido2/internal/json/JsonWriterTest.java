@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.json;
+
+
+import de.cotech.hw.util.Hex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class JsonWriterTest {
+    @Test
+    public void writeNestedStructure() {
+        JsonWriter writer = new JsonWriter(1);
+        writer.beginObject()
+                .name("a").beginArray().value(1).value(-2).value(true).nullValue().endArray()
+                .name("b").beginObject().endObject()
+                .name("c").value("x")
+                .endObject();
+
+        assertEquals("{\"a\":[1,-2,true,null],\"b\":{},\"c\":\"x\"}", writer.toString());
+    }
+
+    @Test
+    public void value_escapes() {
+        String json = new JsonWriter().value("a\"b\\c/d\n\t\u0001ä ").toString();
+
+        assertEquals("\"a\\\"b\\\\c/d\\n\\t\\u0001ä\\u2028\"", json);
+    }
+
+    @Test
+    public void valueWebsafeBase64() {
+        JsonWriter writer = new JsonWriter();
+        writer.beginArray();
+        for (String hex : new String[] { "", "18", "18dc", "18dc5f", "18dc5f5507c454ea22f6e5355bf8ccfb" }) {
+            writer.valueWebsafeBase64(Hex.decodeHexOrFail(hex));
+        }
+        writer.valueWebsafeBase64(null);
+        writer.endArray();
+
+        assertEquals("[\"\",\"GA\",\"GNw\",\"GNxf\",\"GNxfVQfEVOoi9uU1W_jM-w\",null]", writer.toString());
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        byte[] value = new byte[1000];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) (i * 31);
+        }
+        String json = new JsonWriter().beginObject().name("id").valueWebsafeBase64(value).endObject().toString();
+
+        JsonReader reader = new JsonReader(json);
+        reader.beginObject();
+        assertEquals("id", reader.nextName());
+        assertEquals(Hex.encodeHexString(value), Hex.encodeHexString(reader.nextWebsafeBase64()));
+        reader.endObject();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.operations.ctap1;
+
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialType;
+import de.cotech.hw.fido2.internal.FakeFido2AppletConnection;
+import de.cotech.hw.util.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+
+public class U2fCredentialPreflightTest {
+    static final byte[] CHALLENGE_PARAM = new byte[32];
+    static final byte[] APPLICATION_PARAM = Hex.decodeHexOrFail(
+            "abc34b4eb978b911e55240f345649cd3d7e8b583fbe066984d9881f7b5494dcb");
+    static final String REPLY_PRESENCE_REQUIRED = "6985";
+    static final String REPLY_WRONG_KEY_HANDLE = "6a80";
+    static final PublicKeyCredentialDescriptor CREDENTIAL_A = createDescriptor("aaaaaaaa");
+    static final PublicKeyCredentialDescriptor CREDENTIAL_B = createDescriptor("bbbbbbbb");
+    static final PublicKeyCredentialDescriptor CREDENTIAL_C = createDescriptor("cccccccc");
+
+    private FakeFido2AppletConnection fakeConnection;
+    private U2fCredentialPreflight preflight;
+
+    @Before
+    public void setup() throws Exception {
+        fakeConnection = FakeFido2AppletConnection.create(false);
+        preflight = new U2fCredentialPreflight();
+    }
+
+    @Test
+    public void findAcceptedCredential() throws Exception {
+        fakeConnection.expect(checkOnlyCommand(CREDENTIAL_A), REPLY_WRONG_KEY_HANDLE);
+        fakeConnection.expect(checkOnlyCommand(CREDENTIAL_B), REPLY_PRESENCE_REQUIRED);
+
+        PublicKeyCredentialDescriptor result = findAcceptedCredential(
+                Arrays.asList(CREDENTIAL_A, CREDENTIAL_B, CREDENTIAL_C));
+
+        assertSame(CREDENTIAL_B, result);
+        fakeConnection.verify();
+    }
+
+    @Test
+    public void findAcceptedCredential_noneAccepted() throws Exception {
+        fakeConnection.expect(checkOnlyCommand(CREDENTIAL_A), REPLY_WRONG_KEY_HANDLE);
+        fakeConnection.expect(checkOnlyCommand(CREDENTIAL_B), REPLY_WRONG_KEY_HANDLE);
+
+        assertNull(findAcceptedCredential(Arrays.asList(CREDENTIAL_A, CREDENTIAL_B)));
+        fakeConnection.verify();
+    }
+
+    @Test
+    public void findAcceptedCredential_cachesResults() throws Exception {
+        fakeConnection.expect(checkOnlyCommand(CREDENTIAL_A), REPLY_WRONG_KEY_HANDLE);
+        fakeConnection.expect(checkOnlyCommand(CREDENTIAL_B), REPLY_PRESENCE_REQUIRED);
+        findAcceptedCredential(Arrays.asList(CREDENTIAL_A, CREDENTIAL_B));
+
+        // only the credential that wasn't probed before is sent to the authenticator
+        fakeConnection.expect(checkOnlyCommand(CREDENTIAL_C), REPLY_PRESENCE_REQUIRED);
+        PublicKeyCredentialDescriptor result = findAcceptedCredential(
+                Arrays.asList(CREDENTIAL_A, CREDENTIAL_C, CREDENTIAL_B));
+
+        assertSame(CREDENTIAL_C, result);
+        assertEquals(3, preflight.getCachedResultCount());
+        fakeConnection.verify();
+    }
+
+    private PublicKeyCredentialDescriptor findAcceptedCredential(List<PublicKeyCredentialDescriptor> credentials)
+            throws Exception {
+        return preflight.findAcceptedCredential(fakeConnection.connection, CHALLENGE_PARAM, APPLICATION_PARAM,
+                credentials);
+    }
+
+    static String checkOnlyCommand(PublicKeyCredentialDescriptor credential) {
+        byte[] payload = U2fCredentialPreflight.createPayload(CHALLENGE_PARAM, APPLICATION_PARAM, credential.id());
+        return "00020700" + String.format("%02x", payload.length) + Hex.encodeHexString(payload);
+    }
+
+    static PublicKeyCredentialDescriptor createDescriptor(String idHex) {
+        return PublicKeyCredentialDescriptor.create(PublicKeyCredentialType.PUBLIC_KEY, Hex.decodeHexOrFail(idHex), null);
+    }
+}
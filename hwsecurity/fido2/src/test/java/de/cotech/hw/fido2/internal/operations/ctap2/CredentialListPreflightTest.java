@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.operations.ctap2;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialType;
+import de.cotech.hw.fido2.internal.FakeFido2AppletConnection;
+import de.cotech.hw.fido2.internal.Fido2AppletConnection;
+import de.cotech.hw.fido2.internal.cbor.CborPublicKeyCredentialDescriptorParser;
+import de.cotech.hw.fido2.internal.cbor.CborWriter;
+import de.cotech.hw.fido2.internal.ctap2.Ctap2CommandApduTransformer;
+import de.cotech.hw.fido2.internal.ctap2.commands.getAssertion.AuthenticatorGetAssertion;
+import de.cotech.hw.fido2.internal.ctap2.commands.getInfo.AuthenticatorOptions;
+import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.FakeTransport;
+import de.cotech.hw.util.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class CredentialListPreflightTest {
+    static final String RP_ID = "webauthn.hwsecurity.dev";
+    static final byte[] CLIENT_DATA_HASH = new byte[32];
+    static final String CLIENT_DATA_JSON = "{}";
+    static final int MAX_CREDENTIAL_COUNT = 2;
+    static final int MAX_CREDENTIAL_ID_LENGTH = 64;
+
+    private FakeTransport fakeTransport;
+    private Fido2AppletConnection connection;
+    private CredentialListPreflight preflight;
+
+    @Before
+    public void setup() throws Exception {
+        byte[] getInfoResponse = new CborWriter()
+                .writeMapHeader(4)
+                .writeInteger(1).writeArrayHeader(1).writeTextString("FIDO_2_0")
+                .writeInteger(3).writeByteString(new byte[16])
+                .writeInteger(7).writeInteger(MAX_CREDENTIAL_COUNT)
+                .writeInteger(8).writeInteger(MAX_CREDENTIAL_ID_LENGTH)
+                .toByteArray();
+
+        fakeTransport = new FakeTransport();
+        connection = Fido2AppletConnection.getInstanceForTransport(fakeTransport);
+        fakeTransport.expect(FakeFido2AppletConnection.GET_VERSION_COMMAND,
+                FakeFido2AppletConnection.GET_VERSION_RESPONSE);
+        fakeTransport.expect(FakeFido2AppletConnection.GET_INFO_COMMAND,
+                "00" + Hex.encodeHexString(getInfoResponse) + "9000");
+        connection.connectIfNecessary();
+
+        preflight = new CredentialListPreflight(new CborPublicKeyCredentialDescriptorParser());
+    }
+
+    @Test
+    public void withinLimit_isNotProbed() throws Exception {
+        List<PublicKeyCredentialDescriptor> credentials = createDescriptors(MAX_CREDENTIAL_COUNT, 64);
+
+        List<PublicKeyCredentialDescriptor> result = narrow(credentials);
+
+        assertEquals(credentials, result);
+        fakeTransport.verify();
+    }
+
+    @Test
+    public void overlongIds_areDropped() throws Exception {
+        List<PublicKeyCredentialDescriptor> credentials = new ArrayList<>();
+        credentials.addAll(createDescriptors(1, 64));
+        credentials.addAll(createDescriptors(2, 65));
+
+        List<PublicKeyCredentialDescriptor> result = narrow(credentials);
+
+        assertEquals(1, result.size());
+        assertSame(credentials.get(0), result.get(0));
+        fakeTransport.verify();
+    }
+
+    @Test
+    public void overLimit_returnsMatchFromSecondBatch() throws Exception {
+        List<PublicKeyCredentialDescriptor> credentials = createDescriptors(5, 64);
+        expectProbe(credentials.subList(0, 2), "2e9000");
+        expectProbe(credentials.subList(2, 4),
+                "00" + Hex.encodeHexString(createAssertionResponse(credentials.get(3))) + "9000");
+
+        List<PublicKeyCredentialDescriptor> result = narrow(credentials);
+
+        assertEquals(Collections.singletonList(credentials.get(3)), result);
+        fakeTransport.verify();
+    }
+
+    @Test
+    public void overLimit_noMatch_returnsEmptyList() throws Exception {
+        List<PublicKeyCredentialDescriptor> credentials = createDescriptors(3, 64);
+        expectProbe(credentials.subList(0, 2), "2e9000");
+        expectProbe(credentials.subList(2, 3), "229000");
+
+        List<PublicKeyCredentialDescriptor> result = narrow(credentials);
+
+        assertTrue(result.isEmpty());
+        fakeTransport.verify();
+    }
+
+    private List<PublicKeyCredentialDescriptor> narrow(List<PublicKeyCredentialDescriptor> credentials)
+            throws Exception {
+        return preflight.narrowCredentialList(connection, RP_ID, CLIENT_DATA_HASH, CLIENT_DATA_JSON, credentials);
+    }
+
+    private void expectProbe(List<PublicKeyCredentialDescriptor> batch, String response) throws Exception {
+        AuthenticatorGetAssertion probe = AuthenticatorGetAssertion.create(RP_ID, CLIENT_DATA_HASH, CLIENT_DATA_JSON,
+                new ArrayList<>(batch), AuthenticatorOptions.create(null, null, null, false, null));
+        fakeTransport.expect(new Ctap2CommandApduTransformer().toCommandApdu(probe).withExtendedApduNe(),
+                ResponseApdu.fromBytes(Hex.decodeHexOrFail(response)));
+    }
+
+    private static byte[] createAssertionResponse(PublicKeyCredentialDescriptor credential) {
+        return new CborWriter()
+                .writeMapHeader(3)
+                .writeInteger(1).writeMapHeader(2)
+                .writeTextString("id").writeByteString(credential.id())
+                .writeTextString("type").writeTextString("public-key")
+                .writeInteger(2).writeByteString(new byte[37])
+                .writeInteger(3).writeByteString(new byte[8])
+                .toByteArray();
+    }
+
+    private static List<PublicKeyCredentialDescriptor> createDescriptors(int count, int idLength) {
+        List<PublicKeyCredentialDescriptor> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[idLength];
+            id[0] = (byte) (idLength + i);
+            result.add(PublicKeyCredentialDescriptor.create(PublicKeyCredentialType.PUBLIC_KEY, id, null));
+        }
+        return result;
+    }
+}
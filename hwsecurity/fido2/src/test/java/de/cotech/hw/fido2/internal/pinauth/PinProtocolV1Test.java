@@ -14,7 +14,9 @@ import de.cotech.hw.util.Hex;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -32,7 +34,7 @@ public class PinProtocolV1Test {
     static final byte[] AUTHENTICATOR_KEY_AGREEMENT = Hex.decodeHexOrFail(
             "a501020338182001215820f370174f29f360cff04035c4b46daf2a93468398521ac7fc7bf8f8f986d9e08f2258202ba85af4992d37ef3977eea283b65a00e7c06dc473aeecc24b70f9b9d22d5e8d");
     static final byte[] PLATFORM_KEY_AGREEMENT = Hex.decodeHexOrFail(
-            "a501020326200121582099401f6ffa9446585074d1058578f4c68ab46953ccf8cb7910d8b3c9350e1040225820a3c962cddad166b1fdea8a95a377dbf8efbedd82778a8004b884f0009bd6df9506");
+            "a501020326200121582099401f6ffa9446585074d1058578f4c68ab46953ccf8cb7910d8b3c9350e1040225820a3c962cddad166b1fdea8a95a377dbf8efbedd82778a8004b884f0009bd6df95");
     static final byte[] PIN_HASH_ENC = Hex.decodeHexOrFail("2eb756ae474f7ca032b5111b2eef6959");
     static final byte[] PIN_TOKEN_ENC = Hex.decodeHexOrFail("554df3802226935b2bf49f30aae3096f");
     static final String CLIENT_PIN_GET_TOKEN = "801000006606a40101020503a501020326200121582099401f6ffa9446585074d1058578f4c68ab46953ccf8cb7910d8b3c9350e1040225820a3c962cddad166b1fdea8a95a377dbf8efbedd82778a8004b884f0009bd6df9506502eb756ae474f7ca032b5111b2eef6959";
@@ -86,6 +88,24 @@ public class PinProtocolV1Test {
         pinProtocolV1.clientPinAuthenticate(fakeFidoConnection.connection, "1234", true);
     }
 
+    @Test
+    public void pinAuth_invalid_invalidatesCachedPinToken() throws Exception {
+        PinProtocolV1 pinProtocolV1 = setupPinProtocol();
+        fakeFidoConnection.connection.setPinTokenCache(PinTokenCache.createWithTimeout(60 * 1000));
+        fakeFidoConnection.connection.setCachedPinToken(PinToken.create(PIN_TOKEN));
+
+        fakeFidoConnection.expect(CLIENT_PIN_GET_RETRIES, CLIENT_PIN_GET_RETRIES_RESPONSE_EIGHT);
+        fakeFidoConnection.expect(CLIENT_PIN_GET_AGREEMENT, CLIENT_PIN_GET_RESPONSE);
+        fakeFidoConnection.expect(CLIENT_PIN_GET_TOKEN, CLIENT_PIN_GET_TOKEN_RESPONSE_BLOCKED);
+
+        try {
+            pinProtocolV1.clientPinAuthenticate(fakeFidoConnection.connection, "1234", false);
+            fail();
+        } catch (FidoClientPinInvalidException e) {
+            assertNull(fakeFidoConnection.connection.getCachedPinToken());
+        }
+    }
+
     @Test(expected = FidoClientPinLastAttemptException.class)
     public void pinAuth_lastAttempt_fail() throws Exception {
         PinProtocolV1 pinProtocolV1 = setupPinProtocol();
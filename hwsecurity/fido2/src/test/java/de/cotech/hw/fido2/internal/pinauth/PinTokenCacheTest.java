@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.pinauth;
+
+
+import de.cotech.hw.fido2.internal.FakeFido2AppletConnection;
+import de.cotech.hw.fido2.internal.Fido2AppletConnection;
+import de.cotech.hw.internal.transport.FakeTransport;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.util.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class PinTokenCacheTest {
+    static final long TIMEOUT_MS = 1000;
+    static final byte[] AAGUID = Hex.decodeHexOrFail("6d44ba9bf6ec2e49b9300c8fe920cb73");
+    static final byte[] OTHER_AAGUID = Hex.decodeHexOrFail("ee882879721c491397753dfcce97072a");
+    static final PinToken PIN_TOKEN = PinToken.create(new byte[16]);
+    static final PinToken OTHER_PIN_TOKEN = PinToken.create(new byte[16]);
+
+    private PinTokenCache pinTokenCache;
+    private Transport transport;
+
+    @Before
+    public void setup() {
+        pinTokenCache = PinTokenCache.createWithTimeout(TIMEOUT_MS);
+        transport = new FakeTransport();
+    }
+
+    @Test
+    public void get() {
+        pinTokenCache.put(transport, AAGUID, PIN_TOKEN, 0);
+
+        assertSame(PIN_TOKEN, pinTokenCache.get(transport, AAGUID.clone(), TIMEOUT_MS - 1));
+    }
+
+    @Test
+    public void get_replaced() {
+        pinTokenCache.put(transport, AAGUID, PIN_TOKEN, 0);
+        pinTokenCache.put(transport, AAGUID, OTHER_PIN_TOKEN, 10);
+
+        assertSame(OTHER_PIN_TOKEN, pinTokenCache.get(transport, AAGUID, 20));
+    }
+
+    @Test
+    public void get_expired() {
+        pinTokenCache.put(transport, AAGUID, PIN_TOKEN, 0);
+
+        assertNull(pinTokenCache.get(transport, AAGUID, TIMEOUT_MS));
+    }
+
+    @Test
+    public void get_otherAaguid() {
+        pinTokenCache.put(transport, AAGUID, PIN_TOKEN, 0);
+
+        assertNull(pinTokenCache.get(transport, OTHER_AAGUID, 0));
+    }
+
+    @Test
+    public void get_otherTransport() {
+        pinTokenCache.put(transport, AAGUID, PIN_TOKEN, 0);
+
+        assertNull(pinTokenCache.get(new FakeTransport(), AAGUID, 0));
+    }
+
+    @Test
+    public void get_releasedTransport() {
+        Transport releasedTransport = mock(Transport.class);
+        pinTokenCache.put(releasedTransport, AAGUID, PIN_TOKEN, 0);
+        when(releasedTransport.isReleased()).thenReturn(true);
+
+        assertNull(pinTokenCache.get(releasedTransport, AAGUID, 0));
+    }
+
+    @Test
+    public void invalidate() {
+        pinTokenCache.put(transport, AAGUID, PIN_TOKEN, 0);
+        pinTokenCache.put(transport, OTHER_AAGUID, OTHER_PIN_TOKEN, 0);
+
+        pinTokenCache.invalidate(transport, AAGUID);
+
+        assertNull(pinTokenCache.get(transport, AAGUID, 0));
+        assertSame(OTHER_PIN_TOKEN, pinTokenCache.get(transport, OTHER_AAGUID, 0));
+    }
+
+    @Test
+    public void sharedBetweenConnections() throws Exception {
+        FakeTransport fakeTransport = new FakeTransport();
+        Fido2AppletConnection firstConnection = connect(fakeTransport);
+        Fido2AppletConnection secondConnection = connect(fakeTransport);
+
+        firstConnection.setCachedPinToken(PIN_TOKEN);
+
+        assertSame(PIN_TOKEN, secondConnection.getCachedPinToken());
+        assertNull(connect(new FakeTransport()).getCachedPinToken());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWithTimeout_zero() {
+        PinTokenCache.createWithTimeout(0);
+    }
+
+    private Fido2AppletConnection connect(FakeTransport fakeTransport) throws Exception {
+        fakeTransport.expect(FakeFido2AppletConnection.GET_VERSION_COMMAND,
+                FakeFido2AppletConnection.GET_VERSION_RESPONSE);
+        fakeTransport.expect(FakeFido2AppletConnection.GET_INFO_COMMAND,
+                FakeFido2AppletConnection.GET_INFO_RESPONSE_PIN_YES);
+        Fido2AppletConnection connection = Fido2AppletConnection.getInstanceForTransport(fakeTransport);
+        connection.connectIfNecessary();
+        connection.setPinTokenCache(pinTokenCache);
+        return connection;
+    }
+}
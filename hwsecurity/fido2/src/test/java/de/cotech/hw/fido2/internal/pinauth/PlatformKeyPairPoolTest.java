@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.pinauth;
+
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+
+public class PlatformKeyPairPoolTest {
+    private final List<KeyPair> generatedKeyPairs = new ArrayList<>();
+    private final List<Runnable> pendingTasks = new ArrayList<>();
+
+    @Test
+    public void refill() throws Exception {
+        PlatformKeyPairPool pool = new PlatformKeyPairPool(2, Runnable::run, this::generateKeyPair);
+
+        pool.refill();
+
+        assertEquals(2, pool.size());
+        assertEquals(2, generatedKeyPairs.size());
+    }
+
+    @Test
+    public void take_usesPregeneratedKeyPairOnce() throws Exception {
+        PlatformKeyPairPool pool = new PlatformKeyPairPool(2, pendingTasks::add, this::generateKeyPair);
+        pool.refill();
+        runPendingTasks();
+
+        KeyPair first = pool.take();
+        KeyPair second = pool.take();
+
+        assertSame(generatedKeyPairs.get(0), first);
+        assertSame(generatedKeyPairs.get(1), second);
+        assertEquals(0, pool.size());
+        assertEquals(2, generatedKeyPairs.size());
+    }
+
+    @Test
+    public void take_empty_generatesKeyPair() throws Exception {
+        PlatformKeyPairPool pool = new PlatformKeyPairPool(2, pendingTasks::add, this::generateKeyPair);
+
+        KeyPair keyPair = pool.take();
+
+        assertSame(generatedKeyPairs.get(0), keyPair);
+        assertEquals(1, pendingTasks.size());
+    }
+
+    @Test
+    public void take_schedulesRefill() throws Exception {
+        PlatformKeyPairPool pool = new PlatformKeyPairPool(2, pendingTasks::add, this::generateKeyPair);
+
+        KeyPair keyPair = pool.take();
+        pool.take();
+        runPendingTasks();
+
+        assertEquals(2, pool.size());
+        assertNotSame(keyPair, pool.take());
+    }
+
+    @Test
+    public void create_generatesP256KeyPairs() throws Exception {
+        PlatformKeyPairPool pool = PlatformKeyPairPool.create();
+
+        KeyPair first = pool.take();
+        KeyPair second = pool.take();
+
+        assertEquals("EC", first.getPublic().getAlgorithm());
+        assertNotSame(first, second);
+    }
+
+    private KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPair keyPair = new KeyPair(mock(PublicKey.class), mock(PrivateKey.class));
+        generatedKeyPairs.add(keyPair);
+        return keyPair;
+    }
+
+    private void runPendingTasks() {
+        while (!pendingTasks.isEmpty()) {
+            pendingTasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.fido2.internal.routing;
+
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.cotech.hw.fido2.domain.PublicKeyCredentialDescriptor;
+import de.cotech.hw.fido2.domain.PublicKeyCredentialType;
+import de.cotech.hw.internal.transport.FakeTransport;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.util.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class CredentialRoutingIndexTest {
+    static final byte[] AAGUID = Hex.decodeHexOrFail("6d44ba9bf6ec2e49b9300c8fe920cb73");
+    static final byte[] OTHER_AAGUID = Hex.decodeHexOrFail("ee882879721c491397753dfcce97072a");
+    static final PublicKeyCredentialDescriptor CREDENTIAL_A = createDescriptor("aa");
+    static final PublicKeyCredentialDescriptor CREDENTIAL_B = createDescriptor("bb");
+    static final PublicKeyCredentialDescriptor CREDENTIAL_C = createDescriptor("cc");
+    static final List<PublicKeyCredentialDescriptor> ALL_CREDENTIALS =
+            Arrays.asList(CREDENTIAL_A, CREDENTIAL_B, CREDENTIAL_C);
+
+    private CredentialRoutingIndex credentialRoutingIndex;
+    private Transport transport;
+
+    @Before
+    public void setup() {
+        credentialRoutingIndex = CredentialRoutingIndex.createWithMaxEntries(16);
+        transport = new FakeTransport();
+    }
+
+    @Test
+    public void filterAllowList_unknown() {
+        assertEquals(ALL_CREDENTIALS, credentialRoutingIndex.filterAllowList(transport, AAGUID, ALL_CREDENTIALS));
+    }
+
+    @Test
+    public void filterAllowList_knownOnConnectedAuthenticator() {
+        credentialRoutingIndex.learnCredentials(transport, AAGUID, Collections.singletonList(CREDENTIAL_B.id()));
+
+        assertEquals(Collections.singletonList(CREDENTIAL_B),
+                credentialRoutingIndex.filterAllowList(transport, AAGUID, ALL_CREDENTIALS));
+    }
+
+    @Test
+    public void filterAllowList_knownOnOtherAaguid() {
+        credentialRoutingIndex.learnCredentials(transport, OTHER_AAGUID,
+                Arrays.asList(CREDENTIAL_A.id(), CREDENTIAL_B.id()));
+
+        assertEquals(Collections.singletonList(CREDENTIAL_C),
+                credentialRoutingIndex.filterAllowList(new FakeTransport(), AAGUID, ALL_CREDENTIALS));
+        assertTrue(credentialRoutingIndex.filterAllowList(new FakeTransport(), AAGUID,
+                Collections.singletonList(CREDENTIAL_A)).isEmpty());
+    }
+
+    @Test
+    public void filterAllowList_unidentifiedAuthenticatorWithSameAaguid() {
+        credentialRoutingIndex.learnCredentials(transport, AAGUID, Collections.singletonList(CREDENTIAL_A.id()));
+
+        assertEquals(ALL_CREDENTIALS,
+                credentialRoutingIndex.filterAllowList(new FakeTransport(), AAGUID, ALL_CREDENTIALS));
+    }
+
+    @Test
+    public void filterAllowList_releasedTransport() {
+        Transport releasedTransport = mock(Transport.class);
+        credentialRoutingIndex.learnCredentials(releasedTransport, AAGUID,
+                Collections.singletonList(CREDENTIAL_A.id()));
+        when(releasedTransport.isReleased()).thenReturn(true);
+
+        assertEquals(ALL_CREDENTIALS,
+                credentialRoutingIndex.filterAllowList(releasedTransport, AAGUID, ALL_CREDENTIALS));
+    }
+
+    @Test
+    public void learnCredentials_identifiesAuthenticatorByKnownCredential() {
+        credentialRoutingIndex.learnCredentials(transport, AAGUID, Collections.singletonList(CREDENTIAL_A.id()));
+        FakeTransport reconnectedTransport = new FakeTransport();
+        credentialRoutingIndex.learnCredentials(reconnectedTransport, AAGUID,
+                Collections.singletonList(CREDENTIAL_A.id()));
+
+        assertEquals(Collections.singletonList(CREDENTIAL_A),
+                credentialRoutingIndex.filterAllowList(reconnectedTransport, AAGUID, ALL_CREDENTIALS));
+    }
+
+    @Test
+    public void learnCredentials_mergesIdentitiesOfSameAuthenticator() {
+        credentialRoutingIndex.learnCredentials(transport, AAGUID, Collections.singletonList(CREDENTIAL_A.id()));
+        credentialRoutingIndex.learnCredentials(new FakeTransport(), AAGUID,
+                Collections.singletonList(CREDENTIAL_B.id()));
+
+        FakeTransport reconnectedTransport = new FakeTransport();
+        credentialRoutingIndex.learnCredentials(reconnectedTransport, AAGUID,
+                Collections.singletonList(CREDENTIAL_A.id()));
+        assertEquals(Arrays.asList(CREDENTIAL_B, CREDENTIAL_C), credentialRoutingIndex.filterAllowList(
+                reconnectedTransport, AAGUID, Arrays.asList(CREDENTIAL_B, CREDENTIAL_C)));
+
+        credentialRoutingIndex.learnCredentials(reconnectedTransport, AAGUID,
+                Collections.singletonList(CREDENTIAL_B.id()));
+        assertEquals(Arrays.asList(CREDENTIAL_A, CREDENTIAL_B),
+                credentialRoutingIndex.filterAllowList(reconnectedTransport, AAGUID, ALL_CREDENTIALS));
+    }
+
+    @Test
+    public void forgetCredentials() {
+        credentialRoutingIndex.learnCredentials(transport, OTHER_AAGUID, Collections.singletonList(CREDENTIAL_A.id()));
+        credentialRoutingIndex.forgetCredentials(Collections.singletonList(CREDENTIAL_A));
+
+        assertEquals(0, credentialRoutingIndex.getCredentialCount());
+        assertEquals(ALL_CREDENTIALS, credentialRoutingIndex.filterAllowList(transport, AAGUID, ALL_CREDENTIALS));
+    }
+
+    @Test
+    public void learnCredentials_evictsLeastRecentlyUsed() {
+        CredentialRoutingIndex smallIndex = CredentialRoutingIndex.createWithMaxEntries(2);
+        smallIndex.learnCredentials(transport, AAGUID, Arrays.asList(CREDENTIAL_A.id(), CREDENTIAL_B.id()));
+        smallIndex.learnCredentials(transport, AAGUID, Collections.singletonList(CREDENTIAL_C.id()));
+
+        assertEquals(2, smallIndex.getCredentialCount());
+        assertEquals(Arrays.asList(CREDENTIAL_B, CREDENTIAL_C),
+                smallIndex.filterAllowList(transport, AAGUID, ALL_CREDENTIALS));
+    }
+
+    static PublicKeyCredentialDescriptor createDescriptor(String idHex) {
+        return PublicKeyCredentialDescriptor.create(PublicKeyCredentialType.PUBLIC_KEY, Hex.decodeHexOrFail(idHex), null);
+    }
+}
@@ -38,4 +38,29 @@ public class WebsafeBase64Test {
         byte[] decoded = Base64.decode(ENCODED_B64, Base64.DEFAULT);
         assertArrayEquals(DECODED, decoded);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void encodeTo_matchesEncodeToString() {
+        for (int length = 0; length < 70; length++) {
+            byte[] decoded = new byte[length];
+            for (int i = 0; i < length; i++) {
+                decoded[i] = (byte) (i * 67 + length);
+            }
+            StringBuilder encoded = new StringBuilder("prefix");
+            WebsafeBase64.encodeTo(decoded, encoded);
+            assertEquals("prefix" + WebsafeBase64.encodeToString(decoded), encoded.toString());
+            assertArrayEquals(decoded, WebsafeBase64.decode(encoded, 6, encoded.length()));
+        }
+    }
+
+    @Test
+    public void decode_range_acceptsStandardAlphabetAndPadding() {
+        String encoded = "\"" + ENCODED_B64 + "==\"";
+        assertArrayEquals(DECODED, WebsafeBase64.decode(encoded, 1, encoded.length() - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_range_invalidLength() {
+        WebsafeBase64.decode("abcde", 0, 5);
+    }
+}
@@ -1,6 +1,9 @@
 package de.cotech.hw.fido2.internal.webauthn;
 
 
+import java.io.IOException;
+import java.util.Arrays;
+
 import de.cotech.hw.fido2.domain.create.AuthenticatorData;
 import de.cotech.hw.util.Hex;
 import org.junit.Assert;
@@ -45,4 +48,34 @@ public class AuthenticatorDataParserTest {
 
         Assert.assertEquals(expectedHex, Hex.encodeHexString(bytes));
     }
+
+    @Test
+    public void decode_encode_returnsOriginalBytes() throws Exception {
+        AuthenticatorData authenticatorData = parser.fromBytes(DATA);
+        Assert.assertSame(DATA, parser.toBytes(authenticatorData));
+    }
+
+    @Test
+    public void decode_anonymize_keepsOriginalBytes() throws Exception {
+        parser.fromBytes(DATA).withEmptyAaguid();
+        Assert.assertEquals(DATA_HEX, Hex.encodeHexString(DATA));
+    }
+
+    @Test
+    public void decode_equalsCopy() throws Exception {
+        AuthenticatorData authenticatorData = parser.fromBytes(DATA);
+        AuthenticatorData copy = AuthenticatorData.create(authenticatorData.rpIdHash(), authenticatorData.flags(),
+                authenticatorData.sigCounter(), authenticatorData.attestedCredentialData(),
+                authenticatorData.extensions());
+
+        Assert.assertEquals(copy, authenticatorData);
+        Assert.assertEquals(authenticatorData, copy);
+        Assert.assertEquals(copy.hashCode(), authenticatorData.hashCode());
+        Assert.assertEquals(DATA_HEX, Hex.encodeHexString(parser.toBytes(copy)));
+    }
+
+    @Test(expected = IOException.class)
+    public void decode_truncatedCredentialPublicKey() throws Exception {
+        parser.fromBytes(Arrays.copyOf(DATA, DATA.length - 1));
+    }
 }
@@ -29,6 +29,7 @@ import androidx.annotation.WorkerThread;
 import de.cotech.hw.SecurityKey;
 import de.cotech.hw.SecurityKeyConnectionMode;
 import de.cotech.hw.SecurityKeyManagerConfig;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
 import de.cotech.hw.internal.transport.SecurityKeyInfo;
 import de.cotech.hw.internal.transport.Transport;
 import de.cotech.hw.openpgp.internal.OpenPgpAppletConnection;
@@ -70,8 +71,17 @@ public class OpenPgpSecurityKeyConnectionMode extends SecurityKeyConnectionMode<
             return null;
         }
 
-        OpenPgpAppletConnection openPgpAppletConnection = OpenPgpAppletConnection.getInstanceForTransport(
-                transport, config.getOpenPgpAidPrefixes());
+        OpenPgpAppletConnection openPgpAppletConnection;
+        if (securityKeyManagerConfig.isEnableAppletConnectionPool()) {
+            openPgpAppletConnection = AppletConnectionPool.getInstance().acquire(transport,
+                    config.getOpenPgpAidPrefixes().get(0), OpenPgpAppletConnection.class,
+                    pooledTransport -> OpenPgpAppletConnection.getInstanceForTransport(
+                            pooledTransport, config.getOpenPgpAidPrefixes()));
+        } else {
+            openPgpAppletConnection = OpenPgpAppletConnection.getInstanceForTransport(
+                    transport, config.getOpenPgpAidPrefixes());
+        }
+        openPgpAppletConnection.setOperationSpanListener(securityKeyManagerConfig.getOperationSpanListener());
         openPgpAppletConnection.connectIfNecessary();
 
         return new OpenPgpSecurityKey(securityKeyManagerConfig, transport, openPgpAppletConnection);
@@ -43,6 +43,8 @@ import java.util.List;
 
 import de.cotech.hw.BuildConfig;
 import de.cotech.hw.SecurityKeyException;
+import de.cotech.hw.SecurityKeyOperationSpan.SpanType;
+import de.cotech.hw.SecurityKeyOperationSpanListener;
 import de.cotech.hw.exceptions.AppletFileNotFoundException;
 import de.cotech.hw.exceptions.ClaNotSupportedException;
 import de.cotech.hw.exceptions.ConditionsNotSatisfiedException;
@@ -51,6 +53,9 @@ import de.cotech.hw.exceptions.InsNotSupportedException;
 import de.cotech.hw.exceptions.SelectAppletException;
 import de.cotech.hw.internal.iso7816.CommandApdu;
 import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
+import de.cotech.hw.internal.transport.AppletConnectionPool.PooledAppletConnection;
+import de.cotech.hw.internal.transport.OperationSpanRecorder;
 import de.cotech.hw.internal.transport.SecurityKeyInfo;
 import de.cotech.hw.internal.transport.SecurityKeyInfo.SecurityKeyType;
 import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
@@ -75,7 +80,7 @@ import de.cotech.hw.util.HwTimber;
  * For the full specs, see http://g10code.com/docs/openpgp-card-2.0.pdf
  */
 @RestrictTo(Scope.LIBRARY_GROUP)
-public class OpenPgpAppletConnection {
+public class OpenPgpAppletConnection implements PooledAppletConnection {
     private static final int APDU_SW1_RESPONSE_AVAILABLE = 0x61;
     private static final int RESPONSE_SW1_INCORRECT_LENGTH = 0x6c;
 
@@ -86,6 +91,8 @@ public class OpenPgpAppletConnection {
     @Nullable
     private final KeyStore smKeyStore;
     private final OpenPgpCommandApduFactory commandFactory;
+    @NonNull
+    private OperationSpanRecorder spanRecorder = OperationSpanRecorder.createDisabled();
 
     private SecurityKeyType securityKeyType;
     private CardCapabilities cardCapabilities;
@@ -115,6 +122,10 @@ public class OpenPgpAppletConnection {
         this.commandFactory = commandFactory;
     }
 
+    public void setOperationSpanListener(@Nullable SecurityKeyOperationSpanListener operationSpanListener) {
+        spanRecorder = OperationSpanRecorder.create(operationSpanListener);
+    }
+
     // region connection management
 
     public void connectIfNecessary() throws IOException {
@@ -161,6 +172,24 @@ public class OpenPgpAppletConnection {
         }
     }
 
+    @Override
+    public void reselectApplet() throws IOException {
+        if (!isOpenPgpAppletConnected) {
+            return;
+        }
+
+        try {
+            clearSecureMessaging();
+            selectFilesFromPrefixOrFail();
+            resetPwState();
+
+            smEstablishIfAvailable(smKeyStore);
+        } catch (IOException e) {
+            isOpenPgpAppletConnected = false;
+            throw e;
+        }
+    }
+
     public void resetPwState() {
         isPw1ValidatedForOther = false;
         isPw1ValidatedForSignature = false;
@@ -168,6 +197,7 @@ public class OpenPgpAppletConnection {
     }
 
     private byte[] selectFilesFromPrefixOrFail() throws IOException {
+        AppletConnectionPool.getInstance().onAppletSelected(transport, this);
         for (byte[] fileAid : aidPrefixes) {
             byte[] initializedAid = selectFileOrReactivateOrFail(fileAid);
             if (initializedAid != null) {
@@ -267,20 +297,40 @@ public class OpenPgpAppletConnection {
      * @return response from the card
      */
     public ResponseApdu communicate(CommandApdu commandApdu) throws IOException {
-        commandApdu = smEncryptIfAvailable(commandApdu);
+        spanRecorder.beginSpan(getSpanTypeForCommand(commandApdu));
+        try {
+            commandApdu = smEncryptIfAvailable(commandApdu);
 
-        ResponseApdu lastResponse;
+            ResponseApdu lastResponse;
 
-        lastResponse = transceiveWithChaining(commandApdu);
-        if (lastResponse.getSw1() == RESPONSE_SW1_INCORRECT_LENGTH && lastResponse.getSw2() != 0) {
-            commandApdu = commandApdu.withNe(lastResponse.getSw2());
             lastResponse = transceiveWithChaining(commandApdu);
-        }
-        lastResponse = readChainedResponseIfAvailable(lastResponse);
+            if (lastResponse.getSw1() == RESPONSE_SW1_INCORRECT_LENGTH && lastResponse.getSw2() != 0) {
+                commandApdu = commandApdu.withNe(lastResponse.getSw2());
+                lastResponse = transceiveWithChaining(commandApdu);
+            }
+            lastResponse = readChainedResponseIfAvailable(lastResponse);
 
-        lastResponse = smDecryptIfAvailable(lastResponse);
+            lastResponse = smDecryptIfAvailable(lastResponse);
 
-        return lastResponse;
+            return lastResponse;
+        } finally {
+            spanRecorder.endSpan();
+        }
+    }
+
+    private static SpanType getSpanTypeForCommand(CommandApdu commandApdu) {
+        switch (commandApdu.getINS()) {
+            case OpenPgpCommandApduFactory.INS_SELECT_FILE:
+                return SpanType.SELECT;
+            case OpenPgpCommandApduFactory.INS_VERIFY:
+                return SpanType.VERIFY_PIN;
+            case OpenPgpCommandApduFactory.INS_PERFORM_SECURITY_OPERATION:
+            case OpenPgpCommandApduFactory.INS_INTERNAL_AUTHENTICATE:
+            case OpenPgpCommandApduFactory.INS_GENERATE_RETRIEVE_ASYMMETRIC_KEY:
+                return SpanType.CRYPTO_OPERATION;
+            default:
+                return SpanType.COMMAND;
+        }
     }
 
     public ResponseApdu communicateOrThrow(CommandApdu commandApdu) throws IOException {
@@ -323,30 +373,35 @@ public class OpenPgpAppletConnection {
     @NonNull
     private ResponseApdu transceiveWithChaining(CommandApdu commandApdu) throws IOException {
         if (cardCapabilities.hasExtended()) {
-            return transport.transceive(commandApdu);
+            return spanRecorder.transceive(transport, commandApdu);
         } else if (commandFactory.isSuitableForShortApdu(commandApdu)) {
             CommandApdu shortApdu = commandFactory.createShortApdu(commandApdu);
-            return transport.transceive(shortApdu);
+            return spanRecorder.transceive(transport, shortApdu);
         } else if (cardCapabilities.hasChaining()) {
-            ResponseApdu lastResponse = null;
-
-            List<CommandApdu> chainedApdus = commandFactory.createChainedApdus(commandApdu);
-            for (int i = 0, totalCommands = chainedApdus.size(); i < totalCommands; i++) {
-                CommandApdu chainedApdu = chainedApdus.get(i);
-                lastResponse = transport.transceive(chainedApdu);
+            spanRecorder.beginSpan(SpanType.CHAINING);
+            try {
+                ResponseApdu lastResponse = null;
+
+                List<CommandApdu> chainedApdus = commandFactory.createChainedApdus(commandApdu);
+                for (int i = 0, totalCommands = chainedApdus.size(); i < totalCommands; i++) {
+                    CommandApdu chainedApdu = chainedApdus.get(i);
+                    lastResponse = spanRecorder.transceive(transport, chainedApdu);
+
+                    boolean isLastCommand = (i == totalCommands - 1);
+                    if (!isLastCommand && !lastResponse.isSuccess()) {
+                        throw new IOException("Failed to chain apdu " +
+                                "(" + i + "/" + (totalCommands - 1) + ", last SW: " + Integer.toHexString(lastResponse.getSw()) + ")");
+                    }
+                }
 
-                boolean isLastCommand = (i == totalCommands - 1);
-                if (!isLastCommand && !lastResponse.isSuccess()) {
-                    throw new IOException("Failed to chain apdu " +
-                            "(" + i + "/" + (totalCommands - 1) + ", last SW: " + Integer.toHexString(lastResponse.getSw()) + ")");
+                if (lastResponse == null) {
+                    throw new IllegalStateException();
                 }
-            }
 
-            if (lastResponse == null) {
-                throw new IllegalStateException();
+                return lastResponse;
+            } finally {
+                spanRecorder.endSpan();
             }
-
-            return lastResponse;
         } else {
             throw new IOException("Command too long, and chaining unavailable");
         }
@@ -358,20 +413,25 @@ public class OpenPgpAppletConnection {
             return lastResponse;
         }
 
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        result.write(lastResponse.getData());
-
-        do {
-            // GET RESPONSE ISO/IEC 7816-4 par.7.6.1
-            CommandApdu getResponse = commandFactory.createGetResponseCommand(lastResponse.getSw2());
-            lastResponse = transport.transceive(getResponse);
+        spanRecorder.beginSpan(SpanType.GET_RESPONSE);
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
             result.write(lastResponse.getData());
-        } while (lastResponse.getSw1() == APDU_SW1_RESPONSE_AVAILABLE);
 
-        result.write(lastResponse.getSw1());
-        result.write(lastResponse.getSw2());
+            do {
+                // GET RESPONSE ISO/IEC 7816-4 par.7.6.1
+                CommandApdu getResponse = commandFactory.createGetResponseCommand(lastResponse.getSw2());
+                lastResponse = spanRecorder.transceive(transport, getResponse);
+                result.write(lastResponse.getData());
+            } while (lastResponse.getSw1() == APDU_SW1_RESPONSE_AVAILABLE);
 
-        return ResponseApdu.fromBytes(result.toByteArray());
+            result.write(lastResponse.getSw1());
+            result.write(lastResponse.getSw2());
+
+            return ResponseApdu.fromBytes(result.toByteArray());
+        } finally {
+            spanRecorder.endSpan();
+        }
     }
 
     // endregion
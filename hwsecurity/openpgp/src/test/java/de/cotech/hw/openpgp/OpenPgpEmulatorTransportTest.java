@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.openpgp;
+
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.spec.SecretKeySpec;
+
+import de.cotech.hw.SecurityKeyManagerConfig;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.openpgp.exceptions.OpenPgpWrongPinException;
+import de.cotech.hw.openpgp.internal.OpenPgpEmulatorTransport;
+import de.cotech.hw.openpgp.internal.openpgp.KeyType;
+import de.cotech.hw.openpgp.internal.operations.PsoDecryptOp;
+import de.cotech.hw.openpgp.pairedkey.PairedDecryptor;
+import de.cotech.hw.openpgp.pairedkey.PairedEncryptor;
+import de.cotech.hw.openpgp.pairedkey.PairedSecurityKey;
+import de.cotech.hw.secrets.ByteSecret;
+import de.cotech.hw.secrets.StaticPinProvider;
+import de.cotech.hw.util.Arrays;
+import de.cotech.hw.util.Hex;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+@SuppressWarnings("WeakerAccess")
+public class OpenPgpEmulatorTransportTest {
+    static final byte[] CHALLENGE = Hex.decodeHexOrFail("1a2b3c4d5e6f");
+    static final byte[] SESSION_DATA = Hex.decodeHexOrFail("07000102030405060708090a0b0c0d0e0f0078");
+    static final byte[] USER_KEYING_MATERIAL = Hex.decodeHexOrFail("0c01d4e5f6a7b8c9");
+    static final ByteSecret PIN = ByteSecret.unsafeFromString("123456");
+
+    static KeyPair rsaKeyPair;
+    static KeyPair p256KeyPair;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        // RsaEncryptionUtil uses "RSA/NONE/PKCS1Padding", which the JVM only knows with BouncyCastle
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        rsaKeyPair = generateRsaKeyPair();
+        p256KeyPair = generateP256KeyPair();
+    }
+
+    @Test
+    public void authenticate_rsa2048() throws Exception {
+        OpenPgpEmulatorTransport transport = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.AUTH, rsaKeyPair);
+
+        authenticateAndVerify(connect(transport), rsaKeyPair.getPublic(), "SHA256withRSA");
+    }
+
+    @Test
+    public void authenticate_p256() throws Exception {
+        OpenPgpEmulatorTransport transport = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.AUTH, p256KeyPair);
+
+        authenticateAndVerify(connect(transport), p256KeyPair.getPublic(), "SHA256withECDSA");
+    }
+
+    @Test
+    public void decryptSessionSecret_paired() throws Exception {
+        OpenPgpEmulatorTransport transport = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.ENCRYPT, rsaKeyPair);
+        OpenPgpSecurityKey securityKey = connect(transport);
+        PairedSecurityKey pairedSecurityKey = createPairedSecurityKey(transport, rsaKeyPair.getPublic());
+
+        byte[] encryptedSecret = new PairedEncryptor(pairedSecurityKey)
+                .encrypt(ByteSecret.unsafeFromString("session secret"));
+        ByteSecret secret = new PairedDecryptor(securityKey, StaticPinProvider.getInstance(PIN), pairedSecurityKey)
+                .decryptSessionSecret(encryptedSecret);
+
+        assertTrue(secret.equals(ByteSecret.unsafeFromString("session secret")));
+    }
+
+    @Test
+    public void decryptSessionKey_rsa2048_withChaining() throws Exception {
+        OpenPgpEmulatorTransport transport = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.ENCRYPT, rsaKeyPair)
+                .setExtendedLengthSupported(false);
+        OpenPgpSecurityKey securityKey = connect(transport);
+
+        byte[] encryptedSessionKeyMpi = encryptSessionKeyRsa(rsaKeyPair.getPublic(), SESSION_DATA);
+        byte[] sessionData = PsoDecryptOp.create(securityKey.openPgpAppletConnection)
+                .verifyAndDecryptSessionKey(PIN, encryptedSessionKeyMpi, 128, USER_KEYING_MATERIAL);
+
+        assertArrayEquals(SESSION_DATA, sessionData);
+    }
+
+    @Test
+    public void decryptSessionKey_ecdhP256() throws Exception {
+        OpenPgpEmulatorTransport transport = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.ENCRYPT, p256KeyPair);
+        OpenPgpSecurityKey securityKey = connect(transport);
+
+        byte[] encryptedSessionKeyMpi =
+                encryptSessionKeyEcdh(p256KeyPair.getPublic(), SESSION_DATA, USER_KEYING_MATERIAL);
+        byte[] sessionData = PsoDecryptOp.create(securityKey.openPgpAppletConnection)
+                .verifyAndDecryptSessionKey(PIN, encryptedSessionKeyMpi, 128, USER_KEYING_MATERIAL);
+
+        assertArrayEquals(SESSION_DATA, sessionData);
+    }
+
+    @Test
+    public void authenticate_wrongPin() throws Exception {
+        OpenPgpEmulatorTransport transport = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.AUTH, p256KeyPair);
+        OpenPgpSecurityKey securityKey = connect(transport);
+
+        try {
+            securityKey.createSecurityKeyAuthenticator(
+                    StaticPinProvider.getInstance(ByteSecret.unsafeFromString("654321")))
+                    .authenticatePresignedDigest(MessageDigest.getInstance("SHA-256").digest(CHALLENGE), "SHA-256");
+            fail();
+        } catch (OpenPgpWrongPinException e) {
+            assertEquals(2, e.getPinRetriesLeft());
+            assertEquals(2, transport.getPinRetries());
+        }
+    }
+
+    static OpenPgpSecurityKey connect(Transport transport) throws Exception {
+        return OpenPgpSecurityKeyConnectionMode.getInstance().establishSecurityKeyConnection(
+                new SecurityKeyManagerConfig.Builder().build(), transport);
+    }
+
+    static void authenticateAndVerify(OpenPgpSecurityKey securityKey, PublicKey publicKey,
+            String signatureAlgorithm) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(CHALLENGE);
+        byte[] signatureBytes = securityKey.createSecurityKeyAuthenticator(StaticPinProvider.getInstance(PIN))
+                .authenticatePresignedDigest(digest, "SHA-256");
+
+        Signature signature = Signature.getInstance(signatureAlgorithm);
+        signature.initVerify(publicKey);
+        signature.update(CHALLENGE);
+        assertTrue(signature.verify(signatureBytes));
+    }
+
+    static PairedSecurityKey createPairedSecurityKey(OpenPgpEmulatorTransport transport, PublicKey encryptPublicKey) {
+        return new PairedSecurityKey(transport.getAid(),
+                transport.getFingerprint(KeyType.ENCRYPT), encryptPublicKey, null, null, null, null);
+    }
+
+    static KeyPair generateRsaKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    static KeyPair generateP256KeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    /** Encrypts session data as an OpenPGP RSA MPI, see RFC 4880, 5.1. */
+    static byte[] encryptSessionKeyRsa(PublicKey publicKey, byte[] sessionData) throws Exception {
+        Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+        return encodeMpi(cipher.doFinal(sessionData));
+    }
+
+    /** Encrypts session data as OpenPGP ECDH ephemeral point and wrapped key, see RFC 6637, 8. */
+    static byte[] encryptSessionKeyEcdh(PublicKey publicKey, byte[] sessionData, byte[] userKeyingMaterial)
+            throws Exception {
+        KeyPair ephemeralKeyPair = generateP256KeyPair();
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+        keyAgreement.init(ephemeralKeyPair.getPrivate());
+        keyAgreement.doPhase(publicKey, true);
+
+        MessageDigest kdf = MessageDigest.getInstance("SHA-256");
+        kdf.update(new byte[] { 0, 0, 0, 1 });
+        kdf.update(keyAgreement.generateSecret());
+        kdf.update(userKeyingMaterial);
+        byte[] kek = kdf.digest();
+
+        int padLength = 8 - (sessionData.length % 8);
+        byte[] paddedSessionData = Arrays.copyOf(sessionData, sessionData.length + padLength);
+        Arrays.fill(paddedSessionData, sessionData.length, paddedSessionData.length, (byte) padLength);
+
+        Cipher cipher = Cipher.getInstance("AESWrap");
+        cipher.init(Cipher.WRAP_MODE, new SecretKeySpec(kek, 0, 16, "AES"));
+        byte[] wrappedKey = cipher.wrap(new SecretKeySpec(paddedSessionData, "AES"));
+
+        ECPublicKey ephemeralPublicKey = (ECPublicKey) ephemeralKeyPair.getPublic();
+        byte[] encodedPoint = Arrays.concatenate(new byte[] { 0x04 },
+                toFixedLength(ephemeralPublicKey.getW().getAffineX(), 32),
+                toFixedLength(ephemeralPublicKey.getW().getAffineY(), 32));
+
+        return Arrays.concatenate(encodeMpi(encodedPoint), new byte[] { (byte) wrappedKey.length }, wrappedKey);
+    }
+
+    private static byte[] encodeMpi(byte[] value) {
+        int bitLength = new BigInteger(1, value).bitLength();
+        return Arrays.concatenate(new byte[] { (byte) (bitLength >> 8), (byte) bitLength }, value);
+    }
+
+    private static byte[] toFixedLength(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        byte[] result = new byte[length];
+        int copyLength = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copyLength, result, length - copyLength, copyLength);
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.openpgp;
+
+
+import java.io.IOException;
+import java.security.MessageDigest;
+
+import de.cotech.hw.exceptions.SecurityKeyDisconnectedException;
+import de.cotech.hw.internal.transport.FaultInjectingTransport;
+import de.cotech.hw.openpgp.internal.OpenPgpEmulatorTransport;
+import de.cotech.hw.openpgp.internal.openpgp.KeyType;
+import de.cotech.hw.openpgp.internal.operations.PsoDecryptOp;
+import de.cotech.hw.secrets.StaticPinProvider;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.CHALLENGE;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.PIN;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.SESSION_DATA;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.USER_KEYING_MATERIAL;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.authenticateAndVerify;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.connect;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.encryptSessionKeyRsa;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.p256KeyPair;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.rsaKeyPair;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Checks that {@link de.cotech.hw.openpgp.internal.OpenPgpAppletConnection} handles the faults injected by
+ * {@link FaultInjectingTransport} without sending the card more commands than necessary.
+ */
+@SuppressWarnings("WeakerAccess")
+public class OpenPgpFaultInjectionTest {
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        OpenPgpEmulatorTransportTest.generateKeys();
+    }
+
+    @Test
+    public void authenticate_withSplitResponses() throws Exception {
+        int expectedCardCommands = countCardCommandsForAuthenticate();
+        OpenPgpEmulatorTransport emulator = createRsaEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .setSplitResponseChunkSize(16);
+
+        authenticateAndVerify(connect(transport), rsaKeyPair.getPublic(), "SHA256withRSA");
+
+        assertTrue(transport.getInjectedFaultCount() > 0);
+        assertEquals(expectedCardCommands, emulator.getTransceiveCount());
+    }
+
+    @Test
+    public void authenticate_withExactLengthRequired() throws Exception {
+        int expectedCardCommands = countCardCommandsForAuthenticate();
+        OpenPgpEmulatorTransport emulator = createRsaEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .setExactLengthRequired(true);
+
+        authenticateAndVerify(connect(transport), rsaKeyPair.getPublic(), "SHA256withRSA");
+
+        assertTrue(transport.getInjectedFaultCount() > 0);
+        assertEquals(expectedCardCommands, emulator.getTransceiveCount());
+    }
+
+    @Test
+    public void authenticate_withLatency() throws Exception {
+        int expectedCardCommands = countCardCommandsForAuthenticate();
+        OpenPgpEmulatorTransport emulator = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.AUTH, p256KeyPair);
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .setLatencyMs(2)
+                .keepaliveStormAt(expectedCardCommands - 1, 10, 5);
+
+        authenticateAndVerify(connect(transport), p256KeyPair.getPublic(), "SHA256withECDSA");
+
+        assertEquals(expectedCardCommands, emulator.getTransceiveCount());
+    }
+
+    @Test
+    public void authenticate_disconnectDuringSignature_thenReconnect() throws Exception {
+        int expectedCardCommands = countCardCommandsForAuthenticate();
+        OpenPgpEmulatorTransport emulator = createRsaEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .disconnectAt(expectedCardCommands - 1);
+
+        try {
+            authenticateAndVerify(connect(transport), rsaKeyPair.getPublic(), "SHA256withRSA");
+            fail();
+        } catch (SecurityKeyDisconnectedException e) {
+            // expected
+        }
+        assertEquals(expectedCardCommands - 1, emulator.getTransceiveCount());
+        assertEquals(3, emulator.getPinRetries());
+
+        transport.connect();
+        authenticateAndVerify(connect(transport), rsaKeyPair.getPublic(), "SHA256withRSA");
+    }
+
+    @Test
+    public void connect_withTruncatedResponse_releasesTransport() throws Exception {
+        OpenPgpEmulatorTransport emulator = createRsaEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .truncateResponseAt(1, 1);
+
+        try {
+            connect(transport);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(2, emulator.getTransceiveCount());
+        assertTrue(emulator.isReleased());
+    }
+
+    @Test
+    public void decryptSessionKey_withChainingAndSplitResponses() throws Exception {
+        OpenPgpEmulatorTransport emulator = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.ENCRYPT, rsaKeyPair)
+                .setExtendedLengthSupported(false);
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .setSplitResponseChunkSize(8)
+                .setLatencyMs(1);
+        OpenPgpSecurityKey securityKey = connect(transport);
+
+        byte[] encryptedSessionKeyMpi = encryptSessionKeyRsa(rsaKeyPair.getPublic(), SESSION_DATA);
+        byte[] sessionData = PsoDecryptOp.create(securityKey.openPgpAppletConnection)
+                .verifyAndDecryptSessionKey(PIN, encryptedSessionKeyMpi, 128, USER_KEYING_MATERIAL);
+
+        assertArrayEquals(SESSION_DATA, sessionData);
+        assertTrue(transport.getInjectedFaultCount() > 0);
+    }
+
+    static OpenPgpEmulatorTransport createRsaEmulator() {
+        return OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.AUTH, rsaKeyPair);
+    }
+
+    static int countCardCommandsForAuthenticate() throws Exception {
+        OpenPgpEmulatorTransport emulator = createRsaEmulator();
+        connect(emulator)
+                .createSecurityKeyAuthenticator(StaticPinProvider.getInstance(PIN))
+                .authenticatePresignedDigest(MessageDigest.getInstance("SHA-256").digest(CHALLENGE), "SHA-256");
+        return emulator.getTransceiveCount();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.openpgp;
+
+
+import java.security.KeyPair;
+import java.security.MessageDigest;
+
+import de.cotech.hw.SecurityKeyAuthenticator;
+import de.cotech.hw.internal.benchmark.ThroughputBenchmark;
+import de.cotech.hw.openpgp.internal.OpenPgpEmulatorTransport;
+import de.cotech.hw.openpgp.internal.openpgp.KeyType;
+import de.cotech.hw.openpgp.internal.operations.PsoDecryptOp;
+import de.cotech.hw.openpgp.pairedkey.PairedDecryptor;
+import de.cotech.hw.openpgp.pairedkey.PairedEncryptor;
+import de.cotech.hw.openpgp.pairedkey.PairedSecurityKey;
+import de.cotech.hw.secrets.ByteSecret;
+import de.cotech.hw.secrets.PinProvider;
+import de.cotech.hw.secrets.StaticPinProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.CHALLENGE;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.PIN;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.SESSION_DATA;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.USER_KEYING_MATERIAL;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.connect;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.createPairedSecurityKey;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.encryptSessionKeyEcdh;
+import static de.cotech.hw.openpgp.OpenPgpEmulatorTransportTest.encryptSessionKeyRsa;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * End-to-end throughput of OpenPGP operations against {@link OpenPgpEmulatorTransport}, see
+ * {@link ThroughputBenchmark}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class OpenPgpThroughputBenchmarkTest {
+    static final PinProvider PIN_PROVIDER = StaticPinProvider.getInstance(PIN);
+
+    @Before
+    public void setup() throws Exception {
+        assumeTrue(ThroughputBenchmark.isEnabled());
+        OpenPgpEmulatorTransportTest.generateKeys();
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        ThroughputBenchmark benchmark = ThroughputBenchmark.create("openpgp");
+        KeyPair rsaKeyPair = OpenPgpEmulatorTransportTest.rsaKeyPair;
+        KeyPair p256KeyPair = OpenPgpEmulatorTransportTest.p256KeyPair;
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(CHALLENGE);
+
+        SecurityKeyAuthenticator rsaAuthenticator = connect(OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.AUTH, rsaKeyPair)).createSecurityKeyAuthenticator(PIN_PROVIDER);
+        benchmark.measure("openpgp.sign.rsa2048",
+                () -> rsaAuthenticator.authenticatePresignedDigest(digest, "SHA-256"));
+
+        SecurityKeyAuthenticator p256Authenticator = connect(OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.AUTH, p256KeyPair)).createSecurityKeyAuthenticator(PIN_PROVIDER);
+        benchmark.measure("openpgp.sign.p256",
+                () -> p256Authenticator.authenticatePresignedDigest(digest, "SHA-256"));
+
+        PsoDecryptOp rsaDecryptOp = PsoDecryptOp.create(connect(OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.ENCRYPT, rsaKeyPair)).openPgpAppletConnection);
+        byte[] rsaSessionKeyMpi = encryptSessionKeyRsa(rsaKeyPair.getPublic(), SESSION_DATA);
+        benchmark.measure("openpgp.decrypt.rsa2048",
+                () -> rsaDecryptOp.verifyAndDecryptSessionKey(PIN, rsaSessionKeyMpi, 128, USER_KEYING_MATERIAL));
+
+        PsoDecryptOp ecdhDecryptOp = PsoDecryptOp.create(connect(OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.ENCRYPT, p256KeyPair)).openPgpAppletConnection);
+        byte[] ecdhSessionKeyMpi =
+                encryptSessionKeyEcdh(p256KeyPair.getPublic(), SESSION_DATA, USER_KEYING_MATERIAL);
+        benchmark.measure("openpgp.decrypt.ecdhP256",
+                () -> ecdhDecryptOp.verifyAndDecryptSessionKey(PIN, ecdhSessionKeyMpi, 128, USER_KEYING_MATERIAL));
+
+        OpenPgpEmulatorTransport pairedTransport = OpenPgpEmulatorTransport.create()
+                .setKey(KeyType.ENCRYPT, rsaKeyPair);
+        PairedSecurityKey pairedSecurityKey = createPairedSecurityKey(pairedTransport, rsaKeyPair.getPublic());
+        PairedDecryptor pairedDecryptor = new PairedDecryptor(connect(pairedTransport), PIN_PROVIDER, pairedSecurityKey);
+        byte[] encryptedSessionSecret = new PairedEncryptor(pairedSecurityKey)
+                .encrypt(ByteSecret.unsafeFromString("session secret"));
+        benchmark.measure("openpgp.pairedDecryptor.decryptSessionSecret",
+                () -> pairedDecryptor.decryptSessionSecret(encryptedSessionSecret).removeFromMemory());
+
+        benchmark.writeReport();
+    }
+}
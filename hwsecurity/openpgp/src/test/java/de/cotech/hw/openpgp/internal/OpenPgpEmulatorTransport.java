@@ -0,0 +1,563 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.openpgp.internal;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.EnumMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+
+import androidx.annotation.Nullable;
+import de.cotech.hw.exceptions.AppletFileNotFoundException;
+import de.cotech.hw.exceptions.ClaNotSupportedException;
+import de.cotech.hw.exceptions.ConditionsNotSatisfiedException;
+import de.cotech.hw.exceptions.InsNotSupportedException;
+import de.cotech.hw.exceptions.WrongDataException;
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.iso7816.Iso7816TLV;
+import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.SecurityKeyInfo.SecurityKeyType;
+import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.openpgp.exceptions.OpenPgpLockedException;
+import de.cotech.hw.openpgp.exceptions.OpenPgpWrongPinException;
+import de.cotech.hw.openpgp.internal.openpgp.KeyType;
+import de.cotech.hw.util.Arrays;
+import de.cotech.hw.util.Hex;
+
+
+/**
+ * A software OpenPGP card, speaking the subset of the OpenPGP card specification 3.4 used by
+ * {@link OpenPgpAppletConnection} for everyday operations.
+ * <p>
+ * Supported are SELECT, GET DATA for the application and cardholder related data, VERIFY, GET RESPONSE, command
+ * chaining, PSO:DECIPHER with RSA and NIST P-256 ECDH keys, and INTERNAL AUTHENTICATE with RSA and P-256 ECDSA keys.
+ * Key generation, key import and secure messaging are not emulated. Like a physical card, a single instance
+ * processes one APDU at a time, so for parallel load tests each simulated session should get its own instance.
+ */
+@SuppressWarnings("WeakerAccess")
+public class OpenPgpEmulatorTransport implements Transport {
+    private static final byte[] AID_PREFIX_OPENPGP = Hex.decodeHexOrFail("D27600012401");
+    private static final byte[] DEFAULT_AID = Hex.decodeHexOrFail("D2760001240103040006123456780000");
+    private static final byte[] OID_P256 = Hex.decodeHexOrFail("2A8648CE3D030107");
+
+    private static final int SW_SUCCESS = 0x9000;
+    private static final int SW1_RESPONSE_AVAILABLE = 0x61;
+    private static final int SW_INCORRECT_P1P2 = 0x6A86;
+    private static final int SW_REFERENCED_DATA_NOT_FOUND = 0x6A88;
+
+    private static final int MASK_CLA_CHAINING = 1 << 4;
+    private static final int CAPABILITY_CHAINING = 1 << 7;
+    private static final int CAPABILITY_EXTENDED = 1 << 6;
+
+    private static final int INS_SELECT_FILE = 0xA4;
+    private static final int INS_GET_DATA = 0xCA;
+    private static final int INS_VERIFY = 0x20;
+    private static final int INS_PERFORM_SECURITY_OPERATION = 0x2A;
+    private static final int INS_INTERNAL_AUTHENTICATE = 0x88;
+    private static final int INS_GET_RESPONSE = 0xC0;
+
+    private static final int P1P2_PSO_DECIPHER = 0x8086;
+    private static final int P2_VERIFY_PW1_SIGN = 0x81;
+    private static final int P2_VERIFY_PW1_OTHER = 0x82;
+    private static final int P2_VERIFY_PW3 = 0x83;
+
+    private static final int DO_APPLICATION_RELATED_DATA = 0x006E;
+    private static final int DO_CARDHOLDER_RELATED_DATA = 0x0065;
+    private static final int DO_URL = 0x5F50;
+
+    private static final int ALGORITHM_RSA = 0x01;
+    private static final int ALGORITHM_ECDH = 0x12;
+    private static final int ALGORITHM_ECDSA = 0x13;
+
+    private static final int MAX_PW1_RETRIES = 3;
+    private static final int MAX_PW3_RETRIES = 3;
+
+    private final EnumMap<KeyType, KeyPair> keys = new EnumMap<>(KeyType.class);
+
+    private TransportType transportType = TransportType.USB_CCID;
+    private boolean isExtendedLengthSupported = true;
+    private long apduLatencyMs;
+    private long cryptoLatencyMs;
+
+    private byte[] pw1 = "123456".getBytes();
+    private byte[] pw3 = "12345678".getBytes();
+    private int pw1Retries = MAX_PW1_RETRIES;
+    private int pw3Retries = MAX_PW3_RETRIES;
+
+    private boolean isReleased;
+    private boolean isAppletSelected;
+    private boolean isPw1ValidatedForSignature;
+    private boolean isPw1ValidatedForOther;
+    private int transceiveCount;
+
+    private ByteArrayOutputStream chainedCommandData;
+    private byte[] pendingResponse;
+    private int pendingResponseOffset;
+
+    public static OpenPgpEmulatorTransport create() {
+        return new OpenPgpEmulatorTransport();
+    }
+
+    private OpenPgpEmulatorTransport() {
+    }
+
+    /**
+     * Puts a key pair into a key slot. RSA keys may be used in all slots, P-256 keys are announced as ECDH for
+     * {@link KeyType#ENCRYPT}, and as ECDSA otherwise.
+     */
+    public synchronized OpenPgpEmulatorTransport setKey(KeyType keyType, KeyPair keyPair) {
+        keys.put(keyType, keyPair);
+        return this;
+    }
+
+    public synchronized OpenPgpEmulatorTransport setPin(String pin) {
+        pw1 = pin.getBytes();
+        pw1Retries = MAX_PW1_RETRIES;
+        return this;
+    }
+
+    public synchronized OpenPgpEmulatorTransport setPuk(String puk) {
+        pw3 = puk.getBytes();
+        pw3Retries = MAX_PW3_RETRIES;
+        return this;
+    }
+
+    /**
+     * If disabled, the card announces command chaining only, so that long commands are chained and long responses
+     * are returned with 61xx and GET RESPONSE.
+     */
+    public synchronized OpenPgpEmulatorTransport setExtendedLengthSupported(boolean isExtendedLengthSupported) {
+        this.isExtendedLengthSupported = isExtendedLengthSupported;
+        return this;
+    }
+
+    /** Artificial delay that is added to every transceived APDU, to simulate transport round trips. */
+    public synchronized OpenPgpEmulatorTransport setApduLatencyMs(long apduLatencyMs) {
+        this.apduLatencyMs = apduLatencyMs;
+        return this;
+    }
+
+    /** Artificial delay that is added to every private key operation, to simulate on-card crypto time. */
+    public synchronized OpenPgpEmulatorTransport setCryptoLatencyMs(long cryptoLatencyMs) {
+        this.cryptoLatencyMs = cryptoLatencyMs;
+        return this;
+    }
+
+    public synchronized OpenPgpEmulatorTransport setTransportType(TransportType transportType) {
+        this.transportType = transportType;
+        return this;
+    }
+
+    /** Returns the fingerprint the card reports for a key slot, or null if the slot is empty. */
+    @Nullable
+    public synchronized byte[] getFingerprint(KeyType keyType) {
+        KeyPair keyPair = keys.get(keyType);
+        if (keyPair == null) {
+            return null;
+        }
+        try {
+            // not a v4 fingerprint, but unique per key which is all the library cares about
+            return MessageDigest.getInstance("SHA-1").digest(keyPair.getPublic().getEncoded());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] getAid() {
+        return DEFAULT_AID.clone();
+    }
+
+    public synchronized int getTransceiveCount() {
+        return transceiveCount;
+    }
+
+    public synchronized int getPinRetries() {
+        return pw1Retries;
+    }
+
+    @Override
+    public synchronized ResponseApdu transceive(CommandApdu commandApdu) throws IOException {
+        if (isReleased) {
+            throw new IOException("Transport has been released!");
+        }
+        transceiveCount++;
+        sleepMs(apduLatencyMs);
+
+        if (commandApdu.getINS() == INS_GET_RESPONSE) {
+            return continuePendingResponse(commandApdu.getNe());
+        }
+        pendingResponse = null;
+
+        if ((commandApdu.getCLA() & ~MASK_CLA_CHAINING) != 0) {
+            return ResponseApdu.create(ClaNotSupportedException.SW_CLA_NOT_SUPPORTED, new byte[0]);
+        }
+
+        byte[] data = commandApdu.getData();
+        if ((commandApdu.getCLA() & MASK_CLA_CHAINING) != 0) {
+            if (chainedCommandData == null) {
+                chainedCommandData = new ByteArrayOutputStream();
+            }
+            chainedCommandData.write(data);
+            return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+        }
+        if (chainedCommandData != null) {
+            chainedCommandData.write(data);
+            data = chainedCommandData.toByteArray();
+            chainedCommandData = null;
+        }
+
+        ResponseApdu response = processCommand(commandApdu, data);
+        if (!response.isSuccess() || response.getData().length <= commandApdu.getNe()) {
+            return response;
+        }
+
+        pendingResponse = response.getData();
+        pendingResponseOffset = 0;
+        return continuePendingResponse(commandApdu.getNe());
+    }
+
+    private ResponseApdu processCommand(CommandApdu commandApdu, byte[] data) {
+        if (commandApdu.getINS() == INS_SELECT_FILE) {
+            return processSelect(data);
+        }
+        if (!isAppletSelected) {
+            return ResponseApdu.create(InsNotSupportedException.SW_INS_NOT_SUPPORTED, new byte[0]);
+        }
+
+        switch (commandApdu.getINS()) {
+            case INS_GET_DATA:
+                return processGetData((commandApdu.getP1() << 8) | commandApdu.getP2());
+            case INS_VERIFY:
+                return processVerify(commandApdu.getP2(), data);
+            case INS_PERFORM_SECURITY_OPERATION:
+                return processPerformSecurityOperation((commandApdu.getP1() << 8) | commandApdu.getP2(), data);
+            case INS_INTERNAL_AUTHENTICATE:
+                return processInternalAuthenticate(data);
+            default:
+                return ResponseApdu.create(InsNotSupportedException.SW_INS_NOT_SUPPORTED, new byte[0]);
+        }
+    }
+
+    private ResponseApdu processSelect(byte[] aid) {
+        if (aid.length < AID_PREFIX_OPENPGP.length ||
+                !Arrays.areEqual(AID_PREFIX_OPENPGP, Arrays.copyOf(aid, AID_PREFIX_OPENPGP.length))) {
+            isAppletSelected = false;
+            return ResponseApdu.create(AppletFileNotFoundException.SW_FILE_NOT_FOUND, new byte[0]);
+        }
+
+        isAppletSelected = true;
+        isPw1ValidatedForSignature = false;
+        isPw1ValidatedForOther = false;
+        return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+    }
+
+    private ResponseApdu processGetData(int dataObject) {
+        switch (dataObject) {
+            case DO_APPLICATION_RELATED_DATA:
+                return ResponseApdu.create(SW_SUCCESS, encodeApplicationRelatedData());
+            case DO_CARDHOLDER_RELATED_DATA:
+                // name "Emulator", no language preference, sex not announced
+                return ResponseApdu.create(SW_SUCCESS, Iso7816TLV.encode(0x5B, "Emulator".getBytes()));
+            case DO_URL:
+                return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+            default:
+                return ResponseApdu.create(SW_REFERENCED_DATA_NOT_FOUND, new byte[0]);
+        }
+    }
+
+    private byte[] encodeApplicationRelatedData() {
+        int capabilities = CAPABILITY_CHAINING | (isExtendedLengthSupported ? CAPABILITY_EXTENDED : 0);
+        // category indicator, card capabilities in compact TLV, status indicator "operational", processing status
+        byte[] historicalBytes = new byte[] { 0x00, 0x73, 0x00, 0x00, (byte) capabilities, 0x05, (byte) 0x90, 0x00 };
+        // no secure messaging, key import, no GET CHALLENGE, max cardholder cert length 0x0800
+        byte[] extendedCapabilities = Hex.decodeHexOrFail("20000000080000ff0000");
+        byte[] pwStatusBytes = new byte[] { 0x01, 0x7F, 0x7F, 0x7F, (byte) pw1Retries, 0x00, (byte) pw3Retries };
+
+        byte[] fingerprints = new byte[60];
+        for (KeyType keyType : KeyType.values()) {
+            byte[] fingerprint = getFingerprint(keyType);
+            if (fingerprint != null) {
+                System.arraycopy(fingerprint, 0, fingerprints, keyType.getIdx() * 20, 20);
+            }
+        }
+
+        byte[] discretionaryDataObjects = Arrays.concatenate(
+                Iso7816TLV.encode(0xC0, extendedCapabilities),
+                Iso7816TLV.encode(0xC1, encodeAlgorithmAttributes(KeyType.SIGN)),
+                Iso7816TLV.encode(0xC2, encodeAlgorithmAttributes(KeyType.ENCRYPT)),
+                Iso7816TLV.encode(0xC3, encodeAlgorithmAttributes(KeyType.AUTH)),
+                Iso7816TLV.encode(0xC4, pwStatusBytes),
+                Iso7816TLV.encode(0xC5, fingerprints));
+
+        byte[] applicationRelatedData = Arrays.concatenate(
+                Iso7816TLV.encode(0x4F, DEFAULT_AID),
+                Arrays.concatenate(Hex.decodeHexOrFail("5F52"),
+                        Iso7816TLV.encodeLength(historicalBytes.length), historicalBytes),
+                Iso7816TLV.encode(0x73, discretionaryDataObjects));
+        return Iso7816TLV.encode(0x6E, applicationRelatedData);
+    }
+
+    private byte[] encodeAlgorithmAttributes(KeyType keyType) {
+        KeyPair keyPair = keys.get(keyType);
+        if (keyPair != null && keyPair.getPrivate() instanceof ECPrivateKey) {
+            int algorithm = keyType == KeyType.ENCRYPT ? ALGORITHM_ECDH : ALGORITHM_ECDSA;
+            return Arrays.prepend(OID_P256, (byte) algorithm);
+        }
+
+        int modulusBits = 2048;
+        if (keyPair != null) {
+            modulusBits = ((RSAPrivateKey) keyPair.getPrivate()).getModulus().bitLength();
+        }
+        // RSA, 32 bit public exponent, standard import format
+        return new byte[] { ALGORITHM_RSA, (byte) (modulusBits >> 8), (byte) modulusBits, 0x00, 0x20, 0x00 };
+    }
+
+    private ResponseApdu processVerify(int p2, byte[] data) {
+        if (p2 == P2_VERIFY_PW3) {
+            if (pw3Retries == 0) {
+                return ResponseApdu.create(OpenPgpLockedException.SW_OPENPGP_LOCKED, new byte[0]);
+            }
+            if (!Arrays.constantTimeAreEqual(pw3, data)) {
+                pw3Retries--;
+                return ResponseApdu.create(OpenPgpWrongPinException.SW_WRONG_PIN, new byte[0]);
+            }
+            pw3Retries = MAX_PW3_RETRIES;
+            return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+        }
+        if (p2 != P2_VERIFY_PW1_SIGN && p2 != P2_VERIFY_PW1_OTHER) {
+            return ResponseApdu.create(SW_INCORRECT_P1P2, new byte[0]);
+        }
+
+        if (pw1Retries == 0) {
+            return ResponseApdu.create(OpenPgpLockedException.SW_OPENPGP_LOCKED, new byte[0]);
+        }
+        if (!Arrays.constantTimeAreEqual(pw1, data)) {
+            pw1Retries--;
+            return ResponseApdu.create(OpenPgpWrongPinException.SW_WRONG_PIN, new byte[0]);
+        }
+
+        pw1Retries = MAX_PW1_RETRIES;
+        if (p2 == P2_VERIFY_PW1_SIGN) {
+            isPw1ValidatedForSignature = true;
+        } else {
+            isPw1ValidatedForOther = true;
+        }
+        return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+    }
+
+    private ResponseApdu processPerformSecurityOperation(int p1p2, byte[] data) {
+        if (p1p2 != P1P2_PSO_DECIPHER) {
+            return ResponseApdu.create(SW_INCORRECT_P1P2, new byte[0]);
+        }
+        KeyPair keyPair = keys.get(KeyType.ENCRYPT);
+        if (keyPair == null) {
+            return ResponseApdu.create(SW_REFERENCED_DATA_NOT_FOUND, new byte[0]);
+        }
+        if (!isPw1ValidatedForOther) {
+            return ResponseApdu.create(OpenPgpWrongPinException.SW_WRONG_PIN, new byte[0]);
+        }
+
+        sleepMs(cryptoLatencyMs);
+
+        try {
+            if (keyPair.getPrivate() instanceof RSAPrivateKey) {
+                if (data.length == 0 || data[0] != 0x00) {
+                    return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+                }
+                Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+                cipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate());
+                return ResponseApdu.create(SW_SUCCESS, cipher.doFinal(data, 1, data.length - 1));
+            }
+
+            // A6 { 7F49 { 86 <ephemeral public point> } }
+            Iso7816TLV cipherDo = Iso7816TLV.readSingle(data, true);
+            Iso7816TLV externalPublicKey = Iso7816TLV.findRecursive(cipherDo, 0x86);
+            if (cipherDo.mT != 0xA6 || externalPublicKey == null) {
+                return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+            }
+            return ResponseApdu.create(SW_SUCCESS,
+                    calculateEcdhSharedSecret((ECPrivateKey) keyPair.getPrivate(), externalPublicKey.mV));
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+        }
+    }
+
+    private ResponseApdu processInternalAuthenticate(byte[] data) {
+        KeyPair keyPair = keys.get(KeyType.AUTH);
+        if (keyPair == null) {
+            return ResponseApdu.create(SW_REFERENCED_DATA_NOT_FOUND, new byte[0]);
+        }
+        if (!isPw1ValidatedForOther) {
+            return ResponseApdu.create(OpenPgpWrongPinException.SW_WRONG_PIN, new byte[0]);
+        }
+
+        sleepMs(cryptoLatencyMs);
+
+        try {
+            if (keyPair.getPrivate() instanceof RSAPrivateKey) {
+                // the host sends a complete DigestInfo, the card adds PKCS#1 v1.5 block type 1 padding
+                Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+                cipher.init(Cipher.ENCRYPT_MODE, keyPair.getPrivate());
+                return ResponseApdu.create(SW_SUCCESS, cipher.doFinal(data));
+            }
+
+            Signature signature = Signature.getInstance("NONEwithECDSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(data);
+            return ResponseApdu.create(SW_SUCCESS, derToPlainSignature(signature.sign(), 32));
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+        }
+    }
+
+    private ResponseApdu continuePendingResponse(int ne) {
+        if (pendingResponse == null) {
+            return ResponseApdu.create(ConditionsNotSatisfiedException.SW_CONDITIONS_NOT_SATISFIED, new byte[0]);
+        }
+
+        int chunkLength = Math.min(ne, pendingResponse.length - pendingResponseOffset);
+        byte[] chunk = Arrays.copyOfRange(pendingResponse, pendingResponseOffset, pendingResponseOffset + chunkLength);
+        pendingResponseOffset += chunkLength;
+
+        int remaining = pendingResponse.length - pendingResponseOffset;
+        if (remaining == 0) {
+            pendingResponse = null;
+            return ResponseApdu.create(SW_SUCCESS, chunk);
+        }
+        return ResponseApdu.create((SW1_RESPONSE_AVAILABLE << 8) | Math.min(remaining, 0xFF), chunk);
+    }
+
+    private static byte[] calculateEcdhSharedSecret(ECPrivateKey privateKey, byte[] encodedPoint)
+            throws GeneralSecurityException {
+        int fieldLength = (privateKey.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+        if (encodedPoint.length != 1 + 2 * fieldLength || encodedPoint[0] != 0x04) {
+            throw new GeneralSecurityException("Only uncompressed points are supported");
+        }
+        BigInteger x = new BigInteger(1, Arrays.copyOfRange(encodedPoint, 1, 1 + fieldLength));
+        BigInteger y = new BigInteger(1, Arrays.copyOfRange(encodedPoint, 1 + fieldLength, encodedPoint.length));
+
+        ECParameterSpec params = privateKey.getParams();
+        PublicKey publicKey = KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(new ECPoint(x, y), params));
+
+        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+        keyAgreement.init(privateKey);
+        keyAgreement.doPhase(publicKey, true);
+        return keyAgreement.generateSecret();
+    }
+
+    private static byte[] derToPlainSignature(byte[] derSignature, int fieldLength) throws IOException {
+        Iso7816TLV sequence = Iso7816TLV.readSingle(derSignature, true);
+        if (!(sequence instanceof Iso7816TLV.Iso7816CompositeTLV)) {
+            throw new IOException("Bad signature encoding");
+        }
+        Iso7816TLV[] integers = ((Iso7816TLV.Iso7816CompositeTLV) sequence).mSubs;
+
+        byte[] result = new byte[2 * fieldLength];
+        for (int i = 0; i < 2; i++) {
+            byte[] value = new BigInteger(1, integers[i].mV).toByteArray();
+            int start = value.length > fieldLength ? value.length - fieldLength : 0;
+            int length = value.length - start;
+            System.arraycopy(value, start, result, (i + 1) * fieldLength - length, length);
+        }
+        return result;
+    }
+
+    private static void sleepMs(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        isReleased = true;
+        isAppletSelected = false;
+        isPw1ValidatedForSignature = false;
+        isPw1ValidatedForOther = false;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return !isReleased;
+    }
+
+    @Override
+    public synchronized boolean isReleased() {
+        return isReleased;
+    }
+
+    @Override
+    public boolean isPersistentConnectionAllowed() {
+        return transportType != TransportType.NFC;
+    }
+
+    @Override
+    public synchronized boolean isExtendedLengthSupported() {
+        return isExtendedLengthSupported;
+    }
+
+    @Override
+    public synchronized void connect() {
+        isReleased = false;
+    }
+
+    @Override
+    public synchronized boolean ping() {
+        return !isReleased;
+    }
+
+    @Override
+    public synchronized TransportType getTransportType() {
+        return transportType;
+    }
+
+    @Nullable
+    @Override
+    public SecurityKeyType getSecurityKeyTypeIfAvailable() {
+        return null;
+    }
+}
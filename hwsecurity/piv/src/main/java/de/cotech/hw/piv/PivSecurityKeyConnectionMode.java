@@ -31,6 +31,7 @@ import java.util.Collections;
 import de.cotech.hw.SecurityKey;
 import de.cotech.hw.SecurityKeyConnectionMode;
 import de.cotech.hw.SecurityKeyManagerConfig;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
 import de.cotech.hw.internal.transport.SecurityKeyInfo;
 import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
 import de.cotech.hw.internal.transport.Transport;
@@ -49,8 +50,16 @@ public class PivSecurityKeyConnectionMode extends SecurityKeyConnectionMode<PivS
             return null;
         }
 
-        PivAppletConnection pivAppletConnection = PivAppletConnection.getInstanceForTransport(
-                transport, Collections.singletonList(AID_PREFIX_PIV));
+        PivAppletConnection pivAppletConnection;
+        if (config.isEnableAppletConnectionPool()) {
+            pivAppletConnection = AppletConnectionPool.getInstance().acquire(transport, AID_PREFIX_PIV,
+                    PivAppletConnection.class, pooledTransport -> PivAppletConnection.getInstanceForTransport(
+                            pooledTransport, Collections.singletonList(AID_PREFIX_PIV)));
+        } else {
+            pivAppletConnection = PivAppletConnection.getInstanceForTransport(
+                    transport, Collections.singletonList(AID_PREFIX_PIV));
+        }
+        pivAppletConnection.setOperationSpanListener(config.getOperationSpanListener());
         pivAppletConnection.connectIfNecessary();
 
         return new PivSecurityKey(config, transport, pivAppletConnection);
@@ -26,10 +26,13 @@ package de.cotech.hw.piv.internal;
 
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.RestrictTo.Scope;
 import androidx.annotation.VisibleForTesting;
 import de.cotech.hw.SecurityKeyException;
+import de.cotech.hw.SecurityKeyOperationSpan.SpanType;
+import de.cotech.hw.SecurityKeyOperationSpanListener;
 import de.cotech.hw.exceptions.AppletFileNotFoundException;
 import de.cotech.hw.exceptions.ClaNotSupportedException;
 import de.cotech.hw.exceptions.ConditionsNotSatisfiedException;
@@ -38,6 +41,9 @@ import de.cotech.hw.exceptions.SelectAppletException;
 import de.cotech.hw.internal.iso7816.CommandApdu;
 import de.cotech.hw.internal.iso7816.Iso7816TLV;
 import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
+import de.cotech.hw.internal.transport.AppletConnectionPool.PooledAppletConnection;
+import de.cotech.hw.internal.transport.OperationSpanRecorder;
 import de.cotech.hw.internal.transport.SecurityKeyInfo.SecurityKeyType;
 import de.cotech.hw.internal.transport.Transport;
 import de.cotech.hw.piv.PivKeyReference;
@@ -52,7 +58,7 @@ import java.util.List;
 
 
 @RestrictTo(Scope.LIBRARY_GROUP)
-public class PivAppletConnection {
+public class PivAppletConnection implements PooledAppletConnection {
     private static final int APDU_SW1_RESPONSE_AVAILABLE = 0x61;
     private static final int RESPONSE_SW1_INCORRECT_LENGTH = 0x6c;
 
@@ -61,6 +67,8 @@ public class PivAppletConnection {
     @NonNull
     private final List<byte[]> aidPrefixes;
     private final PivCommandApduFactory commandFactory;
+    @NonNull
+    private OperationSpanRecorder spanRecorder = OperationSpanRecorder.createDisabled();
 
     private SecurityKeyType securityKeyType;
 
@@ -83,6 +91,10 @@ public class PivAppletConnection {
         this.commandFactory = commandFactory;
     }
 
+    public void setOperationSpanListener(@Nullable SecurityKeyOperationSpanListener operationSpanListener) {
+        spanRecorder = OperationSpanRecorder.create(operationSpanListener);
+    }
+
     // region connection management
 
     public void connectIfNecessary() throws IOException {
@@ -113,11 +125,27 @@ public class PivAppletConnection {
         }
     }
 
+    @Override
+    public void reselectApplet() throws IOException {
+        if (connectedAppletAid == null) {
+            return;
+        }
+
+        try {
+            connectedAppletAid = selectFilesFromPrefixOrFail();
+            resetPwState();
+        } catch (IOException e) {
+            connectedAppletAid = null;
+            throw e;
+        }
+    }
+
     public void resetPwState() {
         isVerifyOk = false;
     }
 
     private byte[] selectFilesFromPrefixOrFail() throws IOException {
+        AppletConnectionPool.getInstance().onAppletSelected(transport, this);
         for (byte[] fileAid : aidPrefixes) {
             byte[] initializedAid = selectFileOrReactivateOrFail(fileAid);
             if (initializedAid != null) {
@@ -197,41 +225,65 @@ public class PivAppletConnection {
      * @return response from the card
      */
     public ResponseApdu communicate(CommandApdu commandApdu) throws IOException {
-        ResponseApdu lastResponse;
+        spanRecorder.beginSpan(getSpanTypeForCommand(commandApdu));
+        try {
+            ResponseApdu lastResponse;
 
-        lastResponse = transceiveWithChaining(commandApdu);
-        if (lastResponse.getSw1() == RESPONSE_SW1_INCORRECT_LENGTH && lastResponse.getSw2() != 0) {
-            commandApdu = commandApdu.withNe(lastResponse.getSw2());
             lastResponse = transceiveWithChaining(commandApdu);
+            if (lastResponse.getSw1() == RESPONSE_SW1_INCORRECT_LENGTH && lastResponse.getSw2() != 0) {
+                commandApdu = commandApdu.withNe(lastResponse.getSw2());
+                lastResponse = transceiveWithChaining(commandApdu);
+            }
+            return readChainedResponseIfAvailable(lastResponse);
+        } finally {
+            spanRecorder.endSpan();
+        }
+    }
+
+    private static SpanType getSpanTypeForCommand(CommandApdu commandApdu) {
+        switch (commandApdu.getINS()) {
+            case PivCommandApduFactory.INS_SELECT_FILE:
+                return SpanType.SELECT;
+            case PivCommandApduFactory.INS_VERIFY:
+                return SpanType.VERIFY_PIN;
+            case PivCommandApduFactory.INS_GENERAL_AUTHENTICATE:
+                return SpanType.CRYPTO_OPERATION;
+            default:
+                return SpanType.COMMAND;
         }
-        return readChainedResponseIfAvailable(lastResponse);
     }
 
     @NonNull
     private ResponseApdu transceiveWithChaining(CommandApdu commandApdu) throws IOException {
         // NOTE: Currently always using short APDUs for PIV
         if (commandFactory.isSuitableForSingleShortApdu(commandApdu)) {
-            return transport.transceive(commandApdu.withShortApduNe());
+            return spanRecorder.transceive(transport, commandApdu.withShortApduNe());
         }
-        ResponseApdu lastResponse = null;
 
-        List<CommandApdu> chainedApdus = commandFactory.createChainedApdus(commandApdu);
-        for (int i = 0, totalCommands = chainedApdus.size(); i < totalCommands; i++) {
-            CommandApdu chainedApdu = chainedApdus.get(i);
-            lastResponse = transport.transceive(chainedApdu);
+        spanRecorder.beginSpan(SpanType.CHAINING);
+        try {
+            ResponseApdu lastResponse = null;
+
+            List<CommandApdu> chainedApdus = commandFactory.createChainedApdus(commandApdu);
+            for (int i = 0, totalCommands = chainedApdus.size(); i < totalCommands; i++) {
+                CommandApdu chainedApdu = chainedApdus.get(i);
+                lastResponse = spanRecorder.transceive(transport, chainedApdu);
+
+                boolean isLastCommand = (i == totalCommands - 1);
+                if (!isLastCommand && !lastResponse.isSuccess()) {
+                    throw new IOException("Failed to chain APDU " +
+                            "(" + i + "/" + (totalCommands-1) + ", last SW: " + Integer.toHexString(lastResponse.getSw()) + ")");
+                }
+            }
 
-            boolean isLastCommand = (i == totalCommands - 1);
-            if (!isLastCommand && !lastResponse.isSuccess()) {
-                throw new IOException("Failed to chain APDU " +
-                        "(" + i + "/" + (totalCommands-1) + ", last SW: " + Integer.toHexString(lastResponse.getSw()) + ")");
+            if (lastResponse == null) {
+                throw new IllegalStateException();
             }
-        }
 
-        if (lastResponse == null) {
-            throw new IllegalStateException();
+            return lastResponse;
+        } finally {
+            spanRecorder.endSpan();
         }
-
-        return lastResponse;
     }
 
     @NonNull
@@ -240,20 +292,25 @@ public class PivAppletConnection {
             return lastResponse;
         }
 
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        result.write(lastResponse.getData());
-
-        do {
-            // GET RESPONSE ISO/IEC 7816-4 par.7.6.1
-            CommandApdu getResponse = commandFactory.createGetResponseCommand(lastResponse.getSw2());
-            lastResponse = transport.transceive(getResponse);
+        spanRecorder.beginSpan(SpanType.GET_RESPONSE);
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
             result.write(lastResponse.getData());
-        } while (lastResponse.getSw1() == APDU_SW1_RESPONSE_AVAILABLE);
 
-        result.write(lastResponse.getSw1());
-        result.write(lastResponse.getSw2());
+            do {
+                // GET RESPONSE ISO/IEC 7816-4 par.7.6.1
+                CommandApdu getResponse = commandFactory.createGetResponseCommand(lastResponse.getSw2());
+                lastResponse = spanRecorder.transceive(transport, getResponse);
+                result.write(lastResponse.getData());
+            } while (lastResponse.getSw1() == APDU_SW1_RESPONSE_AVAILABLE);
+
+            result.write(lastResponse.getSw1());
+            result.write(lastResponse.getSw2());
 
-        return ResponseApdu.fromBytes(result.toByteArray());
+            return ResponseApdu.fromBytes(result.toByteArray());
+        } finally {
+            spanRecorder.endSpan();
+        }
     }
 
     // endregion
@@ -41,17 +41,17 @@ public class PivCommandApduFactory {
     private static final int CLA = 0x00;
     private static final int MASK_CLA_CHAINING = 1 << 4;
 
-    private static final int INS_SELECT_FILE = 0xA4;
+    static final int INS_SELECT_FILE = 0xA4;
     private static final int P1_SELECT_FILE = 0x04;
 
-    private static final int INS_GENERAL_AUTHENTICATE = 0x87;
+    static final int INS_GENERAL_AUTHENTICATE = 0x87;
 
     private static final int INS_RESET_RETRY_COUNTER = 0x2C;
     private static final int P2_RESET_RETRY_COUNTER_CARD_APPLICATION_PIN = 0x80;
 
     private static final int INS_GET_RESPONSE = 0xC0;
 
-    private static final int INS_VERIFY = 0x20;
+    static final int INS_VERIFY = 0x20;
     private static final int P2_VERIFY_PW1_SIGN = 0x81;
     private static final int P2_VERIFY_PW1_OTHER = 0x82;
     private static final int P2_VERIFY_PW3 = 0x83;
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.piv;
+
+
+import java.io.IOException;
+
+import de.cotech.hw.SecurityKeyManagerConfig;
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.transport.AppletConnectionPool;
+import de.cotech.hw.internal.transport.AppletConnectionPool.PooledAppletConnection;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.piv.internal.PivEmulatorTransport;
+import de.cotech.hw.util.Hex;
+import org.junit.After;
+import org.junit.Test;
+
+import static de.cotech.hw.piv.PivEmulatorTransportTest.authenticateAndVerify;
+import static de.cotech.hw.piv.PivEmulatorTransportTest.createEmulator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+@SuppressWarnings("WeakerAccess")
+public class PivAppletConnectionPoolTest {
+    static final byte[] AID_OTHER_APPLET = Hex.decodeHexOrFail("D27600012401");
+
+    @After
+    public void tearDown() {
+        AppletConnectionPool.getInstance().evictAll();
+    }
+
+    @Test
+    public void connect_twice_reusesAppletConnection() throws Exception {
+        PivEmulatorTransport emulator = createEmulator();
+        connect(emulator);
+        int transceiveCount = emulator.getTransceiveCount();
+
+        PivSecurityKey pivSecurityKey = connect(emulator);
+
+        assertEquals(transceiveCount, emulator.getTransceiveCount());
+        authenticateAndVerify(pivSecurityKey, PivKeyReference.AUTHENTICATION, "SHA-256", "SHA256withECDSA");
+    }
+
+    @Test
+    public void connect_afterOtherApplet_reselectsApplet() throws Exception {
+        PivEmulatorTransport emulator = createEmulator();
+        connect(emulator);
+        AppletConnectionPool.getInstance().acquire(emulator, AID_OTHER_APPLET,
+                OtherAppletConnection.class, OtherAppletConnection::new);
+        int transceiveCount = emulator.getTransceiveCount();
+
+        PivSecurityKey pivSecurityKey = connect(emulator);
+
+        assertEquals(transceiveCount + 1, emulator.getTransceiveCount());
+        authenticateAndVerify(pivSecurityKey, PivKeyReference.AUTHENTICATION, "SHA-256", "SHA256withECDSA");
+    }
+
+    @Test
+    public void connect_afterRelease_doesNotReuseAppletConnection() throws Exception {
+        PivEmulatorTransport emulator = createEmulator();
+        connect(emulator);
+        emulator.release();
+
+        try {
+            connect(emulator);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        emulator.connect();
+        int transceiveCount = emulator.getTransceiveCount();
+        PivSecurityKey pivSecurityKey = connect(emulator);
+
+        assertEquals(transceiveCount + 1, emulator.getTransceiveCount());
+        authenticateAndVerify(pivSecurityKey, PivKeyReference.AUTHENTICATION, "SHA-256", "SHA256withECDSA");
+    }
+
+    static PivSecurityKey connect(Transport transport) throws Exception {
+        SecurityKeyManagerConfig config = new SecurityKeyManagerConfig.Builder()
+                .setEnableAppletConnectionPool(true)
+                .build();
+        return new PivSecurityKeyConnectionMode().establishSecurityKeyConnection(config, transport);
+    }
+
+    /**
+     * Selects another applet, which makes the card deselect the PIV applet.
+     */
+    static class OtherAppletConnection implements PooledAppletConnection {
+        final Transport transport;
+
+        OtherAppletConnection(Transport transport) throws IOException {
+            this.transport = transport;
+            reselectApplet();
+        }
+
+        @Override
+        public void reselectApplet() throws IOException {
+            transport.transceive(CommandApdu.create(0x00, 0xA4, 0x04, 0x00, AID_OTHER_APPLET));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.piv;
+
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.cotech.hw.SecurityKeyAuthenticator;
+import de.cotech.hw.SecurityKeyManagerConfig;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.piv.exceptions.PivWrongPinException;
+import de.cotech.hw.piv.internal.PivEmulatorTransport;
+import de.cotech.hw.secrets.ByteSecret;
+import de.cotech.hw.secrets.StaticPinProvider;
+import de.cotech.hw.util.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+@SuppressWarnings("WeakerAccess")
+public class PivEmulatorTransportTest {
+    static final byte[] CHALLENGE = Hex.decodeHexOrFail("1a2b3c4d5e6f");
+
+    static final byte[] P256_CERTIFICATE = Hex.decodeHexOrFail("3082019c30820141a003020102021404a83a9a48d7e8b877330aa6752b39f65b99d731300a06082a8648ce3d04030230223120301e06035504030c1750495620456d756c61746f72207072696d6532353676313020170d3236313031393032313231315a180f32313236303932353032313231315a30223120301e06035504030c1750495620456d756c61746f72207072696d6532353676313059301306072a8648ce3d020106082a8648ce3d03010703420004dd4d8e59eedb685b2635328a6a1d0b0d45c7be38544961a873733264b1205a8cc7f07358ff146de6af31c12afc6900f082fe69f52ad8fd568f927751946b3caca3533051301d0603551d0e04160414c6350aa181e22b821e40ca18c82cc96217dad5dc301f0603551d23041830168014c6350aa181e22b821e40ca18c82cc96217dad5dc300f0603551d130101ff040530030101ff300a06082a8648ce3d0403020349003046022100a08ca470738a910c5d1a5acccef889dc8d656e1b12f8c03208d5467fb60be596022100ecc9f785d8a9715926873191e8b49fbad6fa9ab68e07826203652906a2548ced");
+    static final byte[] P256_PRIVATE_KEY = Hex.decodeHexOrFail("308187020100301306072a8648ce3d020106082a8648ce3d030107046d306b02010104202326d9a64386d18c983dfa655d718adbd0c57b1c000e41dfdb02b9432090e075a14403420004dd4d8e59eedb685b2635328a6a1d0b0d45c7be38544961a873733264b1205a8cc7f07358ff146de6af31c12afc6900f082fe69f52ad8fd568f927751946b3cac");
+    static final byte[] P384_CERTIFICATE = Hex.decodeHexOrFail("308201d73082015ca003020102021406e1ee68cbf81cc91c6751d7fb1d419e0df32ff3300a06082a8648ce3d0403023021311f301d06035504030c1650495620456d756c61746f72207365637033383472313020170d3236313031393032313231315a180f32313236303932353032313231315a3021311f301d06035504030c1650495620456d756c61746f72207365637033383472313076301006072a8648ce3d020106052b8104002203620004b2a6261629ef17d32fe901efb1a86e0e24aa4a2a18a57f6423558277dea3f16b3e33496613299bb37bcd648eba3d68d988aec2fd008955b37eee539b7626fb5a17cc4008eb6f06c1a844f1b11d884cda9e2a0ebd2d83c86dd9f62e02e2461866a3533051301d0603551d0e04160414d74af54e0194d6ba3fd98111934910988212180a301f0603551d23041830168014d74af54e0194d6ba3fd98111934910988212180a300f0603551d130101ff040530030101ff300a06082a8648ce3d0403020369003066023100f473f0e4f41cc30cfb86ed8e64e4cc1f3aaf3f9f0b72ffcc206cc898d5663de48c478dccdee1e2d8113b5d7aecb1192c02310091064794dc0442b494b86eaa4fc1f6df0ac050f19bb6d9d5ec15f613cbc567edb71163cb00a8257d4d4f5844c814a95b");
+    static final byte[] P384_PRIVATE_KEY = Hex.decodeHexOrFail("3081b6020100301006072a8648ce3d020106052b8104002204819e30819b020101043006a01d98815b93c5321494478c20aba305b57f8302e14b2498b8b98086b1bd9ae91d3feddadb4f6a99a4b9c20cce9eb2a16403620004b2a6261629ef17d32fe901efb1a86e0e24aa4a2a18a57f6423558277dea3f16b3e33496613299bb37bcd648eba3d68d988aec2fd008955b37eee539b7626fb5a17cc4008eb6f06c1a844f1b11d884cda9e2a0ebd2d83c86dd9f62e02e2461866");
+    static final byte[] RSA_CERTIFICATE = Hex.decodeHexOrFail("3082031930820201a00302010202140b7c814371a9e88b795dbe67e22feea7b12daf7c300d06092a864886f70d01010b0500301b3119301706035504030c1050495620456d756c61746f72205253413020170d3236313031393032313231325a180f32313236303932353032313231325a301b3119301706035504030c1050495620456d756c61746f722052534130820122300d06092a864886f70d01010105000382010f003082010a0282010100c9a974c5e861d4c46e05271f2c28a583c671a704789a37c12889036f9fea05e0fa996bd60728cffb11f65031c89c4786fee6997ff3ccb5e2c886741ca7f59b0ff0829300b64cb25d409a1ab9ca1ffccc060eb9add52930074f3d28a908e72fa01bf1836a05df5e881dab46f9515ef857bebda6942124288f82b8a61cd8210bef4f99b915835d41437a8874cef24083aeaf6139d5d2fea5ea9a44a403bf95b2856ba4e4562dacba4730e7da6454eb82009960a3d379eec7b3a0b42c2b7e09a4211e1d0233abc7e669524980d71d14186623d11521e3b83c26257245b67946c4680447280459b05e2f27ad749e7b3457bdcf4bc645f54a639dd71cfb0d82f7f1a50203010001a3533051301d0603551d0e04160414ef03b1fd8dde6fb774e577dd1382d19aeba6a7b8301f0603551d23041830168014ef03b1fd8dde6fb774e577dd1382d19aeba6a7b8300f0603551d130101ff040530030101ff300d06092a864886f70d01010b050003820101007bd7d93b6bd0b9746adf1c8882159241e50bbef6778ee17d95346d054a32686c32e569dc37057b0c67902d0ca5143b5dda5dca59252f4bb282b9348e16e014257d665dba11c0287a55850bda18db83dcd638c62fdb2f74f0d926ce851113849857db9e05259d3e176d729741a541506a79b35d5f990cb021b85f45f64a4fb23a2aeeb3779543a8c35c5ed0664cf35d777ddfed55fdcab2bdd1859e1c19136572c71198532e7dc4678c86f6f49229a626f2eb32ab7d6177ad96f9fde07e05d18c83c5b36f24578e9a6d956766f2a0c55d728f7ec652805ac36433ba76afef188bb89f4b6d322776cc5e40b34791c54068cedaebd2b5bd54ab573cdc6d0946a388");
+    static final byte[] RSA_PRIVATE_KEY = Hex.decodeHexOrFail("308204bc020100300d06092a864886f70d0101010500048204a6308204a20201000282010100c9a974c5e861d4c46e05271f2c28a583c671a704789a37c12889036f9fea05e0fa996bd60728cffb11f65031c89c4786fee6997ff3ccb5e2c886741ca7f59b0ff0829300b64cb25d409a1ab9ca1ffccc060eb9add52930074f3d28a908e72fa01bf1836a05df5e881dab46f9515ef857bebda6942124288f82b8a61cd8210bef4f99b915835d41437a8874cef24083aeaf6139d5d2fea5ea9a44a403bf95b2856ba4e4562dacba4730e7da6454eb82009960a3d379eec7b3a0b42c2b7e09a4211e1d0233abc7e669524980d71d14186623d11521e3b83c26257245b67946c4680447280459b05e2f27ad749e7b3457bdcf4bc645f54a639dd71cfb0d82f7f1a5020301000102820100552a65200db77f5163bb765db25b0a27a03fb04ef19603b4e6271315e9bdbe34d8f0c13b76f393fe4f042cb311ab7a83b713f140b9d83afa67406d3a0aeeed492a84228c1af14224a2db522d238125d48e3c5acb60aa0fd80e6d60461ef5efc598f782cddc640cbac478e8b4f359fddca4b7d86957a3bb237c8bf9cf55b18325921a4bafcc9f9159f6a33f76540eebfe1813acc524f9da98eb087ad21bcae5dd56b5f09f86ad1b60ff33fedf68b0a1d15ddbba4380081ba9bab848f2b0802837cbb777586825772fb038726cd931a83b865f0182cc6e035fabc135a0f47d7d1e59291955195b8eedadeb2f4f57c550cc07468a78c6de446345f6ae2ee1d16bc302818100f41b8225125daa8dd330893e2d07a77e9d6de573b454a9e3ea33eea52d0359674013848311f3e74cce829336466b8e918f7bd854e0ea9febe68ec4d9670cde3486039e10fb39559af1cdf44da37fb2fb0f38c150488d7b098ddd69ded3418a51d0317beb2a3228e00aa71922e990c297f212348d2e41d721122f2a6b6d0761bf02818100d37c91f62b24c322558906365921a4c776a7c7033cbd086d5289500843f3a8d4df691256938bed554f4a83a4e0dbba58b5805d280c66c0890de9bf838ac95bbf0a9f6a0c0ae926ae8e22e7f5ba8aef49bb16a101ba03f5a7e0a38e9f5062ad571bc4bc4bfecb232c6480315d86b0dd361afcaecdb5d7ce87143e2faa599afd9b0281802f87ffb26a3e14cca2d7ab9190c111cb24aa56684e2fc218dfec96c650da7b1910affc386d5179b349eec0ed6b8edbe6d9f27a70248f6aee4b2977890178cef79934b11d8b5d619ed7008c5665c4a2bc21fda21e98d1fba823987e59e5f6b8113021c2884ae21375747d8ef66e56429dc583e7f9a98d266f8913e8059ce8380f0281800b8d767bb8079e113612f21fede68495d0c981798fcbd3b605183323007342f9bdea8371ef4569858b7b4a8dab2ad5971af31423a7e9c502b79bd9365a527d8c860c0742f9259b5355b85a6b75f138f9121b3e5855ccf9925e1711276ac0b92f54f8fe40387ee840f88c7825dfc1b193cf0d968eee2c07c0213ef4639dd97599028180450e9df767ea5bd1fc3effb8af9f0038b78e90521cb5eceade751be1d1b5dce9552d1d02d8de2193e8444eccf62425fd370dae2ac3ff29bc38568c014dd654da924dc1f5339aa48d55bc65665558d3afb75d69e990e129400883e5e7c2a0d9f38ffa81bbfe1327067abab8f5dbd64f7b4475d87eed881015473fb8cf91521329");
+
+    PivEmulatorTransport transport;
+    PivSecurityKey pivSecurityKey;
+
+    @Before
+    public void setup() throws Exception {
+        transport = createEmulator();
+        pivSecurityKey = connect(transport);
+    }
+
+    @Test
+    public void authenticate_p256() throws Exception {
+        authenticateAndVerify(pivSecurityKey, PivKeyReference.AUTHENTICATION, "SHA-256", "SHA256withECDSA");
+    }
+
+    @Test
+    public void authenticate_p384() throws Exception {
+        authenticateAndVerify(pivSecurityKey, PivKeyReference.DIGITAL_SIGNATURE, "SHA-384", "SHA384withECDSA");
+    }
+
+    @Test
+    public void authenticate_rsa2048_withChaining() throws Exception {
+        authenticateAndVerify(pivSecurityKey, PivKeyReference.KEY_MANAGEMENT, "SHA-256", "SHA256withRSA");
+    }
+
+    @Test
+    public void authenticate_wrongPin() throws Exception {
+        SecurityKeyAuthenticator authenticator = pivSecurityKey.createSecurityKeyAuthenticator(
+                StaticPinProvider.getInstance(ByteSecret.unsafeFromString("654321")), PivKeyReference.AUTHENTICATION);
+
+        try {
+            authenticator.authenticateWithDigest(CHALLENGE, "SHA-256");
+            fail();
+        } catch (PivWrongPinException e) {
+            assertEquals(2, e.getRetriesLeft());
+        }
+    }
+
+    @Test
+    public void updatePinUsingPuk() throws Exception {
+        pivSecurityKey.updatePinUsingPuk(ByteSecret.unsafeFromString("12345678"), ByteSecret.unsafeFromString("11223344"));
+
+        SecurityKeyAuthenticator authenticator = pivSecurityKey.createSecurityKeyAuthenticator(
+                StaticPinProvider.getInstance(ByteSecret.unsafeFromString("11223344")), PivKeyReference.AUTHENTICATION);
+        byte[] signature = authenticator.authenticateWithDigest(CHALLENGE, "SHA-256");
+
+        assertTrue(verify("SHA256withECDSA", authenticator.retrievePublicKey(), signature));
+    }
+
+    @Test
+    public void authenticate_parallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        PivSecurityKey securityKey = connect(createEmulator().setApduLatencyMs(1));
+                        SecurityKeyAuthenticator authenticator = securityKey.createSecurityKeyAuthenticator(
+                                StaticPinProvider.getInstance(ByteSecret.unsafeFromString("123456")));
+                        byte[] signature = authenticator.authenticateWithDigest(CHALLENGE, "SHA-256");
+                        return verify("SHA256withECDSA", authenticator.retrievePublicKey(), signature);
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static PivEmulatorTransport createEmulator() throws Exception {
+        return PivEmulatorTransport.create()
+                .setSlot(PivKeyReference.AUTHENTICATION, decodePrivateKey("EC", P256_PRIVATE_KEY), P256_CERTIFICATE)
+                .setSlot(PivKeyReference.DIGITAL_SIGNATURE, decodePrivateKey("EC", P384_PRIVATE_KEY), P384_CERTIFICATE)
+                .setSlot(PivKeyReference.KEY_MANAGEMENT, decodePrivateKey("RSA", RSA_PRIVATE_KEY), RSA_CERTIFICATE);
+    }
+
+    static PivSecurityKey connect(Transport transport) throws Exception {
+        return new PivSecurityKeyConnectionMode().establishSecurityKeyConnection(
+                new SecurityKeyManagerConfig.Builder().build(), transport);
+    }
+
+    static void authenticateAndVerify(PivSecurityKey pivSecurityKey, PivKeyReference keyReference,
+            String hashAlgo, String signatureAlgo) throws Exception {
+        SecurityKeyAuthenticator authenticator = pivSecurityKey.createSecurityKeyAuthenticator(
+                StaticPinProvider.getInstance(ByteSecret.unsafeFromString("123456")), keyReference);
+
+        byte[] signature = authenticator.authenticateWithDigest(CHALLENGE, hashAlgo);
+
+        PublicKey certificatePublicKey = CertificateFactory.getInstance("X.509").generateCertificate(
+                new ByteArrayInputStream(authenticator.retrieveCertificateData())).getPublicKey();
+        assertTrue(verify(signatureAlgo, certificatePublicKey, signature));
+    }
+
+    static boolean verify(String signatureAlgo, PublicKey publicKey, byte[] signatureBytes) throws Exception {
+        Signature signature = Signature.getInstance(signatureAlgo);
+        signature.initVerify(publicKey);
+        signature.update(CHALLENGE);
+        return signature.verify(signatureBytes);
+    }
+
+    static PrivateKey decodePrivateKey(String algorithm, byte[] pkcs8) throws Exception {
+        return KeyFactory.getInstance(algorithm).generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.piv;
+
+
+import java.io.IOException;
+
+import de.cotech.hw.exceptions.SecurityKeyDisconnectedException;
+import de.cotech.hw.internal.transport.FaultInjectingTransport;
+import de.cotech.hw.piv.internal.PivEmulatorTransport;
+import org.junit.Test;
+
+import static de.cotech.hw.piv.PivEmulatorTransportTest.authenticateAndVerify;
+import static de.cotech.hw.piv.PivEmulatorTransportTest.connect;
+import static de.cotech.hw.piv.PivEmulatorTransportTest.createEmulator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Checks that {@link de.cotech.hw.piv.internal.PivAppletConnection} handles the faults injected by
+ * {@link FaultInjectingTransport} without sending the card more commands than necessary.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PivFaultInjectionTest {
+    @Test
+    public void authenticate_withSplitResponses() throws Exception {
+        int expectedCardCommands = countCardCommandsForAuthenticate();
+        PivEmulatorTransport emulator = createEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .setSplitResponseChunkSize(32);
+
+        authenticateAndVerify(connect(transport), PivKeyReference.KEY_MANAGEMENT, "SHA-256", "SHA256withRSA");
+
+        assertTrue(transport.getInjectedFaultCount() > 0);
+        assertEquals(expectedCardCommands, emulator.getTransceiveCount());
+    }
+
+    @Test
+    public void authenticate_withExactLengthRequired() throws Exception {
+        int expectedCardCommands = countCardCommandsForAuthenticate();
+        PivEmulatorTransport emulator = createEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .setExactLengthRequired(true);
+
+        authenticateAndVerify(connect(transport), PivKeyReference.KEY_MANAGEMENT, "SHA-256", "SHA256withRSA");
+
+        assertTrue(transport.getInjectedFaultCount() > 0);
+        assertEquals(expectedCardCommands, emulator.getTransceiveCount());
+    }
+
+    @Test
+    public void authenticate_withLatency() throws Exception {
+        int expectedCardCommands = countCardCommandsForAuthenticate();
+        PivEmulatorTransport emulator = createEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .setLatencyMs(2)
+                .keepaliveStormAt(expectedCardCommands - 1, 10, 5);
+
+        authenticateAndVerify(connect(transport), PivKeyReference.KEY_MANAGEMENT, "SHA-256", "SHA256withRSA");
+
+        assertEquals(expectedCardCommands, emulator.getTransceiveCount());
+    }
+
+    @Test
+    public void authenticate_disconnect_thenReconnect() throws Exception {
+        PivEmulatorTransport emulator = createEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator);
+        PivSecurityKey pivSecurityKey = connect(transport);
+        transport.disconnectAt(transport.getTransceiveCount() + 1);
+
+        try {
+            authenticateAndVerify(pivSecurityKey, PivKeyReference.AUTHENTICATION, "SHA-256", "SHA256withECDSA");
+            fail();
+        } catch (SecurityKeyDisconnectedException e) {
+            // expected
+        }
+        assertEquals(3, emulator.getPinRetries());
+
+        transport.connect();
+        authenticateAndVerify(connect(transport), PivKeyReference.AUTHENTICATION, "SHA-256", "SHA256withECDSA");
+    }
+
+    @Test
+    public void connect_withTruncatedResponse_releasesTransport() throws Exception {
+        PivEmulatorTransport emulator = createEmulator();
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(emulator)
+                .truncateResponseAt(0, 1);
+
+        try {
+            connect(transport);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, emulator.getTransceiveCount());
+        assertTrue(emulator.isReleased());
+    }
+
+    static int countCardCommandsForAuthenticate() throws Exception {
+        PivEmulatorTransport emulator = createEmulator();
+        authenticateAndVerify(connect(emulator), PivKeyReference.KEY_MANAGEMENT, "SHA-256", "SHA256withRSA");
+        return emulator.getTransceiveCount();
+    }
+}
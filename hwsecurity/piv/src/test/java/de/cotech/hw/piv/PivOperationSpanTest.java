@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.piv;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.cotech.hw.SecurityKeyManagerConfig;
+import de.cotech.hw.SecurityKeyOperationSpan;
+import de.cotech.hw.SecurityKeyOperationSpan.SpanType;
+import de.cotech.hw.internal.transport.FaultInjectingTransport;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.piv.internal.PivEmulatorTransport;
+import org.junit.Test;
+
+import static de.cotech.hw.piv.PivEmulatorTransportTest.authenticateAndVerify;
+import static de.cotech.hw.piv.PivEmulatorTransportTest.createEmulator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+@SuppressWarnings("WeakerAccess")
+public class PivOperationSpanTest {
+    @Test
+    public void authenticate_reportsSpansForAllApdus() throws Exception {
+        PivEmulatorTransport emulator = createEmulator();
+        List<SecurityKeyOperationSpan> spans = new ArrayList<>();
+
+        authenticateAndVerify(connect(emulator, spans), PivKeyReference.AUTHENTICATION, "SHA-256", "SHA256withECDSA");
+
+        assertFalse(findSpans(spans, SpanType.SELECT).isEmpty());
+        assertEquals(1, findSpans(spans, SpanType.VERIFY_PIN).size());
+        assertEquals(1, findSpans(spans, SpanType.CRYPTO_OPERATION).size());
+        assertEquals(emulator.getTransceiveCount(), countTopLevelApdus(spans));
+        for (SecurityKeyOperationSpan span : spans) {
+            assertTrue(span.getApduCount() > 0);
+            assertTrue(span.getBytesSent() > 0);
+            assertTrue(span.getBytesReceived() >= 2);
+            assertTrue(span.getTransceiveNanos() <= span.getElapsedNanos());
+        }
+    }
+
+    @Test
+    public void authenticate_withSplitResponses_reportsNestedGetResponseSpans() throws Exception {
+        FaultInjectingTransport transport = FaultInjectingTransport.wrap(createEmulator())
+                .setSplitResponseChunkSize(32);
+        List<SecurityKeyOperationSpan> spans = new ArrayList<>();
+
+        authenticateAndVerify(connect(transport, spans), PivKeyReference.KEY_MANAGEMENT, "SHA-256", "SHA256withRSA");
+
+        List<SecurityKeyOperationSpan> getResponseSpans = findSpans(spans, SpanType.GET_RESPONSE);
+        assertFalse(getResponseSpans.isEmpty());
+        int getResponseApdus = 0;
+        for (SecurityKeyOperationSpan span : getResponseSpans) {
+            getResponseApdus += span.getApduCount();
+        }
+        // GET RESPONSE spans are nested in their command's span, which counts the same APDUs
+        assertTrue(countTopLevelApdus(spans) > getResponseApdus);
+        assertEquals(transport.getTransceiveCount(), countTopLevelApdus(spans));
+    }
+
+    @Test
+    public void authenticate_withoutListener_reportsNothing() throws Exception {
+        PivSecurityKey pivSecurityKey = new PivSecurityKeyConnectionMode().establishSecurityKeyConnection(
+                new SecurityKeyManagerConfig.Builder().build(), createEmulator());
+
+        authenticateAndVerify(pivSecurityKey, PivKeyReference.AUTHENTICATION, "SHA-256", "SHA256withECDSA");
+    }
+
+    static PivSecurityKey connect(Transport transport, List<SecurityKeyOperationSpan> spans) throws Exception {
+        SecurityKeyManagerConfig config = new SecurityKeyManagerConfig.Builder()
+                .setOperationSpanListener(spans::add)
+                .build();
+        return new PivSecurityKeyConnectionMode().establishSecurityKeyConnection(config, transport);
+    }
+
+    static List<SecurityKeyOperationSpan> findSpans(List<SecurityKeyOperationSpan> spans, SpanType spanType) {
+        List<SecurityKeyOperationSpan> result = new ArrayList<>();
+        for (SecurityKeyOperationSpan span : spans) {
+            if (span.getSpanType() == spanType) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+
+    static int countTopLevelApdus(List<SecurityKeyOperationSpan> spans) {
+        int apduCount = 0;
+        for (SecurityKeyOperationSpan span : spans) {
+            if (span.getSpanType() != SpanType.CHAINING && span.getSpanType() != SpanType.GET_RESPONSE) {
+                apduCount += span.getApduCount();
+            }
+        }
+        return apduCount;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.piv;
+
+
+import java.security.MessageDigest;
+
+import de.cotech.hw.SecurityKeyAuthenticator;
+import de.cotech.hw.internal.benchmark.ThroughputBenchmark;
+import de.cotech.hw.piv.internal.PivEmulatorTransport;
+import de.cotech.hw.secrets.ByteSecret;
+import de.cotech.hw.secrets.PinProvider;
+import de.cotech.hw.secrets.StaticPinProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import static de.cotech.hw.piv.PivEmulatorTransportTest.CHALLENGE;
+import static de.cotech.hw.piv.PivEmulatorTransportTest.connect;
+import static de.cotech.hw.piv.PivEmulatorTransportTest.createEmulator;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * End-to-end throughput of PIV operations against {@link PivEmulatorTransport}, see {@link ThroughputBenchmark}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PivThroughputBenchmarkTest {
+    static final PinProvider PIN_PROVIDER = StaticPinProvider.getInstance(ByteSecret.unsafeFromString("123456"));
+
+    @Before
+    public void setup() {
+        assumeTrue(ThroughputBenchmark.isEnabled());
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        ThroughputBenchmark benchmark = ThroughputBenchmark.create("piv");
+        // a TLS client signs the SHA-256 hash of its handshake transcript with the authentication key
+        byte[] handshakeHash = MessageDigest.getInstance("SHA-256").digest(CHALLENGE);
+
+        SecurityKeyAuthenticator p256Authenticator = connect(createEmulator())
+                .createSecurityKeyAuthenticator(PIN_PROVIDER, PivKeyReference.AUTHENTICATION);
+        benchmark.measure("piv.tlsClientAuth.p256",
+                () -> p256Authenticator.authenticatePresignedDigest(handshakeHash, "SHA-256"));
+
+        SecurityKeyAuthenticator p384Authenticator = connect(createEmulator())
+                .createSecurityKeyAuthenticator(PIN_PROVIDER, PivKeyReference.DIGITAL_SIGNATURE);
+        benchmark.measure("piv.tlsClientAuth.p384",
+                () -> p384Authenticator.authenticatePresignedDigest(handshakeHash, "SHA-256"));
+
+        SecurityKeyAuthenticator rsaAuthenticator = connect(createEmulator())
+                .createSecurityKeyAuthenticator(PIN_PROVIDER, PivKeyReference.KEY_MANAGEMENT);
+        benchmark.measure("piv.tlsClientAuth.rsa2048",
+                () -> rsaAuthenticator.authenticatePresignedDigest(handshakeHash, "SHA-256"));
+
+        PivEmulatorTransport transport = createEmulator();
+        benchmark.measure("piv.connectAndTlsClientAuth.p256", () -> {
+            transport.connect();
+            connect(transport).createSecurityKeyAuthenticator(PIN_PROVIDER, PivKeyReference.AUTHENTICATION)
+                    .authenticatePresignedDigest(handshakeHash, "SHA-256");
+            transport.release();
+        });
+
+        benchmark.writeReport();
+    }
+}
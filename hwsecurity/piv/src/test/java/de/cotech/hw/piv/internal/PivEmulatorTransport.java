@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2018-2020 Confidential Technologies GmbH
+ *
+ * You can purchase a commercial license at https://hwsecurity.dev.
+ * Buying such a license is mandatory as soon as you develop commercial
+ * activities involving this program without disclosing the source code
+ * of your own applications.
+ *
+ * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.cotech.hw.piv.internal;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.EnumMap;
+
+import javax.crypto.Cipher;
+
+import androidx.annotation.Nullable;
+import de.cotech.hw.exceptions.AppletFileNotFoundException;
+import de.cotech.hw.exceptions.AuthenticationMethodBlockedException;
+import de.cotech.hw.exceptions.ClaNotSupportedException;
+import de.cotech.hw.exceptions.ConditionsNotSatisfiedException;
+import de.cotech.hw.exceptions.InsNotSupportedException;
+import de.cotech.hw.exceptions.SecurityStatusNotSatisfiedException;
+import de.cotech.hw.exceptions.WrongDataException;
+import de.cotech.hw.exceptions.WrongRequestLengthException;
+import de.cotech.hw.internal.iso7816.CommandApdu;
+import de.cotech.hw.internal.iso7816.Iso7816TLV;
+import de.cotech.hw.internal.iso7816.ResponseApdu;
+import de.cotech.hw.internal.transport.SecurityKeyInfo.SecurityKeyType;
+import de.cotech.hw.internal.transport.SecurityKeyInfo.TransportType;
+import de.cotech.hw.internal.transport.Transport;
+import de.cotech.hw.piv.PivKeyReference;
+import de.cotech.hw.piv.exceptions.PivWrongPinException;
+import de.cotech.hw.util.Arrays;
+import de.cotech.hw.util.Hex;
+
+
+/**
+ * A software PIV card, speaking the subset of NIST SP 800-73-4 used by {@link PivAppletConnection}.
+ * <p>
+ * Supported are SELECT, GET DATA for the certificate objects of all {@link PivKeyReference} slots, VERIFY,
+ * RESET RETRY COUNTER, GET RESPONSE, command chaining, and GENERAL AUTHENTICATE with RSA, P-256 and P-384 keys.
+ * Like a physical card, a single instance processes one APDU at a time, so for parallel load tests each simulated
+ * handshake should get its own instance.
+ */
+@SuppressWarnings("WeakerAccess")
+public class PivEmulatorTransport implements Transport {
+    private static final byte[] AID_PREFIX_PIV = Hex.decodeHexOrFail("A000000308");
+
+    private static final int SW_SUCCESS = 0x9000;
+    private static final int SW1_RESPONSE_AVAILABLE = 0x61;
+    private static final int SW_INCORRECT_P1P2 = 0x6A86;
+
+    private static final int MASK_CLA_CHAINING = 1 << 4;
+
+    private static final int INS_SELECT_FILE = 0xA4;
+    private static final int INS_GET_DATA = 0xCB;
+    private static final int INS_VERIFY = 0x20;
+    private static final int INS_RESET_RETRY_COUNTER = 0x2C;
+    private static final int INS_GENERAL_AUTHENTICATE = 0x87;
+    private static final int INS_GET_RESPONSE = 0xC0;
+
+    private static final int P2_PIN_CARD_APPLICATION = 0x80;
+    private static final int P1_ALGORITHM_RSA_1024 = 0x06;
+    private static final int P1_ALGORITHM_RSA_2048 = 0x07;
+    private static final int P1_ALGORITHM_P256 = 0x11;
+    private static final int P1_ALGORITHM_P384 = 0x14;
+
+    private static final int MAX_PIN_RETRIES = 3;
+    private static final int MAX_PUK_RETRIES = 3;
+
+    private final EnumMap<PivKeyReference, EmulatedSlot> slots = new EnumMap<>(PivKeyReference.class);
+
+    private TransportType transportType = TransportType.USB_CCID;
+    private long apduLatencyMs;
+    private long cryptoLatencyMs;
+
+    private byte[] pin = formatPin("123456");
+    private byte[] puk = formatPin("12345678");
+    private int pinRetries = MAX_PIN_RETRIES;
+    private int pukRetries = MAX_PUK_RETRIES;
+
+    private boolean isReleased;
+    private boolean isAppletSelected;
+    private boolean isPinVerified;
+    private int transceiveCount;
+
+    private ByteArrayOutputStream chainedCommandData;
+    private byte[] pendingResponse;
+    private int pendingResponseOffset;
+
+    public static PivEmulatorTransport create() {
+        return new PivEmulatorTransport();
+    }
+
+    private PivEmulatorTransport() {
+    }
+
+    /**
+     * Puts a private key and the DER encoding of its certificate into a slot. The key type determines which
+     * GENERAL AUTHENTICATE algorithm reference the slot will accept.
+     */
+    public synchronized PivEmulatorTransport setSlot(PivKeyReference keyReference, PrivateKey privateKey,
+            @Nullable byte[] certificateBytes) {
+        slots.put(keyReference, new EmulatedSlot(privateKey, certificateBytes));
+        return this;
+    }
+
+    public synchronized PivEmulatorTransport setPin(String pin) {
+        this.pin = formatPin(pin);
+        pinRetries = MAX_PIN_RETRIES;
+        return this;
+    }
+
+    public synchronized PivEmulatorTransport setPuk(String puk) {
+        this.puk = formatPin(puk);
+        pukRetries = MAX_PUK_RETRIES;
+        return this;
+    }
+
+    /** Artificial delay that is added to every transceived APDU, to simulate transport round trips. */
+    public synchronized PivEmulatorTransport setApduLatencyMs(long apduLatencyMs) {
+        this.apduLatencyMs = apduLatencyMs;
+        return this;
+    }
+
+    /** Artificial delay that is added to every GENERAL AUTHENTICATE, to simulate on-card crypto time. */
+    public synchronized PivEmulatorTransport setCryptoLatencyMs(long cryptoLatencyMs) {
+        this.cryptoLatencyMs = cryptoLatencyMs;
+        return this;
+    }
+
+    public synchronized PivEmulatorTransport setTransportType(TransportType transportType) {
+        this.transportType = transportType;
+        return this;
+    }
+
+    public synchronized int getTransceiveCount() {
+        return transceiveCount;
+    }
+
+    public synchronized int getPinRetries() {
+        return pinRetries;
+    }
+
+    @Override
+    public synchronized ResponseApdu transceive(CommandApdu commandApdu) throws IOException {
+        if (isReleased) {
+            throw new IOException("Transport has been released!");
+        }
+        transceiveCount++;
+        sleepMs(apduLatencyMs);
+
+        if (commandApdu.getINS() == INS_GET_RESPONSE) {
+            return continuePendingResponse(commandApdu.getNe());
+        }
+        pendingResponse = null;
+
+        if ((commandApdu.getCLA() & ~MASK_CLA_CHAINING) != 0) {
+            return ResponseApdu.create(ClaNotSupportedException.SW_CLA_NOT_SUPPORTED, new byte[0]);
+        }
+
+        byte[] data = commandApdu.getData();
+        if ((commandApdu.getCLA() & MASK_CLA_CHAINING) != 0) {
+            if (chainedCommandData == null) {
+                chainedCommandData = new ByteArrayOutputStream();
+            }
+            chainedCommandData.write(data);
+            return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+        }
+        if (chainedCommandData != null) {
+            chainedCommandData.write(data);
+            data = chainedCommandData.toByteArray();
+            chainedCommandData = null;
+        }
+
+        ResponseApdu response = processCommand(commandApdu, data);
+        if (!response.isSuccess() || response.getData().length <= commandApdu.getNe()) {
+            return response;
+        }
+
+        pendingResponse = response.getData();
+        pendingResponseOffset = 0;
+        return continuePendingResponse(commandApdu.getNe());
+    }
+
+    private ResponseApdu processCommand(CommandApdu commandApdu, byte[] data) {
+        if (commandApdu.getINS() == INS_SELECT_FILE) {
+            return processSelect(data);
+        }
+        if (!isAppletSelected) {
+            return ResponseApdu.create(InsNotSupportedException.SW_INS_NOT_SUPPORTED, new byte[0]);
+        }
+
+        switch (commandApdu.getINS()) {
+            case INS_GET_DATA:
+                return processGetData(data);
+            case INS_VERIFY:
+                return processVerify(commandApdu.getP2(), data);
+            case INS_RESET_RETRY_COUNTER:
+                return processResetRetryCounter(commandApdu.getP2(), data);
+            case INS_GENERAL_AUTHENTICATE:
+                return processGeneralAuthenticate(commandApdu.getP1(), commandApdu.getP2(), data);
+            default:
+                return ResponseApdu.create(InsNotSupportedException.SW_INS_NOT_SUPPORTED, new byte[0]);
+        }
+    }
+
+    private ResponseApdu processSelect(byte[] aid) {
+        if (aid.length < AID_PREFIX_PIV.length ||
+                !Arrays.areEqual(AID_PREFIX_PIV, Arrays.copyOf(aid, AID_PREFIX_PIV.length))) {
+            isAppletSelected = false;
+            return ResponseApdu.create(AppletFileNotFoundException.SW_FILE_NOT_FOUND, new byte[0]);
+        }
+
+        isAppletSelected = true;
+        isPinVerified = false;
+        // application property template, containing only the AID
+        return ResponseApdu.create(SW_SUCCESS, Iso7816TLV.encode(0x61, Iso7816TLV.encode(0x4F, aid)));
+    }
+
+    private ResponseApdu processGetData(byte[] data) {
+        Iso7816TLV tagList;
+        try {
+            tagList = Iso7816TLV.readSingle(data, false);
+        } catch (IOException | RuntimeException e) {
+            return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+        }
+        if (tagList.mT != 0x5C) {
+            return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+        }
+
+        String dataObjectHex = Hex.encodeHexString(tagList.mV);
+        for (PivKeyReference keyReference : slots.keySet()) {
+            EmulatedSlot slot = slots.get(keyReference);
+            if (dataObjectHex.equalsIgnoreCase(keyReference.dataObject) && slot.certificateBytes != null) {
+                byte[] certificateObject = Arrays.concatenate(
+                        Iso7816TLV.encode(0x70, slot.certificateBytes),
+                        Iso7816TLV.encode(0x71, new byte[] { 0x00 }),
+                        Iso7816TLV.encode(0xFE, new byte[0]));
+                return ResponseApdu.create(SW_SUCCESS, Iso7816TLV.encode(0x53, certificateObject));
+            }
+        }
+        return ResponseApdu.create(AppletFileNotFoundException.SW_FILE_NOT_FOUND, new byte[0]);
+    }
+
+    private ResponseApdu processVerify(int p2, byte[] data) {
+        if (p2 != P2_PIN_CARD_APPLICATION) {
+            return ResponseApdu.create(SW_INCORRECT_P1P2, new byte[0]);
+        }
+        if (pinRetries == 0) {
+            return ResponseApdu.create(AuthenticationMethodBlockedException.SW_AUTHENTICATION_METHOD_BLOCKED, new byte[0]);
+        }
+        if (data.length == 0) {
+            if (isPinVerified) {
+                return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+            }
+            return ResponseApdu.create(PivWrongPinException.SW_WRONG_PIN_RETRIES_BASE | pinRetries, new byte[0]);
+        }
+        if (data.length != 8) {
+            return ResponseApdu.create(WrongRequestLengthException.SW_WRONG_REQUEST_LENGTH, new byte[0]);
+        }
+
+        if (!Arrays.constantTimeAreEqual(pin, data)) {
+            isPinVerified = false;
+            pinRetries--;
+            return ResponseApdu.create(PivWrongPinException.SW_WRONG_PIN_RETRIES_BASE | pinRetries, new byte[0]);
+        }
+
+        pinRetries = MAX_PIN_RETRIES;
+        isPinVerified = true;
+        return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+    }
+
+    private ResponseApdu processResetRetryCounter(int p2, byte[] data) {
+        if (p2 != P2_PIN_CARD_APPLICATION) {
+            return ResponseApdu.create(SW_INCORRECT_P1P2, new byte[0]);
+        }
+        if (pukRetries == 0) {
+            return ResponseApdu.create(AuthenticationMethodBlockedException.SW_AUTHENTICATION_METHOD_BLOCKED, new byte[0]);
+        }
+        if (data.length != 16) {
+            return ResponseApdu.create(WrongRequestLengthException.SW_WRONG_REQUEST_LENGTH, new byte[0]);
+        }
+
+        if (!Arrays.constantTimeAreEqual(puk, Arrays.copyOfRange(data, 0, 8))) {
+            pukRetries--;
+            return ResponseApdu.create(PivWrongPinException.SW_WRONG_PIN_RETRIES_BASE | pukRetries, new byte[0]);
+        }
+
+        pin = Arrays.copyOfRange(data, 8, 16);
+        pinRetries = MAX_PIN_RETRIES;
+        pukRetries = MAX_PUK_RETRIES;
+        isPinVerified = false;
+        return ResponseApdu.create(SW_SUCCESS, new byte[0]);
+    }
+
+    private ResponseApdu processGeneralAuthenticate(int algorithm, int keyReferenceId, byte[] data) {
+        EmulatedSlot slot = findSlotByReferenceId(keyReferenceId);
+        if (slot == null || !isAlgorithmSupportedBySlot(slot, algorithm)) {
+            return ResponseApdu.create(SW_INCORRECT_P1P2, new byte[0]);
+        }
+        if (keyReferenceId != PivKeyReference.CARD_AUTHENTICATION.referenceId && !isPinVerified) {
+            return ResponseApdu.create(SecurityStatusNotSatisfiedException.SW_SECURITY_STATUS_NOT_SATISFIED, new byte[0]);
+        }
+
+        Iso7816TLV challenge;
+        try {
+            Iso7816TLV template = Iso7816TLV.readSingle(data, true);
+            if (template.mT != 0x7C || Iso7816TLV.find(template, 0x82) == null) {
+                return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+            }
+            challenge = Iso7816TLV.find(template, 0x81);
+        } catch (IOException | RuntimeException e) {
+            return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+        }
+        if (challenge == null) {
+            return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+        }
+
+        sleepMs(cryptoLatencyMs);
+
+        byte[] signature;
+        try {
+            signature = slot.sign(challenge.mV);
+        } catch (GeneralSecurityException e) {
+            return ResponseApdu.create(WrongDataException.SW_WRONG_DATA, new byte[0]);
+        }
+        return ResponseApdu.create(SW_SUCCESS, Iso7816TLV.encode(0x7C, Iso7816TLV.encode(0x82, signature)));
+    }
+
+    private ResponseApdu continuePendingResponse(int ne) {
+        if (pendingResponse == null) {
+            return ResponseApdu.create(ConditionsNotSatisfiedException.SW_CONDITIONS_NOT_SATISFIED, new byte[0]);
+        }
+
+        int chunkLength = Math.min(ne, pendingResponse.length - pendingResponseOffset);
+        byte[] chunk = Arrays.copyOfRange(pendingResponse, pendingResponseOffset, pendingResponseOffset + chunkLength);
+        pendingResponseOffset += chunkLength;
+
+        int remaining = pendingResponse.length - pendingResponseOffset;
+        if (remaining == 0) {
+            pendingResponse = null;
+            return ResponseApdu.create(SW_SUCCESS, chunk);
+        }
+        return ResponseApdu.create((SW1_RESPONSE_AVAILABLE << 8) | Math.min(remaining, 0xFF), chunk);
+    }
+
+    @Nullable
+    private EmulatedSlot findSlotByReferenceId(int keyReferenceId) {
+        for (PivKeyReference keyReference : slots.keySet()) {
+            if (keyReference.referenceId == keyReferenceId) {
+                return slots.get(keyReference);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAlgorithmSupportedBySlot(EmulatedSlot slot, int algorithm) {
+        if (slot.privateKey instanceof RSAPrivateKey) {
+            int modulusBits = ((RSAPrivateKey) slot.privateKey).getModulus().bitLength();
+            return (algorithm == P1_ALGORITHM_RSA_2048 && modulusBits == 2048) ||
+                    (algorithm == P1_ALGORITHM_RSA_1024 && modulusBits == 1024);
+        }
+        if (slot.privateKey instanceof ECPrivateKey) {
+            int fieldSize = ((ECPrivateKey) slot.privateKey).getParams().getCurve().getField().getFieldSize();
+            return (algorithm == P1_ALGORITHM_P256 && fieldSize == 256) ||
+                    (algorithm == P1_ALGORITHM_P384 && fieldSize == 384);
+        }
+        return false;
+    }
+
+    private static byte[] formatPin(String pin) {
+        byte[] result = new byte[8];
+        Arrays.fill(result, (byte) 0xff);
+        byte[] pinBytes = pin.getBytes();
+        System.arraycopy(pinBytes, 0, result, 0, pinBytes.length);
+        return result;
+    }
+
+    private static void sleepMs(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        isReleased = true;
+        isAppletSelected = false;
+        isPinVerified = false;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return !isReleased;
+    }
+
+    @Override
+    public synchronized boolean isReleased() {
+        return isReleased;
+    }
+
+    @Override
+    public boolean isPersistentConnectionAllowed() {
+        return transportType != TransportType.NFC;
+    }
+
+    @Override
+    public boolean isExtendedLengthSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void connect() {
+        isReleased = false;
+    }
+
+    @Override
+    public synchronized boolean ping() {
+        return !isReleased;
+    }
+
+    @Override
+    public synchronized TransportType getTransportType() {
+        return transportType;
+    }
+
+    @Nullable
+    @Override
+    public SecurityKeyType getSecurityKeyTypeIfAvailable() {
+        return null;
+    }
+
+    private static class EmulatedSlot {
+        final PrivateKey privateKey;
+        @Nullable
+        final byte[] certificateBytes;
+
+        EmulatedSlot(PrivateKey privateKey, @Nullable byte[] certificateBytes) {
+            this.privateKey = privateKey;
+            this.certificateBytes = certificateBytes;
+        }
+
+        byte[] sign(byte[] challenge) throws GeneralSecurityException {
+            if (privateKey instanceof RSAPrivateKey) {
+                // PIV performs a raw RSA operation, the host takes care of the PKCS#1 padding
+                Cipher cipher = Cipher.getInstance("RSA/ECB/NoPadding");
+                cipher.init(Cipher.DECRYPT_MODE, privateKey);
+                return cipher.doFinal(challenge);
+            }
+
+            Signature signature = Signature.getInstance("NONEwithECDSA");
+            signature.initSign(privateKey);
+            signature.update(challenge);
+            return signature.sign();
+        }
+    }
+}